@@ -0,0 +1,181 @@
+package com.example.tfg_bluetooth;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * Búsqueda BLE con agrupación por hardware: con ScanSettings.setReportDelay el controlador
+ * acumula los resultados y los entrega en bloque, en lugar de despertar la CPU por cada
+ * dispositivo. Si el chip no admite la agrupación se repite la búsqueda sin retardo.
+ *
+ * La búsqueda se hace en ventanas de la duración que marque el ciclo de trabajo; entre ventanas
+ * la radio queda libre. Android limita a 5 arranques cada 30 s, así que el periodo no debe
+ * bajar de unos 10 s.
+ */
+public final class BleBatchScanSource implements SightingSource {
+
+    private static final String TAG = "BleBatchScan";
+
+    private final BluetoothAdapter adapter;
+    private final DutyCycle dutyCycle;
+    private final long periodMillis;
+    private final long reportDelayMillis;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private BluetoothLeScanner scanner;
+    private Listener listener;
+    private WindowListener windowListener;
+    private boolean running;
+    private boolean scanning;
+    private boolean batching = true;
+
+    private final ScanCallback callback = new ScanCallback() {
+        @Override
+        public void onScanResult(int callbackType, ScanResult result) {
+            deliver(result);
+        }
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            for (int i = 0; i < results.size(); i++) {
+                deliver(results.get(i));
+            }
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            scanning = false;
+            handler.removeCallbacks(endWindow);
+            if (errorCode == SCAN_FAILED_FEATURE_UNSUPPORTED && batching) {
+                Log.w(TAG, "Agrupación por hardware no disponible; se reciben los resultados uno a uno");
+                batching = false;
+                startWindow.run();
+            } else {
+                Log.e(TAG, "Error en la búsqueda BLE: " + errorCode);
+                if (windowListener != null) {
+                    windowListener.onWindowFinished();
+                }
+                if (running) {
+                    handler.postDelayed(startWindow, periodMillis);
+                }
+            }
+        }
+    };
+
+    private final Runnable startWindow = new Runnable() {
+        @Override
+        public void run() {
+            if (!running || scanning) {
+                return;
+            }
+            scanner = adapter.getBluetoothLeScanner();
+            if (scanner == null) {
+                // Bluetooth apagado: se reintenta en la siguiente ventana
+                handler.postDelayed(this, periodMillis);
+                return;
+            }
+            ScanSettings settings = new ScanSettings.Builder()
+                    .setScanMode(ScanSettings.SCAN_MODE_LOW_POWER)
+                    .setReportDelay(batching ? reportDelayMillis : 0L)
+                    .build();
+            if (windowListener != null) {
+                windowListener.onWindowStarted();
+            }
+            try {
+                scanning = true;
+                scanner.startScan(null, settings, callback);
+            } catch (SecurityException e) {
+                scanning = false;
+                Log.e(TAG, "Sin permiso para buscar dispositivos", e);
+                return;
+            }
+            handler.postDelayed(endWindow, dutyCycle.windowFor(periodMillis));
+        }
+    };
+
+    private final Runnable endWindow = new Runnable() {
+        @Override
+        public void run() {
+            long window = dutyCycle.windowFor(periodMillis);
+            stopScan();
+            if (running) {
+                handler.postDelayed(startWindow, dutyCycle.pauseAfter(window));
+            }
+        }
+    };
+
+    public BleBatchScanSource(BluetoothAdapter adapter, DutyCycle dutyCycle, long periodMillis, long reportDelayMillis) {
+        this.adapter = adapter;
+        this.dutyCycle = dutyCycle;
+        this.periodMillis = periodMillis;
+        this.reportDelayMillis = reportDelayMillis;
+    }
+
+    @Override
+    public void setWindowListener(WindowListener windowListener) {
+        this.windowListener = windowListener;
+    }
+
+    @Override
+    public void start(Listener listener) {
+        if (running) {
+            return;
+        }
+        this.listener = listener;
+        running = true;
+        startWindow.run();
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        handler.removeCallbacks(startWindow);
+        handler.removeCallbacks(endWindow);
+        stopScan();
+        listener = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void stopScan() {
+        if (!scanning || scanner == null) {
+            scanning = false;
+            return;
+        }
+        scanning = false;
+        try {
+            // Entrega lo que el controlador tenga acumulado antes de parar
+            scanner.flushPendingScanResults(callback);
+            scanner.stopScan(callback);
+        } catch (SecurityException | IllegalStateException e) {
+            Log.e(TAG, "No se pudo detener la búsqueda BLE", e);
+        }
+        if (windowListener != null) {
+            windowListener.onWindowFinished();
+        }
+    }
+
+    private void deliver(ScanResult result) {
+        if (listener == null || result.getDevice() == null) {
+            return;
+        }
+        // El instante del resultado va en elapsedRealtime; se pasa al reloj de pared
+        long ageMillis = (SystemClock.elapsedRealtimeNanos() - result.getTimestampNanos()) / 1_000_000L;
+        long timestamp = System.currentTimeMillis() - Math.max(ageMillis, 0L);
+        listener.onSighting(result.getDevice().getAddress(), (short) result.getRssi(), timestamp);
+    }
+}
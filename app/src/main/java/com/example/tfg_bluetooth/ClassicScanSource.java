@@ -0,0 +1,142 @@
+package com.example.tfg_bluetooth;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Búsqueda clásica encadenada: cada búsqueda (unos 12 s) se vuelve a lanzar al recibir
+ * ACTION_DISCOVERY_FINISHED, tras la pausa que marque el ciclo de trabajo. Si la radio no
+ * acepta la búsqueda, se reintenta con una pausa creciente. El receptor se registra una sola
+ * vez por start() y se da de baja en stop().
+ */
+public final class ClassicScanSource implements SightingSource {
+
+    private static final String TAG = "ClassicScan";
+    // Duración habitual de una búsqueda clásica, para la pausa de reintento
+    private static final long DURACION_BUSQUEDA = 12 * 1000;
+
+    private final Context context;
+    private final BluetoothAdapter adapter;
+    private final DutyCycle dutyCycle;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private Listener listener;
+    private WindowListener windowListener;
+    private boolean running;
+    private long inquiryStartedAt;
+    // Intentos seguidos en los que la radio no ha aceptado la búsqueda
+    private int failures;
+
+    private final Runnable startInquiry = new Runnable() {
+        @Override
+        public void run() {
+            if (!running) {
+                return;
+            }
+            inquiryStartedAt = SystemClock.elapsedRealtime();
+            if (windowListener != null) {
+                windowListener.onWindowStarted();
+            }
+            boolean started;
+            try {
+                started = adapter.isDiscovering() || adapter.startDiscovery();
+                if (!started) {
+                    Log.w(TAG, "No se pudo iniciar la búsqueda");
+                }
+            } catch (SecurityException e) {
+                Log.e(TAG, "Sin permiso para buscar dispositivos", e);
+                started = false;
+            }
+            if (started) {
+                failures = 0;
+                return;
+            }
+            // No llegará ACTION_DISCOVERY_FINISHED: se cierra la ventana (libera la ubicación) y
+            // se reintenta con una pausa cada vez mayor
+            failures++;
+            if (windowListener != null) {
+                windowListener.onWindowFinished();
+            }
+            handler.removeCallbacks(startInquiry);
+            handler.postDelayed(startInquiry, dutyCycle.retryPauseAfter(DURACION_BUSQUEDA, failures));
+        }
+    };
+
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String action = intent.getAction();
+            if (BluetoothDevice.ACTION_FOUND.equals(action)) {
+                BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
+                if (device == null || listener == null) {
+                    return;
+                }
+                short rssi = intent.getShortExtra(BluetoothDevice.EXTRA_RSSI, DeviceRecord.RSSI_UNKNOWN);
+                listener.onSighting(device.getAddress(), rssi, System.currentTimeMillis());
+            } else if (BluetoothAdapter.ACTION_DISCOVERY_FINISHED.equals(action) && running) {
+                long scanned = SystemClock.elapsedRealtime() - inquiryStartedAt;
+                if (windowListener != null) {
+                    windowListener.onWindowFinished();
+                }
+                handler.removeCallbacks(startInquiry);
+                handler.postDelayed(startInquiry, dutyCycle.pauseAfter(scanned));
+            }
+        }
+    };
+
+    public ClassicScanSource(Context context, BluetoothAdapter adapter, DutyCycle dutyCycle) {
+        this.context = context;
+        this.adapter = adapter;
+        this.dutyCycle = dutyCycle;
+    }
+
+    @Override
+    public void setWindowListener(WindowListener windowListener) {
+        this.windowListener = windowListener;
+    }
+
+    @Override
+    public void start(Listener listener) {
+        if (running) {
+            return;
+        }
+        this.listener = listener;
+        running = true;
+        IntentFilter filter = new IntentFilter(BluetoothDevice.ACTION_FOUND);
+        filter.addAction(BluetoothAdapter.ACTION_DISCOVERY_FINISHED);
+        context.registerReceiver(receiver, filter);
+        startInquiry.run();
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        failures = 0;
+        handler.removeCallbacks(startInquiry);
+        try {
+            adapter.cancelDiscovery();
+        } catch (SecurityException e) {
+            Log.e(TAG, "Sin permiso para detener la búsqueda", e);
+        }
+        context.unregisterReceiver(receiver);
+        if (windowListener != null) {
+            windowListener.onWindowFinished();
+        }
+        listener = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
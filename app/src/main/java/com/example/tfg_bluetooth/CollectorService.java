@@ -0,0 +1,344 @@
+package com.example.tfg_bluetooth;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.bluetooth.BluetoothAdapter;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Binder;
+import android.os.Build;
+import android.os.IBinder;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Servicio en primer plano dueño de la búsqueda, la agregación y los envíos. Sigue recogiendo
+ * aunque la actividad se destruya o se recree (p. ej. al girar la pantalla); la actividad solo
+ * se enlaza a él para mostrar la lista en vivo.
+ *
+ * Entre ventanas de búsqueda se liberan la radio y la ubicación: la búsqueda termina sola y el
+ * LocationTracker se detiene hasta la siguiente ventana.
+ */
+public class CollectorService extends Service {
+
+    public static final String ACTION_START = "com.example.tfg_bluetooth.action.START";
+    public static final String ACTION_STOP = "com.example.tfg_bluetooth.action.STOP";
+
+    private static final String TAG = "CollectorService";
+    private static final String CHANNEL_ID = "collector";
+    private static final int NOTIFICATION_ID = 1;
+
+    private static final long INTERVALO_DE_TIEMPO = 5*60*1000;
+    // Un lote se envía antes del intervalo si alcanza este número de dispositivos o de bytes
+    private static final int MAX_REGISTROS_POR_LOTE = 5000;
+    private static final long MAX_BYTES_POR_LOTE = 512 * 1024;
+    // Tope de dispositivos en memoria (unos 90 bytes cada uno, reservados al arrancar); si se
+    // llena antes del envío, los más antiguos se guardan en la cola. 0: mapa sin límite
+    private static final int MAX_DISPOSITIVOS_EN_MEMORIA = 10_000;
+    // Si el servidor se satura (429, 5xx, Retry-After o respuestas de más de LATENCIA_LENTA) el
+    // intervalo y el lote crecen hasta estos máximos, y vuelven a los de arriba al recuperarse
+    private static final long INTERVALO_MAXIMO = 30 * 60 * 1000;
+    private static final int MAX_REGISTROS_POR_LOTE_SATURADO = MAX_DISPOSITIVOS_EN_MEMORIA;
+    private static final long LATENCIA_LENTA = 5 * 1000;
+    // Formato de los lotes enviados (UploadFormat.BINARY es el formato compacto opcional;
+    // JSON_DEFLATE_DICT requiere que el servidor conozca la versión de PresetDictionary;
+    // SKETCH envía solo conteos agregados por cubeta de tiempo, sin hashes)
+    private static final UploadFormat FORMATO_DE_ENVIO = UploadFormat.JSON_GZIP;
+    // Ancho de las cubetas de tiempo del envío agregado
+    private static final long CUBETA_AGREGADA = 5 * 60 * 1000;
+    // Precisión de las celdas geohash en las que se agrupa cada lote (7: unos 150 x 150 m).
+    // Con BINARY la posición se envía como celda; 0 conserva las coordenadas de cada registro
+    private static final int PRECISION_CELDA = 7;
+    // Lotes pendientes que se suben a la vez al recuperar la conexión
+    private static final int ENVIOS_EN_PARALELO = 3;
+    // Envío incremental: los dispositivos ya notificados solo se envían con su última fecha.
+    // Requiere que el servidor acepte actualizaciones sin primera fecha
+    private static final boolean ENVIO_INCREMENTAL = false;
+    private static final int MAX_DISPOSITIVOS_NOTIFICADOS = 50_000;
+    private static final double FALSOS_POSITIVOS_NOTIFICADOS = 0.001;
+    private static final long GENERACION_NOTIFICADOS = 60 * 60 * 1000;
+    // Por debajo de este nivel de batería se comprime con el nivel más rápido
+    private static final int PORCENTAJE_BATERIA_BAJA = 15;
+    // Suscripción a la ubicación: cada cuánto y a partir de qué desplazamiento llegan posiciones
+    private static final long INTERVALO_MINIMO_UBICACION = 10 * 1000;
+    private static final float DISTANCIA_MINIMA_UBICACION = 10f;
+    // Una posición más antigua que esto no se asocia a los avistamientos
+    private static final long EDAD_MAXIMA_UBICACION = 2 * 60 * 1000;
+    // Fracción del tiempo con la radio buscando y modo de búsqueda
+    private static final double CICLO_DE_TRABAJO = 0.5;
+    private static final long PAUSA_MAXIMA_ENTRE_BUSQUEDAS = 60 * 1000;
+    private static final boolean BUSQUEDA_BLE_POR_LOTES = false;
+    // En modo BLE: duración de ventana + pausa, y retardo de entrega de los lotes del controlador
+    private static final long PERIODO_BUSQUEDA_BLE = 30 * 1000;
+    private static final long RETARDO_LOTES_BLE = 5 * 1000;
+    // Búfer entre la recepción de avistamientos (hilo principal) y su procesado en el hilo de
+    // ingesta; si se llena en una ráfaga, los avistamientos nuevos se descartan y se cuentan
+    private static final int CAPACIDAD_INGESTA = 4096;
+    private static final int TANDA_INGESTA = 256;
+    // Copia local de cada avistamiento en export/*.tfgc (por columnas, comprimida), para sacar los
+    // datos por cable si no hay conexión; se lee con ColumnarExportReader
+    private static final boolean EXPORTACION_LOCAL = false;
+    // Volcado periódico de métricas en metrics.jsonl (rotado al superar el tamaño máximo)
+    private static final long INTERVALO_VOLCADO_METRICAS = 60 * 1000;
+    private static final long MAX_BYTES_METRICAS = 1024 * 1024;
+    private static final String URL_DE_ENVIO = "https://miserably-touched-gecko.ngrok-free.app/dispositivos/";
+
+    // Acceso directo al servicio para la actividad enlazada (mismo proceso)
+    public class LocalBinder extends Binder {
+        public CollectorService getService() {
+            return CollectorService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private final LocationCache locationCache = new LocationCache(EDAD_MAXIMA_UBICACION, LocationTracker.ELAPSED_REALTIME);
+    private LocationTracker locationTracker;
+    private SightingSource scanSource;
+    private Collector collector;
+    private SightingRing ingestRing;
+    private ColumnarExportWriter exporter;
+    private MetricsDumper metricsDumper;
+    private boolean scanning;
+    private final CompressionPolicy compressionPolicy = new CompressionPolicy();
+
+    // El nivel de compresión de las subidas depende de si se está cargando o queda poca batería
+    private final BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            updateBatteryState(intent);
+        }
+    };
+
+    public static void start(Context context) {
+        Intent intent = new Intent(context, CollectorService.class).setAction(ACTION_START);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            context.startForegroundService(intent);
+        } else {
+            context.startService(intent);
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        Outbox outbox = null;
+        UploadClient uploadClient = null;
+        try {
+            outbox = new Outbox(new File(getFilesDir(), "outbox"));
+            uploadClient = new UploadClient(URL_DE_ENVIO);
+            uploadClient.setCompressionPolicy(compressionPolicy);
+        } catch (IOException e) {
+            Log.e("Outbox", "No se pudo abrir la cola de envío", e);
+        }
+        collector = new Collector(outbox, uploadClient, FORMATO_DE_ENVIO, locationCache,
+                INTERVALO_DE_TIEMPO, MAX_REGISTROS_POR_LOTE, MAX_BYTES_POR_LOTE);
+        collector.setMaxDevicesInMemory(MAX_DISPOSITIVOS_EN_MEMORIA);
+        collector.setFlushController(new FlushController(INTERVALO_DE_TIEMPO, INTERVALO_MAXIMO,
+                MAX_REGISTROS_POR_LOTE, MAX_REGISTROS_POR_LOTE_SATURADO, LATENCIA_LENTA));
+        collector.setSketchBucketMillis(CUBETA_AGREGADA);
+        collector.setCellPrecision(PRECISION_CELDA);
+        collector.setUploadParallelism(ENVIOS_EN_PARALELO);
+        if (ENVIO_INCREMENTAL) {
+            collector.setReportedDevices(new ReportedDevices(MAX_DISPOSITIVOS_NOTIFICADOS,
+                    FALSOS_POSITIVOS_NOTIFICADOS, GENERACION_NOTIFICADOS, Clock.SYSTEM));
+        }
+        collector.setErrorListener(new FlushScheduler.ErrorListener() {
+            @Override
+            public void onFlushError(Exception e) {
+                Log.e("SendData", "Error en el envío de datos", e);
+            }
+        });
+        if (outbox != null) {
+            try {
+                // Recupera el lote en memoria si el proceso murió antes de guardarlo
+                collector.setJournal(new SightingJournal(new File(getFilesDir(), "journal")));
+            } catch (IOException e) {
+                Log.e("Outbox", "No se pudo abrir el diario de avistamientos", e);
+            }
+        }
+        if (EXPORTACION_LOCAL) {
+            openExport();
+        }
+        collector.start();
+        ingestRing = new SightingRing(CAPACIDAD_INGESTA, TANDA_INGESTA, SightingRing.Overflow.DROP_NEWEST, collector);
+        ingestRing.setMetrics(collector.getMetrics());
+        ingestRing.start();
+        metricsDumper = new MetricsDumper(collector.getMetrics(), new File(getFilesDir(), "metrics.jsonl"),
+                MAX_BYTES_METRICAS);
+        metricsDumper.start(INTERVALO_VOLCADO_METRICAS);
+        // ACTION_BATTERY_CHANGED es persistente: el registro devuelve ya el estado actual
+        updateBatteryState(registerReceiver(batteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED)));
+
+        locationTracker = new LocationTracker(this, locationCache, INTERVALO_MINIMO_UBICACION, DISTANCIA_MINIMA_UBICACION);
+        BluetoothAdapter bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+        if (bluetoothAdapter != null) {
+            DutyCycle dutyCycle = new DutyCycle(CICLO_DE_TRABAJO, 0, PAUSA_MAXIMA_ENTRE_BUSQUEDAS);
+            if (BUSQUEDA_BLE_POR_LOTES) {
+                scanSource = new BleBatchScanSource(bluetoothAdapter, dutyCycle, PERIODO_BUSQUEDA_BLE, RETARDO_LOTES_BLE);
+            } else {
+                scanSource = new ClassicScanSource(this, bluetoothAdapter, dutyCycle);
+            }
+            // La ubicación solo se escucha mientras hay una ventana de búsqueda abierta
+            scanSource.setWindowListener(new SightingSource.WindowListener() {
+                @Override
+                public void onWindowStarted() {
+                    locationTracker.start();
+                }
+
+                @Override
+                public void onWindowFinished() {
+                    locationTracker.stop();
+                }
+            });
+        }
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_STOP.equals(intent.getAction())) {
+            stopScanning();
+            return START_NOT_STICKY;
+        }
+        // Tras startForegroundService() hay que pasar a primer plano aunque no se pueda buscar
+        startForeground(NOTIFICATION_ID, buildNotification());
+        if (scanSource == null) {
+            stopScanning();
+            return START_NOT_STICKY;
+        }
+        // Sin intent: el sistema ha reiniciado el servicio tras matarlo, se retoma la búsqueda
+        startScanning();
+        return START_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    private void startScanning() {
+        if (scanning || scanSource == null) {
+            return;
+        }
+        scanning = true;
+        // stopScanning() detiene el hilo de ingesta si el servicio sigue vivo (actividad enlazada)
+        ingestRing.start();
+        scanSource.start(ingestRing);
+    }
+
+    /**
+     * Detiene la búsqueda, guarda en la cola lo recogido desde el último envío (se subirá en el
+     * siguiente) y deja que el servicio termine.
+     */
+    public void stopScanning() {
+        if (scanning) {
+            scanning = false;
+            scanSource.stop();
+            locationTracker.stop();
+            // Primero se procesa lo que quede en el búfer de ingesta, para que entre en el lote
+            ingestRing.stop();
+            collector.persist();
+        }
+        stopForeground(true);
+        stopSelf();
+    }
+
+    public boolean isScanning() {
+        return scanning;
+    }
+
+    // Observador de la vista en vivo; null al desenlazarse la actividad
+    public void setObserver(Collector.Observer observer) {
+        collector.setObserver(observer);
+    }
+
+    // Cambios para la vista en vivo desde la recogida anterior (copias, ver Collector.takeUpdates)
+    public Map<String, DeviceRecord> takeUpdates() {
+        return collector.takeUpdates();
+    }
+
+    public PipelineMetrics getMetrics() {
+        return collector.getMetrics();
+    }
+
+    @Override
+    public void onDestroy() {
+        if (scanSource != null) {
+            scanSource.stop();
+        }
+        locationTracker.stop();
+        // Procesar lo que quede en el búfer y guardar lo recogido desde el último envío
+        ingestRing.stop();
+        collector.stop();
+        if (exporter != null) {
+            try {
+                exporter.close();
+            } catch (IOException e) {
+                Log.e("Export", "No se pudo cerrar la exportación local", e);
+            }
+        }
+        metricsDumper.stop();
+        unregisterReceiver(batteryReceiver);
+        super.onDestroy();
+    }
+
+    // Un fichero por ejecución del servicio; si no se puede crear se sigue sin exportar
+    private void openExport() {
+        File dir = new File(getFilesDir(), "export");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e("Export", "No se pudo crear " + dir);
+            return;
+        }
+        File file = new File(dir, "avistamientos-" + System.currentTimeMillis() + ".tfgc");
+        try {
+            exporter = new ColumnarExportWriter(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+            collector.setExporter(exporter);
+        } catch (IOException e) {
+            Log.e("Export", "No se pudo abrir la exportación local", e);
+        }
+    }
+
+    private void updateBatteryState(Intent battery) {
+        if (battery == null) {
+            return;
+        }
+        int status = battery.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        boolean charging = status == BatteryManager.BATTERY_STATUS_CHARGING
+                || status == BatteryManager.BATTERY_STATUS_FULL;
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        boolean low = level >= 0 && scale > 0 && level * 100 / scale <= PORCENTAJE_BATERIA_BAJA;
+        compressionPolicy.setBatteryState(charging, low);
+    }
+
+    private Notification buildNotification() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "Recogida de dispositivos",
+                    NotificationManager.IMPORTANCE_LOW);
+            manager.createNotificationChannel(channel);
+        }
+        PendingIntent openActivity = PendingIntent.getActivity(this, 0,
+                new Intent(this, MainActivity.class), PendingIntent.FLAG_IMMUTABLE);
+        Notification.Builder builder = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                ? new Notification.Builder(this, CHANNEL_ID)
+                : new Notification.Builder(this);
+        return builder
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(getString(R.string.app_name))
+                .setContentText("Buscando dispositivos Bluetooth")
+                .setContentIntent(openActivity)
+                .setOngoing(true)
+                .build();
+    }
+}
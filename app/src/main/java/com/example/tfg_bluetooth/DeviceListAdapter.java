@@ -0,0 +1,71 @@
+package com.example.tfg_bluetooth;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+// Adaptador del RecyclerView de dispositivos, con ids estables a partir de la hashed_mac
+public class DeviceListAdapter extends RecyclerView.Adapter<DeviceListAdapter.ViewHolder>
+        implements DeviceListModel.Listener {
+
+    private final DeviceListModel model;
+
+    public DeviceListAdapter(DeviceListModel model) {
+        this.model = model;
+        setHasStableIds(true);
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item_device, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        // Construir la cadena solo para las filas que se muestran
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("hashed_mac: ").append(model.getKey(position)).append("\n");
+        stringBuilder.append(model.getRecord(position).toString());
+        holder.textView.setText(stringBuilder);
+    }
+
+    @Override
+    public int getItemCount() {
+        return model.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return model.getStableId(position);
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        notifyItemRangeInserted(positionStart, itemCount);
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        notifyItemRangeChanged(positionStart, itemCount);
+    }
+
+    @Override
+    public void onDataSetChanged() {
+        notifyDataSetChanged();
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView textView;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            textView = (TextView) itemView;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.tfg_bluetooth;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Modelo de la lista de dispositivos de la interfaz. Guarda las filas en orden de aparición
+ * y acumula los avistamientos recibidos desde el último refresco, para notificar al adaptador
+ * solo los cambios en lugar de reconstruir la lista entera. Las filas que lee el adaptador solo
+ * cambian en dispatchUpdates, a la vez que se notifican, como exige RecyclerView.
+ */
+public final class DeviceListModel {
+
+    // Por encima de este número de rangos modificados se notifica un único rango que los cubre
+    static final int MAX_CHANGED_RANGES = 16;
+
+    // Receptor de los cambios (en Android, el RecyclerView.Adapter)
+    public interface Listener {
+        void onItemRangeInserted(int positionStart, int itemCount);
+
+        void onItemRangeChanged(int positionStart, int itemCount);
+
+        void onDataSetChanged();
+    }
+
+    // Filas que ve el adaptador: solo cambian dentro de dispatchUpdates, junto con su notificación
+    private final List<String> keys = new ArrayList<>();
+    private final List<DeviceRecord> records = new ArrayList<>();
+    private final Map<String, Integer> positions = new HashMap<>();
+    // Avistamientos recibidos desde el último refresco, en orden de llegada
+    private final Map<String, DeviceRecord> pending = new LinkedHashMap<>();
+    private final BitSet changed = new BitSet();
+    private boolean cleared;
+
+    // Registra un avistamiento del dispositivo; las filas no cambian hasta dispatchUpdates
+    public void upsert(String hashedMac, DeviceRecord record) {
+        pending.put(hashedMac, record);
+    }
+
+    // Vacía la lista en el siguiente dispatchUpdates, junto con los avistamientos pendientes
+    public void clear() {
+        pending.clear();
+        cleared = true;
+    }
+
+    public boolean hasPendingUpdates() {
+        return cleared || !pending.isEmpty();
+    }
+
+    // Aplica los cambios acumulados a las filas y los notifica al listener en el mismo paso
+    public void dispatchUpdates(Listener listener) {
+        if (cleared) {
+            keys.clear();
+            records.clear();
+            positions.clear();
+        }
+        int insertedFrom = keys.size();
+        for (Map.Entry<String, DeviceRecord> entry : pending.entrySet()) {
+            Integer position = positions.get(entry.getKey());
+            if (position == null) {
+                positions.put(entry.getKey(), keys.size());
+                keys.add(entry.getKey());
+                records.add(entry.getValue());
+            } else {
+                records.set(position, entry.getValue());
+                changed.set(position);
+            }
+        }
+        pending.clear();
+        if (cleared) {
+            listener.onDataSetChanged();
+        } else {
+            dispatchChanged(listener);
+            if (insertedFrom < keys.size()) {
+                listener.onItemRangeInserted(insertedFrom, keys.size() - insertedFrom);
+            }
+        }
+        cleared = false;
+        changed.clear();
+    }
+
+    private void dispatchChanged(Listener listener) {
+        if (changed.isEmpty()) {
+            return;
+        }
+        int ranges = 0;
+        for (int start = changed.nextSetBit(0); start >= 0; start = changed.nextSetBit(changed.nextClearBit(start))) {
+            ranges++;
+        }
+        if (ranges > MAX_CHANGED_RANGES) {
+            int first = changed.nextSetBit(0);
+            listener.onItemRangeChanged(first, changed.length() - first);
+            return;
+        }
+        for (int start = changed.nextSetBit(0); start >= 0; ) {
+            int end = changed.nextClearBit(start);
+            listener.onItemRangeChanged(start, end - start);
+            start = changed.nextSetBit(end);
+        }
+    }
+
+    // Filas visibles (sin contar lo pendiente de dispatchUpdates)
+    public int size() {
+        return keys.size();
+    }
+
+    public String getKey(int position) {
+        return keys.get(position);
+    }
+
+    public DeviceRecord getRecord(int position) {
+        return records.get(position);
+    }
+
+    // Id estable de la fila: los primeros 64 bits de la hashed_mac
+    public long getStableId(int position) {
+        return stableId(keys.get(position));
+    }
+
+    static long stableId(String hashedMac) {
+        long id = 0;
+        int digits = Math.min(16, hashedMac.length());
+        for (int i = 0; i < digits; i++) {
+            id = (id << 4) | Hex.digit(hashedMac.charAt(i));
+        }
+        return id;
+    }
+}
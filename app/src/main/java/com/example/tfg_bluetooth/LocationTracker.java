@@ -0,0 +1,95 @@
+package com.example.tfg_bluetooth;
+
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Se suscribe una sola vez a las actualizaciones de GPS y red y deja la última posición en un
+ * LocationCache, de modo que cada avistamiento la lee sin llamar a LocationManager.
+ */
+public final class LocationTracker implements LocationListener {
+
+    private static final String TAG = "LocationTracker";
+
+    // Reloj de las posiciones: monótono, no cambia con la hora del sistema
+    public static final Clock ELAPSED_REALTIME = new Clock() {
+        @Override
+        public long nowMillis() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    private final LocationManager locationManager;
+    private final LocationCache cache;
+    private final long minIntervalMillis;
+    private final float minDistanceMeters;
+    private boolean started;
+
+    public LocationTracker(Context context, LocationCache cache, long minIntervalMillis, float minDistanceMeters) {
+        this.locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        this.cache = cache;
+        this.minIntervalMillis = minIntervalMillis;
+        this.minDistanceMeters = minDistanceMeters;
+    }
+
+    // Debe llamarse desde el hilo principal con el permiso de ubicación concedido
+    public void start() {
+        if (started || locationManager == null) {
+            return;
+        }
+        try {
+            for (String provider : new String[]{LocationManager.GPS_PROVIDER, LocationManager.NETWORK_PROVIDER}) {
+                if (!locationManager.isProviderEnabled(provider)) {
+                    continue;
+                }
+                // La última posición conocida sirve mientras llega la primera actualización
+                Location last = locationManager.getLastKnownLocation(provider);
+                if (last != null) {
+                    onLocationChanged(last);
+                }
+                locationManager.requestLocationUpdates(provider, minIntervalMillis, minDistanceMeters,
+                        this, Looper.getMainLooper());
+            }
+            started = true;
+        } catch (SecurityException e) {
+            Log.e(TAG, "Sin permiso de ubicación", e);
+        }
+    }
+
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        locationManager.removeUpdates(this);
+        started = false;
+    }
+
+    public LocationCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public void onLocationChanged(Location location) {
+        long elapsed = location.getElapsedRealtimeNanos() / 1_000_000L;
+        float accuracy = location.hasAccuracy() ? location.getAccuracy() : Float.NaN;
+        cache.onFix(new LocationFix(location.getLatitude(), location.getLongitude(), accuracy, elapsed));
+    }
+
+    @Override
+    public void onStatusChanged(String provider, int status, Bundle extras) {
+    }
+
+    @Override
+    public void onProviderEnabled(String provider) {
+    }
+
+    @Override
+    public void onProviderDisabled(String provider) {
+    }
+}
@@ -3,87 +3,86 @@ package com.example.tfg_bluetooth;
 import android.Manifest;
 import android.app.AlertDialog;
 import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothDevice;
-import android.content.BroadcastReceiver;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.IntentFilter;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
-import android.location.Location;
 import android.location.LocationManager;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.IBinder;
+import android.os.SystemClock;
 import android.provider.Settings;
-import android.util.Log;
 import android.view.View;
-import android.widget.ArrayAdapter;
 import android.widget.Button;
-import android.widget.ListView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.ByteArrayOutputStream;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Locale;
 import java.util.Map;
-import java.util.zip.*;
-
-//Manejo peticiones HTTP
-import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
-
-//Solicitudes GET
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-
-//Solicitudes POST
-import java.io.DataOutputStream;
-import java.nio.charset.StandardCharsets;
-
-//Encriptar dirección MAC
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 
 public class MainActivity extends AppCompatActivity {
 
     private static final int REQUEST_ENABLE_BT = 1;
     private static final int REQUEST_LOCATION_PERMISSION = 2;
-    private static final long INTERVALO_DE_TIEMPO = 5*60*1000;
+    // La vista en vivo se vacía al llegar a este número de filas para no crecer durante días
+    private static final int MAX_FILAS_EN_VIVO = 2000;
 
     private Handler handler;
 
-    private Handler sendDataHandler = new Handler();
-    private Runnable sendDataRunnable = new Runnable() {
+    private BluetoothAdapter bluetoothAdapter;
+    // La búsqueda, la agregación y los envíos viven en CollectorService; aquí solo se muestran
+    private CollectorService collectorService;
+    private boolean bound;
+
+    // Para mostrar datos en la interfaz como lista: solo se notifican las filas nuevas o modificadas
+    private DeviceListModel devicesListModel;
+    private DeviceListAdapter devicesListAdapter;
+    // Limita los refrescos de la lista a 4 por segundo aunque lleguen muchos avistamientos
+    private final RefreshThrottle refreshThrottle = new RefreshThrottle();
+    private final Runnable refreshListRunnable = new Runnable() {
         @Override
         public void run() {
-            sendData(); // Enviar datos al servidor
-            startDiscovery(); // Iniciar la búsqueda de dispositivos Bluetooth
-            sendDataHandler.postDelayed(this, INTERVALO_DE_TIEMPO);
+            refreshThrottle.onRefresh(SystemClock.uptimeMillis());
+            // Un refresco recoge de una vez todo lo que el servicio ha agrupado desde el anterior
+            if (collectorService != null) {
+                Map<String, DeviceRecord> updates = collectorService.takeUpdates();
+                if (!updates.isEmpty() && devicesListModel.size() >= MAX_FILAS_EN_VIVO) {
+                    devicesListModel.clear();
+                }
+                for (Map.Entry<String, DeviceRecord> update : updates.entrySet()) {
+                    devicesListModel.upsert(update.getKey(), update.getValue());
+                }
+            }
+            devicesListModel.dispatchUpdates(devicesListAdapter);
         }
     };
-    private BluetoothAdapter bluetoothAdapter;
-
-    // Para mostrar datos en la interfaz como lista
-    private ArrayAdapter<String> devicesArrayAdapter;
-    //Contiene nombre y direccion MAC (se puede cambiar por un ArrayList para guardar solo la MAC)
-    private Map<String, JSONObject> devicesMap;
+    private final Runnable scheduleListRefreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            scheduleListRefresh();
+        }
+    };
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            collectorService = ((CollectorService.LocalBinder) service).getService();
+            collectorService.setObserver(sightingObserver);
+            setSearching(collectorService.isScanning());
+        }
 
-    private List<JSONObject> devicesList;
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            collectorService = null;
+        }
+    };
     private boolean isSearching = false;  // Estado de búsqueda (activa o no)
 
 
@@ -92,15 +91,15 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        devicesMap = new HashMap<>();
-        devicesList = new ArrayList<>(devicesMap.values());
-
-        // Crear el ArrayAdapter con la lista
-        devicesArrayAdapter = new ArrayAdapter<>(this, R.layout.list_item_device);
+        // Crear el adaptador con la lista
+        devicesListModel = new DeviceListModel();
+        devicesListAdapter = new DeviceListAdapter(devicesListModel);
 
+        RecyclerView devicesListView = findViewById(R.id.devicesListView);
+        devicesListView.setLayoutManager(new LinearLayoutManager(this));
+        devicesListView.setAdapter(devicesListAdapter);
 
-        ListView devicesListView = findViewById(R.id.devicesListView);
-        devicesListView.setAdapter(devicesArrayAdapter);
+        handler = new Handler();
 
         // Verificar si el dispositivo soporta Bluetooth
         bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
@@ -110,6 +109,9 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
+        // Enlazarse al servicio (si ya está recogiendo, la vista retoma su estado)
+        bound = bindService(new Intent(this, CollectorService.class), serviceConnection, Context.BIND_AUTO_CREATE);
+
         // Verificar si Bluetooth y la ubicación están habilitados
         checkBluetoothAndLocation();
 
@@ -135,9 +137,13 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
-        handler = new Handler();
-
-        sendDataHandler.postDelayed(sendDataRunnable, INTERVALO_DE_TIEMPO);
+        Button metricsButton = findViewById(R.id.metricsButton);
+        metricsButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                startActivity(new Intent(MainActivity.this, MetricsActivity.class));
+            }
+        });
     }
 
     private void checkBluetoothAndLocation() {
@@ -210,255 +216,68 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void startDiscovery() {
-        isSearching = true;
-        Button searchButton = findViewById(R.id.searchButton);
-        searchButton.setText("Detener búsqueda");
+        if (isSearching) {
+            return;
+        }
+        setSearching(true);
         // Limpiar la lista antes de comenzar una nueva búsqueda
-        devicesArrayAdapter.clear();
+        devicesListModel.clear();
+        scheduleListRefresh();
 
-        // Registrar el BroadcastReceiver para recibir eventos de descubrimiento de Bluetooth
-        IntentFilter filter = new IntentFilter(BluetoothDevice.ACTION_FOUND);
-        registerReceiver(receiver, filter);
-
-        // Iniciar el descubrimiento de dispositivos Bluetooth
-        bluetoothAdapter.startDiscovery();
+        // El servicio sigue buscando aunque la actividad se cierre, hasta stopDiscovery()
+        CollectorService.start(this);
     }
 
     private void stopDiscovery() {
-        isSearching = false;
-        bluetoothAdapter.cancelDiscovery();
-        unregisterReceiver(receiver);
-
-        Button searchButton = findViewById(R.id.searchButton);
-        searchButton.setText("Buscar dispositivos");
-
-        devicesArrayAdapter.clear();
-        devicesMap.clear();
-    }
-
-    // Método para calcular la hashed_mac a partir de la dirección MAC
-    private String hashMac(String macAddress) {
-        try {
-            // Crear una instancia de MessageDigest con el algoritmo SHA-256
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-
-            // Convertir la macAddress a bytes
-            byte[] macBytes = macAddress.getBytes();
-
-            // Calcular el hash de la macAddress
-            byte[] hashBytes = digest.digest(macBytes);
-
-            // Convertir el hash a una representación hexadecimal
-            StringBuilder hexString = new StringBuilder();
-            for (byte hashByte : hashBytes) {
-                String hex = Integer.toHexString(0xff & hashByte);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
-
-            // Devolver la representación hexadecimal del hash
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-            // Manejar el caso en que el algoritmo no esté disponible
-            return null;
+        setSearching(false);
+        if (collectorService != null) {
+            collectorService.stopScanning();
+        } else {
+            startService(new Intent(this, CollectorService.class).setAction(CollectorService.ACTION_STOP));
         }
-    }
 
-
-    // BroadcastReceiver para recibir eventos de descubrimiento de Bluetooth
-    private final BroadcastReceiver receiver = new BroadcastReceiver() {
-        public void onReceive(Context context, Intent intent) {
-            String action = intent.getAction();
-
-            if (BluetoothDevice.ACTION_FOUND.equals(action)) {
-                // Se ha encontrado un dispositivo Bluetooth
-                BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
-                String deviceName = device.getName();
-                String deviceAddress = device.getAddress(); // Obtener la dirección MAC del dispositivo
-                String hashed_mac = hashMac(deviceAddress);
-
-                // Obtener la fecha y hora actual
-                SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
-                String fecha_hora = dateFormat.format(new Date());
-
-                //Latitud y longitud
-                double latitud = 0.0;
-                double longitud = 0.0;
-                LocationManager locationManager = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
-                if (locationManager != null) {
-                    Location location = locationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER);
-                    if (location != null) {
-                        latitud = location.getLatitude();
-                        longitud = location.getLongitude();
-                    }
-                }
-
-                //* Cambiar esto si se cambia a list
-                try {
-                    JSONObject deviceInfo = new JSONObject();
-                    deviceInfo.put("primera_fecha_hora", fecha_hora);
-                    deviceInfo.put("ultima_fecha_hora", fecha_hora);
-                    deviceInfo.put("latitud", latitud);
-                    deviceInfo.put("longitud", longitud);
-
-                    devicesMap.put(hashed_mac, deviceInfo);
-                    updateListView();
-
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                }
-
-            }
-        }
-    };
-
-    private void updateListView() {
-        // Limpiar y volver a llenar el ArrayAdapter con las direcciones y nombres del mapa
-        devicesArrayAdapter.clear();
-        // Iterar sobre las entradas del mapa (clave, valor)
-        for (Map.Entry<String, JSONObject> entry : devicesMap.entrySet()) {
-            String clave = entry.getKey();
-            JSONObject valores = entry.getValue();
-
-            // Construir la cadena para agregar al ArrayAdapter
-            StringBuilder stringBuilder = new StringBuilder();
-            stringBuilder.append("hashed_mac: ").append(clave).append("\n");
-            stringBuilder.append(valores.toString());
-
-            devicesArrayAdapter.add(stringBuilder.toString());
-        }
-        devicesArrayAdapter.notifyDataSetChanged();
+        devicesListModel.clear();
+        scheduleListRefresh();
     }
 
-    private void sendData() {
-        // Crear una instancia de SendDataAsyncTask y ejecutarla
-        new SendDataAsyncTask().execute();
+    private void setSearching(boolean searching) {
+        isSearching = searching;
+        Button searchButton = findViewById(R.id.searchButton);
+        searchButton.setText(searching ? "Detener búsqueda" : "Buscar dispositivos");
     }
 
-    // Definir la clase SendDataAsyncTask dentro de la clase MainActivity
-    private class SendDataAsyncTask extends AsyncTask<Void, Void, Void> {
-
+    // Vista en vivo de los avistamientos que agrega el servicio. El aviso llega desde el hilo de
+    // ingesta una vez por recogida; los cambios se recogen en el siguiente refresco de la lista
+    private final Collector.Observer sightingObserver = new Collector.Observer() {
         @Override
-        protected Void doInBackground(Void... voids) {
-            // Lógica de envío de datos aquí
-
-            // Crear una instancia de HttpHandler
-            HttpHandler httpHandler = new HttpHandler();
-
-            String postUrl = "https://miserably-touched-gecko.ngrok-free.app/dispositivos/";
-
-            JSONObject devicesJson = new JSONObject(devicesMap);
-            //Enviar el map
-            String requestBody = devicesJson.toString();
-            Log.d("Json devices", requestBody);
-
-            //Comprimir los datos antes de enviar
-            byte[] compressedData = compressData(requestBody.getBytes(StandardCharsets.UTF_8));
-            Log.d("Compressed Data", compressedData.toString());
-            try {
-                httpHandler.doPostRequest(postUrl, compressedData);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-
-            //Limpiar el mapa de dispositivos después de enviar los datos
-            devicesMap.clear();
-
+        public void onUpdatesAvailable() {
+            handler.post(scheduleListRefreshRunnable);
+        }
+    };
 
-            return null;
+    // Programa un refresco de la lista respetando la frecuencia máxima
+    private void scheduleListRefresh() {
+        long delay = refreshThrottle.requestRefresh(SystemClock.uptimeMillis());
+        if (delay >= 0) {
+            handler.postDelayed(refreshListRunnable, delay);
         }
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        // Detener el descubrimiento y dar de baja el BroadcastReceiver al salir de la actividad
-        if (bluetoothAdapter != null) {
-            bluetoothAdapter.cancelDiscovery();
-        }
-        unregisterReceiver(receiver);
-
-        // Detener el envío de datos al servidor cuando se destruye la actividad
-        if (sendDataHandler != null) {
-            sendDataHandler.removeCallbacksAndMessages(null);
-        }
-    }
-
-    private static byte[] compressData(byte[] data){
-        try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            GZIPOutputStream gzipOut = new GZIPOutputStream(baos);
-            gzipOut.write(data);
-            gzipOut.close();
-            return baos.toByteArray();
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
-        }
-    }
-
-    // Clase para manejar las solicitudes HTTP
-    private static class HttpHandler {
-
-        public String doGetRequest(String urlString) throws IOException {
-            URL url = new URL(urlString);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-
-            StringBuilder response = new StringBuilder();
-            try (InputStream inputStream = connection.getInputStream();
-                 BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
-                }
-            } finally {
-                connection.disconnect();
+        // La recogida continúa en el servicio; la actividad solo deja de observarla
+        if (bound) {
+            if (collectorService != null) {
+                collectorService.setObserver(null);
             }
-            return response.toString();
+            unbindService(serviceConnection);
+            bound = false;
         }
-
-        public String doPostRequest(String urlString,byte[] requestBody) throws IOException {
-            Log.d("URLString", urlString);
-            URL url = new URL(urlString);
-            Log.d("URL", url.toString());
-
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("POST");
-            connection.setRequestProperty("Content-Type", "application/octet-stream");
-            connection.setRequestProperty("Content-Encoding", "gzip");
-            connection.setDoOutput(true);
-
-            try (DataOutputStream outputStream = new DataOutputStream(connection.getOutputStream())) {
-                outputStream.write(requestBody);
-            }
-
-
-            StringBuilder response = new StringBuilder();
-            int responseCode = connection.getResponseCode();
-
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                try (InputStream inputStream = connection.getInputStream();
-                     BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        response.append(line);
-                    }
-                }
-            } else {
-                try (InputStream errorStream = connection.getErrorStream();
-                     BufferedReader reader = new BufferedReader(new InputStreamReader(errorStream))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        response.append(line);
-                    }
-                }
-
-            }
-            return response.toString();
+        if (handler != null) {
+            handler.removeCallbacks(refreshListRunnable);
+            handler.removeCallbacks(scheduleListRefreshRunnable);
+            refreshThrottle.cancel();
         }
     }
 
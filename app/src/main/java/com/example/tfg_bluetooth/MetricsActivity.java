@@ -0,0 +1,77 @@
+package com.example.tfg_bluetooth;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+// Pantalla de depuración: muestra las métricas del servicio de recogida, refrescadas cada segundo
+public class MetricsActivity extends AppCompatActivity {
+
+    private static final long INTERVALO_DE_REFRESCO = 1000;
+
+    private final Handler handler = new Handler();
+    private TextView metricsText;
+    private CollectorService collectorService;
+    private boolean bound;
+    private PipelineMetrics.Snapshot previous;
+
+    private final Runnable refreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (collectorService != null) {
+                PipelineMetrics.Snapshot snapshot = collectorService.getMetrics().snapshot(previous);
+                previous = snapshot;
+                metricsText.setText(snapshot.toString());
+            }
+            handler.postDelayed(this, INTERVALO_DE_REFRESCO);
+        }
+    };
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            collectorService = ((CollectorService.LocalBinder) service).getService();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            collectorService = null;
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+        metricsText = findViewById(R.id.metricsText);
+        bound = bindService(new Intent(this, CollectorService.class), serviceConnection, Context.BIND_AUTO_CREATE);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        handler.post(refreshRunnable);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        handler.removeCallbacks(refreshRunnable);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (bound) {
+            unbindService(serviceConnection);
+            bound = false;
+        }
+    }
+}
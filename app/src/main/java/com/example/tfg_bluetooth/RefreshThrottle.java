@@ -0,0 +1,45 @@
+package com.example.tfg_bluetooth;
+
+/**
+ * Agrupa peticiones de refresco para no superar una frecuencia máxima. No programa nada por sí
+ * misma: indica cuánto hay que esperar y el llamante lo programa (en Android, con un Handler).
+ */
+public final class RefreshThrottle {
+
+    public static final long DEFAULT_MIN_INTERVAL_MS = 250; // 4 Hz
+
+    private final long minIntervalMs;
+    private long lastRefresh = Long.MIN_VALUE;
+    private boolean scheduled;
+
+    public RefreshThrottle() {
+        this(DEFAULT_MIN_INTERVAL_MS);
+    }
+
+    public RefreshThrottle(long minIntervalMs) {
+        this.minIntervalMs = minIntervalMs;
+    }
+
+    // Devuelve el retardo con el que programar el refresco, o -1 si ya hay uno programado
+    public long requestRefresh(long now) {
+        if (scheduled) {
+            return -1;
+        }
+        scheduled = true;
+        if (lastRefresh == Long.MIN_VALUE) {
+            return 0;
+        }
+        return Math.max(0, lastRefresh + minIntervalMs - now);
+    }
+
+    // Debe llamarse al ejecutar el refresco programado
+    public void onRefresh(long now) {
+        scheduled = false;
+        lastRefresh = now;
+    }
+
+    // Descarta el refresco programado (p. ej. al quitar los callbacks del Handler)
+    public void cancel() {
+        scheduled = false;
+    }
+}
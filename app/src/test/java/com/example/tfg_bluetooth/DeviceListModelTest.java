@@ -0,0 +1,184 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DeviceListModelTest {
+
+    // Listener que cuenta las notificaciones y comprueba que las posiciones son válidas
+    private static final class CountingListener implements DeviceListModel.Listener {
+        final List<String> calls = new ArrayList<>();
+        int notifications;
+        int rows;
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            assertEquals(rows, positionStart);
+            rows += itemCount;
+            notifications++;
+            calls.add("insert " + positionStart + "+" + itemCount);
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            assertTrue(positionStart >= 0 && positionStart + itemCount <= rows);
+            notifications++;
+            calls.add("change " + positionStart + "+" + itemCount);
+        }
+
+        @Override
+        public void onDataSetChanged() {
+            notifications++;
+            calls.add("reset");
+        }
+    }
+
+    private static DeviceRecord record(long t) {
+        return new DeviceRecord(t, (short) -60, 0.0, 0.0);
+    }
+
+    @Test
+    public void dispatch_reportsOnlyInsertedAndChangedRows() {
+        DeviceListModel model = new DeviceListModel();
+        CountingListener listener = new CountingListener();
+
+        model.upsert("aa", record(1));
+        model.upsert("bb", record(1));
+        model.upsert("aa", record(2));
+        model.dispatchUpdates(listener);
+        assertEquals(1, listener.calls.size());
+        assertEquals("insert 0+2", listener.calls.get(0));
+
+        model.upsert("bb", record(3));
+        model.upsert("cc", record(3));
+        model.dispatchUpdates(listener);
+        assertEquals("change 1+1", listener.calls.get(1));
+        assertEquals("insert 2+1", listener.calls.get(2));
+
+        assertFalse(model.hasPendingUpdates());
+        model.dispatchUpdates(listener);
+        assertEquals(3, listener.calls.size());
+    }
+
+    @Test
+    public void dispatch_mergesContiguousChanges() {
+        DeviceListModel model = new DeviceListModel();
+        CountingListener listener = new CountingListener();
+        for (int i = 0; i < 10; i++) {
+            model.upsert("k" + i, record(i));
+        }
+        model.dispatchUpdates(listener);
+
+        model.upsert("k2", record(20));
+        model.upsert("k3", record(20));
+        model.upsert("k4", record(20));
+        model.upsert("k8", record(20));
+        model.dispatchUpdates(listener);
+        assertEquals("change 2+3", listener.calls.get(1));
+        assertEquals("change 8+1", listener.calls.get(2));
+    }
+
+    @Test
+    public void clear_resetsList() {
+        DeviceListModel model = new DeviceListModel();
+        CountingListener listener = new CountingListener();
+        model.upsert("aa", record(1));
+        model.dispatchUpdates(listener);
+
+        model.clear();
+        model.upsert("bb", record(2));
+        model.dispatchUpdates(listener);
+        assertEquals("reset", listener.calls.get(1));
+        assertEquals(1, model.size());
+        assertEquals("bb", model.getKey(0));
+    }
+
+    @Test
+    public void rowsChangeOnlyWhenDispatched() {
+        DeviceListModel model = new DeviceListModel();
+        CountingListener listener = new CountingListener();
+        model.upsert("aa", record(1));
+        model.dispatchUpdates(listener);
+
+        // El adaptador no debe ver cambios sin su notificación (RecyclerView lo detecta como
+        // inconsistencia)
+        DeviceRecord updated = record(2);
+        model.upsert("aa", updated);
+        model.upsert("bb", record(2));
+        model.clear();
+        model.upsert("cc", record(3));
+        assertTrue(model.hasPendingUpdates());
+        assertEquals(1, model.size());
+        assertEquals("aa", model.getKey(0));
+        assertEquals(1, model.getRecord(0).getLastSeen());
+
+        model.dispatchUpdates(listener);
+        assertEquals("reset", listener.calls.get(1));
+        assertEquals(1, model.size());
+        assertEquals("cc", model.getKey(0));
+
+        model.upsert("cc", updated);
+        assertEquals(3, model.getRecord(0).getLastSeen());
+        model.dispatchUpdates(listener);
+        assertSame(updated, model.getRecord(0));
+        assertEquals("change 0+1", listener.calls.get(2));
+    }
+
+    @Test
+    public void stableId_usesHashPrefix() {
+        assertEquals(0x0123456789abcdefL, DeviceListModel.stableId("0123456789abcdef0000"));
+        assertNotEquals(DeviceListModel.stableId("ff00"), DeviceListModel.stableId("00ff"));
+    }
+
+    @Test
+    public void tenThousandSightings_produceBoundedNotifications() {
+        DeviceListModel model = new DeviceListModel();
+        RefreshThrottle throttle = new RefreshThrottle(RefreshThrottle.DEFAULT_MIN_INTERVAL_MS);
+        CountingListener listener = new CountingListener();
+        Random random = new Random(7);
+
+        // 10.000 avistamientos de 2.000 dispositivos en 10 s simulados, con un refresco programado
+        int sightings = 10_000;
+        long durationMs = 10_000;
+        long scheduledAt = -1;
+        int refreshes = 0;
+        for (int i = 0; i < sightings; i++) {
+            long now = i * durationMs / sightings;
+            if (scheduledAt >= 0 && now >= scheduledAt) {
+                throttle.onRefresh(scheduledAt);
+                model.dispatchUpdates(listener);
+                refreshes++;
+                scheduledAt = -1;
+            }
+            model.upsert(String.format("%064x", random.nextInt(2_000)), record(now));
+            long delay = throttle.requestRefresh(now);
+            if (delay >= 0) {
+                scheduledAt = now + delay;
+            }
+        }
+        model.dispatchUpdates(listener);
+        refreshes++;
+
+        long maxRefreshes = durationMs / RefreshThrottle.DEFAULT_MIN_INTERVAL_MS + 2;
+        assertTrue("refrescos = " + refreshes, refreshes <= maxRefreshes);
+        assertTrue("notificaciones = " + listener.notifications,
+                listener.notifications <= maxRefreshes * (DeviceListModel.MAX_CHANGED_RANGES + 1));
+        assertEquals(model.size(), listener.rows);
+    }
+
+    @Test
+    public void throttle_coalescesRequestsWithinInterval() {
+        RefreshThrottle throttle = new RefreshThrottle(250);
+        assertEquals(0, throttle.requestRefresh(1_000));
+        assertEquals(-1, throttle.requestRefresh(1_010));
+        throttle.onRefresh(1_000);
+        assertEquals(150, throttle.requestRefresh(1_100));
+        throttle.onRefresh(1_250);
+        assertEquals(0, throttle.requestRefresh(2_000));
+    }
+}
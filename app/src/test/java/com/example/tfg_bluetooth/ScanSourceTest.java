@@ -0,0 +1,127 @@
+package com.example.tfg_bluetooth;
+
+import android.app.Application;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanResult;
+import android.content.Intent;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowBluetoothLeScanner;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class ScanSourceTest {
+
+    private static final String ADDRESS = "AA:BB:CC:DD:EE:FF";
+
+    private Application context;
+    private BluetoothAdapter adapter;
+    private final List<String> sightings = new ArrayList<>();
+    private final SightingSource.Listener listener = new SightingSource.Listener() {
+        @Override
+        public void onSighting(String address, short rssi, long timestamp) {
+            sightings.add(address + "/" + rssi);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        shadowOf(context).grantPermissions(android.Manifest.permission.BLUETOOTH_SCAN,
+                android.Manifest.permission.ACCESS_FINE_LOCATION);
+        adapter = BluetoothAdapter.getDefaultAdapter();
+        shadowOf(adapter).setEnabled(true);
+    }
+
+    private Intent found(String address, short rssi) {
+        BluetoothDevice device = adapter.getRemoteDevice(address);
+        return new Intent(BluetoothDevice.ACTION_FOUND)
+                .putExtra(BluetoothDevice.EXTRA_DEVICE, device)
+                .putExtra(BluetoothDevice.EXTRA_RSSI, rssi);
+    }
+
+    @Test
+    public void classic_chainsInquiriesWithDutyCyclePause() {
+        ClassicScanSource source = new ClassicScanSource(context, adapter, new DutyCycle(0.5, 0, 60_000L));
+        source.start(listener);
+        assertTrue(adapter.isDiscovering());
+
+        context.sendBroadcast(found(ADDRESS, (short) -61));
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(Arrays.asList(ADDRESS + "/-61"), sightings);
+
+        // Fin de una búsqueda de 12 s: la siguiente empieza tras otros 12 s de pausa
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofSeconds(12));
+        adapter.cancelDiscovery();
+        context.sendBroadcast(new Intent(BluetoothAdapter.ACTION_DISCOVERY_FINISHED));
+        shadowOf(Looper.getMainLooper()).idle();
+        assertFalse(adapter.isDiscovering());
+
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofSeconds(11));
+        assertFalse(adapter.isDiscovering());
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofSeconds(1));
+        assertTrue(adapter.isDiscovering());
+
+        source.stop();
+        assertFalse(adapter.isDiscovering());
+    }
+
+    @Test
+    public void classic_registersReceiverOnceAndStopsDelivering() {
+        ClassicScanSource source = new ClassicScanSource(context, adapter, new DutyCycle(0.5, 0, 60_000L));
+        source.start(listener);
+        source.start(listener);
+        context.sendBroadcast(found(ADDRESS, (short) -70));
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(1, sightings.size());
+
+        source.stop();
+        context.sendBroadcast(found(ADDRESS, (short) -70));
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(1, sightings.size());
+        assertFalse(source.isRunning());
+    }
+
+    @Test
+    public void ble_deliversBatchedResultsAndRestartsAfterPause() {
+        BleBatchScanSource source = new BleBatchScanSource(adapter, new DutyCycle(0.5, 0, 60_000L), 20_000L, 5_000L);
+        source.start(listener);
+        BluetoothLeScanner scanner = adapter.getBluetoothLeScanner();
+        ShadowBluetoothLeScanner shadowScanner = shadowOf(scanner);
+        assertEquals(1, shadowScanner.getScanCallbacks().size());
+
+        ScanCallback callback = shadowScanner.getScanCallbacks().iterator().next();
+        long now = SystemClock.elapsedRealtimeNanos();
+        callback.onBatchScanResults(Arrays.asList(
+                new ScanResult(adapter.getRemoteDevice(ADDRESS), null, -55, now),
+                new ScanResult(adapter.getRemoteDevice("11:22:33:44:55:66"), null, -80, now)));
+        assertEquals(Arrays.asList(ADDRESS + "/-55", "11:22:33:44:55:66/-80"), sightings);
+
+        // Ventana de 10 s y pausa de 10 s
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofSeconds(10));
+        assertTrue(shadowScanner.getScanCallbacks().isEmpty());
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofSeconds(10));
+        assertEquals(1, shadowScanner.getScanCallbacks().size());
+
+        source.stop();
+        assertTrue(shadowScanner.getScanCallbacks().isEmpty());
+    }
+}
@@ -0,0 +1,28 @@
+plugins {
+    id("java-library")
+    id("me.champeau.jmh")
+}
+
+// Canal de datos sin dependencias de Android: se prueba y se mide en la JVM
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    testImplementation("junit:junit:4.13.2")
+}
+
+// Las pruebas de carga (*Benchmark) solo se ejecutan con ./gradlew :core:test -Pbenchmarks
+tasks.test {
+    systemProperty("benchmarks", project.hasProperty("benchmarks"))
+    System.getProperty("SOAK_HOURS")?.let { systemProperty("SOAK_HOURS", it) }
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+}
@@ -0,0 +1,68 @@
+package com.example.tfg_bluetooth;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agregación en SightingStore: coste por avistamiento sobre un lote que ya contiene todos los
+ * dispositivos, y coste por envío de llenar un lote nuevo y retirarlo con swap().
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+public class AggregationBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int devices;
+
+    private String[] hashes;
+    private short[] rssis;
+    private SightingStore store;
+    private long timestamp;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        hashes = BenchmarkData.hashes(BenchmarkData.macs(devices));
+        rssis = BenchmarkData.rssis(devices);
+        store = new SightingStore();
+        timestamp = BenchmarkData.START_MILLIS;
+    }
+
+    // El almacén empieza cada iteración con todos los dispositivos, como a mitad de un intervalo de envío
+    @Setup(Level.Iteration)
+    public void fill() {
+        store.clear();
+        for (int i = 0; i < devices; i++) {
+            store.record(hashes[i], timestamp, rssis[i], 40.4, -3.7, timestamp);
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public DeviceRecord recordSighting() {
+        int i = next;
+        next = i + 1 == devices ? 0 : i + 1;
+        long ts = ++timestamp;
+        return store.record(hashes[i], ts, rssis[i], 40.4, -3.7, ts);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Map<String, DeviceRecord> fillAndSwap() {
+        long ts = ++timestamp;
+        for (int i = 0; i < devices; i++) {
+            store.record(hashes[i], ts, rssis[i], 40.4, -3.7, ts);
+        }
+        return store.swap();
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.tfg_bluetooth;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+// Datos sintéticos compartidos por los benchmarks; la semilla fija hace comparables las ejecuciones
+final class BenchmarkData {
+
+    static final long SEED = 42L;
+    static final long START_MILLIS = 1_700_000_000_000L;
+
+    private BenchmarkData() {
+    }
+
+    static String[] macs(int devices) {
+        String[] macs = new String[devices];
+        for (int i = 0; i < devices; i++) {
+            macs[i] = String.format("02:00:00:%02X:%02X:%02X", (i >> 16) & 0xff, (i >> 8) & 0xff, i & 0xff);
+        }
+        return macs;
+    }
+
+    static String[] hashes(String[] macs) {
+        MacHasher hasher = new MacHasher();
+        String[] hashes = new String[macs.length];
+        for (int i = 0; i < macs.length; i++) {
+            hashes[i] = hasher.hash(macs[i]);
+        }
+        return hashes;
+    }
+
+    static short[] rssis(int sightings) {
+        Random random = new Random(SEED);
+        short[] rssis = new short[sightings];
+        for (int i = 0; i < sightings; i++) {
+            rssis[i] = (short) (-100 + random.nextInt(70));
+        }
+        return rssis;
+    }
+
+    // Lote como el que saca SightingStore.swap(): varios avistamientos por dispositivo y ubicación reciente
+    static Map<String, DeviceRecord> batch(String[] hashes) {
+        Random random = new Random(SEED);
+        Map<String, DeviceRecord> batch = new HashMap<>(hashes.length * 2);
+        for (int i = 0; i < hashes.length; i++) {
+            long first = START_MILLIS + random.nextInt(60_000);
+            long last = first + random.nextInt(300_000);
+            short min = (short) (-100 + random.nextInt(30));
+            short max = (short) (min + random.nextInt(40));
+            double lat = 40.4 + random.nextDouble() * 0.01;
+            double lon = -3.7 + random.nextDouble() * 0.01;
+            batch.put(hashes[i], new DeviceRecord(first, last, 1 + random.nextInt(20), min, max, lat, lon,
+                    last - random.nextInt(10_000)));
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.tfg_bluetooth;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Coste por envío de comprimir con gzip el cuerpo JSON de un lote, con el mismo tamaño de bloque
+ * que UploadClient usa sobre la conexión.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompressionBenchmark {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    @Param({"100", "10000", "100000"})
+    public int devices;
+
+    private byte[] json;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setUp() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DeviceJsonWriter.write(BenchmarkData.batch(BenchmarkData.hashes(BenchmarkData.macs(devices))), body);
+        json = body.toByteArray();
+        out = new ByteArrayOutputStream(json.length);
+    }
+
+    @Benchmark
+    public int gzip() throws IOException {
+        out.reset();
+        GZIPOutputStream gzipOut = new GZIPOutputStream(out, CHUNK_SIZE);
+        gzipOut.write(json);
+        gzipOut.finish();
+        return out.size();
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.tfg_bluetooth;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste por avistamiento de MacHasher.hash. Con caché, los dispositivos se repiten como en una
+ * ventana de escaneo real; sin caché, cada llamada calcula el SHA-256 completo.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HashingBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int devices;
+
+    private String[] macs;
+    private MacHasher cached;
+    private MacHasher uncached;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        macs = BenchmarkData.macs(devices);
+        cached = new MacHasher(Integer.highestOneBit(devices) * 4);
+        uncached = new MacHasher(1);
+        for (String mac : macs) {
+            cached.hash(mac);
+        }
+    }
+
+    private String nextMac() {
+        String mac = macs[next];
+        next = next + 1 == macs.length ? 0 : next + 1;
+        return mac;
+    }
+
+    @Benchmark
+    public String hashCached() {
+        return cached.hash(nextMac());
+    }
+
+    @Benchmark
+    public String hashUncached() {
+        return uncached.hash(nextMac());
+    }
+}
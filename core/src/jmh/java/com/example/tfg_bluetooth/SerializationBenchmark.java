@@ -0,0 +1,60 @@
+package com.example.tfg_bluetooth;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste por envío de serializar un lote con el BatchWriter de cada formato, sin compresión ni red.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int devices;
+
+    @Param({"JSON_GZIP", "BINARY", "SKETCH"})
+    public UploadFormat format;
+
+    private byte[][] hashes;
+    private DeviceRecord[] records;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setUp() {
+        Map<String, DeviceRecord> batch = BenchmarkData.batch(BenchmarkData.hashes(BenchmarkData.macs(devices)));
+        hashes = new byte[batch.size()][];
+        records = new DeviceRecord[batch.size()];
+        int i = 0;
+        for (Map.Entry<String, DeviceRecord> entry : batch.entrySet()) {
+            hashes[i] = Hex.decode(entry.getKey());
+            records[i] = entry.getValue();
+            i++;
+        }
+        out = new ByteArrayOutputStream(devices * 256);
+    }
+
+    @Benchmark
+    public int writeBatch() throws IOException {
+        out.reset();
+        BatchWriter writer = format.newWriter(out);
+        writer.beginBatch();
+        for (int i = 0; i < records.length; i++) {
+            writer.writeDevice(hashes[i], 0, records[i]);
+        }
+        writer.endBatch();
+        return out.size();
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.tfg_bluetooth;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Vaciado en paralelo de la cola de envío, para cuando se acumulan muchos lotes tras una
+ * desconexión larga. Cada segmento del outbox ya es un trozo de tamaño acotado: se suben hasta
+ * maxInFlight a la vez y cada uno se confirma por separado, de modo que una petición lenta no
+ * retiene a las demás y tras un fallo solo quedan pendientes los trozos que fallaron o que no
+ * llegaron a lanzarse.
+ *
+ * Después del primer fallo no se lanzan trozos nuevos (los que están en curso terminan): si la
+ * red ha vuelto a caer no tiene sentido agotar los reintentos de todos. Los hilos tienen la
+ * prioridad mínima y maxInFlight no pasa de MAX_IN_FLIGHT, para no quitar CPU al escaneo.
+ */
+public final class BacklogDrain {
+
+    public static final int MAX_IN_FLIGHT = 4;
+
+    // Sube un trozo y lo confirma en el outbox si el servidor lo acepta; si no, lanza excepción
+    public interface ChunkUploader {
+        void upload(SegmentLog.Segment segment) throws IOException;
+    }
+
+    public static final class Result {
+        private final int uploaded;
+        private final int notStarted;
+        private final List<IOException> errors;
+
+        Result(int uploaded, int notStarted, List<IOException> errors) {
+            this.uploaded = uploaded;
+            this.notStarted = notStarted;
+            this.errors = errors;
+        }
+
+        public int getUploaded() {
+            return uploaded;
+        }
+
+        // Trozos que no se llegaron a lanzar por un fallo anterior
+        public int getNotStarted() {
+            return notStarted;
+        }
+
+        // Un error por trozo fallido
+        public List<IOException> getErrors() {
+            return errors;
+        }
+    }
+
+    private final int maxInFlight;
+    private final ExecutorService executor;
+
+    public BacklogDrain(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Paralelismo no válido: " + maxInFlight);
+        }
+        this.maxInFlight = Math.min(maxInFlight, MAX_IN_FLIGHT);
+        final AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.maxInFlight, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "backlog-drain-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    // Sube los trozos en el orden dado, como mucho maxInFlight a la vez, y espera a que terminen
+    public Result drain(List<SegmentLog.Segment> segments, final ChunkUploader uploader) throws InterruptedException {
+        CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+        List<IOException> errors = new ArrayList<>();
+        int next = 0;
+        int inFlight = 0;
+        int uploaded = 0;
+        while (true) {
+            while (inFlight < maxInFlight && next < segments.size() && errors.isEmpty()) {
+                final SegmentLog.Segment segment = segments.get(next);
+                try {
+                    completion.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            uploader.upload(segment);
+                            return null;
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // shutdown() durante el vaciado
+                    errors.add(new IOException("Vaciado de la cola detenido", e));
+                    break;
+                }
+                next++;
+                inFlight++;
+            }
+            if (inFlight == 0) {
+                return new Result(uploaded, segments.size() - next, errors);
+            }
+            Future<Void> done = completion.take();
+            inFlight--;
+            try {
+                done.get();
+                uploaded++;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                errors.add(cause instanceof IOException ? (IOException) cause : new IOException(cause));
+            }
+        }
+    }
+
+    // Los trozos en curso terminan; un vaciado en marcha no lanza más
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.tfg_bluetooth;
+
+import java.util.Random;
+
+/**
+ * Espera exponencial acotada con jitter completo: el reintento n espera un tiempo aleatorio
+ * entre 0 y min(máximo, base * 2^n), para que varios colectores no reintenten a la vez.
+ */
+public final class Backoff {
+
+    private final long baseMillis;
+    private final long maxMillis;
+    private final int maxAttempts;
+    private final Random random;
+
+    public Backoff(long baseMillis, long maxMillis, int maxAttempts) {
+        this(baseMillis, maxMillis, maxAttempts, new Random());
+    }
+
+    public Backoff(long baseMillis, long maxMillis, int maxAttempts, Random random) {
+        if (baseMillis <= 0 || maxMillis < baseMillis || maxAttempts < 1) {
+            throw new IllegalArgumentException("Parámetros de espera no válidos");
+        }
+        this.baseMillis = baseMillis;
+        this.maxMillis = maxMillis;
+        this.maxAttempts = maxAttempts;
+        this.random = random;
+    }
+
+    // Número total de intentos, incluido el primero
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    // Espera antes del reintento número retry (0 para el primer reintento)
+    public long delayMillis(int retry) {
+        long ceiling = baseMillis << Math.min(retry, 30);
+        if (ceiling <= 0 || ceiling > maxMillis) {
+            ceiling = maxMillis;
+        }
+        synchronized (random) {
+            return (long) (random.nextDouble() * (ceiling + 1));
+        }
+    }
+}
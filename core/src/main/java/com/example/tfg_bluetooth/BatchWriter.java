@@ -0,0 +1,15 @@
+package com.example.tfg_bluetooth;
+
+import java.io.IOException;
+
+// Serializador de un lote de registros hacia el cuerpo de la petición
+public interface BatchWriter {
+
+    void beginBatch() throws IOException;
+
+    // hash son los 32 bytes del SHA-256 a partir de off
+    void writeDevice(byte[] hash, int off, DeviceRecord record) throws IOException;
+
+    // Cierra el lote y vuelca lo pendiente; no cierra el stream subyacente
+    void endBatch() throws IOException;
+}
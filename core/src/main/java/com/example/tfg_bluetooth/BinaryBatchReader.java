@@ -0,0 +1,148 @@
+package com.example.tfg_bluetooth;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Decodificador del formato de BinaryBatchWriter, para el receptor de pruebas y herramientas
+public final class BinaryBatchReader {
+
+    // Receptor de los registros: hash y record se reutilizan entre llamadas; las actualizaciones
+    // de última fecha llegan con record.isLastSeenUpdate()
+    public interface Consumer {
+        void accept(byte[] hash, DeviceRecord record) throws IOException;
+    }
+
+    private static final int VERSION_1 = 1;
+    private static final int VERSION_2 = 2;
+
+    private final InputStream in;
+
+    public BinaryBatchReader(InputStream in) {
+        this.in = in;
+    }
+
+    // Lee el lote completo y devuelve el número de registros
+    public int read(Consumer consumer) throws IOException {
+        for (byte expected : BinaryBatchWriter.MAGIC) {
+            if (readByte() != expected) {
+                throw new IOException("Cabecera de lote binario no válida");
+            }
+        }
+        int version = readByte();
+        if (version != BinaryBatchWriter.VERSION && version != VERSION_2 && version != VERSION_1) {
+            throw new IOException("Versión de lote binario no soportada: " + version);
+        }
+        int cellPrecision = version == BinaryBatchWriter.VERSION ? readByte() : 0;
+        if (cellPrecision > Geohash.MAX_PRECISION) {
+            throw new IOException("Precisión de celda no válida: " + cellPrecision);
+        }
+
+        byte[] hash = new byte[MacHasher.HASH_LENGTH];
+        DeviceRecord record = new DeviceRecord(0L, DeviceRecord.RSSI_UNKNOWN, 0.0, 0.0);
+        long previousFirstSeen = 0;
+        long previousLat = 0;
+        long previousLon = 0;
+        boolean inCell = false;
+        double cellLat = 0;
+        double cellLon = 0;
+        int records = 0;
+        while (true) {
+            int tag = readByte();
+            if (tag == BinaryBatchWriter.TAG_END) {
+                return records;
+            }
+            if (tag == BinaryBatchWriter.TAG_CELL && cellPrecision > 0) {
+                long cell = readVarLong();
+                if (cell >>> (5 * cellPrecision) != 0) {
+                    throw new IOException("Celda no válida: " + cell);
+                }
+                cellLat = Geohash.centerLatitude(cell, cellPrecision);
+                cellLon = Geohash.centerLongitude(cell, cellPrecision);
+                inCell = true;
+                continue;
+            }
+            if (tag == BinaryBatchWriter.TAG_LAST_SEEN) {
+                readFully(hash);
+                record.setLastSeenUpdate(previousFirstSeen + unzigzag(readVarLong()));
+                consumer.accept(hash, record);
+                records++;
+                continue;
+            }
+            if (tag != BinaryBatchWriter.TAG_RECORD) {
+                throw new IOException("Etiqueta de registro desconocida: " + tag);
+            }
+            readFully(hash);
+            long firstSeen = previousFirstSeen + unzigzag(readVarLong());
+            long lastSeen = firstSeen + readVarLong();
+            int count = (int) readVarLong();
+            short minRssi = rssi((byte) readByte());
+            short maxRssi = rssi((byte) readByte());
+            previousFirstSeen = firstSeen;
+
+            // En la versión 1 todos los registros llevan coordenadas tomadas en el último avistamiento
+            long locationAge = version == VERSION_1 ? 1 : readVarLong();
+            long locationTime = DeviceRecord.NO_LOCATION;
+            double latitud = 0.0;
+            double longitud = 0.0;
+            if (locationAge != 0) {
+                locationTime = lastSeen - (locationAge - 1);
+                if (cellPrecision > 0) {
+                    if (!inCell) {
+                        throw new IOException("Registro con posición antes de la primera celda");
+                    }
+                    latitud = cellLat;
+                    longitud = cellLon;
+                } else {
+                    previousLat += unzigzag(readVarLong());
+                    previousLon += unzigzag(readVarLong());
+                    latitud = previousLat / BinaryBatchWriter.COORDINATE_SCALE;
+                    longitud = previousLon / BinaryBatchWriter.COORDINATE_SCALE;
+                }
+            }
+
+            record.set(firstSeen, lastSeen, count, minRssi, maxRssi, latitud, longitud, locationTime);
+            consumer.accept(hash, record);
+            records++;
+        }
+    }
+
+    private static short rssi(byte value) {
+        return value == Byte.MIN_VALUE ? DeviceRecord.RSSI_UNKNOWN : value;
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint demasiado largo");
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("Lote binario truncado");
+        }
+        return b;
+    }
+
+    private void readFully(byte[] out) throws IOException {
+        int read = 0;
+        while (read < out.length) {
+            int n = in.read(out, read, out.length - read);
+            if (n < 0) {
+                throw new EOFException("Lote binario truncado");
+            }
+            read += n;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.tfg_bluetooth;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Formato binario de lotes (Content-Type application/vnd.tfg.batch):
+ *
+ * cabecera: "TFGB" + versión (1 byte) + precisión de las celdas geohash (1 byte; 0 sin celdas)
+ * registro: 0x01 + hash (32 bytes) + primera (varint zigzag, delta respecto al registro anterior)
+ *           + permanencia (varint, última - primera) + avistamientos (varint)
+ *           + rssi_min y rssi_max (1 byte con signo cada uno, -128 si se desconoce)
+ *           + edad de la posición + 1 (varint, ms; 0 si el registro no tiene posición)
+ *           + si hay posición y no hay celdas: latitud y longitud (grados * 1e7, varint zigzag,
+ *             delta respecto al último registro con posición)
+ * celda:    0x03 + bits de la celda geohash (varint); con celdas, precede a los registros con
+ *           posición de esa celda, que no llevan coordenadas: su posición es el centro de la celda
+ * última:   0x02 + hash (32 bytes) + última (varint zigzag, delta respecto a la primera del
+ *           registro completo anterior); actualización de un dispositivo ya notificado
+ * fin:      0x00
+ *
+ * Con celdas, el lote debe llegar agrupado por celda (SightingStore.swap(int)) para que cada una
+ * se envíe una vez; si no, se repite la celda cada vez que cambia.
+ *
+ * La versión 1 no llevaba la edad de la posición y siempre incluía las coordenadas; la 2 no
+ * tenía celdas ni el byte de precisión.
+ */
+public final class BinaryBatchWriter implements BatchWriter {
+
+    public static final String CONTENT_TYPE = "application/vnd.tfg.batch";
+    public static final byte[] MAGIC = {'T', 'F', 'G', 'B'};
+    public static final byte VERSION = 3;
+    public static final byte TAG_END = 0;
+    public static final byte TAG_RECORD = 1;
+    public static final byte TAG_LAST_SEEN = 2;
+    public static final byte TAG_CELL = 3;
+    public static final double COORDINATE_SCALE = 1e7;
+
+    private static final int BUFFER_SIZE = 8192;
+    // Registro más largo precedido de una celda
+    private static final int MAX_RECORD_SIZE = 1 + 10 + 1 + MacHasher.HASH_LENGTH + 5 * 10 + 2 + 2 * 5;
+
+    private final OutputStream out;
+    private final int cellPrecision;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int records;
+    private int cells;
+    private long previousFirstSeen;
+    private int previousLat;
+    private int previousLon;
+    private long previousCell;
+
+    public BinaryBatchWriter(OutputStream out) {
+        this(out, 0);
+    }
+
+    // Con cellPrecision entre 1 y Geohash.MAX_PRECISION la posición se envía como celda geohash
+    public BinaryBatchWriter(OutputStream out, int cellPrecision) {
+        if (cellPrecision < 0 || cellPrecision > Geohash.MAX_PRECISION) {
+            throw new IllegalArgumentException("Precisión de celda no válida: " + cellPrecision);
+        }
+        this.out = out;
+        this.cellPrecision = cellPrecision;
+    }
+
+    @Override
+    public void beginBatch() throws IOException {
+        records = 0;
+        cells = 0;
+        previousFirstSeen = 0;
+        previousLat = 0;
+        previousLon = 0;
+        previousCell = -1;
+        ensureCapacity(MAGIC.length + 2);
+        System.arraycopy(MAGIC, 0, buffer, position, MAGIC.length);
+        position += MAGIC.length;
+        buffer[position++] = VERSION;
+        buffer[position++] = (byte) cellPrecision;
+    }
+
+    @Override
+    public void writeDevice(byte[] hash, int off, DeviceRecord record) throws IOException {
+        ensureCapacity(MAX_RECORD_SIZE);
+        if (cellPrecision > 0 && !record.isLastSeenUpdate() && record.hasLocation()) {
+            long cell = Geohash.encode(record.getLatitud(), record.getLongitud(), cellPrecision);
+            if (cell != previousCell) {
+                buffer[position++] = TAG_CELL;
+                putVarLong(cell);
+                previousCell = cell;
+                cells++;
+            }
+        }
+        buffer[position++] = record.isLastSeenUpdate() ? TAG_LAST_SEEN : TAG_RECORD;
+        System.arraycopy(hash, off, buffer, position, MacHasher.HASH_LENGTH);
+        position += MacHasher.HASH_LENGTH;
+        if (record.isLastSeenUpdate()) {
+            putVarLong(zigzag(record.getLastSeen() - previousFirstSeen));
+            records++;
+            return;
+        }
+
+        putVarLong(zigzag(record.getFirstSeen() - previousFirstSeen));
+        previousFirstSeen = record.getFirstSeen();
+        putVarLong(record.getDwellMillis());
+        putVarLong(record.getCount());
+        buffer[position++] = rssiByte(record.getMinRssi());
+        buffer[position++] = rssiByte(record.getMaxRssi());
+
+        if (!record.hasLocation()) {
+            buffer[position++] = 0;
+            records++;
+            return;
+        }
+        putVarLong(Math.max(record.getLocationAgeMillis(), 0L) + 1);
+        if (cellPrecision > 0) {
+            records++;
+            return;
+        }
+        int lat = toFixedPoint(record.getLatitud());
+        int lon = toFixedPoint(record.getLongitud());
+        putVarLong(zigzag(lat - (long) previousLat));
+        putVarLong(zigzag(lon - (long) previousLon));
+        previousLat = lat;
+        previousLon = lon;
+        records++;
+    }
+
+    public void writeDevice(String hashedMac, DeviceRecord record) throws IOException {
+        byte[] hash = new byte[MacHasher.HASH_LENGTH];
+        Hex.decode(hashedMac, hash, 0);
+        writeDevice(hash, 0, record);
+    }
+
+    @Override
+    public void endBatch() throws IOException {
+        ensureCapacity(1);
+        buffer[position++] = TAG_END;
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+        out.flush();
+    }
+
+    public int getRecordCount() {
+        return records;
+    }
+
+    // Celdas escritas en el lote; con el lote agrupado, una por celda distinta
+    public int getCellCount() {
+        return cells;
+    }
+
+    static int toFixedPoint(double degrees) {
+        return (int) Math.round(degrees * COORDINATE_SCALE);
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static byte rssiByte(short rssi) {
+        if (rssi == DeviceRecord.RSSI_UNKNOWN || rssi < Byte.MIN_VALUE) {
+            return Byte.MIN_VALUE;
+        }
+        return (byte) Math.min(rssi, Byte.MAX_VALUE);
+    }
+
+    private void putVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (position + bytes > buffer.length) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.tfg_bluetooth;
+
+/**
+ * Cortocircuito para el endpoint de subida: tras varios fallos seguidos deja de intentarlo
+ * durante un tiempo (abierto), después permite una única petición de prueba (semiabierto) y
+ * vuelve a cerrarse si esa petición tiene éxito.
+ */
+public final class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final Clock clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this(failureThreshold, openMillis, Clock.SYSTEM);
+    }
+
+    public CircuitBreaker(int failureThreshold, long openMillis, Clock clock) {
+        if (failureThreshold < 1 || openMillis <= 0) {
+            throw new IllegalArgumentException("Parámetros del cortocircuito no válidos");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.clock = clock;
+    }
+
+    // Indica si se puede lanzar una petición ahora
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case OPEN:
+                if (clock.nowMillis() - openedAt < openMillis) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            case HALF_OPEN:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+            case CLOSED:
+            default:
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = clock.nowMillis();
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && clock.nowMillis() - openedAt >= openMillis) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+}
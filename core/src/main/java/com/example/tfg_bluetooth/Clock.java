@@ -0,0 +1,14 @@
+package com.example.tfg_bluetooth;
+
+// Fuente de tiempo inyectable para poder probar la lógica temporal sin esperas reales
+public interface Clock {
+
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long nowMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    long nowMillis();
+}
@@ -0,0 +1,543 @@
+package com.example.tfg_bluetooth;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ruta completa de recogida, independiente de Android: hash de la MAC, posición, agregación en
+ * SightingStore, volcado a la cola de envío en disco y subida de los lotes pendientes.
+ *
+ * La memoria no crece con el tiempo de ejecución: el lote en memoria se vacía en cada envío
+ * (o antes, al alcanzar maxRecords dispositivos) y lo pendiente de subir vive en disco.
+ */
+public final class Collector implements SightingSource.Listener, SightingRing.Consumer {
+
+    /**
+     * Aviso de que hay cambios para la vista en vivo, p. ej. de la actividad. Llega desde el hilo
+     * de ingesta, una vez hasta que se recogen con takeUpdates().
+     */
+    public interface Observer {
+        void onUpdatesAvailable();
+    }
+
+    private final Outbox outbox;
+    private final UploadClient uploadClient;
+    private final UploadFormat format;
+    private final LocationCache locationCache;
+    private final MacHasher macHasher = new MacHasher();
+    private volatile SightingStore sightingStore;
+    private final FlushScheduler flushScheduler;
+    private final PipelineMetrics metrics;
+    private volatile LiveUpdates liveUpdates;
+    private volatile FlushScheduler.ErrorListener errorListener;
+    private volatile ReportedDevices reportedDevices;
+    private volatile long sketchBucketMillis = SketchBatchWriter.DEFAULT_BUCKET_MILLIS;
+    private volatile int cellPrecision;
+    private volatile int uploadParallelism = 1;
+    private volatile FlushController flushController;
+    private volatile ColumnarExportWriter exporter;
+    private volatile SightingJournal journal;
+    private int maxDevicesInMemory;
+    // Serializa persist(): el diario solo se libera cuando el lote de ese mismo swap está guardado
+    private final Object persistLock = new Object();
+    private BacklogDrain backlogDrain;
+    private boolean stopped;
+
+    /**
+     * outbox y uploadClient pueden ser null si no se pudieron crear: los avistamientos se
+     * siguen agregando, pero no se guardan ni se envían.
+     */
+    public Collector(Outbox outbox, UploadClient uploadClient, UploadFormat format, LocationCache locationCache,
+                     long flushIntervalMs, int maxRecords, long maxBytes) {
+        this(outbox, uploadClient, format, locationCache, flushIntervalMs, maxRecords, maxBytes, new PipelineMetrics());
+    }
+
+    public Collector(Outbox outbox, UploadClient uploadClient, UploadFormat format, LocationCache locationCache,
+                     long flushIntervalMs, int maxRecords, long maxBytes, PipelineMetrics metrics) {
+        this.metrics = metrics;
+        if (uploadClient != null) {
+            uploadClient.setMetrics(metrics);
+        }
+        this.outbox = outbox;
+        this.uploadClient = uploadClient;
+        this.format = format;
+        this.locationCache = locationCache;
+        this.flushScheduler = new FlushScheduler(new FlushScheduler.FlushTask() {
+            @Override
+            public void flush() {
+                Collector.this.flush();
+            }
+        }, flushIntervalMs, maxRecords, maxBytes);
+        this.sightingStore = newSightingStore(0);
+        flushScheduler.setErrorListener(new FlushScheduler.ErrorListener() {
+            @Override
+            public void onFlushError(Exception e) {
+                reportError(e);
+            }
+        });
+    }
+
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setObserver(Observer observer) {
+        this.liveUpdates = observer != null ? new LiveUpdates(observer) : null;
+    }
+
+    /**
+     * Copia del último estado de cada dispositivo visto desde la recogida anterior, en el lote
+     * en curso; vacío si no hay observador.
+     */
+    public Map<String, DeviceRecord> takeUpdates() {
+        LiveUpdates live = liveUpdates;
+        return live != null ? live.take() : Collections.<String, DeviceRecord>emptyMap();
+    }
+
+    /**
+     * Activa el envío incremental: los dispositivos ya notificados se envían solo como
+     * actualización de última fecha. Un dispositivo cuenta como notificado cuando el servidor
+     * confirma el lote con su registro completo, así que los lotes pendientes no dependen unos de
+     * otros y pueden subirse en paralelo. null (por defecto) envía siempre registros completos.
+     */
+    public void setReportedDevices(ReportedDevices reportedDevices) {
+        this.reportedDevices = reportedDevices;
+    }
+
+    // Ancho de las cubetas de tiempo con UploadFormat.SKETCH
+    public void setSketchBucketMillis(long sketchBucketMillis) {
+        if (sketchBucketMillis <= 0) {
+            throw new IllegalArgumentException("Ancho de cubeta no válido: " + sketchBucketMillis);
+        }
+        this.sketchBucketMillis = sketchBucketMillis;
+    }
+
+    /**
+     * Agrupa cada lote por celdas geohash de cellPrecision caracteres; UploadFormat.BINARY envía
+     * entonces cada celda una vez en lugar de las coordenadas de cada registro. 0 (por defecto)
+     * conserva las coordenadas.
+     */
+    public void setCellPrecision(int cellPrecision) {
+        if (cellPrecision < 0 || cellPrecision > Geohash.MAX_PRECISION) {
+            throw new IllegalArgumentException("Precisión de celda no válida: " + cellPrecision);
+        }
+        this.cellPrecision = cellPrecision;
+    }
+
+    /**
+     * Lotes que se suben a la vez cuando hay varios pendientes (p. ej. tras una desconexión
+     * larga), como mucho BacklogDrain.MAX_IN_FLIGHT. 1 (por defecto) los sube de uno en uno.
+     */
+    public void setUploadParallelism(int uploadParallelism) {
+        if (uploadParallelism < 1) {
+            throw new IllegalArgumentException("Paralelismo no válido: " + uploadParallelism);
+        }
+        this.uploadParallelism = Math.min(uploadParallelism, BacklogDrain.MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Limita el lote en memoria a maxDevices dispositivos, guardados en arrays de primitivos
+     * (DeviceTable) con la memoria reservada de antemano. Si se llena antes del envío, la octava
+     * parte vista hace más tiempo se guarda en la cola de envío. 0 (por defecto) usa un mapa sin
+     * límite. Hay que llamarlo antes de start().
+     */
+    public void setMaxDevicesInMemory(int maxDevices) {
+        if (maxDevices < 0) {
+            throw new IllegalArgumentException("Máximo de dispositivos no válido: " + maxDevices);
+        }
+        if (sightingStore.size() != 0) {
+            throw new IllegalStateException("El lote actual no está vacío");
+        }
+        this.maxDevicesInMemory = maxDevices;
+        this.sightingStore = newSightingStore(maxDevices);
+    }
+
+    /**
+     * Copia cada avistamiento en un diario en disco hasta que su lote llega a la cola de envío,
+     * para que una muerte del proceso no pierda el lote en memoria. Antes, los lotes que queden
+     * en el diario de una ejecución anterior se vuelven a agregar y se guardan en la cola. Hay
+     * que llamarlo antes de start() y después de setMaxDevicesInMemory().
+     *
+     * Lo que ya había llegado a la cola (dispositivos desalojados, lotes reincorporados y luego
+     * guardados) está anotado en el diario y no se recupera otra vez. Si la recuperación falla,
+     * el diario ya está activo y lo no recuperado sigue en disco para el siguiente arranque.
+     */
+    public void setJournal(SightingJournal journal) throws IOException {
+        if (outbox == null) {
+            throw new IllegalStateException("Sin cola de envío no hay dónde recuperar el diario");
+        }
+        if (sightingStore.size() != 0) {
+            throw new IllegalStateException("El lote actual no está vacío");
+        }
+        this.journal = journal;
+        this.sightingStore = newSightingStore(maxDevicesInMemory);
+
+        List<SightingJournal.Generation> leftovers = journal.leftovers();
+        if (leftovers.isEmpty()) {
+            return;
+        }
+        SightingStore recovered = new SightingStore();
+        recovered.merge(SightingJournal.recover(leftovers));
+        Map<String, DeviceRecord> batch = recovered.swap(cellPrecision);
+        if (!batch.isEmpty()) {
+            outbox.appendBatch(batch, reportedDevices);
+        }
+        for (SightingJournal.Generation generation : leftovers) {
+            generation.delete();
+        }
+    }
+
+    /**
+     * Adapta el intervalo y el tamaño de los lotes a las respuestas del servidor, y no sube nada
+     * mientras haya un Retry-After pendiente (los lotes se siguen guardando). null (por defecto)
+     * usa los umbrales fijos del constructor.
+     */
+    public void setFlushController(FlushController flushController) {
+        this.flushController = flushController;
+        flushScheduler.setController(flushController);
+    }
+
+    /**
+     * Copia cada avistamiento, antes de agregarlo, en una exportación local por columnas. En cada
+     * envío se vuelcan los grupos completos; el grupo en curso solo se cierra si ya es antiguo (ver
+     * ColumnarExportWriter). null (por defecto) no exporta nada. Cerrarla es cosa de quien la crea.
+     */
+    public void setExporter(ColumnarExportWriter exporter) {
+        this.exporter = exporter;
+    }
+
+    public void setErrorListener(FlushScheduler.ErrorListener errorListener) {
+        this.errorListener = errorListener;
+    }
+
+    // Arranca los envíos periódicos y reenvía lo que quedara pendiente de una ejecución anterior
+    public void start() {
+        flushScheduler.start();
+        if (outbox != null && !outbox.pendingSegments().isEmpty()) {
+            flushScheduler.requestFlush();
+        }
+    }
+
+    // Guarda el lote actual en disco y detiene los envíos
+    public void stop() {
+        persist();
+        flushScheduler.stop();
+        synchronized (this) {
+            stopped = true;
+            if (backlogDrain != null) {
+                backlogDrain.shutdown();
+            }
+        }
+    }
+
+    @Override
+    public void onSighting(String address, short rssi, long timestamp) {
+        long start = System.nanoTime();
+        String hashedMac = macHasher.hash(address);
+        record(hashedMac, rssi, timestamp, start, System.nanoTime());
+    }
+
+    // Avistamiento con la MAC ya empaquetada, desde el hilo de SightingRing
+    @Override
+    public void onSighting(long mac, short rssi, long timestamp) {
+        long start = System.nanoTime();
+        String hashedMac = macHasher.hash(mac);
+        record(hashedMac, rssi, timestamp, start, System.nanoTime());
+    }
+
+    private void record(String hashedMac, short rssi, long timestamp, long start, long hashed) {
+        // Sin posición reciente el avistamiento se registra sin coordenadas
+        LocationFix fix = locationCache.getFreshFix();
+        double latitud = fix != null ? fix.getLatitud() : 0.0;
+        double longitud = fix != null ? fix.getLongitud() : 0.0;
+        long locationTime = locationCache.locationTime(fix, timestamp);
+
+        ColumnarExportWriter export = exporter;
+        if (export != null) {
+            export.write(hashedMac, timestamp, rssi, latitud, longitud, locationTime);
+        }
+        SightingStore store = sightingStore;
+        LiveUpdates live = liveUpdates;
+        if (live != null) {
+            live.record(store, hashedMac, timestamp, rssi, latitud, longitud, locationTime);
+        } else {
+            store.record(hashedMac, timestamp, rssi, latitud, longitud, locationTime);
+        }
+        metrics.onSighting(hashed - start, System.nanoTime() - start);
+    }
+
+    // Dispositivos en el lote actual
+    public int getPendingDevices() {
+        return sightingStore.size();
+    }
+
+    public int getFlushCount() {
+        return flushScheduler.getFlushCount();
+    }
+
+    // Guarda el lote actual y sube los pendientes; lo llama el hilo del FlushScheduler
+    public void flush() {
+        long start = System.nanoTime();
+        int devices = persist();
+        ColumnarExportWriter export = exporter;
+        if (export != null) {
+            try {
+                export.flush();
+            } catch (IOException e) {
+                reportError(new IOException("Error en la exportación local", e));
+            }
+        }
+        uploadPendingBatches();
+        metrics.onFlush(devices, System.nanoTime() - start);
+        if (outbox != null) {
+            metrics.setQueueDepth(outbox.pendingSegments().size());
+        }
+    }
+
+    /**
+     * Mueve el lote actual a la cola de envío y devuelve cuántos dispositivos tenía; puede
+     * llamarse desde cualquier hilo.
+     */
+    public int persist() {
+        if (outbox == null) {
+            return 0;
+        }
+        synchronized (persistLock) {
+            SightingStore store = sightingStore;
+            int devices = store.hasTable() ? persistTable(store) : persistMap(store);
+            if (devices < 0) {
+                return 0;
+            }
+            try {
+                store.releaseJournal();
+            } catch (IOException e) {
+                reportError(new IOException("Error en el diario de avistamientos", e));
+            }
+            return devices;
+        }
+    }
+
+    // Dispositivos guardados, o -1 si el lote vuelve al almacén
+    private int persistMap(SightingStore store) {
+        Map<String, DeviceRecord> batch = store.swap(cellPrecision);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        try {
+            outbox.appendBatch(batch, reportedDevices);
+            return batch.size();
+        } catch (IOException e) {
+            // Los registros vuelven al almacén y se reintentará en el siguiente envío;
+            // sus avistamientos siguen en el diario
+            store.merge(batch);
+            reportError(new IOException("No se pudo guardar el lote", e));
+            return -1;
+        }
+    }
+
+    // Como persistMap(), pero las filas van de la tabla al outbox sin pasar por un mapa
+    private int persistTable(SightingStore store) {
+        DeviceTable batch = store.swapTable();
+        try {
+            int orphans = persistOrphans(store);
+            if (batch.size() == 0) {
+                return orphans;
+            }
+            outbox.appendTable(batch, batch.rowsByCell(cellPrecision), reportedDevices);
+            return batch.size() + orphans;
+        } catch (IOException e) {
+            store.merge(batch);
+            reportError(new IOException("No se pudo guardar el lote", e));
+            return -1;
+        } finally {
+            store.recycle(batch);
+        }
+    }
+
+    /**
+     * Guarda, en un lote aparte, los dispositivos que no cupieron en la tabla tras un desalojo
+     * fallido y que solo están en el diario (ver SightingStore.retiredOrphans()).
+     */
+    private int persistOrphans(SightingStore store) throws IOException {
+        List<SightingJournal.Generation> generations = store.retiredOrphans();
+        if (generations.isEmpty()) {
+            return 0;
+        }
+        SightingStore orphans = new SightingStore();
+        orphans.merge(SightingJournal.recover(generations));
+        Map<String, DeviceRecord> batch = orphans.swap(cellPrecision);
+        if (!batch.isEmpty()) {
+            outbox.appendBatch(batch, reportedDevices);
+        }
+        try {
+            store.releaseOrphans(generations);
+        } catch (IOException e) {
+            reportError(new IOException("Error en el diario de avistamientos", e));
+        }
+        return batch.size();
+    }
+
+    private SightingStore newSightingStore(int maxDevices) {
+        SightingStore.NewDeviceListener listener = new SightingStore.NewDeviceListener() {
+            @Override
+            public void onNewDevice(String hashedMac, DeviceRecord record) {
+                metrics.onNewDevice();
+                flushScheduler.onRecordAdded(DeviceRecordCodec.RECORD_SIZE);
+            }
+        };
+        if (maxDevices == 0) {
+            return new SightingStore(listener, journal);
+        }
+        return new SightingStore(listener, maxDevices, new SightingStore.SpillListener() {
+            @Override
+            public void onSpill(DeviceTable devices) throws IOException {
+                spill(devices);
+            }
+        }, journal);
+    }
+
+    /**
+     * Dispositivos desalojados de un lote lleno: van a la cola de envío como un lote más. Si no
+     * se pueden guardar, la excepción los devuelve a la tabla (ver SightingStore) y el envío
+     * pedido los reintenta con el lote.
+     */
+    private void spill(DeviceTable devices) throws IOException {
+        if (outbox == null) {
+            return;
+        }
+        try {
+            outbox.appendTable(devices, null, reportedDevices);
+        } catch (IOException e) {
+            reportError(new IOException("No se pudieron guardar " + devices.size() + " dispositivos desalojados", e));
+            throw e;
+        } finally {
+            flushScheduler.requestFlush();
+        }
+    }
+
+    private void uploadPendingBatches() {
+        if (outbox == null || uploadClient == null) {
+            return;
+        }
+        FlushController controller = flushController;
+        if (controller != null && !controller.isUploadAllowed()) {
+            return;
+        }
+        final long bucketMillis = sketchBucketMillis;
+        final int precision = cellPrecision;
+        List<SegmentLog.Segment> pending = outbox.pendingSegments();
+        BacklogDrain drain = pending.size() > 1 ? backlogDrain() : null;
+        if (drain != null) {
+            drainBacklog(drain, pending, bucketMillis, precision);
+            return;
+        }
+
+        // Enviar cada lote pendiente por separado, del más antiguo al más reciente
+        for (SegmentLog.Segment segment : pending) {
+            try {
+                upload(segment, bucketMillis, precision);
+            } catch (IOException e) {
+                // El lote queda pendiente y se reintentará en el siguiente envío
+                reportError(e);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Sube varios lotes a la vez; los que fallen o no lleguen a lanzarse quedan pendientes. El
+     * orden da igual también con envío incremental: las actualizaciones de última fecha solo
+     * remiten a lotes ya confirmados.
+     */
+    private void drainBacklog(BacklogDrain drain, List<SegmentLog.Segment> pending, final long bucketMillis,
+                              final int precision) {
+        try {
+            BacklogDrain.Result result = drain.drain(pending, new BacklogDrain.ChunkUploader() {
+                @Override
+                public void upload(SegmentLog.Segment segment) throws IOException {
+                    Collector.this.upload(segment, bucketMillis, precision);
+                }
+            });
+            for (IOException e : result.getErrors()) {
+                reportError(e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void upload(final SegmentLog.Segment segment, final long bucketMillis, final int precision)
+            throws IOException {
+        FlushController controller = flushController;
+        try {
+            // El lote se serializa registro a registro directamente sobre la conexión;
+            // send() reintenta con espera exponencial ante errores de red y 5xx, y la clave del
+            // lote deja al servidor descartar los reintentos de un lote que ya había recibido
+            String key = outbox.batchKey(segment);
+            UploadClient.Response response;
+            try {
+                response = uploadClient.send(format, new UploadClient.BodyWriter() {
+                    @Override
+                    public void writeTo(OutputStream out) throws IOException {
+                        outbox.writeBatch(segment, format.newWriter(out, bucketMillis, precision));
+                    }
+                }, segment.getUsedBytes(), key);
+            } catch (UploadClient.CircuitOpenException e) {
+                throw e;
+            } catch (IOException e) {
+                if (controller != null) {
+                    controller.onFailure();
+                }
+                throw e;
+            }
+            if (controller != null) {
+                controller.onResponse(response);
+            }
+            if (!response.isOk() && !UploadClient.isRetryable(response.getCode())) {
+                // Un rechazo definitivo (400, 413...) se repetiría en cada envío y, como los lotes
+                // van en orden, atascaría la cola: el lote se aparta para revisarlo y se sigue
+                File rejected = outbox.reject(segment);
+                metrics.onBatchRejected();
+                reportError(new IOException("Lote " + segment.getSequence() + " rechazado con HTTP "
+                        + response.getCode() + " (" + response.getBody() + "), apartado en " + rejected));
+                return;
+            }
+            if (!response.isOk()) {
+                // Errores de red, 5xx, 408 y 429: el lote queda pendiente
+                throw new IOException("Respuesta HTTP " + response.getCode() + ": " + response.getBody());
+            }
+
+            // Solo se borra el lote, y sus dispositivos cuentan como notificados, cuando el
+            // servidor lo ha aceptado
+            outbox.acknowledge(segment, reportedDevices);
+        } catch (IOException e) {
+            throw new IOException("Error al enviar el lote " + segment.getSequence(), e);
+        }
+    }
+
+    // Pool del vaciado en paralelo, creado al primer atasco; null si el paralelismo es 1
+    private synchronized BacklogDrain backlogDrain() {
+        if (uploadParallelism <= 1 || stopped) {
+            return null;
+        }
+        if (backlogDrain == null || backlogDrain.getMaxInFlight() != uploadParallelism) {
+            if (backlogDrain != null) {
+                backlogDrain.shutdown();
+            }
+            backlogDrain = new BacklogDrain(uploadParallelism);
+        }
+        return backlogDrain;
+    }
+
+    private void reportError(Exception e) {
+        metrics.onFlushError();
+        FlushScheduler.ErrorListener listener = errorListener;
+        if (listener != null) {
+            listener.onFlushError(e);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.tfg_bluetooth;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Lector de los ficheros de ColumnarExportWriter, sin dependencias de Android: basta con el jar
+ * de core para recorrer una exportación desde Java. Descomprime un grupo de filas cada vez.
+ *
+ * El fichero de un proceso que murió antes de close() no tiene la etiqueta final: un fin de
+ * fichero justo entre dos grupos se acepta como final. Uno a mitad de grupo es un error.
+ */
+public final class ColumnarExportReader {
+
+    // Receptor de cada avistamiento; hash se reutiliza entre llamadas
+    public interface Consumer {
+        void accept(byte[] hash, long timestamp, short rssi, double latitud, double longitud, long locationTime)
+                throws IOException;
+    }
+
+    private static final int HASH_LENGTH = MacHasher.HASH_LENGTH;
+
+    private final InputStream in;
+    private final byte[][] columns = new byte[ColumnarExportWriter.COLUMNS][];
+    private final int[] lengths = new int[ColumnarExportWriter.COLUMNS];
+    private final int[] positions = new int[ColumnarExportWriter.COLUMNS];
+    private final byte[] spare = new byte[1];
+    private byte[] compressed = new byte[8192];
+
+    public ColumnarExportReader(InputStream in) {
+        this.in = in;
+    }
+
+    // Lee el fichero completo (o hasta el último grupo completo) y devuelve el número de avistamientos
+    public long read(Consumer consumer) throws IOException {
+        for (byte expected : ColumnarExportWriter.MAGIC) {
+            if (readByte() != expected) {
+                throw new IOException("Cabecera de exportación no válida");
+            }
+        }
+        int version = readByte();
+        if (version != ColumnarExportWriter.VERSION) {
+            throw new IOException("Versión de exportación no soportada: " + version);
+        }
+        byte[] hash = new byte[HASH_LENGTH];
+        Inflater inflater = new Inflater();
+        try {
+            long total = 0;
+            while (true) {
+                int tag = in.read();
+                if (tag < 0 || tag == ColumnarExportWriter.TAG_END) {
+                    return total;
+                }
+                if (tag != ColumnarExportWriter.TAG_ROW_GROUP) {
+                    throw new IOException("Etiqueta de grupo desconocida: " + tag);
+                }
+                total += readRowGroup(inflater, hash, consumer);
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private int readRowGroup(Inflater inflater, byte[] hash, Consumer consumer) throws IOException {
+        long rows = readVarLong(in);
+        long entries = readVarLong(in);
+        if (rows < 1 || rows > ColumnarExportWriter.MAX_ROW_GROUP_ROWS || entries < 1 || entries > rows) {
+            throw new IOException("Grupo de filas no válido: " + rows + " filas, " + entries + " hashes");
+        }
+        for (int c = 0; c < ColumnarExportWriter.COLUMNS; c++) {
+            readColumn(inflater, c);
+        }
+        if (lengths[ColumnarExportWriter.DICTIONARY] != entries * HASH_LENGTH) {
+            throw new IOException("Diccionario de hashes truncado");
+        }
+
+        long timestamp = 0;
+        long lat = 0;
+        long lon = 0;
+        for (int row = 0; row < rows; row++) {
+            long index = next(ColumnarExportWriter.HASH_INDEX);
+            if (index >= entries) {
+                throw new IOException("Índice de hash fuera del diccionario: " + index);
+            }
+            System.arraycopy(columns[ColumnarExportWriter.DICTIONARY], (int) index * HASH_LENGTH, hash, 0, HASH_LENGTH);
+            timestamp += unzigzag(next(ColumnarExportWriter.TIMESTAMP));
+            short rssi = nextRssi();
+            long locationAge = next(ColumnarExportWriter.LOCATION_AGE);
+            long locationTime = DeviceRecord.NO_LOCATION;
+            double latitud = 0.0;
+            double longitud = 0.0;
+            if (locationAge != 0) {
+                lat += unzigzag(next(ColumnarExportWriter.LATITUDE));
+                lon += unzigzag(next(ColumnarExportWriter.LONGITUDE));
+                locationTime = timestamp - (locationAge - 1);
+                latitud = lat / BinaryBatchWriter.COORDINATE_SCALE;
+                longitud = lon / BinaryBatchWriter.COORDINATE_SCALE;
+            }
+            consumer.accept(hash, timestamp, rssi, latitud, longitud, locationTime);
+        }
+        return (int) rows;
+    }
+
+    // Descomprime la columna c del grupo en columns[c], reutilizando el array si cabe
+    private void readColumn(Inflater inflater, int c) throws IOException {
+        long rawLength = readVarLong(in);
+        long compressedLength = readVarLong(in);
+        if (rawLength > Integer.MAX_VALUE / 2 || compressedLength > Integer.MAX_VALUE / 2) {
+            throw new IOException("Columna demasiado grande: " + rawLength);
+        }
+        if (compressed.length < compressedLength) {
+            compressed = new byte[(int) compressedLength];
+        }
+        readFully(compressed, (int) compressedLength);
+        byte[] column = columns[c];
+        if (column == null || column.length < rawLength) {
+            column = new byte[(int) rawLength];
+            columns[c] = column;
+        }
+        inflater.reset();
+        inflater.setInput(compressed, 0, (int) compressedLength);
+        try {
+            int read = 0;
+            while (!inflater.finished()) {
+                // Con la columna ya llena solo queda la cola del flujo: no debe producir más bytes
+                int n = read < rawLength
+                        ? inflater.inflate(column, read, (int) rawLength - read) : inflater.inflate(spare);
+                if (read == rawLength && n > 0) {
+                    throw new IOException("Columna más larga de lo indicado");
+                }
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Columna comprimida truncada");
+                }
+                read += n;
+            }
+            if (read != rawLength) {
+                throw new IOException("Columna comprimida truncada");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Columna comprimida no válida", e);
+        }
+        lengths[c] = (int) rawLength;
+        positions[c] = 0;
+    }
+
+    private long next(int c) throws IOException {
+        byte[] column = columns[c];
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (positions[c] >= lengths[c]) {
+                throw new EOFException("Columna truncada");
+            }
+            int b = column[positions[c]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint demasiado largo");
+    }
+
+    private short nextRssi() throws IOException {
+        byte[] column = columns[ColumnarExportWriter.RSSI];
+        int position = positions[ColumnarExportWriter.RSSI]++;
+        if (position >= lengths[ColumnarExportWriter.RSSI]) {
+            throw new EOFException("Columna truncada");
+        }
+        byte value = column[position];
+        return value == Byte.MIN_VALUE ? DeviceRecord.RSSI_UNKNOWN : value;
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Exportación truncada");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint demasiado largo");
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("Exportación truncada");
+        }
+        return b;
+    }
+
+    private void readFully(byte[] out, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = in.read(out, read, length - read);
+            if (n < 0) {
+                throw new EOFException("Exportación truncada");
+            }
+            read += n;
+        }
+    }
+}
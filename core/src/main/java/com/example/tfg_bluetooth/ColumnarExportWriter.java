@@ -0,0 +1,285 @@
+package com.example.tfg_bluetooth;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Exportación local de cada avistamiento en un fichero por columnas, para sacar los datos de un
+ * colector que no ha tenido conexión. Los avistamientos se acumulan en grupos de filas de tamaño
+ * fijo y cada grupo se escribe como siete columnas comprimidas con Deflater por separado:
+ *
+ *   "TFGC" versión
+ *   (1 filas entradas_diccionario [longitud_sin_comprimir longitud_comprimida bytes] x 7)*
+ *   0
+ *
+ * Columnas: diccionario (32 bytes de hash por entrada, en orden de aparición en el grupo), índice
+ * en el diccionario (varint), fecha (diferencia zigzag con la fila anterior), RSSI (un byte,
+ * -128 si se desconoce), edad de la posición (varint, 0 sin posición, si no edad en ms + 1) y
+ * latitud y longitud en grados * 1e7 (diferencia zigzag con la última fila con posición; solo
+ * las filas con posición). Cada grupo empieza de cero, así que se puede leer por separado.
+ *
+ * Un grupo se escribe cuando se llena, en close() o en el primer flush() después de que cumpla
+ * maxRowGroupAgeMillis desde su primera fila: grupos grandes comprimen mejor, y el límite de
+ * tiempo acota lo que se pierde si el proceso muere cuando hay pocos avistamientos (el grupo en
+ * curso, como mucho rowGroupRows filas o unos minutos). El fichero sigue siendo legible hasta el
+ * último grupo completo, aunque le falte el 0 final.
+ *
+ * La memoria no depende de la duración: solo se guarda el grupo en curso. Como
+ * SightingLogWriter, write() no lanza excepciones: el primer error (también un hash no válido)
+ * se guarda, se deja de escribir y flush() y close() lo relanzan. Las direcciones ya llegan con
+ * hash.
+ */
+public final class ColumnarExportWriter implements Closeable {
+
+    public static final byte[] MAGIC = {'T', 'F', 'G', 'C'};
+    public static final int VERSION = 1;
+    public static final int DEFAULT_ROW_GROUP_ROWS = 65_536;
+    public static final int MAX_ROW_GROUP_ROWS = 1 << 20;
+    public static final long DEFAULT_MAX_ROW_GROUP_AGE_MS = 10 * 60_000L;
+
+    static final int TAG_END = 0;
+    static final int TAG_ROW_GROUP = 1;
+    static final int COLUMNS = 7;
+    static final int DICTIONARY = 0;
+    static final int HASH_INDEX = 1;
+    static final int TIMESTAMP = 2;
+    static final int RSSI = 3;
+    static final int LOCATION_AGE = 4;
+    static final int LATITUDE = 5;
+    static final int LONGITUDE = 6;
+
+    private static final int HASH_LENGTH = MacHasher.HASH_LENGTH;
+
+    private final OutputStream out;
+    private final int rowGroupRows;
+    private final long maxRowGroupAgeMillis;
+    private final Clock clock;
+    private final Column[] columns = new Column[COLUMNS];
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final byte[] hash = new byte[HASH_LENGTH];
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private byte[] compressed = new byte[8192];
+    private int rows;
+    private long rowGroupStart;
+    private long previousTimestamp;
+    private long previousLat;
+    private long previousLon;
+    private long totalRows;
+    private int rowGroups;
+    private IOException error;
+    private boolean closed;
+
+    public ColumnarExportWriter(OutputStream out) throws IOException {
+        this(out, DEFAULT_ROW_GROUP_ROWS);
+    }
+
+    public ColumnarExportWriter(OutputStream out, int rowGroupRows) throws IOException {
+        this(out, rowGroupRows, DEFAULT_MAX_ROW_GROUP_AGE_MS, Clock.SYSTEM);
+    }
+
+    public ColumnarExportWriter(OutputStream out, int rowGroupRows, long maxRowGroupAgeMillis, Clock clock)
+            throws IOException {
+        if (rowGroupRows < 1 || rowGroupRows > MAX_ROW_GROUP_ROWS) {
+            throw new IllegalArgumentException("Tamaño de grupo no válido: " + rowGroupRows);
+        }
+        if (maxRowGroupAgeMillis < 0) {
+            throw new IllegalArgumentException("Antigüedad de grupo no válida: " + maxRowGroupAgeMillis);
+        }
+        this.out = out;
+        this.rowGroupRows = rowGroupRows;
+        this.maxRowGroupAgeMillis = maxRowGroupAgeMillis;
+        this.clock = clock;
+        for (int i = 0; i < COLUMNS; i++) {
+            columns[i] = new Column();
+        }
+        out.write(MAGIC);
+        out.write(VERSION);
+    }
+
+    /**
+     * Añade un avistamiento. locationTime es el instante de la posición (DeviceRecord.NO_LOCATION
+     * si no hay ninguna; entonces latitud y longitud se ignoran).
+     */
+    public synchronized void write(CharSequence hashedMac, long timestamp, short rssi, double latitud,
+                                   double longitud, long locationTime) {
+        if (error != null || closed) {
+            return;
+        }
+        Integer index = dictionary.get(hashedMac.toString());
+        if (rows == 0) {
+            rowGroupStart = clock.nowMillis();
+        }
+        if (index == null) {
+            try {
+                if (hashedMac.length() != 2 * HASH_LENGTH) {
+                    throw new IllegalArgumentException("longitud " + hashedMac.length());
+                }
+                Hex.decode(hashedMac, hash, 0);
+            } catch (IllegalArgumentException e) {
+                error = new IOException("Hash de MAC no válido: " + hashedMac, e);
+                return;
+            }
+            index = dictionary.size();
+            dictionary.put(hashedMac.toString(), index);
+            columns[DICTIONARY].write(hash, 0, HASH_LENGTH);
+        }
+        columns[HASH_INDEX].writeVarLong(index);
+        columns[TIMESTAMP].writeVarLong(BinaryBatchWriter.zigzag(timestamp - previousTimestamp));
+        previousTimestamp = timestamp;
+        columns[RSSI].write(BinaryBatchWriter.rssiByte(rssi));
+        if (locationTime == DeviceRecord.NO_LOCATION) {
+            columns[LOCATION_AGE].writeVarLong(0);
+        } else {
+            columns[LOCATION_AGE].writeVarLong(Math.max(timestamp - locationTime, 0L) + 1);
+            long lat = BinaryBatchWriter.toFixedPoint(latitud);
+            long lon = BinaryBatchWriter.toFixedPoint(longitud);
+            columns[LATITUDE].writeVarLong(BinaryBatchWriter.zigzag(lat - previousLat));
+            columns[LONGITUDE].writeVarLong(BinaryBatchWriter.zigzag(lon - previousLon));
+            previousLat = lat;
+            previousLon = lon;
+        }
+        rows++;
+        totalRows++;
+        if (rows == rowGroupRows) {
+            try {
+                writeRowGroup();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+    }
+
+    /**
+     * Vuelca al stream los grupos ya completos, p. ej. en cada envío. El grupo en curso sigue
+     * abierto salvo que tenga ya maxRowGroupAgeMillis: cerrarlo en cada volcado dejaría grupos
+     * pequeños que comprimen peor.
+     */
+    public synchronized void flush() throws IOException {
+        if (error == null && !closed) {
+            try {
+                if (rows > 0 && clock.nowMillis() - rowGroupStart >= maxRowGroupAgeMillis) {
+                    writeRowGroup();
+                }
+                out.flush();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    public synchronized long getRows() {
+        return totalRows;
+    }
+
+    public synchronized int getRowGroups() {
+        return rowGroups;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (error == null) {
+                writeRowGroup();
+                out.write(TAG_END);
+            }
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            closed = true;
+            deflater.end();
+            try {
+                out.close();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void writeRowGroup() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        Column header = new Column();
+        header.write((byte) TAG_ROW_GROUP);
+        header.writeVarLong(rows);
+        header.writeVarLong(dictionary.size());
+        out.write(header.data, 0, header.size);
+        for (Column column : columns) {
+            int length = compress(column);
+            header.size = 0;
+            header.writeVarLong(column.size);
+            header.writeVarLong(length);
+            out.write(header.data, 0, header.size);
+            out.write(compressed, 0, length);
+            column.size = 0;
+        }
+        rows = 0;
+        rowGroups++;
+        dictionary.clear();
+        previousTimestamp = 0;
+        previousLat = 0;
+        previousLon = 0;
+    }
+
+    private int compress(Column column) {
+        deflater.reset();
+        deflater.setInput(column.data, 0, column.size);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        return length;
+    }
+
+    // Bytes de una columna del grupo en curso; conserva la capacidad entre grupos
+    static final class Column {
+        byte[] data = new byte[1024];
+        int size;
+
+        void write(byte b) {
+            ensure(1);
+            data[size++] = b;
+        }
+
+        void write(byte[] bytes, int off, int len) {
+            ensure(len);
+            System.arraycopy(bytes, off, data, size, len);
+            size += len;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.tfg_bluetooth;
+
+import java.util.zip.Deflater;
+
+/**
+ * Elige el nivel de compresión de cada subida según el tamaño del lote y el estado de la batería.
+ * Los lotes pequeños se comprimen al máximo porque cuesta poco; los grandes bajan de nivel para
+ * no alargar el envío. Cargando siempre se usa el máximo y con batería baja, el más rápido.
+ */
+public final class CompressionPolicy {
+
+    // Tamaño del lote tal como está en el outbox (registros en binario)
+    public static final long SMALL_BATCH_BYTES = 16 * 1024;
+    public static final long LARGE_BATCH_BYTES = SegmentLog.DEFAULT_SEGMENT_SIZE;
+    public static final int LARGE_BATCH_LEVEL = 3;
+
+    private volatile boolean charging;
+    private volatile boolean batteryLow;
+
+    // Lo actualiza el servicio al cambiar el estado de la batería
+    public void setBatteryState(boolean charging, boolean batteryLow) {
+        this.charging = charging;
+        this.batteryLow = batteryLow;
+    }
+
+    public boolean isCharging() {
+        return charging;
+    }
+
+    public boolean isBatteryLow() {
+        return batteryLow;
+    }
+
+    // batchBytes negativo si no se conoce el tamaño del lote
+    public int levelFor(long batchBytes) {
+        if (charging) {
+            return Deflater.BEST_COMPRESSION;
+        }
+        if (batteryLow) {
+            return Deflater.BEST_SPEED;
+        }
+        if (batchBytes < 0) {
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+        if (batchBytes <= SMALL_BATCH_BYTES) {
+            return Deflater.BEST_COMPRESSION;
+        }
+        if (batchBytes >= LARGE_BATCH_BYTES) {
+            return LARGE_BATCH_LEVEL;
+        }
+        return Deflater.DEFAULT_COMPRESSION;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.tfg_bluetooth;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Cuenta los bytes que pasan hacia el stream subyacente
+final class CountingOutputStream extends FilterOutputStream {
+
+    private long count;
+
+    CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+    }
+
+    long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.tfg_bluetooth;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Serializa registros de dispositivos al JSON que espera el servidor, escribiendo bytes
+ * directamente sobre un OutputStream a través de un buffer reutilizable:
+ *
+ * {"hashed_mac": {"primera_fecha_hora": "...", "ultima_fecha_hora": "...", "latitud": ..., "longitud": ...,
+ *                 "edad_ubicacion_ms": ..., "avistamientos": n, "rssi_min": ..., "rssi_max": ...}, ...}
+ *
+ * Los registros sin una posición reciente se envían sin latitud, longitud ni edad_ubicacion_ms.
+ * Las actualizaciones de última fecha (envío incremental) son {"hashed_mac": {"ultima_fecha_hora": "..."}}.
+ */
+public final class DeviceJsonWriter implements BatchWriter {
+
+    private static final int BUFFER_SIZE = 8192;
+    // Margen suficiente para un registro completo sin comprobar el espacio campo a campo
+    private static final int MAX_RECORD_SIZE = 512;
+
+    private static final byte[] HEX_DIGITS = ascii("0123456789abcdef");
+    private static final byte[] PRIMERA = ascii("\":{\"primera_fecha_hora\":\"");
+    private static final byte[] ULTIMA = ascii("\",\"ultima_fecha_hora\":\"");
+    private static final byte[] SOLO_ULTIMA = ascii("\":{\"ultima_fecha_hora\":\"");
+    private static final byte[] LATITUD = ascii(",\"latitud\":");
+    private static final byte[] LONGITUD = ascii(",\"longitud\":");
+    private static final byte[] EDAD_UBICACION = ascii(",\"edad_ubicacion_ms\":");
+    private static final byte[] AVISTAMIENTOS = ascii(",\"avistamientos\":");
+    private static final byte[] RSSI_MIN = ascii(",\"rssi_min\":");
+    private static final byte[] RSSI_MAX = ascii(",\"rssi_max\":");
+
+    private final OutputStream out;
+    private final TimestampFormat timestampFormat;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int records;
+
+    public DeviceJsonWriter(OutputStream out) {
+        this(out, new TimestampFormat());
+    }
+
+    public DeviceJsonWriter(OutputStream out, TimestampFormat timestampFormat) {
+        this.out = out;
+        this.timestampFormat = timestampFormat;
+    }
+
+    // Serializa el mapa completo como un único objeto JSON
+    public static void write(Map<String, DeviceRecord> devices, OutputStream out) throws IOException {
+        DeviceJsonWriter writer = new DeviceJsonWriter(out);
+        writer.beginBatch();
+        for (Map.Entry<String, DeviceRecord> entry : devices.entrySet()) {
+            writer.writeDevice(entry.getKey(), entry.getValue());
+        }
+        writer.endBatch();
+    }
+
+    @Override
+    public void beginBatch() throws IOException {
+        records = 0;
+        writeByte('{');
+    }
+
+    public void writeDevice(String hashedMac, DeviceRecord record) throws IOException {
+        ensureCapacity(MAX_RECORD_SIZE + hashedMac.length());
+        beginDevice();
+        for (int i = 0; i < hashedMac.length(); i++) {
+            buffer[position++] = (byte) hashedMac.charAt(i);
+        }
+        writeFields(record);
+    }
+
+    // Igual que writeDevice(String, ...) pero con el hash en binario, sin crear la String
+    @Override
+    public void writeDevice(byte[] hash, int off, DeviceRecord record) throws IOException {
+        ensureCapacity(MAX_RECORD_SIZE + MacHasher.HEX_LENGTH);
+        beginDevice();
+        for (int i = 0; i < MacHasher.HASH_LENGTH; i++) {
+            int b = hash[off + i] & 0xff;
+            buffer[position++] = HEX_DIGITS[b >>> 4];
+            buffer[position++] = HEX_DIGITS[b & 0x0f];
+        }
+        writeFields(record);
+    }
+
+    private void beginDevice() {
+        if (records++ > 0) {
+            buffer[position++] = ',';
+        }
+        buffer[position++] = '"';
+    }
+
+    private void writeFields(DeviceRecord record) {
+        if (record.isLastSeenUpdate()) {
+            put(SOLO_ULTIMA);
+            timestampFormat.format(record.getLastSeen(), buffer, position);
+            position += TimestampFormat.LENGTH;
+            buffer[position++] = '"';
+            buffer[position++] = '}';
+            return;
+        }
+        put(PRIMERA);
+        timestampFormat.format(record.getFirstSeen(), buffer, position);
+        position += TimestampFormat.LENGTH;
+        put(ULTIMA);
+        timestampFormat.format(record.getLastSeen(), buffer, position);
+        position += TimestampFormat.LENGTH;
+        buffer[position++] = '"';
+        if (record.hasLocation()) {
+            put(LATITUD);
+            putCoordinate(record.getLatitud());
+            put(LONGITUD);
+            putCoordinate(record.getLongitud());
+            put(EDAD_UBICACION);
+            putLong(record.getLocationAgeMillis());
+        }
+        put(AVISTAMIENTOS);
+        putLong(record.getCount());
+        if (record.hasRssi()) {
+            put(RSSI_MIN);
+            putLong(record.getMinRssi());
+            put(RSSI_MAX);
+            putLong(record.getMaxRssi());
+        }
+        buffer[position++] = '}';
+    }
+
+    // Cierra el objeto y vuelca el buffer; no cierra el stream subyacente
+    @Override
+    public void endBatch() throws IOException {
+        writeByte('}');
+        flushBuffer();
+        out.flush();
+    }
+
+    public int getRecordCount() {
+        return records;
+    }
+
+    private void writeByte(char c) throws IOException {
+        ensureCapacity(1);
+        buffer[position++] = (byte) c;
+    }
+
+    private void put(byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    // Coordenadas en punto fijo con 6 decimales (~0,1 m), sin pasar por Double.toString
+    private void putCoordinate(double value) {
+        long micro = Math.round(value * 1_000_000d);
+        if (micro < 0) {
+            buffer[position++] = '-';
+            micro = -micro;
+        }
+        putLong(micro / 1_000_000);
+        buffer[position++] = '.';
+        long fraction = micro % 1_000_000;
+        for (int i = 5; i >= 0; i--) {
+            buffer[position + i] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        position += 6;
+    }
+
+    private void putLong(long value) {
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int start = position;
+        do {
+            buffer[position++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        // Los dígitos se han escrito al revés
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            byte tmp = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = tmp;
+        }
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (position + bytes > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) s.charAt(i);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.tfg_bluetooth;
+
+/**
+ * Registro agregado de un dispositivo durante una ventana de envío. Los avistamientos repetidos
+ * actualizan el registro en el sitio en lugar de crear uno nuevo, de modo que primera y última
+ * fecha reflejan el tiempo real de permanencia.
+ */
+public final class DeviceRecord {
+
+    // Valor usado cuando el intent no trae BluetoothDevice.EXTRA_RSSI
+    public static final short RSSI_UNKNOWN = Short.MIN_VALUE;
+    // Valor de locationTime cuando no había una posición reciente: las coordenadas no son válidas
+    public static final long NO_LOCATION = Long.MIN_VALUE;
+
+    private long firstSeen;
+    private long lastSeen;
+    private int count;
+    private short minRssi;
+    private short maxRssi;
+    private double latitud;
+    private double longitud;
+    // Instante (mismo reloj que los avistamientos) de la posición usada para latitud y longitud
+    private long locationTime;
+
+    // Avistamiento con la posición tomada en ese mismo instante
+    public DeviceRecord(long timestamp, short rssi, double latitud, double longitud) {
+        this(timestamp, rssi, latitud, longitud, timestamp);
+    }
+
+    public DeviceRecord(long timestamp, short rssi, double latitud, double longitud, long locationTime) {
+        this.firstSeen = timestamp;
+        this.lastSeen = timestamp;
+        this.count = 1;
+        this.minRssi = rssi;
+        this.maxRssi = rssi;
+        setLocation(latitud, longitud, locationTime);
+    }
+
+    // Reconstruye un registro completo (p. ej. al leerlo de la cola de envío en disco)
+    public DeviceRecord(long firstSeen, long lastSeen, int count, short minRssi, short maxRssi,
+                        double latitud, double longitud) {
+        this(firstSeen, lastSeen, count, minRssi, maxRssi, latitud, longitud, lastSeen);
+    }
+
+    public DeviceRecord(long firstSeen, long lastSeen, int count, short minRssi, short maxRssi,
+                        double latitud, double longitud, long locationTime) {
+        set(firstSeen, lastSeen, count, minRssi, maxRssi, latitud, longitud, locationTime);
+    }
+
+    // Sobrescribe el registro completo; permite reutilizar una instancia al leer lotes
+    public void set(long firstSeen, long lastSeen, int count, short minRssi, short maxRssi,
+                    double latitud, double longitud, long locationTime) {
+        this.firstSeen = firstSeen;
+        this.lastSeen = lastSeen;
+        this.count = count;
+        this.minRssi = minRssi;
+        this.maxRssi = maxRssi;
+        setLocation(latitud, longitud, locationTime);
+    }
+
+    /**
+     * Convierte el registro en una actualización de última fecha: en modo incremental, un
+     * dispositivo ya notificado solo se envía con la última vez que se vio y 0 avistamientos.
+     */
+    public void setLastSeenUpdate(long lastSeen) {
+        set(lastSeen, lastSeen, 0, RSSI_UNKNOWN, RSSI_UNKNOWN, 0.0, 0.0, NO_LOCATION);
+    }
+
+    // Añade un avistamiento con la posición tomada en ese mismo instante
+    public void update(long timestamp, short rssi, double latitud, double longitud) {
+        update(timestamp, rssi, latitud, longitud, timestamp);
+    }
+
+    /**
+     * Añade un avistamiento al registro. Las coordenadas se quedan con la posición más reciente;
+     * un avistamiento sin posición (NO_LOCATION) no borra la que ya tuviera el registro.
+     */
+    public void update(long timestamp, short rssi, double latitud, double longitud, long locationTime) {
+        if (timestamp < firstSeen) {
+            firstSeen = timestamp;
+        }
+        if (timestamp > lastSeen) {
+            lastSeen = timestamp;
+        }
+        if (locationTime > this.locationTime) {
+            setLocation(latitud, longitud, locationTime);
+        }
+        count++;
+        if (rssi != RSSI_UNKNOWN) {
+            if (minRssi == RSSI_UNKNOWN || rssi < minRssi) {
+                minRssi = rssi;
+            }
+            if (maxRssi == RSSI_UNKNOWN || rssi > maxRssi) {
+                maxRssi = rssi;
+            }
+        }
+    }
+
+    // Combina otro registro del mismo dispositivo (p. ej. de un lote anterior) en este
+    public void merge(DeviceRecord other) {
+        if (other.firstSeen < firstSeen) {
+            firstSeen = other.firstSeen;
+        }
+        if (other.lastSeen > lastSeen) {
+            lastSeen = other.lastSeen;
+        }
+        if (other.locationTime > locationTime) {
+            setLocation(other.latitud, other.longitud, other.locationTime);
+        }
+        count += other.count;
+        if (other.hasRssi()) {
+            if (minRssi == RSSI_UNKNOWN || other.minRssi < minRssi) {
+                minRssi = other.minRssi;
+            }
+            if (maxRssi == RSSI_UNKNOWN || other.maxRssi > maxRssi) {
+                maxRssi = other.maxRssi;
+            }
+        }
+    }
+
+    public long getFirstSeen() {
+        return firstSeen;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public short getMinRssi() {
+        return minRssi;
+    }
+
+    public short getMaxRssi() {
+        return maxRssi;
+    }
+
+    public boolean isLastSeenUpdate() {
+        return count == 0;
+    }
+
+    public boolean hasRssi() {
+        return minRssi != RSSI_UNKNOWN;
+    }
+
+    public double getLatitud() {
+        return latitud;
+    }
+
+    public double getLongitud() {
+        return longitud;
+    }
+
+    public long getLocationTime() {
+        return locationTime;
+    }
+
+    public boolean hasLocation() {
+        return locationTime != NO_LOCATION;
+    }
+
+    // Antigüedad de la posición respecto al último avistamiento (0 si se tomó en ese instante)
+    public long getLocationAgeMillis() {
+        return lastSeen - locationTime;
+    }
+
+    // Permanencia en milisegundos entre el primer y el último avistamiento
+    public long getDwellMillis() {
+        return lastSeen - firstSeen;
+    }
+
+    private void setLocation(double latitud, double longitud, long locationTime) {
+        if (locationTime == NO_LOCATION) {
+            latitud = 0.0;
+            longitud = 0.0;
+        }
+        this.latitud = latitud;
+        this.longitud = longitud;
+        this.locationTime = locationTime;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("avistamientos: ").append(count)
+                .append(", permanencia: ").append(getDwellMillis() / 1000).append(" s");
+        if (hasRssi()) {
+            sb.append(", rssi: ").append(minRssi).append("..").append(maxRssi).append(" dBm");
+        }
+        if (hasLocation()) {
+            sb.append(", latitud: ").append(latitud).append(", longitud: ").append(longitud)
+                    .append(" (hace ").append(getLocationAgeMillis() / 1000).append(" s)");
+        } else {
+            sb.append(", sin ubicación");
+        }
+        return sb.toString();
+    }
+}
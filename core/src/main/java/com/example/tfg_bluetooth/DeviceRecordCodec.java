@@ -0,0 +1,117 @@
+package com.example.tfg_bluetooth;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Codificación binaria de un registro de dispositivo para la cola de envío en disco:
+ * [versión:byte][hash:32 bytes][primera:long][última:long][avistamientos:int]
+ * [rssi_min:short][rssi_max:short][latitud:double][longitud:double][instante_ubicacion:long]
+ *
+ * Un dispositivo ya notificado en modo incremental se guarda solo con su última fecha:
+ * [LAST_SEEN_UPDATE:byte][hash:32 bytes][última:long]
+ *
+ * La versión 1 no llevaba el instante de la posición: se toma el del último avistamiento, y
+ * las coordenadas 0,0 que se usaban cuando no había posición se leen como NO_LOCATION.
+ */
+public final class DeviceRecordCodec {
+
+    public static final byte VERSION = 2;
+    public static final int RECORD_SIZE = 1 + MacHasher.HASH_LENGTH + 8 + 8 + 4 + 2 + 2 + 8 + 8 + 8;
+
+    public static final byte LAST_SEEN_UPDATE = 3;
+    public static final int LAST_SEEN_UPDATE_SIZE = 1 + MacHasher.HASH_LENGTH + 8;
+
+    private static final byte VERSION_1 = 1;
+
+    private final char[] hex = new char[MacHasher.HEX_LENGTH];
+
+    // Receptor de los registros decodificados
+    public interface Consumer {
+        void accept(String hashedMac, DeviceRecord record);
+    }
+
+    // Escribe el registro en out (al menos RECORD_SIZE bytes) y devuelve los bytes escritos
+    public int encode(String hashedMac, DeviceRecord record, byte[] out) {
+        Hex.decode(hashedMac, out, 1);
+        return encodeFields(record, out);
+    }
+
+    // Como encode(hashedMac, ...), con los 32 bytes del hash a partir de off
+    public int encode(byte[] hash, int off, DeviceRecord record, byte[] out) {
+        System.arraycopy(hash, off, out, 1, MacHasher.HASH_LENGTH);
+        return encodeFields(record, out);
+    }
+
+    // Escribe una actualización de última fecha y devuelve los bytes escritos
+    public int encodeLastSeen(String hashedMac, long lastSeen, byte[] out) {
+        Hex.decode(hashedMac, out, 1);
+        return encodeLastSeenFields(lastSeen, out);
+    }
+
+    public int encodeLastSeen(byte[] hash, int off, long lastSeen, byte[] out) {
+        System.arraycopy(hash, off, out, 1, MacHasher.HASH_LENGTH);
+        return encodeLastSeenFields(lastSeen, out);
+    }
+
+    // El hash ya está en out[1..32]: escribe la versión y el resto de campos
+    private static int encodeFields(DeviceRecord record, byte[] out) {
+        ByteBuffer buffer = ByteBuffer.wrap(out);
+        buffer.put(VERSION);
+        buffer.position(1 + MacHasher.HASH_LENGTH);
+        buffer.putLong(record.getFirstSeen());
+        buffer.putLong(record.getLastSeen());
+        buffer.putInt(record.getCount());
+        buffer.putShort(record.getMinRssi());
+        buffer.putShort(record.getMaxRssi());
+        buffer.putDouble(record.getLatitud());
+        buffer.putDouble(record.getLongitud());
+        buffer.putLong(record.getLocationTime());
+        return buffer.position();
+    }
+
+    private static int encodeLastSeenFields(long lastSeen, byte[] out) {
+        ByteBuffer buffer = ByteBuffer.wrap(out);
+        buffer.put(LAST_SEEN_UPDATE);
+        buffer.position(1 + MacHasher.HASH_LENGTH);
+        buffer.putLong(lastSeen);
+        return buffer.position();
+    }
+
+    public void decode(ByteBuffer buffer, Consumer consumer) {
+        byte[] hash = new byte[MacHasher.HASH_LENGTH];
+        DeviceRecord record = new DeviceRecord(0L, DeviceRecord.RSSI_UNKNOWN, 0.0, 0.0);
+        decode(buffer, hash, record);
+        Hex.encode(hash, 0, hash.length, hex, 0);
+        consumer.accept(new String(hex), record);
+    }
+
+    /**
+     * Decodifica sin reservar memoria: el hash va a hashOut y el resto se vuelca en record. Una
+     * actualización de última fecha se lee como record.isLastSeenUpdate().
+     */
+    public void decode(ByteBuffer buffer, byte[] hashOut, DeviceRecord record) {
+        byte version = buffer.get();
+        if (version != VERSION && version != VERSION_1 && version != LAST_SEEN_UPDATE) {
+            throw new IllegalArgumentException("Versión de registro desconocida: " + version);
+        }
+        buffer.get(hashOut, 0, MacHasher.HASH_LENGTH);
+        if (version == LAST_SEEN_UPDATE) {
+            record.setLastSeenUpdate(buffer.getLong());
+            return;
+        }
+        long firstSeen = buffer.getLong();
+        long lastSeen = buffer.getLong();
+        int count = buffer.getInt();
+        short minRssi = buffer.getShort();
+        short maxRssi = buffer.getShort();
+        double latitud = buffer.getDouble();
+        double longitud = buffer.getDouble();
+        long locationTime;
+        if (version == VERSION_1) {
+            locationTime = latitud == 0.0 && longitud == 0.0 ? DeviceRecord.NO_LOCATION : lastSeen;
+        } else {
+            locationTime = buffer.getLong();
+        }
+        record.set(firstSeen, lastSeen, count, minRssi, maxRssi, latitud, longitud, locationTime);
+    }
+}
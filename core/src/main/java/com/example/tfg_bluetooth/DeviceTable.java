@@ -0,0 +1,460 @@
+package com.example.tfg_bluetooth;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tabla de dispositivos en arrays de primitivos, sin un objeto por dispositivo: columnas paralelas
+ * con el hash de 32 bytes, las fechas, el contador, el RSSI y las coordenadas en punto fijo
+ * (grados * 1e7, la misma precisión que el formato binario). Ocupa unos 90 bytes por dispositivo
+ * frente a los más de 200 de un mapa de String a DeviceRecord, y todo se reserva al crearla.
+ *
+ * Las filas están compactadas al principio de las columnas; un índice de direccionamiento
+ * abierto (sondeo lineal, ocupación máxima del 50 %) lleva de la clave a la fila. La clave es
+ * una mezcla de los 32 bytes del hash y se comprueba el hash completo, así que dos dispositivos
+ * nunca se confunden.
+ *
+ * Admite como mucho maxDevices dispositivos: record() devuelve -1 con la tabla llena y quien la
+ * usa decide qué sacar con removeOldest(). Para guardarla se recorren las filas con copyHash() y
+ * read() (p. ej. Outbox.appendTable), sin pasar por un objeto por dispositivo. No es segura
+ * entre hilos.
+ */
+public final class DeviceTable {
+
+    private static final int HASH_LENGTH = MacHasher.HASH_LENGTH;
+
+    private final int maxDevices;
+    private final int mask;
+    // Fila + 1 de cada posición del índice; 0 si está libre
+    private final int[] index;
+    private final long[] keys;
+    private final byte[] hashes;
+    private final long[] firstSeen;
+    private final long[] lastSeen;
+    private final long[] locationTimes;
+    private final int[] counts;
+    private final short[] minRssi;
+    private final short[] maxRssi;
+    private final int[] latitudes;
+    private final int[] longitudes;
+    private final byte[] scratch = new byte[HASH_LENGTH];
+    private int size;
+
+    public DeviceTable(int maxDevices) {
+        if (maxDevices <= 0 || maxDevices > (1 << 29)) {
+            throw new IllegalArgumentException("Capacidad no válida: " + maxDevices);
+        }
+        this.maxDevices = maxDevices;
+        int slots = Integer.highestOneBit(maxDevices * 2 - 1) << 1;
+        this.mask = slots - 1;
+        this.index = new int[slots];
+        this.keys = new long[maxDevices];
+        this.hashes = new byte[maxDevices * HASH_LENGTH];
+        this.firstSeen = new long[maxDevices];
+        this.lastSeen = new long[maxDevices];
+        this.locationTimes = new long[maxDevices];
+        this.counts = new int[maxDevices];
+        this.minRssi = new short[maxDevices];
+        this.maxRssi = new short[maxDevices];
+        this.latitudes = new int[maxDevices];
+        this.longitudes = new int[maxDevices];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getMaxDevices() {
+        return maxDevices;
+    }
+
+    public boolean isFull() {
+        return size == maxDevices;
+    }
+
+    // Bytes reservados por las columnas y el índice
+    public long getMemoryBytes() {
+        long perDevice = 8 + HASH_LENGTH + 3 * 8 + 4 + 2 * 2 + 2 * 4;
+        return perDevice * maxDevices + 4L * index.length;
+    }
+
+    // Fila del dispositivo, o -1 si no está
+    public int find(CharSequence hashedMac) {
+        decode(hashedMac);
+        return find(scratch, 0);
+    }
+
+    public int find(byte[] hash, int off) {
+        long key = key(hash, off);
+        for (int slot = home(key); ; slot = (slot + 1) & mask) {
+            int entry = index[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (keys[entry - 1] == key && sameHash(entry - 1, hash, off)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    public int record(CharSequence hashedMac, long timestamp, short rssi, double latitud, double longitud,
+                      long locationTime) {
+        decode(hashedMac);
+        return record(scratch, 0, timestamp, rssi, latitud, longitud, locationTime);
+    }
+
+    /**
+     * Añade un avistamiento, con las mismas reglas que DeviceRecord.update(), y devuelve la fila
+     * del dispositivo; -1 si es nuevo y la tabla está llena. Un dispositivo nuevo queda con
+     * getCount(fila) == 1.
+     */
+    public int record(byte[] hash, int off, long timestamp, short rssi, double latitud, double longitud,
+                      long locationTime) {
+        long key = key(hash, off);
+        int slot = home(key);
+        for (; ; slot = (slot + 1) & mask) {
+            int entry = index[slot];
+            if (entry == 0) {
+                break;
+            }
+            int row = entry - 1;
+            if (keys[row] == key && sameHash(row, hash, off)) {
+                update(row, timestamp, rssi, latitud, longitud, locationTime);
+                return row;
+            }
+        }
+        if (size == maxDevices) {
+            return -1;
+        }
+        int row = insert(slot, key, hash, off);
+        firstSeen[row] = timestamp;
+        lastSeen[row] = timestamp;
+        counts[row] = 1;
+        minRssi[row] = rssi;
+        maxRssi[row] = rssi;
+        setLocation(row, latitud, longitud, locationTime);
+        return row;
+    }
+
+    // Combina un registro completo (p. ej. de un lote que no se pudo guardar); -1 si no cabe
+    public int merge(CharSequence hashedMac, DeviceRecord record) {
+        decode(hashedMac);
+        return merge(scratch, 0, record);
+    }
+
+    public int merge(byte[] hash, int off, DeviceRecord record) {
+        int row = find(hash, off);
+        if (row < 0) {
+            if (size == maxDevices) {
+                return -1;
+            }
+            long key = key(hash, off);
+            row = insert(freeSlot(key), key, hash, off);
+            firstSeen[row] = record.getFirstSeen();
+            lastSeen[row] = record.getLastSeen();
+            counts[row] = record.getCount();
+            minRssi[row] = record.getMinRssi();
+            maxRssi[row] = record.getMaxRssi();
+            setLocation(row, record.getLatitud(), record.getLongitud(), record.getLocationTime());
+            return row;
+        }
+        firstSeen[row] = Math.min(firstSeen[row], record.getFirstSeen());
+        lastSeen[row] = Math.max(lastSeen[row], record.getLastSeen());
+        if (record.getLocationTime() > locationTimes[row]) {
+            setLocation(row, record.getLatitud(), record.getLongitud(), record.getLocationTime());
+        }
+        counts[row] += record.getCount();
+        if (record.hasRssi()) {
+            updateRssi(row, record.getMinRssi());
+            updateRssi(row, record.getMaxRssi());
+        }
+        return row;
+    }
+
+    public int getCount(int row) {
+        return counts[row];
+    }
+
+    public long getLastSeen(int row) {
+        return lastSeen[row];
+    }
+
+    // Copia la fila en into
+    public void read(int row, DeviceRecord into) {
+        checkRow(row);
+        into.set(firstSeen[row], lastSeen[row], counts[row], minRssi[row], maxRssi[row],
+                latitudes[row] / BinaryBatchWriter.COORDINATE_SCALE,
+                longitudes[row] / BinaryBatchWriter.COORDINATE_SCALE, locationTimes[row]);
+    }
+
+    // Copia el hash de 32 bytes de la fila en out a partir de off
+    public void copyHash(int row, byte[] out, int off) {
+        checkRow(row);
+        System.arraycopy(hashes, row * HASH_LENGTH, out, off, HASH_LENGTH);
+    }
+
+    public String hashedMac(int row) {
+        checkRow(row);
+        char[] hex = new char[2 * HASH_LENGTH];
+        Hex.encode(hashes, row * HASH_LENGTH, HASH_LENGTH, hex, 0);
+        return new String(hex);
+    }
+
+    /**
+     * Filas agrupadas por celda geohash de cellPrecision caracteres y al final las que no tienen
+     * posición; dentro de cada grupo, en orden de fila. Las celdas salen en orden de geohash, no
+     * de aparición. Con cellPrecision 0, las filas en orden.
+     */
+    public int[] rowsByCell(int cellPrecision) {
+        int[] rows = new int[size];
+        if (cellPrecision == 0 || size < 2) {
+            for (int row = 0; row < size; row++) {
+                rows[row] = row;
+            }
+            return rows;
+        }
+        // Celda de cada fila; las filas sin posición, tras todas las celdas
+        long[] cells = new long[size];
+        for (int row = 0; row < size; row++) {
+            cells[row] = locationTimes[row] == DeviceRecord.NO_LOCATION ? Long.MAX_VALUE
+                    : Geohash.encode(latitudes[row] / BinaryBatchWriter.COORDINATE_SCALE,
+                    longitudes[row] / BinaryBatchWriter.COORDINATE_SCALE, cellPrecision);
+        }
+        long[] distinct = cells.clone();
+        Arrays.sort(distinct);
+        int groups = 0;
+        for (int i = 0; i < distinct.length; i++) {
+            if (i == 0 || distinct[i] != distinct[i - 1]) {
+                distinct[groups++] = distinct[i];
+            }
+        }
+        // Ordenación por cuentas sobre el número de grupo: estable, así que conserva el orden de fila
+        int[] groupOf = new int[size];
+        int[] starts = new int[groups + 1];
+        for (int row = 0; row < size; row++) {
+            groupOf[row] = Arrays.binarySearch(distinct, 0, groups, cells[row]);
+            starts[groupOf[row] + 1]++;
+        }
+        for (int group = 0; group < groups; group++) {
+            starts[group + 1] += starts[group];
+        }
+        for (int row = 0; row < size; row++) {
+            rows[starts[groupOf[row]]++] = row;
+        }
+        return rows;
+    }
+
+    // Todos los dispositivos como registros independientes de la tabla, en orden de fila
+    public Map<String, DeviceRecord> toMap() {
+        Map<String, DeviceRecord> devices = new LinkedHashMap<>(size * 4 / 3 + 1);
+        for (int row = 0; row < size; row++) {
+            devices.put(hashedMac(row), snapshot(row));
+        }
+        return devices;
+    }
+
+    public DeviceRecord snapshot(int row) {
+        DeviceRecord record = new DeviceRecord(0L, DeviceRecord.RSSI_UNKNOWN, 0.0, 0.0);
+        read(row, record);
+        return record;
+    }
+
+    /**
+     * Mueve a into los count dispositivos vistos hace más tiempo (menor última fecha) y devuelve
+     * cuántos ha movido. into no debe contener ninguno de ellos y ha de tener sitio para todos.
+     */
+    public int removeOldest(int count, DeviceTable into) {
+        count = Math.min(count, size);
+        if (count <= 0) {
+            return 0;
+        }
+        if (into.maxDevices - into.size < count) {
+            throw new IllegalArgumentException("No caben " + count + " dispositivos en la tabla de destino");
+        }
+        if (count == size) {
+            for (int row = 0; row < size; row++) {
+                copyRow(row, into);
+            }
+            clear();
+            return count;
+        }
+        // La última fecha del count-ésimo más antiguo marca el corte
+        long[] sorted = Arrays.copyOf(lastSeen, size);
+        Arrays.sort(sorted);
+        long threshold = sorted[count - 1];
+        int below = 0;
+        while (below < count && sorted[below] < threshold) {
+            below++;
+        }
+        int atThreshold = count - below;
+        int[] rows = new int[count];
+        int n = 0;
+        for (int row = 0; row < size && n < count; row++) {
+            if (lastSeen[row] < threshold || (lastSeen[row] == threshold && atThreshold-- > 0)) {
+                rows[n++] = row;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            copyRow(rows[i], into);
+        }
+        // De la última fila a la primera: al mover la última fila a un hueco no se toca ninguna pendiente
+        for (int i = n - 1; i >= 0; i--) {
+            removeRow(rows[i]);
+        }
+        return n;
+    }
+
+    public void clear() {
+        Arrays.fill(index, 0);
+        size = 0;
+    }
+
+    private int insert(int slot, long key, byte[] hash, int off) {
+        int row = size++;
+        index[slot] = row + 1;
+        keys[row] = key;
+        System.arraycopy(hash, off, hashes, row * HASH_LENGTH, HASH_LENGTH);
+        return row;
+    }
+
+    private int freeSlot(long key) {
+        int slot = home(key);
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Añade la fila a into como un dispositivo nuevo
+    private void copyRow(int row, DeviceTable into) {
+        long key = keys[row];
+        int target = into.insert(into.freeSlot(key), key, hashes, row * HASH_LENGTH);
+        into.firstSeen[target] = firstSeen[row];
+        into.lastSeen[target] = lastSeen[row];
+        into.locationTimes[target] = locationTimes[row];
+        into.counts[target] = counts[row];
+        into.minRssi[target] = minRssi[row];
+        into.maxRssi[target] = maxRssi[row];
+        into.latitudes[target] = latitudes[row];
+        into.longitudes[target] = longitudes[row];
+    }
+
+    private void update(int row, long timestamp, short rssi, double latitud, double longitud, long locationTime) {
+        if (timestamp < firstSeen[row]) {
+            firstSeen[row] = timestamp;
+        }
+        if (timestamp > lastSeen[row]) {
+            lastSeen[row] = timestamp;
+        }
+        if (locationTime > locationTimes[row]) {
+            setLocation(row, latitud, longitud, locationTime);
+        }
+        counts[row]++;
+        if (rssi != DeviceRecord.RSSI_UNKNOWN) {
+            updateRssi(row, rssi);
+        }
+    }
+
+    private void updateRssi(int row, short rssi) {
+        if (minRssi[row] == DeviceRecord.RSSI_UNKNOWN || rssi < minRssi[row]) {
+            minRssi[row] = rssi;
+        }
+        if (maxRssi[row] == DeviceRecord.RSSI_UNKNOWN || rssi > maxRssi[row]) {
+            maxRssi[row] = rssi;
+        }
+    }
+
+    private void setLocation(int row, double latitud, double longitud, long locationTime) {
+        boolean known = locationTime != DeviceRecord.NO_LOCATION;
+        latitudes[row] = known ? BinaryBatchWriter.toFixedPoint(latitud) : 0;
+        longitudes[row] = known ? BinaryBatchWriter.toFixedPoint(longitud) : 0;
+        locationTimes[row] = locationTime;
+    }
+
+    // Quita la fila: borrado con desplazamiento hacia atrás en el índice y la última fila ocupa el hueco
+    private void removeRow(int row) {
+        int hole = slotOf(row);
+        index[hole] = 0;
+        for (int slot = (hole + 1) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+            int ideal = home(keys[index[slot] - 1]);
+            if (((slot - ideal) & mask) >= ((slot - hole) & mask)) {
+                index[hole] = index[slot];
+                index[slot] = 0;
+                hole = slot;
+            }
+        }
+        int last = --size;
+        if (row != last) {
+            index[slotOf(last)] = row + 1;
+            keys[row] = keys[last];
+            System.arraycopy(hashes, last * HASH_LENGTH, hashes, row * HASH_LENGTH, HASH_LENGTH);
+            firstSeen[row] = firstSeen[last];
+            lastSeen[row] = lastSeen[last];
+            locationTimes[row] = locationTimes[last];
+            counts[row] = counts[last];
+            minRssi[row] = minRssi[last];
+            maxRssi[row] = maxRssi[last];
+            latitudes[row] = latitudes[last];
+            longitudes[row] = longitudes[last];
+        }
+    }
+
+    private int slotOf(int row) {
+        for (int slot = home(keys[row]); ; slot = (slot + 1) & mask) {
+            if (index[slot] == row + 1) {
+                return slot;
+            }
+        }
+    }
+
+    private void decode(CharSequence hashedMac) {
+        if (hashedMac.length() != 2 * HASH_LENGTH) {
+            throw new IllegalArgumentException("Hash de MAC no válido: " + hashedMac);
+        }
+        Hex.decode(hashedMac, scratch, 0);
+    }
+
+    private boolean sameHash(int row, byte[] hash, int off) {
+        int base = row * HASH_LENGTH;
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            if (hashes[base + i] != hash[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Fila " + row + " de " + size);
+        }
+    }
+
+    private int home(long key) {
+        return (int) key & mask;
+    }
+
+    // Mezcla los 32 bytes para que hashes poco aleatorios (los de las pruebas) no colisionen
+    private static long key(byte[] hash, int off) {
+        long key = 0;
+        for (int word = 0; word < HASH_LENGTH; word += 8) {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (hash[off + word + i] & 0xff);
+            }
+            key = mix(key ^ value);
+        }
+        return key;
+    }
+
+    // Paso final de MurmurHash3 (fmix64)
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe53e4c63L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.tfg_bluetooth;
+
+/**
+ * Ciclo de trabajo de la búsqueda: fracción del tiempo en que la radio está buscando. Tras una
+ * ventana de búsqueda de duración d, la pausa es d * (1 - ciclo) / ciclo, de modo que un ciclo
+ * de 0,5 alterna ventanas y pausas iguales y un ciclo de 1 encadena las búsquedas sin pausa.
+ */
+public final class DutyCycle {
+
+    // Pausa mínima antes de reintentar una ventana que no pudo empezar
+    static final long MIN_RETRY_PAUSE_MILLIS = 1_000;
+
+    private final double dutyCycle;
+    private final long minPauseMillis;
+    private final long maxPauseMillis;
+
+    public DutyCycle(double dutyCycle, long minPauseMillis, long maxPauseMillis) {
+        if (!(dutyCycle > 0.0 && dutyCycle <= 1.0)) {
+            throw new IllegalArgumentException("El ciclo de trabajo debe estar en (0, 1]: " + dutyCycle);
+        }
+        if (minPauseMillis < 0 || maxPauseMillis < minPauseMillis) {
+            throw new IllegalArgumentException("Pausas no válidas: " + minPauseMillis + ".." + maxPauseMillis);
+        }
+        this.dutyCycle = dutyCycle;
+        this.minPauseMillis = minPauseMillis;
+        this.maxPauseMillis = maxPauseMillis;
+    }
+
+    // Pausa antes de la siguiente ventana, tras una ventana que ha durado scanMillis
+    public long pauseAfter(long scanMillis) {
+        long pause = (long) (Math.max(scanMillis, 0L) * (1.0 - dutyCycle) / dutyCycle);
+        return Math.min(Math.max(pause, minPauseMillis), maxPauseMillis);
+    }
+
+    /**
+     * Pausa antes de reintentar una ventana de duración windowMillis que no pudo empezar (p. ej.
+     * la radio rechazó la búsqueda); failures es el número de fallos seguidos (1 el primero).
+     * Parte de la pausa normal y se dobla con cada fallo, hasta la pausa máxima.
+     */
+    public long retryPauseAfter(long windowMillis, int failures) {
+        long ceiling = Math.max(maxPauseMillis, MIN_RETRY_PAUSE_MILLIS);
+        long pause = Math.max(pauseAfter(windowMillis), MIN_RETRY_PAUSE_MILLIS);
+        for (int i = 1; i < failures && pause < ceiling; i++) {
+            pause <<= 1;
+        }
+        return Math.min(pause, ceiling);
+    }
+
+    // Duración de la ventana para que ventana + pausa ocupen periodMillis
+    public long windowFor(long periodMillis) {
+        return Math.max(1L, (long) (periodMillis * dutyCycle));
+    }
+
+    public double getDutyCycle() {
+        return dutyCycle;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.tfg_bluetooth;
+
+import java.net.HttpURLConnection;
+import java.util.Random;
+
+/**
+ * Ajusta el ritmo de envío a lo que responde el servidor. Con 429, 5xx, errores de red o
+ * respuestas lentas el intervalo entre envíos y el tamaño de lote crecen (menos peticiones, más
+ * grandes); con respuestas rápidas vuelven poco a poco a los mínimos configurados. Un Retry-After
+ * bloquea las subidas hasta que vence (como mucho maxIntervalMs); mientras tanto los lotes se
+ * siguen guardando en la cola de envío.
+ *
+ * Cada intervalo lleva un jitter aleatorio de ±jitter, también tras un Retry-After, para que los
+ * colectores que empezaron a la vez o recibieron la misma respuesta no envíen sincronizados.
+ */
+public final class FlushController {
+
+    public static final double DEFAULT_JITTER = 0.1;
+
+    // Multiplicadores al saturarse el servidor, al responder lento y al recuperarse
+    private static final double OVERLOAD_FACTOR = 2.0;
+    private static final double SLOW_FACTOR = 1.5;
+    private static final double RECOVERY_FACTOR = 0.75;
+
+    private final Clock clock;
+    private final Random random;
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private final int minBatchRecords;
+    private final int maxBatchRecords;
+    private final long slowLatencyMs;
+    private final double jitter;
+
+    private long intervalMs;
+    private volatile int batchRecords;
+    private long blockedUntil = Long.MIN_VALUE;
+
+    public FlushController(long minIntervalMs, long maxIntervalMs, int minBatchRecords, int maxBatchRecords,
+                           long slowLatencyMs) {
+        this(minIntervalMs, maxIntervalMs, minBatchRecords, maxBatchRecords, slowLatencyMs, DEFAULT_JITTER,
+                Clock.SYSTEM, new Random());
+    }
+
+    public FlushController(long minIntervalMs, long maxIntervalMs, int minBatchRecords, int maxBatchRecords,
+                           long slowLatencyMs, double jitter, Clock clock, Random random) {
+        if (minIntervalMs <= 0 || maxIntervalMs < minIntervalMs || minBatchRecords <= 0
+                || maxBatchRecords < minBatchRecords || slowLatencyMs <= 0 || jitter < 0 || jitter >= 1) {
+            throw new IllegalArgumentException("Límites de envío no válidos");
+        }
+        this.minIntervalMs = minIntervalMs;
+        this.maxIntervalMs = maxIntervalMs;
+        this.minBatchRecords = minBatchRecords;
+        this.maxBatchRecords = maxBatchRecords;
+        this.slowLatencyMs = slowLatencyMs;
+        this.jitter = jitter;
+        this.clock = clock;
+        this.random = random;
+        this.intervalMs = minIntervalMs;
+        this.batchRecords = minBatchRecords;
+    }
+
+    // Respuesta de una subida, con su Retry-After y su latencia
+    public synchronized void onResponse(int code, long retryAfterMillis, long latencyMillis) {
+        if (retryAfterMillis >= 0 && code != HttpURLConnection.HTTP_OK) {
+            blockedUntil = Math.max(blockedUntil, clock.nowMillis() + Math.min(retryAfterMillis, maxIntervalMs));
+        }
+        if (UploadClient.isRetryable(code)) {
+            widen(OVERLOAD_FACTOR);
+        } else if (latencyMillis > slowLatencyMs) {
+            widen(SLOW_FACTOR);
+        } else if (code == HttpURLConnection.HTTP_OK) {
+            narrow();
+        }
+    }
+
+    public void onResponse(UploadClient.Response response) {
+        onResponse(response.getCode(), response.getRetryAfterMillis(), response.getLatencyMillis());
+    }
+
+    // Subida sin respuesta (error de red o tiempo de espera agotado)
+    public synchronized void onFailure() {
+        widen(OVERLOAD_FACTOR);
+    }
+
+    // Indica si el servidor permite subir ya (no hay un Retry-After pendiente)
+    public synchronized boolean isUploadAllowed() {
+        return clock.nowMillis() >= blockedUntil;
+    }
+
+    // Espera hasta el siguiente envío periódico, con jitter y respetando Retry-After
+    public synchronized long nextFlushDelayMillis() {
+        long delay = jittered(intervalMs);
+        long blocked = blockedUntil - clock.nowMillis();
+        if (blocked > 0 && blocked >= delay) {
+            delay = blocked + (long) (random.nextDouble() * jitter * intervalMs);
+        }
+        return delay;
+    }
+
+    public synchronized long getIntervalMillis() {
+        return intervalMs;
+    }
+
+    // Dispositivos a partir de los cuales se adelanta el envío
+    public int getBatchRecords() {
+        return batchRecords;
+    }
+
+    private void widen(double factor) {
+        intervalMs = Math.min(maxIntervalMs, (long) (intervalMs * factor));
+        batchRecords = (int) Math.min(maxBatchRecords, (long) (batchRecords * factor));
+    }
+
+    private void narrow() {
+        intervalMs = Math.max(minIntervalMs, (long) (intervalMs * RECOVERY_FACTOR));
+        batchRecords = (int) Math.max(minBatchRecords, (long) (batchRecords * RECOVERY_FACTOR));
+    }
+
+    private long jittered(long millis) {
+        double offset = jitter * (2 * random.nextDouble() - 1);
+        return Math.max(1, (long) (millis * (1 + offset)));
+    }
+}
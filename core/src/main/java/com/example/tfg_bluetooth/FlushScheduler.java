@@ -0,0 +1,179 @@
+package com.example.tfg_bluetooth;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Programa los envíos en un hilo propio. Se lanza un envío cuando el lote alcanza un número
+ * de registros o de bytes, o cuando vence el intervalo, lo que ocurra antes. Nunca hay más de
+ * un envío en curso: las peticiones que llegan durante un envío se agrupan en uno posterior.
+ * onRecordAdded() solo toca contadores atómicos, así que la ingesta nunca se bloquea.
+ *
+ * Con un FlushController el intervalo y el umbral de registros los marca el controlador en
+ * cada momento; los umbrales del constructor quedan para el de bytes y sin controlador.
+ */
+public final class FlushScheduler {
+
+    // Trabajo de envío; se ejecuta siempre en el hilo del planificador
+    public interface FlushTask {
+        void flush() throws Exception;
+    }
+
+    // Informa de errores del trabajo de envío (que no detienen el planificador)
+    public interface ErrorListener {
+        void onFlushError(Exception e);
+    }
+
+    private final ScheduledExecutorService executor;
+    private final FlushTask task;
+    private final long intervalMs;
+    private final int maxRecords;
+    private final long maxBytes;
+
+    private final AtomicInteger pendingRecords = new AtomicInteger();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicBoolean inFlight = new AtomicBoolean();
+    private final AtomicBoolean requestedAgain = new AtomicBoolean();
+    private final AtomicInteger flushCount = new AtomicInteger();
+    private volatile ErrorListener errorListener;
+    private volatile FlushController controller;
+    private volatile boolean running;
+    private ScheduledFuture<?> intervalFuture;
+
+    private final Runnable runFlush = new Runnable() {
+        @Override
+        public void run() {
+            doFlush();
+        }
+    };
+
+    private final Runnable intervalElapsed = new Runnable() {
+        @Override
+        public void run() {
+            requestFlush();
+        }
+    };
+
+    public FlushScheduler(FlushTask task, long intervalMs, int maxRecords, long maxBytes) {
+        this(Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "flush");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }), task, intervalMs, maxRecords, maxBytes);
+    }
+
+    public FlushScheduler(ScheduledExecutorService executor, FlushTask task,
+                          long intervalMs, int maxRecords, long maxBytes) {
+        if (intervalMs <= 0 || maxRecords <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Umbrales de envío no válidos");
+        }
+        this.executor = executor;
+        this.task = task;
+        this.intervalMs = intervalMs;
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+    }
+
+    public void setErrorListener(ErrorListener errorListener) {
+        this.errorListener = errorListener;
+    }
+
+    public void setController(FlushController controller) {
+        this.controller = controller;
+    }
+
+    public synchronized void start() {
+        running = true;
+        scheduleInterval();
+    }
+
+    // Detiene el planificador; el envío en curso, si lo hay, termina normalmente
+    public synchronized void stop() {
+        running = false;
+        if (intervalFuture != null) {
+            intervalFuture.cancel(false);
+        }
+        executor.shutdown();
+    }
+
+    // Llamar por cada registro nuevo del lote; lanza un envío al alcanzar los umbrales
+    public void onRecordAdded(int approxBytes) {
+        int records = pendingRecords.incrementAndGet();
+        long bytes = pendingBytes.addAndGet(approxBytes);
+        FlushController current = controller;
+        if (records >= (current != null ? current.getBatchRecords() : maxRecords) || bytes >= maxBytes) {
+            requestFlush();
+        }
+    }
+
+    // Pide un envío lo antes posible; si ya hay uno en curso se hará otro al terminar
+    public void requestFlush() {
+        if (!running) {
+            return;
+        }
+        if (inFlight.compareAndSet(false, true)) {
+            try {
+                executor.execute(runFlush);
+            } catch (RuntimeException e) {
+                // Planificador detenido
+                inFlight.set(false);
+            }
+        } else {
+            requestedAgain.set(true);
+        }
+    }
+
+    public int getFlushCount() {
+        return flushCount.get();
+    }
+
+    private void doFlush() {
+        do {
+            requestedAgain.set(false);
+            pendingRecords.set(0);
+            pendingBytes.set(0);
+            try {
+                task.flush();
+            } catch (Exception e) {
+                ErrorListener listener = errorListener;
+                if (listener != null) {
+                    listener.onFlushError(e);
+                }
+            }
+            flushCount.incrementAndGet();
+            synchronized (this) {
+                if (running) {
+                    scheduleInterval();
+                }
+            }
+        } while (requestedAgain.get() && running);
+        inFlight.set(false);
+        // Una petición pudo llegar entre la comprobación anterior y la liberación
+        if (requestedAgain.getAndSet(false)) {
+            requestFlush();
+        }
+    }
+
+    // El intervalo se cuenta desde el último envío, sea cual sea su causa
+    private void scheduleInterval() {
+        if (intervalFuture != null) {
+            intervalFuture.cancel(false);
+        }
+        FlushController current = controller;
+        long delay = current != null ? current.nextFlushDelayMillis() : intervalMs;
+        try {
+            intervalFuture = executor.schedule(intervalElapsed, delay, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            intervalFuture = null;
+        }
+    }
+}
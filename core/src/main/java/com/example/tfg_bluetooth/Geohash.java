@@ -0,0 +1,150 @@
+package com.example.tfg_bluetooth;
+
+import java.util.Arrays;
+
+/**
+ * Celdas geohash: la longitud y la latitud se dividen por la mitad alternativamente, empezando
+ * por la longitud, y cada 5 bits forman un carácter en base 32. Con precisión 7 la celda mide
+ * unos 153 x 153 m; cada carácter más la divide en 32.
+ *
+ * Una celda se maneja como sus 5 * precisión bits en un long, sin crear cadenas. Los límites
+ * inferiores pertenecen a la celda y los superiores a la siguiente, salvo la latitud 90, que está
+ * en la fila superior. La longitud se lleva a [-180, 180): 180 es la misma celda que -180.
+ */
+public final class Geohash {
+
+    public static final int MAX_PRECISION = 12;
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+    private static final int[] DECODE = new int[128];
+
+    static {
+        Arrays.fill(DECODE, -1);
+        for (int i = 0; i < BASE32.length; i++) {
+            DECODE[BASE32[i]] = i;
+        }
+    }
+
+    private Geohash() {
+    }
+
+    // Bits de la celda de precision caracteres que contiene el punto
+    public static long encode(double latitud, double longitud, int precision) {
+        checkPrecision(precision);
+        if (Double.isNaN(latitud) || Double.isNaN(longitud) || latitud < -90 || latitud > 90
+                || Double.isInfinite(longitud)) {
+            throw new IllegalArgumentException("Coordenadas no válidas: " + latitud + ", " + longitud);
+        }
+        double lon = normalizeLongitude(longitud);
+        double minLat = -90;
+        double maxLat = 90;
+        double minLon = -180;
+        double maxLon = 180;
+        long bits = 0;
+        for (int i = 0; i < 5 * precision; i++) {
+            bits <<= 1;
+            if ((i & 1) == 0) {
+                double mid = (minLon + maxLon) / 2;
+                if (lon >= mid) {
+                    bits |= 1;
+                    minLon = mid;
+                } else {
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitud >= mid) {
+                    bits |= 1;
+                    minLat = mid;
+                } else {
+                    maxLat = mid;
+                }
+            }
+        }
+        return bits;
+    }
+
+    public static String encodeToString(double latitud, double longitud, int precision) {
+        return toString(encode(latitud, longitud, precision), precision);
+    }
+
+    public static String toString(long cell, int precision) {
+        checkPrecision(precision);
+        char[] chars = new char[precision];
+        for (int i = 0; i < precision; i++) {
+            chars[i] = BASE32[(int) (cell >>> (5 * (precision - 1 - i))) & 0x1f];
+        }
+        return new String(chars);
+    }
+
+    // Bits de una celda escrita como cadena; su precisión es la longitud de la cadena
+    public static long parse(CharSequence geohash) {
+        checkPrecision(geohash.length());
+        long cell = 0;
+        for (int i = 0; i < geohash.length(); i++) {
+            char c = Character.toLowerCase(geohash.charAt(i));
+            int value = c < DECODE.length ? DECODE[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Geohash no válido: " + geohash);
+            }
+            cell = (cell << 5) | value;
+        }
+        return cell;
+    }
+
+    // Límites de la celda: {latitud mínima, longitud mínima, latitud máxima, longitud máxima}
+    public static double[] bounds(long cell, int precision) {
+        checkPrecision(precision);
+        double minLat = -90;
+        double maxLat = 90;
+        double minLon = -180;
+        double maxLon = 180;
+        int bits = 5 * precision;
+        for (int i = 0; i < bits; i++) {
+            boolean set = ((cell >>> (bits - 1 - i)) & 1) != 0;
+            if ((i & 1) == 0) {
+                double mid = (minLon + maxLon) / 2;
+                if (set) {
+                    minLon = mid;
+                } else {
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (set) {
+                    minLat = mid;
+                } else {
+                    maxLat = mid;
+                }
+            }
+        }
+        return new double[]{minLat, minLon, maxLat, maxLon};
+    }
+
+    public static double centerLatitude(long cell, int precision) {
+        double[] bounds = bounds(cell, precision);
+        return (bounds[0] + bounds[2]) / 2;
+    }
+
+    public static double centerLongitude(long cell, int precision) {
+        double[] bounds = bounds(cell, precision);
+        return (bounds[1] + bounds[3]) / 2;
+    }
+
+    private static double normalizeLongitude(double longitud) {
+        if (longitud >= -180 && longitud < 180) {
+            return longitud;
+        }
+        double wrapped = (longitud + 180) % 360;
+        if (wrapped < 0) {
+            wrapped += 360;
+        }
+        return wrapped - 180;
+    }
+
+    private static void checkPrecision(int precision) {
+        if (precision < 1 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precisión de geohash no válida: " + precision);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.tfg_bluetooth;
+
+// Codificación hexadecimal por tabla, sin StringBuilder ni Integer.toHexString
+public final class Hex {
+
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    private Hex() {
+    }
+
+    // Escribe bytes[off..off+len) en out a partir de outOff y devuelve los caracteres escritos
+    public static int encode(byte[] bytes, int off, int len, char[] out, int outOff) {
+        for (int i = 0; i < len; i++) {
+            int b = bytes[off + i] & 0xff;
+            out[outOff + 2 * i] = DIGITS[b >>> 4];
+            out[outOff + 2 * i + 1] = DIGITS[b & 0x0f];
+        }
+        return 2 * len;
+    }
+
+    public static String encode(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        encode(bytes, 0, bytes.length, out, 0);
+        return new String(out);
+    }
+
+    // Decodifica una cadena hexadecimal en out a partir de outOff
+    public static void decode(CharSequence hex, byte[] out, int outOff) {
+        int len = hex.length();
+        if ((len & 1) != 0) {
+            throw new IllegalArgumentException("Longitud hexadecimal impar: " + len);
+        }
+        for (int i = 0; i < len; i += 2) {
+            out[outOff + i / 2] = (byte) ((digit(hex.charAt(i)) << 4) | digit(hex.charAt(i + 1)));
+        }
+    }
+
+    public static byte[] decode(CharSequence hex) {
+        byte[] out = new byte[hex.length() / 2];
+        decode(hex, out, 0);
+        return out;
+    }
+
+    public static int digit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        throw new IllegalArgumentException("Carácter hexadecimal no válido: " + c);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.tfg_bluetooth;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de cubetas fijas en potencias de 2, sin cerrojos: registrar un valor es un
+ * incremento atómico. Los percentiles se aproximan por el límite superior de la cubeta, con
+ * un error de como mucho el doble, suficiente para comparar latencias entre colectores.
+ */
+public final class Histogram {
+
+    // Cubeta i: valores en [2^(i-1), 2^i), la 0 para el valor 0; la última recoge el resto
+    static final int BUCKETS = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0.0 : sum.get() / (double) n;
+    }
+
+    // Percentil aproximado (p entre 0 y 1): límite superior de la cubeta, acotado por el máximo
+    public long getPercentile(double p) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(p * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int bucket(long value) {
+        return Math.min(64 - Long.numberOfLeadingZeros(value), BUCKETS - 1);
+    }
+
+    static long upperBound(int bucket) {
+        return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.tfg_bluetooth;
+
+import java.util.Arrays;
+
+/**
+ * Estimador HyperLogLog del número de hashes distintos, con 2^precision registros de un byte.
+ * El error típico es 1,04 / sqrt(2^precision) (1,6 % con precisión 12, 4 KB) y no depende de
+ * cuántos dispositivos se añadan.
+ *
+ * Dos estimadores con la misma precisión se combinan con merge(): el resultado es el mismo que
+ * si se hubieran añadido todos los hashes a uno solo, así que el servidor puede sumar ventanas,
+ * colectores o zonas sin volver a ver los hashes.
+ */
+public final class HyperLogLog {
+
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precisión no válida: " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public int getRegisterCount() {
+        return registers.length;
+    }
+
+    // hash son los 32 bytes del SHA-256 a partir de off; bastan los 8 primeros, ya uniformes
+    public void add(byte[] hash, int off) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (hash[off + i] & 0xff);
+        }
+        addHash(value);
+    }
+
+    // Añade un hash de 64 bits uniforme
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // El bit centinela limita el rango a 64 - precision + 1 aunque el resto sean ceros
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Precisiones distintas: " + precision + " y " + other.precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        // Con pocos elementos el estimador bruto tiene sesgo: se usa el conteo lineal
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public boolean isEmpty() {
+        for (byte register : registers) {
+            if (register != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(registers, (byte) 0);
+    }
+
+    int getRegister(int index) {
+        return registers[index];
+    }
+
+    // Para los decodificadores: conserva el mayor valor, como merge()
+    void setRegister(int index, int value) {
+        if (value < 0 || value > 64 - precision + 1) {
+            throw new IllegalArgumentException("Registro no válido: " + value);
+        }
+        if (value > registers[index]) {
+            registers[index] = (byte) value;
+        }
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.tfg_bluetooth;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cambios para la vista en vivo, agrupados en el hilo de ingesta: por cada dispositivo visto
+ * desde la última recogida se guarda solo su último estado, copiado del almacén. El observador
+ * recibe un aviso cuando aparece el primer cambio y recoge todos con take() cuando le conviene
+ * (p. ej. una vez por refresco de la lista), así que cada avistamiento no cuesta un mensaje al
+ * hilo principal y la interfaz nunca ve registros que el almacén sigue modificando.
+ */
+final class LiveUpdates {
+
+    private final Collector.Observer observer;
+    private Map<String, DeviceRecord> pending = new LinkedHashMap<>();
+
+    LiveUpdates(Collector.Observer observer) {
+        this.observer = observer;
+    }
+
+    // Registra el avistamiento en store y copia el resultado en la entrada del dispositivo
+    void record(SightingStore store, String hashedMac, long timestamp, short rssi, double latitud,
+                double longitud, long locationTime) {
+        boolean first;
+        synchronized (this) {
+            first = pending.isEmpty();
+            DeviceRecord copy = pending.get(hashedMac);
+            if (copy == null) {
+                copy = new DeviceRecord(0L, DeviceRecord.RSSI_UNKNOWN, 0.0, 0.0);
+                pending.put(hashedMac, copy);
+            }
+            store.record(hashedMac, timestamp, rssi, latitud, longitud, locationTime, copy);
+        }
+        // Un aviso por recogida: los siguientes cambios se suman a los ya pendientes
+        if (first) {
+            observer.onUpdatesAvailable();
+        }
+    }
+
+    // Último estado de cada dispositivo cambiado desde la recogida anterior, en orden de llegada
+    synchronized Map<String, DeviceRecord> take() {
+        Map<String, DeviceRecord> taken = pending;
+        pending = new LinkedHashMap<>();
+        return taken;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.tfg_bluetooth;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Última posición conocida, compartida sin cerrojos entre el proveedor de ubicación y la ruta
+ * de los avistamientos. Leerla es una lectura volátil; las posiciones que llegan desordenadas
+ * (p. ej. de dos proveedores) no sustituyen a una más reciente.
+ *
+ * Una posición más antigua que maxAgeMillis se considera caducada: getFreshFix() devuelve null
+ * y el avistamiento se registra sin coordenadas en lugar de con una posición falsa.
+ */
+public final class LocationCache {
+
+    private final AtomicReference<LocationFix> latest = new AtomicReference<>();
+    private final long maxAgeMillis;
+    private final Clock clock;
+
+    public LocationCache(long maxAgeMillis, Clock clock) {
+        if (maxAgeMillis <= 0) {
+            throw new IllegalArgumentException("maxAgeMillis debe ser positivo");
+        }
+        this.maxAgeMillis = maxAgeMillis;
+        this.clock = clock;
+    }
+
+    // Publica una posición nueva; se descarta si ya hay otra tomada después
+    public void onFix(LocationFix fix) {
+        while (true) {
+            LocationFix current = latest.get();
+            if (current != null && current.getElapsedMillis() > fix.getElapsedMillis()) {
+                return;
+            }
+            if (latest.compareAndSet(current, fix)) {
+                return;
+            }
+        }
+    }
+
+    // Última posición, aunque esté caducada; null si todavía no ha llegado ninguna
+    public LocationFix getFix() {
+        return latest.get();
+    }
+
+    // Última posición si no ha caducado, o null
+    public LocationFix getFreshFix() {
+        LocationFix fix = latest.get();
+        if (fix == null || fix.getAgeMillis(clock.nowMillis()) > maxAgeMillis) {
+            return null;
+        }
+        return fix;
+    }
+
+    /**
+     * Instante de la posición vigente expresado en el reloj de los avistamientos: sightingTime
+     * menos la antigüedad de la posición. Devuelve DeviceRecord.NO_LOCATION si no hay una
+     * posición vigente.
+     */
+    public long locationTime(LocationFix fix, long sightingTime) {
+        if (fix == null) {
+            return DeviceRecord.NO_LOCATION;
+        }
+        return sightingTime - fix.getAgeMillis(clock.nowMillis());
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    public void clear() {
+        latest.set(null);
+    }
+}
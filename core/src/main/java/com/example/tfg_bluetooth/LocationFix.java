@@ -0,0 +1,46 @@
+package com.example.tfg_bluetooth;
+
+/**
+ * Posición inmutable con su precisión y el instante en que se obtuvo, medido con el reloj
+ * monótono de LocationCache (en Android, SystemClock.elapsedRealtime()).
+ */
+public final class LocationFix {
+
+    private final double latitud;
+    private final double longitud;
+    private final float accuracyMeters;
+    private final long elapsedMillis;
+
+    public LocationFix(double latitud, double longitud, float accuracyMeters, long elapsedMillis) {
+        this.latitud = latitud;
+        this.longitud = longitud;
+        this.accuracyMeters = accuracyMeters;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public double getLatitud() {
+        return latitud;
+    }
+
+    public double getLongitud() {
+        return longitud;
+    }
+
+    public float getAccuracyMeters() {
+        return accuracyMeters;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    // Antigüedad de la posición en el instante now del mismo reloj
+    public long getAgeMillis(long now) {
+        return Math.max(0L, now - elapsedMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "latitud: " + latitud + ", longitud: " + longitud + ", precisión: " + accuracyMeters + " m";
+    }
+}
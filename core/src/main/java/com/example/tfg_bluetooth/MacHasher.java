@@ -0,0 +1,163 @@
+package com.example.tfg_bluetooth;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Calcula la hashed_mac (SHA-256 en hexadecimal) de una dirección MAC sin reservar memoria
+ * en el camino habitual: cada hilo reutiliza su MessageDigest y sus buffers, y una caché
+ * acotada evita repetir el SHA-256 para dispositivos ya vistos.
+ *
+ * El hash se calcula sobre la forma canónica "AA:BB:CC:DD:EE:FF" en ASCII, que es la que
+ * devuelve BluetoothDevice.getAddress(), así que coincide con el que se enviaba antes.
+ */
+public final class MacHasher {
+
+    public static final int MAC_LENGTH = 6;
+    public static final int HASH_LENGTH = 32;
+    public static final int HEX_LENGTH = HASH_LENGTH * 2;
+
+    private static final int MAC_STRING_LENGTH = 17;
+    private static final int DEFAULT_CACHE_SIZE = 4096;
+    private static final byte[] UPPER_DIGITS = "0123456789ABCDEF".getBytes();
+
+    // Buffers reutilizables de cada hilo
+    private static final class Scratch {
+        final MessageDigest digest;
+        final byte[] mac = new byte[MAC_LENGTH];
+        final byte[] ascii = new byte[MAC_STRING_LENGTH];
+        final byte[] hash = new byte[HASH_LENGTH];
+        final char[] hex = new char[HEX_LENGTH];
+
+        Scratch() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 no disponible", e);
+            }
+        }
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    // Entrada inmutable de la caché: se publica de forma segura a través del AtomicReferenceArray
+    private static final class Entry {
+        final long mac;
+        final String hash;
+
+        Entry(long mac, String hash) {
+            this.mac = mac;
+            this.hash = hash;
+        }
+    }
+
+    // Caché de correspondencia directa: una colisión simplemente sustituye la entrada anterior
+    private final AtomicReferenceArray<Entry> cache;
+    private final int mask;
+
+    public MacHasher() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    public MacHasher(int cacheSize) {
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("Tamaño de caché no válido: " + cacheSize);
+        }
+        int size = Integer.highestOneBit(cacheSize);
+        if (size < cacheSize) {
+            size <<= 1;
+        }
+        cache = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    // Devuelve la hashed_mac en hexadecimal de una dirección con formato "AA:BB:CC:DD:EE:FF"
+    public String hash(String macAddress) {
+        return hash(parseMac(macAddress));
+    }
+
+    // Igual que hash(String) pero a partir de la MAC empaquetada en los 48 bits bajos de un long
+    public String hash(long mac) {
+        int slot = slot(mac);
+        Entry entry = cache.get(slot);
+        if (entry != null && entry.mac == mac) {
+            return entry.hash;
+        }
+
+        Scratch scratch = SCRATCH.get();
+        digest(mac, scratch, scratch.hash, 0);
+        Hex.encode(scratch.hash, 0, HASH_LENGTH, scratch.hex, 0);
+        String hash = new String(scratch.hex);
+        cache.set(slot, new Entry(mac, hash));
+        return hash;
+    }
+
+    // Escribe los 32 bytes del SHA-256 en out a partir de off, sin pasar por la caché
+    public void hashInto(long mac, byte[] out, int off) {
+        digest(mac, SCRATCH.get(), out, off);
+    }
+
+    // Convierte "AA:BB:CC:DD:EE:FF" (o con '-') en un long con la MAC en los 48 bits bajos
+    public static long parseMac(CharSequence macAddress) {
+        byte[] mac = SCRATCH.get().mac;
+        parseMac(macAddress, mac);
+        return pack(mac);
+    }
+
+    // Rellena out (6 bytes) con los bytes de la dirección MAC
+    public static void parseMac(CharSequence macAddress, byte[] out) {
+        if (macAddress == null || macAddress.length() != MAC_STRING_LENGTH) {
+            throw new IllegalArgumentException("Dirección MAC no válida: " + macAddress);
+        }
+        for (int i = 0; i < MAC_LENGTH; i++) {
+            int pos = i * 3;
+            if (i > 0) {
+                char separator = macAddress.charAt(pos - 1);
+                if (separator != ':' && separator != '-') {
+                    throw new IllegalArgumentException("Dirección MAC no válida: " + macAddress);
+                }
+            }
+            out[i] = (byte) ((Hex.digit(macAddress.charAt(pos)) << 4) | Hex.digit(macAddress.charAt(pos + 1)));
+        }
+    }
+
+    public static long pack(byte[] mac) {
+        long packed = 0;
+        for (int i = 0; i < MAC_LENGTH; i++) {
+            packed = (packed << 8) | (mac[i] & 0xff);
+        }
+        return packed;
+    }
+
+    private static void digest(long mac, Scratch scratch, byte[] out, int off) {
+        byte[] ascii = scratch.ascii;
+        for (int i = 0; i < MAC_LENGTH; i++) {
+            int b = (int) (mac >>> (8 * (MAC_LENGTH - 1 - i))) & 0xff;
+            int pos = i * 3;
+            ascii[pos] = UPPER_DIGITS[b >>> 4];
+            ascii[pos + 1] = UPPER_DIGITS[b & 0x0f];
+            if (i < MAC_LENGTH - 1) {
+                ascii[pos + 2] = ':';
+            }
+        }
+        MessageDigest digest = scratch.digest;
+        digest.update(ascii, 0, MAC_STRING_LENGTH);
+        try {
+            digest.digest(out, off, HASH_LENGTH);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int slot(long mac) {
+        long h = mac * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & mask;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.tfg_bluetooth;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vuelca periódicamente una foto de las métricas como una línea JSON al final de un fichero
+ * local, para comparar colectores en campo sin depurador. Al superar maxBytes el fichero se
+ * renombra a ".1" (sustituyendo al anterior), así que ocupa como mucho 2 * maxBytes.
+ */
+public final class MetricsDumper {
+
+    private final PipelineMetrics metrics;
+    private final File file;
+    private final long maxBytes;
+    private final Clock clock;
+    private ScheduledExecutorService executor;
+    private PipelineMetrics.Snapshot previous;
+
+    public MetricsDumper(PipelineMetrics metrics, File file, long maxBytes) {
+        this(metrics, file, maxBytes, Clock.SYSTEM);
+    }
+
+    public MetricsDumper(PipelineMetrics metrics, File file, long maxBytes, Clock clock) {
+        this.metrics = metrics;
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.clock = clock;
+    }
+
+    public synchronized void start(long intervalMs) {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "metrics");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    dump();
+                } catch (IOException e) {
+                    // Las métricas no deben interferir con la recogida; se reintenta en el siguiente
+                }
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Detiene los volcados periódicos tras un último volcado
+    public synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        executor = null;
+        try {
+            dump();
+        } catch (IOException e) {
+            // Ignorado: ver start()
+        }
+    }
+
+    // Añade una línea {"fecha_ms":..., ...métricas} al fichero
+    public synchronized void dump() throws IOException {
+        PipelineMetrics.Snapshot snapshot = metrics.snapshot(previous);
+        previous = snapshot;
+        String json = snapshot.toJson();
+        String line = "{\"fecha_ms\":" + clock.nowMillis() + "," + json.substring(1) + "\n";
+
+        if (file.length() >= maxBytes) {
+            File rotated = new File(file.getPath() + ".1");
+            if (rotated.exists() && !rotated.delete()) {
+                throw new IOException("No se pudo borrar " + rotated);
+            }
+            if (!file.renameTo(rotated)) {
+                throw new IOException("No se pudo rotar " + file);
+            }
+        }
+        try (OutputStream out = new FileOutputStream(file, true)) {
+            out.write(line.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.tfg_bluetooth;
+
+/**
+ * Resumen de ocupación de una cubeta de tiempo: dispositivos distintos presentes (HyperLogLog),
+ * avistamientos e histograma de permanencias en las cubetas de potencias de 2 de Histogram.
+ * Ocupa lo mismo haya diez dispositivos o cien mil.
+ *
+ * Todo se combina con merge(): los dispositivos por unión del HyperLogLog y el resto sumando, de
+ * modo que el servidor agrega colectores y periodos más largos sin ver ningún hash.
+ */
+public final class OccupancySketch {
+
+    private final long bucketStart;
+    private final long bucketMillis;
+    private final HyperLogLog devices;
+    private final long[] dwellCounts = new long[Histogram.BUCKETS];
+    private long sightings;
+
+    public OccupancySketch(long bucketStart, long bucketMillis, int precision) {
+        this.bucketStart = bucketStart;
+        this.bucketMillis = bucketMillis;
+        this.devices = new HyperLogLog(precision);
+    }
+
+    public long getBucketStart() {
+        return bucketStart;
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    public HyperLogLog getDevices() {
+        return devices;
+    }
+
+    // Estimación de dispositivos distintos presentes en la cubeta
+    public long getUniqueDevices() {
+        return devices.estimate();
+    }
+
+    public long getSightings() {
+        return sightings;
+    }
+
+    public void addDevice(byte[] hash, int off) {
+        devices.add(hash, off);
+    }
+
+    public void addSightings(long count) {
+        sightings += count;
+    }
+
+    public void addDwell(long millis) {
+        dwellCounts[Histogram.bucket(Math.max(millis, 0L))]++;
+    }
+
+    // Permanencias en [2^(bucket-1), 2^bucket) ms; la cubeta 0 es permanencia 0
+    public long getDwellCount(int bucket) {
+        return dwellCounts[bucket];
+    }
+
+    public long getDwellTotal() {
+        long total = 0;
+        for (long count : dwellCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    // Percentil aproximado de permanencia (p entre 0 y 1): límite superior de la cubeta
+    public long getDwellPercentile(double p) {
+        long total = getDwellTotal();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int i = 0; i < dwellCounts.length; i++) {
+            seen += dwellCounts[i];
+            if (seen >= rank) {
+                return Histogram.upperBound(i);
+            }
+        }
+        return Histogram.upperBound(dwellCounts.length - 1);
+    }
+
+    public void merge(OccupancySketch other) {
+        if (other.bucketStart != bucketStart || other.bucketMillis != bucketMillis) {
+            throw new IllegalArgumentException("Cubetas distintas: " + bucketStart + " y " + other.bucketStart);
+        }
+        devices.merge(other.devices);
+        for (int i = 0; i < dwellCounts.length; i++) {
+            dwellCounts[i] += other.dwellCounts[i];
+        }
+        sightings += other.sightings;
+    }
+
+    void addDwellCount(int bucket, long count) {
+        dwellCounts[bucket] += count;
+    }
+
+    @Override
+    public String toString() {
+        return "OccupancySketch{inicio=" + bucketStart + ", dispositivos≈" + getUniqueDevices()
+                + ", avistamientos=" + sightings + ", permanencias=" + getDwellTotal() + '}';
+    }
+}
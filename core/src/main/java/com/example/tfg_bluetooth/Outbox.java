@@ -0,0 +1,189 @@
+package com.example.tfg_bluetooth;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Cola de envío persistente de registros de dispositivos sobre un SegmentLog. Cada segmento
+ * sellado es un lote que se envía por separado y solo se borra cuando el servidor responde 200,
+ * así que un fallo de red o la muerte del proceso no pierden datos: al reiniciar, los segmentos
+ * pendientes se vuelven a enviar.
+ */
+public final class Outbox {
+
+    // Subdirectorio de los lotes rechazados por el servidor (ver reject())
+    public static final String REJECTED_DIRECTORY = "rechazados";
+
+    private final SegmentLog log;
+    private final DeviceRecordCodec codec = new DeviceRecordCodec();
+    private final byte[] scratch = new byte[DeviceRecordCodec.RECORD_SIZE];
+    private final byte[] hash = new byte[MacHasher.HASH_LENGTH];
+    private final DeviceRecord row = new DeviceRecord(0L, DeviceRecord.RSSI_UNKNOWN, 0.0, 0.0);
+
+    public Outbox(File directory) throws IOException {
+        this(new SegmentLog(directory));
+    }
+
+    public Outbox(SegmentLog log) {
+        this.log = log;
+    }
+
+    public synchronized void append(String hashedMac, DeviceRecord record) throws IOException {
+        int length = codec.encode(hashedMac, record, scratch);
+        log.append(scratch, 0, length);
+    }
+
+    // Añade todos los registros y sella el segmento para que quede listo para enviar
+    public synchronized void appendBatch(Map<String, DeviceRecord> devices) throws IOException {
+        appendBatch(devices, null);
+    }
+
+    /**
+     * Como appendBatch(devices), pero los dispositivos que ya están en reported se guardan solo
+     * como actualización de última fecha. reported no cambia aquí: los dispositivos pasan a él
+     * cuando el servidor confirma el lote (ver acknowledge(segment, reported)). Si falla la
+     * escritura, no queda nada del lote en la cola.
+     */
+    public synchronized void appendBatch(Map<String, DeviceRecord> devices, ReportedDevices reported)
+            throws IOException {
+        try {
+            for (Map.Entry<String, DeviceRecord> entry : devices.entrySet()) {
+                if (reported != null && reported.contains(entry.getKey())) {
+                    int length = codec.encodeLastSeen(entry.getKey(), entry.getValue().getLastSeen(), scratch);
+                    log.append(scratch, 0, length);
+                } else {
+                    append(entry.getKey(), entry.getValue());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // El llamante reincorpora el lote al almacén: un segmento a medias lo duplicaría
+            log.rollback();
+            throw e;
+        }
+        log.seal();
+    }
+
+    /**
+     * Como appendBatch(devices, reported), leyendo las filas de table en el orden de rows (null
+     * para el orden de fila) sin crear un objeto por dispositivo. table no debe cambiar mientras.
+     */
+    public synchronized void appendTable(DeviceTable table, int[] rows, ReportedDevices reported)
+            throws IOException {
+        try {
+            for (int i = 0; i < table.size(); i++) {
+                int r = rows != null ? rows[i] : i;
+                table.copyHash(r, hash, 0);
+                int length;
+                if (reported != null && reported.contains(hash, 0)) {
+                    length = codec.encodeLastSeen(hash, 0, table.getLastSeen(r), scratch);
+                } else {
+                    table.read(r, row);
+                    length = codec.encode(hash, 0, row, scratch);
+                }
+                log.append(scratch, 0, length);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.rollback();
+            throw e;
+        }
+        log.seal();
+    }
+
+    public List<SegmentLog.Segment> pendingSegments() {
+        return log.pendingSegments();
+    }
+
+    // Lee un segmento pendiente como lote de registros
+    public Map<String, DeviceRecord> readBatch(SegmentLog.Segment segment) throws IOException {
+        final Map<String, DeviceRecord> batch = new LinkedHashMap<>();
+        final DeviceRecordCodec decoder = new DeviceRecordCodec();
+        segment.read(new SegmentLog.RecordVisitor() {
+            @Override
+            public void visit(ByteBuffer record) {
+                decoder.decode(record, new DeviceRecordCodec.Consumer() {
+                    @Override
+                    public void accept(String hashedMac, DeviceRecord deviceRecord) {
+                        batch.put(hashedMac, deviceRecord);
+                    }
+                });
+            }
+        });
+        return batch;
+    }
+
+    // Escribe el lote de un segmento registro a registro, sin cargarlo en memoria
+    public int writeBatch(SegmentLog.Segment segment, final BatchWriter writer) throws IOException {
+        final DeviceRecordCodec decoder = new DeviceRecordCodec();
+        final byte[] hash = new byte[MacHasher.HASH_LENGTH];
+        final DeviceRecord record = new DeviceRecord(0L, DeviceRecord.RSSI_UNKNOWN, 0.0, 0.0);
+        writer.beginBatch();
+        int records = segment.read(new SegmentLog.RecordVisitor() {
+            @Override
+            public void visit(ByteBuffer buffer) throws IOException {
+                decoder.decode(buffer, hash, record);
+                writer.writeDevice(hash, 0, record);
+            }
+        });
+        writer.endBatch();
+        return records;
+    }
+
+    /**
+     * Clave del lote de un segmento para que el servidor descarte los envíos repetidos (ver
+     * UploadClient.send()): la secuencia del segmento y el CRC32 de sus registros. La secuencia
+     * sola no basta, porque vuelve a empezar en 0 cuando la cola se abre vacía.
+     */
+    public String batchKey(SegmentLog.Segment segment) throws IOException {
+        final CRC32 crc = new CRC32();
+        segment.read(new SegmentLog.RecordVisitor() {
+            @Override
+            public void visit(ByteBuffer record) {
+                crc.update(record.array(), record.arrayOffset() + record.position(), record.remaining());
+            }
+        });
+        return String.format(Locale.ROOT, "%d-%08x", segment.getSequence(), crc.getValue());
+    }
+
+    /**
+     * Aparta un lote que el servidor ha rechazado sin posibilidad de reintento (p. ej. 400 o
+     * 413): deja de estar pendiente, sus dispositivos no cuentan como notificados y el segmento
+     * se conserva en el subdirectorio REJECTED_DIRECTORY. Devuelve el directorio.
+     */
+    public File reject(SegmentLog.Segment segment) throws IOException {
+        File rejected = new File(log.getDirectory(), REJECTED_DIRECTORY);
+        log.moveTo(segment, rejected);
+        return rejected;
+    }
+
+    // Confirma un lote enviado (respuesta 200) y libera su segmento
+    public void acknowledge(SegmentLog.Segment segment) throws IOException {
+        acknowledge(segment, null);
+    }
+
+    /**
+     * Como acknowledge(segment), pero antes marca en reported los dispositivos del lote. Como
+     * solo se marcan los confirmados, una actualización de última fecha nunca depende de un lote
+     * pendiente y los pendientes pueden enviarse en cualquier orden.
+     */
+    public void acknowledge(SegmentLog.Segment segment, final ReportedDevices reported) throws IOException {
+        if (reported != null) {
+            final DeviceRecordCodec decoder = new DeviceRecordCodec();
+            final byte[] segmentHash = new byte[MacHasher.HASH_LENGTH];
+            final DeviceRecord record = new DeviceRecord(0L, DeviceRecord.RSSI_UNKNOWN, 0.0, 0.0);
+            segment.read(new SegmentLog.RecordVisitor() {
+                @Override
+                public void visit(ByteBuffer buffer) {
+                    decoder.decode(buffer, segmentHash, record);
+                    reported.add(segmentHash, 0);
+                }
+            });
+        }
+        log.acknowledge(segment);
+    }
+}
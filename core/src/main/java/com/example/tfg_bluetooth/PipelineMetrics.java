@@ -0,0 +1,247 @@
+package com.example.tfg_bluetooth;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas de la ruta de recogida: contadores LongAdder e histogramas de cubetas fijas, de modo
+ * que instrumentar un avistamiento cuesta unos pocos incrementos sin cerrojos. snapshot() da una
+ * foto coherente para la pantalla de depuración y el volcado JSON periódico.
+ */
+public final class PipelineMetrics {
+
+    final LongAdder sightings = new LongAdder();
+    final LongAdder droppedSightings = new LongAdder();
+    final LongAdder newDevices = new LongAdder();
+    final Histogram hashNanos = new Histogram();
+    final Histogram sightingNanos = new Histogram();
+
+    final LongAdder flushes = new LongAdder();
+    final Histogram flushNanos = new Histogram();
+    final Histogram windowDevices = new Histogram();
+    final LongAdder flushErrors = new LongAdder();
+
+    final LongAdder uploads = new LongAdder();
+    final LongAdder uploadFailures = new LongAdder();
+    final LongAdder uploadRetries = new LongAdder();
+    final LongAdder rejectedBatches = new LongAdder();
+    final Histogram uploadNanos = new Histogram();
+    final LongAdder rawBytes = new LongAdder();
+    final LongAdder wireBytes = new LongAdder();
+
+    private volatile int queueDepth;
+    // Bytes acumulados al terminar el envío anterior; solo los toca onFlush (hilo del planificador)
+    private long flushRawMark;
+    private long flushWireMark;
+    private volatile double lastFlushRatio;
+    private final Clock clock;
+    private final long startedAt;
+
+    public PipelineMetrics() {
+        this(Clock.SYSTEM);
+    }
+
+    public PipelineMetrics(Clock clock) {
+        this.clock = clock;
+        this.startedAt = clock.nowMillis();
+    }
+
+    // Un avistamiento procesado: latencia del hash y del manejador completo
+    public void onSighting(long hashNanos, long totalNanos) {
+        sightings.increment();
+        this.hashNanos.record(hashNanos);
+        sightingNanos.record(totalNanos);
+    }
+
+    // Avistamiento descartado antes de procesarse (búfer de ingesta lleno)
+    public void onSightingDropped() {
+        droppedSightings.increment();
+    }
+
+    public void onNewDevice() {
+        newDevices.increment();
+    }
+
+    /**
+     * Un envío completo: dispositivos del lote volcado y duración de volcado + subida. Calcula
+     * además el ratio de compresión de las subidas de este envío, si hubo alguna.
+     */
+    public void onFlush(int devices, long nanos) {
+        flushes.increment();
+        flushNanos.record(nanos);
+        if (devices > 0) {
+            windowDevices.record(devices);
+        }
+        long raw = rawBytes.sum();
+        long wire = wireBytes.sum();
+        if (wire > flushWireMark) {
+            lastFlushRatio = (raw - flushRawMark) / (double) (wire - flushWireMark);
+        }
+        flushRawMark = raw;
+        flushWireMark = wire;
+    }
+
+    public void onFlushError() {
+        flushErrors.increment();
+    }
+
+    public void onUpload(boolean ok, long nanos) {
+        if (ok) {
+            uploads.increment();
+        } else {
+            uploadFailures.increment();
+        }
+        uploadNanos.record(nanos);
+    }
+
+    public void onUploadRetry() {
+        uploadRetries.increment();
+    }
+
+    // Lote rechazado por el servidor sin posibilidad de reintento y apartado de la cola
+    public void onBatchRejected() {
+        rejectedBatches.increment();
+    }
+
+    // Bytes de un intento de subida: antes de comprimir y en la conexión
+    public void onUploadBytes(long raw, long wire) {
+        rawBytes.add(raw);
+        wireBytes.add(wire);
+    }
+
+    // Lotes pendientes en la cola de envío en disco
+    public void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Foto de las métricas. El ritmo de avistamientos se calcula desde previous (la foto anterior
+     * del mismo observador) o, si es null, como media desde el arranque.
+     */
+    public Snapshot snapshot(Snapshot previous) {
+        long uptime = clock.nowMillis() - startedAt;
+        long total = sightings.sum();
+        long sinceUptime = previous != null ? previous.uptimeMillis : 0;
+        long sinceSightings = previous != null ? previous.sightings : 0;
+        long elapsed = uptime - sinceUptime;
+        double rate = elapsed > 0 ? (total - sinceSightings) * 1000.0 / elapsed : 0.0;
+        return new Snapshot(this, uptime, total, rate);
+    }
+
+    public static final class Snapshot {
+        public final long uptimeMillis;
+        public final long sightings;
+        public final double sightingsPerSecond;
+        public final long droppedSightings;
+        public final long newDevices;
+        public final double devicesPerWindow;
+        public final long hashP50Nanos;
+        public final long hashP99Nanos;
+        public final long sightingP50Nanos;
+        public final long sightingP99Nanos;
+        public final long sightingMaxNanos;
+        public final long flushes;
+        public final long flushErrors;
+        public final long flushP50Millis;
+        public final long flushMaxMillis;
+        public final long uploads;
+        public final long uploadFailures;
+        public final long uploadRetries;
+        public final long rejectedBatches;
+        public final long uploadP50Millis;
+        public final long rawBytes;
+        public final long wireBytes;
+        public final double lastFlushCompressionRatio;
+        public final int queueDepth;
+
+        Snapshot(PipelineMetrics m, long uptimeMillis, long sightings, double sightingsPerSecond) {
+            this.uptimeMillis = uptimeMillis;
+            this.sightings = sightings;
+            this.sightingsPerSecond = sightingsPerSecond;
+            this.droppedSightings = m.droppedSightings.sum();
+            this.newDevices = m.newDevices.sum();
+            this.devicesPerWindow = m.windowDevices.getMean();
+            this.hashP50Nanos = m.hashNanos.getPercentile(0.5);
+            this.hashP99Nanos = m.hashNanos.getPercentile(0.99);
+            this.sightingP50Nanos = m.sightingNanos.getPercentile(0.5);
+            this.sightingP99Nanos = m.sightingNanos.getPercentile(0.99);
+            this.sightingMaxNanos = m.sightingNanos.getMax();
+            this.flushes = m.flushes.sum();
+            this.flushErrors = m.flushErrors.sum();
+            this.flushP50Millis = m.flushNanos.getPercentile(0.5) / 1_000_000;
+            this.flushMaxMillis = m.flushNanos.getMax() / 1_000_000;
+            this.uploads = m.uploads.sum();
+            this.uploadFailures = m.uploadFailures.sum();
+            this.uploadRetries = m.uploadRetries.sum();
+            this.rejectedBatches = m.rejectedBatches.sum();
+            this.uploadP50Millis = m.uploadNanos.getPercentile(0.5) / 1_000_000;
+            this.rawBytes = m.rawBytes.sum();
+            this.wireBytes = m.wireBytes.sum();
+            this.lastFlushCompressionRatio = m.lastFlushRatio;
+            this.queueDepth = m.queueDepth;
+        }
+
+        // Bytes sin comprimir por byte enviado (1 si no hay compresión)
+        public double getCompressionRatio() {
+            return wireBytes == 0 ? 0.0 : rawBytes / (double) wireBytes;
+        }
+
+        public String toJson() {
+            StringBuilder sb = new StringBuilder(512);
+            sb.append('{');
+            field(sb, "tiempo_activo_ms", uptimeMillis).append(',');
+            field(sb, "avistamientos", sightings).append(',');
+            field(sb, "avistamientos_por_segundo", sightingsPerSecond).append(',');
+            field(sb, "avistamientos_descartados", droppedSightings).append(',');
+            field(sb, "dispositivos_nuevos", newDevices).append(',');
+            field(sb, "dispositivos_por_ventana", devicesPerWindow).append(',');
+            field(sb, "hash_p50_ns", hashP50Nanos).append(',');
+            field(sb, "hash_p99_ns", hashP99Nanos).append(',');
+            field(sb, "avistamiento_p50_ns", sightingP50Nanos).append(',');
+            field(sb, "avistamiento_p99_ns", sightingP99Nanos).append(',');
+            field(sb, "avistamiento_max_ns", sightingMaxNanos).append(',');
+            field(sb, "envios", flushes).append(',');
+            field(sb, "errores_envio", flushErrors).append(',');
+            field(sb, "envio_p50_ms", flushP50Millis).append(',');
+            field(sb, "envio_max_ms", flushMaxMillis).append(',');
+            field(sb, "subidas", uploads).append(',');
+            field(sb, "subidas_fallidas", uploadFailures).append(',');
+            field(sb, "reintentos", uploadRetries).append(',');
+            field(sb, "lotes_rechazados", rejectedBatches).append(',');
+            field(sb, "subida_p50_ms", uploadP50Millis).append(',');
+            field(sb, "bytes_sin_comprimir", rawBytes).append(',');
+            field(sb, "bytes_enviados", wireBytes).append(',');
+            field(sb, "ratio_compresion", getCompressionRatio()).append(',');
+            field(sb, "ratio_compresion_ultimo_envio", lastFlushCompressionRatio).append(',');
+            field(sb, "lotes_pendientes", queueDepth);
+            return sb.append('}').toString();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "Avistamientos: %d (%.1f/s), %d descartados%n"
+                            + "Dispositivos nuevos: %d, por ventana: %.0f%n"
+                            + "Hash: p50 %d ns, p99 %d ns%n"
+                            + "Avistamiento: p50 %d ns, p99 %d ns, máx %d ns%n"
+                            + "Envíos: %d (%d errores), p50 %d ms, máx %d ms%n"
+                            + "Subidas: %d ok, %d fallidas, %d reintentos, %d lotes rechazados, p50 %d ms%n"
+                            + "Bytes: %d sin comprimir, %d enviados (x%.1f, último envío x%.1f)%n"
+                            + "Lotes pendientes: %d",
+                    sightings, sightingsPerSecond, droppedSightings, newDevices, devicesPerWindow,
+                    hashP50Nanos, hashP99Nanos, sightingP50Nanos, sightingP99Nanos, sightingMaxNanos,
+                    flushes, flushErrors, flushP50Millis, flushMaxMillis,
+                    uploads, uploadFailures, uploadRetries, rejectedBatches, uploadP50Millis,
+                    rawBytes, wireBytes, getCompressionRatio(), lastFlushCompressionRatio, queueDepth);
+        }
+
+        private static StringBuilder field(StringBuilder sb, String name, long value) {
+            return sb.append('"').append(name).append("\":").append(value);
+        }
+
+        private static StringBuilder field(StringBuilder sb, String name, double value) {
+            return sb.append('"').append(name).append("\":")
+                    .append(String.format(Locale.ROOT, "%.3f", value));
+        }
+    }
+}
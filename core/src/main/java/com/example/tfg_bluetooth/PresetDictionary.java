@@ -0,0 +1,211 @@
+package com.example.tfg_bluetooth;
+
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Diccionarios predefinidos para comprimir los lotes JSON con Deflater (formato zlib). Un lote
+ * pequeño repite las mismas claves y el mismo formato de fecha en cada registro; con gzip desde
+ * cero esas primeras apariciones van casi literales, mientras que con el diccionario se
+ * codifican como referencias desde el primer registro.
+ *
+ * Cada versión es inmutable: si cambia el esquema del JSON se añade una versión nueva y el
+ * servidor debe conocerla antes de que la usen los clientes. La cabecera zlib lleva el Adler-32
+ * del diccionario, así que el descompresor detecta un diccionario equivocado.
+ */
+public final class PresetDictionary {
+
+    public static final int VERSION = 1;
+    private static final String ENCODING_PREFIX = "x-tfg-deflate-v";
+    public static final String CONTENT_ENCODING = ENCODING_PREFIX + VERSION;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /*
+     * Versión 1: un registro de DeviceJsonWriter con ubicación y otro sin ella. Deflate prefiere
+     * las distancias cortas, así que lo más repetido (el final de un registro y el comienzo del
+     * siguiente) va al final.
+     */
+    private static final byte[] V1 = ascii("0123456789abcdef"
+            + "{\"0000000000000000000000000000000000000000000000000000000000000000\":{"
+            + "\"primera_fecha_hora\":\"2025-01-01 00:00:00\",\"ultima_fecha_hora\":\"2025-01-01 00:00:00\","
+            + "\"avistamientos\":1,\"rssi_min\":-100,\"rssi_max\":-90},"
+            + "\"ffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff\":{"
+            + "\"primera_fecha_hora\":\"2026-12-31 23:59:59\",\"ultima_fecha_hora\":\"2026-12-31 23:59:59\","
+            + "\"latitud\":37.177300,\"longitud\":-3.598600,\"edad_ubicacion_ms\":10000,"
+            + "\"avistamientos\":12,\"rssi_min\":-85,\"rssi_max\":-64}}");
+
+    private PresetDictionary() {
+    }
+
+    // Copia del diccionario de la versión indicada
+    public static byte[] forVersion(int version) {
+        if (version == 1) {
+            return V1.clone();
+        }
+        throw new IllegalArgumentException("Versión de diccionario desconocida: " + version);
+    }
+
+    // Versión del diccionario de un Content-Encoding, o -1 si no es de este formato
+    public static int versionOf(String contentEncoding) {
+        if (contentEncoding == null || !contentEncoding.startsWith(ENCODING_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(contentEncoding.substring(ENCODING_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Identificador del diccionario en la cabecera zlib (Adler-32)
+    public static int id(int version) {
+        return adler(forVersion(version));
+    }
+
+    /**
+     * Comprime con la versión actual del diccionario lo que se escriba en el stream devuelto.
+     * close() termina el flujo zlib y libera el Deflater, pero no cierra out.
+     */
+    public static OutputStream deflate(OutputStream out, int level) {
+        return new DictionaryDeflaterOutputStream(out, level, V1);
+    }
+
+    // Descompresor para lotes con Content-Encoding CONTENT_ENCODING (o versiones anteriores)
+    public static InputStream inflate(InputStream in, String contentEncoding) throws IOException {
+        int version = versionOf(contentEncoding);
+        if (version < 0) {
+            throw new ZipException("Content-Encoding no soportado: " + contentEncoding);
+        }
+        try {
+            return new DictionaryInflaterInputStream(in, forVersion(version));
+        } catch (IllegalArgumentException e) {
+            throw new ZipException(e.getMessage());
+        }
+    }
+
+    private static int adler(byte[] bytes) {
+        Adler32 adler = new Adler32();
+        adler.update(bytes);
+        return (int) adler.getValue();
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final class DictionaryDeflaterOutputStream extends FilterOutputStream {
+        private final Deflater deflater;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private boolean closed;
+
+        DictionaryDeflaterOutputStream(OutputStream out, int level, byte[] dictionary) {
+            super(out);
+            deflater = new Deflater(level);
+            deflater.setDictionary(dictionary);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream cerrado");
+            }
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                drain();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    drain();
+                }
+                out.flush();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private void drain() throws IOException {
+            int n = deflater.deflate(buffer, 0, buffer.length);
+            if (n > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+    }
+
+    private static final class DictionaryInflaterInputStream extends InputStream {
+        private final InputStream in;
+        private final Inflater inflater = new Inflater();
+        private final byte[] dictionary;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        DictionaryInflaterInputStream(InputStream in, byte[] dictionary) {
+            this.in = in;
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            try {
+                int n;
+                while ((n = inflater.inflate(b, off, len)) == 0) {
+                    if (inflater.finished()) {
+                        return -1;
+                    }
+                    if (inflater.needsDictionary()) {
+                        if (inflater.getAdler() != adler(dictionary)) {
+                            throw new ZipException("Diccionario no coincide");
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput()) {
+                        int read = in.read(buffer);
+                        if (read == -1) {
+                            throw new EOFException("Fin inesperado del flujo zlib");
+                        }
+                        inflater.setInput(buffer, 0, read);
+                    }
+                }
+                return n;
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.tfg_bluetooth;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reproduce un registro de avistamientos grabado con SightingLogWriter, conservando las marcas
+ * de tiempo originales. Con speed 0 se entrega todo lo más rápido posible; con speed 1 se
+ * respetan los intervalos grabados, con 10 se reproducen diez veces más deprisa, etc.
+ * Se ignoran las líneas vacías y las que empiezan por '#'.
+ */
+public final class ReplaySightingSource implements SightingSource {
+
+    private final File log;
+    private final double speed;
+    private final Clock clock;
+    private volatile Thread thread;
+    private volatile WindowListener windowListener;
+    private volatile IOException error;
+    private volatile long replayed;
+
+    public ReplaySightingSource(File log, double speed) {
+        this(log, speed, Clock.SYSTEM);
+    }
+
+    public ReplaySightingSource(File log, double speed, Clock clock) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("Velocidad no válida: " + speed);
+        }
+        this.log = log;
+        this.speed = speed;
+        this.clock = clock;
+    }
+
+    @Override
+    public void setWindowListener(WindowListener windowListener) {
+        this.windowListener = windowListener;
+    }
+
+    // Reproduce el registro en un hilo propio; al terminar se avisa con onWindowFinished()
+    @Override
+    public synchronized void start(final Listener listener) {
+        if (thread != null) {
+            return;
+        }
+        error = null;
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    replay(listener);
+                } catch (IOException e) {
+                    error = e;
+                } catch (InterruptedException e) {
+                    // stop() durante una espera
+                }
+                finished(Thread.currentThread());
+            }
+        }, "replay-source");
+        worker.setDaemon(true);
+        thread = worker;
+        WindowListener window = windowListener;
+        if (window != null) {
+            window.onWindowStarted();
+        }
+        worker.start();
+    }
+
+    @Override
+    public void stop() {
+        Thread worker = thread;
+        if (worker == null) {
+            return;
+        }
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return thread != null;
+    }
+
+    // Error de lectura de la última reproducción con start(), o null
+    public IOException getError() {
+        return error;
+    }
+
+    public long getReplayed() {
+        return replayed;
+    }
+
+    /**
+     * Reproduce el registro completo en el hilo que llama y devuelve cuántos avistamientos ha
+     * entregado. Solo espera entre avistamientos si speed es mayor que 0.
+     */
+    public long replay(Listener listener) throws IOException, InterruptedException {
+        long count = 0;
+        long firstTimestamp = 0;
+        long startMillis = clock.nowMillis();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(log), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                int first = line.indexOf(',');
+                int last = line.lastIndexOf(',');
+                if (first <= 0 || last == first) {
+                    throw new IOException("Línea " + lineNumber + " no válida: " + line);
+                }
+                long timestamp;
+                short rssi;
+                try {
+                    timestamp = Long.parseLong(line.substring(0, first));
+                    rssi = Short.parseShort(line.substring(last + 1));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Línea " + lineNumber + " no válida: " + line, e);
+                }
+                if (count == 0) {
+                    firstTimestamp = timestamp;
+                }
+                if (speed > 0) {
+                    long due = startMillis + (long) ((timestamp - firstTimestamp) / speed);
+                    long wait = due - clock.nowMillis();
+                    if (wait > 0) {
+                        Thread.sleep(wait);
+                    }
+                } else if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                listener.onSighting(line.substring(first + 1, last), rssi, timestamp);
+                count++;
+                replayed = count;
+            }
+        }
+        return count;
+    }
+
+    private synchronized void finished(Thread worker) {
+        if (thread != worker) {
+            return;
+        }
+        thread = null;
+        WindowListener window = windowListener;
+        if (window != null) {
+            window.onWindowFinished();
+        }
+    }
+}
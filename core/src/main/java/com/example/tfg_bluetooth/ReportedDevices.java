@@ -0,0 +1,146 @@
+package com.example.tfg_bluetooth;
+
+import java.util.Arrays;
+
+/**
+ * Dispositivos ya notificados al servidor, para los envíos incrementales: un dispositivo nuevo
+ * se envía completo y uno que sigue al alcance solo como actualización de última fecha.
+ *
+ * Son dos generaciones de filtros de Bloom: se consulta en ambas y se añade en la actual. La
+ * actual pasa a ser la anterior cuando se llena o cumple generationMillis, de modo que un
+ * dispositivo que deja de verse se olvida en dos generaciones como mucho y la memoria no crece.
+ * Los dispositivos que siguen presentes se vuelven a añadir en cada envío y no se olvidan.
+ *
+ * Un falso positivo hace que un dispositivo nuevo se envíe como actualización; el servidor
+ * debe darlo de alta con esa fecha como primera y última.
+ */
+public final class ReportedDevices {
+
+    private final int capacity;
+    private final int hashFunctions;
+    private final long generationMillis;
+    private final Clock clock;
+    private long[] current;
+    private long[] previous;
+    private int currentCount;
+    private long generationStart;
+
+    public ReportedDevices(int capacity, double falsePositiveRate, long generationMillis, Clock clock) {
+        if (capacity <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Capacidad o tasa de falsos positivos no válida");
+        }
+        // Tamaño óptimo: m = -n ln p / (ln 2)^2 bits y k = m/n ln 2 funciones
+        long bits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE / 64, (bits + 63) / 64);
+        this.capacity = capacity;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) words * 64 / capacity * Math.log(2)));
+        this.generationMillis = generationMillis;
+        this.clock = clock;
+        this.current = new long[words];
+        this.previous = new long[words];
+        this.generationStart = clock.nowMillis();
+    }
+
+    // true si el dispositivo se notificó en esta generación o en la anterior (o es un falso positivo)
+    public synchronized boolean contains(String hashedMac) {
+        long h1 = mix(word(hashedMac, 0) ^ word(hashedMac, 32));
+        long h2 = mix(word(hashedMac, 16) ^ word(hashedMac, 48)) | 1;
+        return contains(current, h1, h2) || contains(previous, h1, h2);
+    }
+
+    // Como contains(String), con los 32 bytes del hash a partir de off
+    public synchronized boolean contains(byte[] hash, int off) {
+        long h1 = mix(word(hash, off) ^ word(hash, off + 16));
+        long h2 = mix(word(hash, off + 8) ^ word(hash, off + 24)) | 1;
+        return contains(current, h1, h2) || contains(previous, h1, h2);
+    }
+
+    public synchronized void add(String hashedMac) {
+        add(mix(word(hashedMac, 0) ^ word(hashedMac, 32)), mix(word(hashedMac, 16) ^ word(hashedMac, 48)) | 1);
+    }
+
+    public synchronized void add(byte[] hash, int off) {
+        add(mix(word(hash, off) ^ word(hash, off + 16)), mix(word(hash, off + 8) ^ word(hash, off + 24)) | 1);
+    }
+
+    private void add(long h1, long h2) {
+        long now = clock.nowMillis();
+        if (currentCount >= capacity || now - generationStart >= generationMillis) {
+            rotate(now);
+        }
+        long bits = (long) current.length * 64;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bits);
+            current[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        currentCount++;
+    }
+
+    // Olvida todo: el siguiente envío volverá a mandar todos los dispositivos completos
+    public synchronized void clear() {
+        Arrays.fill(current, 0L);
+        Arrays.fill(previous, 0L);
+        currentCount = 0;
+        generationStart = clock.nowMillis();
+    }
+
+    public int getHashFunctions() {
+        return hashFunctions;
+    }
+
+    // Memoria ocupada por los dos filtros
+    public long getSizeBytes() {
+        return (long) current.length * 8 * 2;
+    }
+
+    private void rotate(long now) {
+        long[] recycled = previous;
+        Arrays.fill(recycled, 0L);
+        previous = current;
+        current = recycled;
+        currentCount = 0;
+        generationStart = now;
+    }
+
+    private boolean contains(long[] filter, long h1, long h2) {
+        long bits = (long) filter.length * 64;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bits);
+            if ((filter[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * El hash ya es SHA-256, pero se mezclan sus 32 bytes para que claves poco aleatorias (las de
+     * las pruebas, o un servidor que cambie de hash) no compartan posiciones en el filtro.
+     */
+    private static long word(String hex, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 16; i++) {
+            value = (value << 4) | Hex.digit(hex.charAt(i));
+        }
+        return value;
+    }
+
+    // Los mismos 16 dígitos que word(hex, 2 * offset), leídos como 8 bytes
+    private static long word(byte[] hash, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (hash[i] & 0xff);
+        }
+        return value;
+    }
+
+    // Paso final de MurmurHash3 (fmix64)
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe53e4c63L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
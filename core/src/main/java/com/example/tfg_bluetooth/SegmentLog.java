@@ -0,0 +1,297 @@
+package com.example.tfg_bluetooth;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Registro en disco de solo añadir, dividido en segmentos de tamaño fijo proyectados en memoria.
+ * Cada registro lleva su longitud y un CRC32, de modo que al reabrir el directorio se descartan
+ * los registros a medio escribir. Los segmentos sellados quedan pendientes hasta que se confirman
+ * con acknowledge(), que borra el fichero.
+ *
+ * Lo añadido entre dos seal() es un lote: los segmentos que se llenan por el camino no quedan
+ * pendientes hasta el seal(), y rollback() descarta el lote entero si no se pudo completar.
+ *
+ * Formato de segmento: [magic:int][versión:int] seguido de registros [longitud:int][crc:int][datos].
+ * Una longitud 0 marca el final de los registros escritos.
+ */
+public final class SegmentLog {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 256 * 1024;
+
+    private static final int MAGIC = 0x54464753; // "TFGS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_OVERHEAD = 8;
+    private static final String SUFFIX = ".seg";
+
+    // Recorre los registros de un segmento
+    public interface RecordVisitor {
+        void visit(ByteBuffer record) throws IOException;
+    }
+
+    // Segmento sellado: su contenido ya no cambia y puede leerse desde cualquier hilo
+    public static final class Segment {
+        private final File file;
+        private final long sequence;
+        private final long usedBytes;
+
+        Segment(File file, long sequence, long usedBytes) {
+            this.file = file;
+            this.sequence = sequence;
+            this.usedBytes = usedBytes;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Bytes ocupados por los registros, o -1 si no se conoce (segmentos encontrados al abrir el
+         * directorio). El fichero siempre mide el tamaño de segmento completo.
+         */
+        public long getUsedBytes() {
+            return usedBytes;
+        }
+
+        // Visita los registros válidos en orden; devuelve cuántos ha visitado
+        public int read(RecordVisitor visitor) throws IOException {
+            MappedByteBuffer buffer = map(file, FileChannel.MapMode.READ_ONLY, file.length());
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                return 0;
+            }
+            CRC32 crc = new CRC32();
+            byte[] scratch = new byte[64];
+            ByteBuffer view = ByteBuffer.wrap(scratch);
+            int position = HEADER_SIZE;
+            int records = 0;
+            while (position + RECORD_OVERHEAD <= buffer.limit()) {
+                int length = buffer.getInt(position);
+                if (length <= 0 || position + RECORD_OVERHEAD + length > buffer.limit()) {
+                    break;
+                }
+                if (scratch.length < length) {
+                    scratch = new byte[Math.max(length, scratch.length * 2)];
+                    view = ByteBuffer.wrap(scratch);
+                }
+                buffer.position(position + RECORD_OVERHEAD);
+                buffer.get(scratch, 0, length);
+                crc.reset();
+                crc.update(scratch, 0, length);
+                if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                    // Registro a medio escribir: lo que sigue no es fiable
+                    break;
+                }
+                // El mismo buffer se reutiliza para todos los registros: no debe guardarse
+                view.clear();
+                view.limit(length);
+                visitor.visit(view);
+                records++;
+                position += RECORD_OVERHEAD + length;
+            }
+            return records;
+        }
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private final List<Segment> sealed = new ArrayList<>();
+    // Segmentos llenos del lote en curso: se hacen pendientes en el siguiente seal()
+    private final List<Segment> filled = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+    private long nextSequence;
+
+    private MappedByteBuffer active;
+    private File activeFile;
+    private int activeRecords;
+
+    public SegmentLog(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    // Abre el directorio; los segmentos que ya existan quedan pendientes de envío
+    public SegmentLog(File directory, int segmentSize) throws IOException {
+        if (segmentSize <= HEADER_SIZE + RECORD_OVERHEAD) {
+            throw new IllegalArgumentException("Tamaño de segmento no válido: " + segmentSize);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("No se puede crear el directorio " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            List<Segment> existing = new ArrayList<>();
+            for (File file : files) {
+                long sequence = sequenceOf(file);
+                if (sequence >= 0) {
+                    existing.add(new Segment(file, sequence, -1));
+                }
+            }
+            sortBySequence(existing);
+            sealed.addAll(existing);
+            if (!existing.isEmpty()) {
+                nextSequence = existing.get(existing.size() - 1).sequence + 1;
+            }
+        }
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    // Tamaño máximo de un registro que cabe en un segmento vacío
+    public int getMaxRecordSize() {
+        return segmentSize - HEADER_SIZE - RECORD_OVERHEAD;
+    }
+
+    public synchronized void append(byte[] data, int off, int len) throws IOException {
+        if (len <= 0 || len > getMaxRecordSize()) {
+            throw new IllegalArgumentException("Tamaño de registro no válido: " + len);
+        }
+        if (active != null && active.position() + RECORD_OVERHEAD + len > segmentSize) {
+            closeActive();
+        }
+        if (active == null) {
+            openActive();
+        }
+        int position = active.position();
+        crc.reset();
+        crc.update(data, off, len);
+        // Los datos y el CRC se escriben antes que la longitud, que es lo que hace visible el registro
+        active.position(position + RECORD_OVERHEAD);
+        active.put(data, off, len);
+        active.putInt(position + 4, (int) crc.getValue());
+        active.putInt(position, len);
+        activeRecords++;
+    }
+
+    // Cierra el lote: el segmento activo (si tiene registros) y los llenados quedan pendientes de envío
+    public synchronized void seal() {
+        closeActive();
+        sealed.addAll(filled);
+        filled.clear();
+    }
+
+    /**
+     * Descarta lo añadido desde el último seal() (p. ej. tras un error a mitad de lote): borra el
+     * segmento activo y los que se llenaron por el camino, que nunca llegaron a estar pendientes.
+     */
+    public synchronized void rollback() {
+        if (active != null) {
+            filled.add(new Segment(activeFile, sequenceOf(activeFile), active.position() - HEADER_SIZE));
+            active = null;
+            activeFile = null;
+            activeRecords = 0;
+        }
+        for (Segment segment : filled) {
+            if (segment.file.exists() && !segment.file.delete()) {
+                segment.file.deleteOnExit();
+            }
+        }
+        filled.clear();
+    }
+
+    public synchronized List<Segment> pendingSegments() {
+        return new ArrayList<>(sealed);
+    }
+
+    // Borra un segmento que el servidor ya ha confirmado
+    public synchronized void acknowledge(Segment segment) throws IOException {
+        if (!sealed.remove(segment)) {
+            return;
+        }
+        if (segment.file.exists() && !segment.file.delete()) {
+            throw new IOException("No se puede borrar " + segment.file);
+        }
+    }
+
+    /**
+     * Quita un segmento pendiente sin borrarlo, moviéndolo a directory (p. ej. un lote que el
+     * servidor rechaza sin remedio y que hay que conservar para revisarlo).
+     */
+    public synchronized void moveTo(Segment segment, File directory) throws IOException {
+        if (!sealed.contains(segment)) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("No se puede crear el directorio " + directory);
+        }
+        File target = new File(directory, segment.file.getName());
+        if (!segment.file.renameTo(target)) {
+            throw new IOException("No se puede mover " + segment.file + " a " + directory);
+        }
+        sealed.remove(segment);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    private void closeActive() {
+        if (active == null) {
+            return;
+        }
+        active.force();
+        if (activeRecords > 0) {
+            filled.add(new Segment(activeFile, sequenceOf(activeFile), active.position() - HEADER_SIZE));
+        } else if (!activeFile.delete()) {
+            activeFile.deleteOnExit();
+        }
+        active = null;
+        activeFile = null;
+        activeRecords = 0;
+    }
+
+    private void openActive() throws IOException {
+        activeFile = new File(directory, String.format("%016d%s", nextSequence++, SUFFIX));
+        active = map(activeFile, FileChannel.MapMode.READ_WRITE, segmentSize);
+        active.putInt(0, MAGIC);
+        active.putInt(4, VERSION);
+        active.position(HEADER_SIZE);
+        activeRecords = 0;
+    }
+
+    private static MappedByteBuffer map(File file, FileChannel.MapMode mode, long size) throws IOException {
+        // La proyección sigue siendo válida después de cerrar el canal
+        try (RandomAccessFile raf = new RandomAccessFile(file, mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw");
+             FileChannel channel = raf.getChannel()) {
+            return channel.map(mode, 0, size);
+        }
+    }
+
+    private static long sequenceOf(File file) {
+        String name = file.getName();
+        if (!name.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void sortBySequence(List<Segment> segments) {
+        Collections.sort(segments, new Comparator<Segment>() {
+            @Override
+            public int compare(Segment a, Segment b) {
+                return Long.compare(a.sequence, b.sequence);
+            }
+        });
+    }
+}
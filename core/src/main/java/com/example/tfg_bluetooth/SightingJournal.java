@@ -0,0 +1,354 @@
+package com.example.tfg_bluetooth;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Diario en disco de los avistamientos del lote en curso, para no perderlos si el proceso muere
+ * entre dos envíos. Cada lote de SightingStore escribe en su propia generación: un SegmentLog
+ * proyectado en memoria en un subdirectorio. Añadir un avistamiento es copiar unas decenas de
+ * bytes en la proyección, sin llamadas al sistema, y el núcleo conserva las páginas aunque el
+ * proceso muera. Cuando el lote ya está en el outbox, su generación se borra; al arrancar, lo
+ * que quede se recupera con recover() (ver Collector.setJournal).
+ *
+ * Además de los avistamientos, la generación anota lo que de su lote ya se ha guardado por
+ * otro camino, para que recover() devuelva solo lo que nunca llegó al outbox:
+ * - un desalojo escribe una marca por dispositivo al sacarlo de la tabla y, cuando el outbox lo
+ *   ha aceptado, una confirmación; sin confirmación las marcas no cuentan. Una marca confirmada
+ *   anula lo anterior del dispositivo en la generación.
+ * - reincorporar un lote que no se pudo guardar escribe cada registro en la generación activa y
+ *   al final una marca con la generación de origen, que desde entonces ya no se lee; sin esa
+ *   marca los registros no cuentan y la de origen se lee entera.
+ *
+ * Registros, con el tipo en el primer byte:
+ * - AVISTAMIENTO: [hash:32][fecha:long][rssi:short][latitud:double][longitud:double][instante de
+ *   la posición:long]
+ * - DESALOJADO: [desalojo:int][hash:32]
+ * - DESALOJO_GUARDADO: [desalojo:int]
+ * - REGISTRO: [generación de origen, o -1:long][registro de DeviceRecordCodec]
+ * - REINCORPORADA: [generación de origen:long]
+ *
+ * Como SightingLogWriter, append() no lanza excepciones: el primer error se guarda, la
+ * generación deja de escribir y delete() lo relanza.
+ */
+public final class SightingJournal {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    private static final byte SIGHTING = 1;
+    private static final byte SPILLED = 2;
+    private static final byte SPILL_SAVED = 3;
+    private static final byte ROW = 4;
+    private static final byte MERGED = 5;
+
+    static final int MAX_RECORD_SIZE = 1 + 8 + DeviceRecordCodec.RECORD_SIZE;
+
+    // Escritura de un lote; el directorio se crea con el primer registro
+    public static final class Generation {
+        private final File directory;
+        private final long sequence;
+        private final int segmentSize;
+        private final byte[] scratch = new byte[MAX_RECORD_SIZE];
+        private final ByteBuffer view = ByteBuffer.wrap(scratch);
+        private final byte[] encoded = new byte[DeviceRecordCodec.RECORD_SIZE];
+        private final DeviceRecordCodec codec = new DeviceRecordCodec();
+        private SegmentLog log;
+        private IOException error;
+        private int nextSpill;
+
+        Generation(File directory, long sequence, int segmentSize) {
+            this.directory = directory;
+            this.sequence = sequence;
+            this.segmentSize = segmentSize;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public synchronized void append(CharSequence hashedMac, long timestamp, short rssi, double latitud,
+                                        double longitud, long locationTime) {
+            if (error != null) {
+                return;
+            }
+            try {
+                Hex.decode(hashedMac, scratch, 1);
+            } catch (IllegalArgumentException e) {
+                error = new IOException("No se pudo escribir en el diario", e);
+                return;
+            }
+            view.clear();
+            view.put(SIGHTING).position(1 + MacHasher.HASH_LENGTH);
+            view.putLong(timestamp).putShort(rssi).putDouble(latitud).putDouble(longitud).putLong(locationTime);
+            write();
+        }
+
+        /**
+         * Anota que las filas de spilled salen de la tabla hacia el outbox y devuelve el número de
+         * desalojo para spillSaved(). Hay que llamarlo en el mismo orden que los avistamientos
+         * (con el cerrojo de la tabla), antes de que vuelvan a aparecer.
+         */
+        public synchronized int appendSpill(DeviceTable spilled) {
+            int spill = ++nextSpill;
+            for (int row = 0; row < spilled.size() && error == null; row++) {
+                view.clear();
+                view.put(SPILLED).putInt(spill);
+                spilled.copyHash(row, scratch, view.position());
+                view.position(view.position() + MacHasher.HASH_LENGTH);
+                write();
+            }
+            return spill;
+        }
+
+        // El desalojo ya está en el outbox: sus marcas anulan lo anterior de esos dispositivos
+        public synchronized void spillSaved(int spill) {
+            view.clear();
+            view.put(SPILL_SAVED).putInt(spill);
+            write();
+        }
+
+        /**
+         * Registro de un lote de la generación source que se reincorpora; cuenta tras
+         * merged(source). Con source -1 cuenta siempre (p. ej. lo que no cupo en la tabla).
+         */
+        public synchronized void appendRow(long source, byte[] hash, int off, DeviceRecord record) {
+            int length = codec.encode(hash, off, record, encoded);
+            view.clear();
+            view.put(ROW).putLong(source).put(encoded, 0, length);
+            write();
+        }
+
+        // El lote de source ya está entero en esta generación
+        public synchronized void merged(long source) {
+            view.clear();
+            view.put(MERGED).putLong(source);
+            write();
+        }
+
+        /**
+         * Borra la generación, cuando su lote ya está a salvo en el outbox. Relanza el primer error
+         * de escritura: parte del lote se ha guardado sin copia en el diario.
+         */
+        public synchronized void delete() throws IOException {
+            log = null;
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (!file.delete()) {
+                        file.deleteOnExit();
+                    }
+                }
+            }
+            if (directory.exists() && !directory.delete()) {
+                directory.deleteOnExit();
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        // Con el cerrojo de la generación: añade el registro preparado en scratch
+        private void write() {
+            if (error != null) {
+                return;
+            }
+            try {
+                if (log == null) {
+                    log = new SegmentLog(directory, segmentSize);
+                }
+                log.append(scratch, 0, view.position());
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+
+        // Recorre los registros escritos, con el tipo en la primera posición
+        private void read(SegmentLog.RecordVisitor visitor) throws IOException {
+            if (!directory.isDirectory()) {
+                return;
+            }
+            for (SegmentLog.Segment segment : new SegmentLog(directory, segmentSize).pendingSegments()) {
+                segment.read(visitor);
+            }
+        }
+    }
+
+    // Desalojos confirmados y generaciones reincorporadas de una generación
+    private static final class Markers implements SegmentLog.RecordVisitor {
+        final Set<Integer> savedSpills = new HashSet<>();
+        final Set<Long> merged = new HashSet<>();
+
+        @Override
+        public void visit(ByteBuffer record) throws IOException {
+            byte type = record.get();
+            if (type == SPILL_SAVED) {
+                savedSpills.add(record.getInt());
+            } else if (type == MERGED) {
+                merged.add(record.getLong());
+            }
+        }
+    }
+
+    // Agrega los registros de una generación aplicando sus marcas
+    private static final class Replay implements SegmentLog.RecordVisitor {
+        final Map<String, DeviceRecord> devices = new LinkedHashMap<>();
+        private final Markers markers;
+        private final byte[] hash = new byte[MacHasher.HASH_LENGTH];
+        private final DeviceRecordCodec codec = new DeviceRecordCodec();
+
+        Replay(Markers markers) {
+            this.markers = markers;
+        }
+
+        @Override
+        public void visit(ByteBuffer record) throws IOException {
+            byte type = record.get();
+            if (type == SIGHTING) {
+                String hashedMac = readHash(record);
+                long timestamp = record.getLong();
+                short rssi = record.getShort();
+                double latitud = record.getDouble();
+                double longitud = record.getDouble();
+                long locationTime = record.getLong();
+                DeviceRecord device = devices.get(hashedMac);
+                if (device == null) {
+                    devices.put(hashedMac, new DeviceRecord(timestamp, rssi, latitud, longitud, locationTime));
+                } else {
+                    device.update(timestamp, rssi, latitud, longitud, locationTime);
+                }
+            } else if (type == SPILLED) {
+                int spill = record.getInt();
+                String hashedMac = readHash(record);
+                if (markers.savedSpills.contains(spill)) {
+                    devices.remove(hashedMac);
+                }
+            } else if (type == ROW) {
+                long source = record.getLong();
+                if (source >= 0 && !markers.merged.contains(source)) {
+                    return;
+                }
+                DeviceRecord row = new DeviceRecord(0L, DeviceRecord.RSSI_UNKNOWN, 0.0, 0.0);
+                try {
+                    codec.decode(record, hash, row);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Registro de diario no válido", e);
+                }
+                merge(devices, Hex.encode(hash), row);
+            } else if (type != SPILL_SAVED && type != MERGED) {
+                throw new IOException("Registro de diario no válido: tipo " + type);
+            }
+        }
+
+        private String readHash(ByteBuffer record) {
+            record.get(hash);
+            return Hex.encode(hash);
+        }
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private final List<Generation> leftovers = new ArrayList<>();
+    private long nextSequence;
+
+    public SightingJournal(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    // Abre el directorio; las generaciones que ya existan son lotes que no llegaron al outbox
+    public SightingJournal(File directory, int segmentSize) throws IOException {
+        if (segmentSize < MAX_RECORD_SIZE + 16) {
+            throw new IllegalArgumentException("Tamaño de segmento no válido: " + segmentSize);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("No se puede crear el directorio " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        List<Long> sequences = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                long sequence = sequenceOf(file);
+                if (sequence >= 0 && file.isDirectory()) {
+                    sequences.add(sequence);
+                }
+            }
+        }
+        Collections.sort(sequences);
+        for (long sequence : sequences) {
+            leftovers.add(new Generation(fileFor(sequence), sequence, segmentSize));
+        }
+        if (!sequences.isEmpty()) {
+            nextSequence = sequences.get(sequences.size() - 1) + 1;
+        }
+    }
+
+    // Generaciones de una ejecución anterior, de la más antigua a la más reciente
+    public synchronized List<Generation> leftovers() {
+        return new ArrayList<>(leftovers);
+    }
+
+    // Generación para un lote nuevo
+    public synchronized Generation newGeneration() {
+        return new Generation(fileFor(nextSequence), nextSequence++, segmentSize);
+    }
+
+    /**
+     * Dispositivos de las generaciones dadas que no se han guardado por otro camino: se omiten
+     * las generaciones reincorporadas en otra de la lista y, en cada una, lo que anulan sus
+     * desalojos confirmados. Cada generación se agrega por separado y el resultado se combina.
+     */
+    public static Map<String, DeviceRecord> recover(List<Generation> generations) throws IOException {
+        List<Markers> markers = new ArrayList<>(generations.size());
+        Set<Long> merged = new HashSet<>();
+        for (Generation generation : generations) {
+            Markers found = new Markers();
+            generation.read(found);
+            markers.add(found);
+            merged.addAll(found.merged);
+        }
+        Map<String, DeviceRecord> devices = new LinkedHashMap<>();
+        for (int i = 0; i < generations.size(); i++) {
+            Generation generation = generations.get(i);
+            if (merged.contains(generation.getSequence())) {
+                continue;
+            }
+            Replay replay = new Replay(markers.get(i));
+            generation.read(replay);
+            for (Map.Entry<String, DeviceRecord> entry : replay.devices.entrySet()) {
+                merge(devices, entry.getKey(), entry.getValue());
+            }
+        }
+        return devices;
+    }
+
+    private static void merge(Map<String, DeviceRecord> devices, String hashedMac, DeviceRecord record) {
+        DeviceRecord existing = devices.get(hashedMac);
+        if (existing == null) {
+            devices.put(hashedMac, record);
+        } else {
+            existing.merge(record);
+        }
+    }
+
+    private File fileFor(long sequence) {
+        return new File(directory, String.format("%016d", sequence));
+    }
+
+    private static long sequenceOf(File file) {
+        try {
+            return Long.parseLong(file.getName());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
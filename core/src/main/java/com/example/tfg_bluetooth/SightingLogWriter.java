@@ -0,0 +1,60 @@
+package com.example.tfg_bluetooth;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Graba avistamientos en el formato que lee ReplaySightingSource: una línea
+ * "timestamp,dirección,rssi" por avistamiento. Las direcciones se graban sin hash, así que los
+ * registros solo deben tomarse en pruebas controladas.
+ *
+ * onSighting no puede lanzar excepciones: el primer error de escritura se guarda, se dejan de
+ * grabar avistamientos y close() lo relanza.
+ */
+public final class SightingLogWriter implements SightingSource.Listener, Closeable {
+
+    private final Writer out;
+    private IOException error;
+    private long written;
+
+    public SightingLogWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public synchronized void onSighting(String address, short rssi, long timestamp) {
+        if (error != null) {
+            return;
+        }
+        try {
+            out.write(Long.toString(timestamp));
+            out.write(',');
+            out.write(address);
+            out.write(',');
+            out.write(Short.toString(rssi));
+            out.write('\n');
+            written++;
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    public synchronized long getWritten() {
+        return written;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            out.close();
+        } catch (IOException e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.tfg_bluetooth;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Etapa de ingesta entre el origen de avistamientos y el Collector. El productor (el hilo que
+ * recibe los avistamientos, en Android el principal) solo copia la MAC empaquetada, el RSSI y la
+ * fecha en arrays preasignados; un hilo propio los saca por tandas y hace el hash y la agregación.
+ * Así onReceive no calcula hashes ni toca el almacén, y una ráfaga no retiene el hilo principal.
+ *
+ * Es un búfer circular de un solo productor y un solo consumidor: los índices son AtomicLong y
+ * cada lado solo escribe el suyo, sin cerrojos. Si se llena, la política Overflow decide:
+ * DROP_NEWEST descarta el avistamiento y lo cuenta (lo adecuado en el hilo principal), WAIT espera
+ * a que haya sitio (para orígenes que no pueden perder nada, como la reproducción de trazas).
+ */
+public final class SightingRing implements SightingSource.Listener {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    public enum Overflow { DROP_NEWEST, WAIT }
+
+    // Recibe los avistamientos en el hilo de ingesta, con la MAC en los 48 bits bajos
+    public interface Consumer {
+        void onSighting(long mac, short rssi, long timestamp);
+    }
+
+    private final long[] macs;
+    private final short[] rssis;
+    private final long[] timestamps;
+    private final int mask;
+    private final int batchSize;
+    private final Overflow overflow;
+    private final Consumer consumer;
+
+    // Siguiente ranura a escribir (solo el productor) y a leer (solo el consumidor)
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    // Última cabeza vista por el productor, para no leer head en cada avistamiento
+    private long headCache;
+
+    private final LongAdder offered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder invalid = new LongAdder();
+    private final LongAdder consumerErrors = new LongAdder();
+    private volatile int highWaterMark;
+    private volatile boolean consumerWaiting;
+    private volatile boolean running;
+    private volatile PipelineMetrics metrics;
+    private volatile Thread worker;
+
+    public SightingRing(Consumer consumer) {
+        this(DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, Overflow.DROP_NEWEST, consumer);
+    }
+
+    // capacity se redondea a la siguiente potencia de dos
+    public SightingRing(int capacity, int batchSize, Overflow overflow, Consumer consumer) {
+        if (capacity < 2 || capacity > (1 << 24) || batchSize < 1) {
+            throw new IllegalArgumentException("Capacidad o tanda no válidas: " + capacity + ", " + batchSize);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.macs = new long[size];
+        this.rssis = new short[size];
+        this.timestamps = new long[size];
+        this.mask = size - 1;
+        this.batchSize = batchSize;
+        this.overflow = overflow;
+        this.consumer = consumer;
+    }
+
+    // Cuenta los avistamientos descartados también en las métricas de la ruta
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Arranca el hilo de ingesta
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainLoop();
+            }
+        }, "ingest");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Detiene el hilo de ingesta después de entregar lo que quede en el búfer. Lo que llegue
+     * después se guarda (si cabe) hasta el siguiente start().
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        worker = null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Lado del productor: una dirección no válida se cuenta y se ignora
+    @Override
+    public void onSighting(String address, short rssi, long timestamp) {
+        long mac;
+        try {
+            mac = MacHasher.parseMac(address);
+        } catch (IllegalArgumentException e) {
+            invalid.increment();
+            return;
+        }
+        offer(mac, rssi, timestamp);
+    }
+
+    /**
+     * Copia el avistamiento en el búfer; solo puede llamarlo un hilo. Devuelve false si se ha
+     * descartado porque el búfer está lleno (DROP_NEWEST) o detenido.
+     */
+    public boolean offer(long mac, short rssi, long timestamp) {
+        offered.increment();
+        long t = tail.get();
+        int capacity = mask + 1;
+        if (t - headCache >= capacity) {
+            headCache = head.get();
+            while (t - headCache >= capacity) {
+                if (overflow == Overflow.DROP_NEWEST || !running) {
+                    drop();
+                    return false;
+                }
+                LockSupport.parkNanos(10_000);
+                headCache = head.get();
+            }
+        }
+        int slot = (int) t & mask;
+        macs[slot] = mac;
+        rssis[slot] = rssi;
+        timestamps[slot] = timestamp;
+        // Escritura volátil: publica la ranura y ordena la lectura de consumerWaiting
+        tail.set(t + 1);
+        int depth = (int) (t + 1 - headCache);
+        if (depth > highWaterMark) {
+            highWaterMark = depth;
+        }
+        if (consumerWaiting) {
+            LockSupport.unpark(worker);
+        }
+        return true;
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    // Avistamientos pendientes de procesar (aproximado)
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public long getOffered() {
+        return offered.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    // Direcciones que no se pudieron interpretar
+    public long getInvalid() {
+        return invalid.sum();
+    }
+
+    // Avistamientos en los que el consumidor lanzó una excepción
+    public long getConsumerErrors() {
+        return consumerErrors.sum();
+    }
+
+    // Máxima ocupación vista por el productor
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    private void drop() {
+        dropped.increment();
+        PipelineMetrics current = metrics;
+        if (current != null) {
+            current.onSightingDropped();
+        }
+    }
+
+    private void drainLoop() {
+        while (true) {
+            if (drain() > 0) {
+                continue;
+            }
+            if (!running) {
+                // stop(): lo publicado antes de parar ya se ha entregado
+                if (drain() == 0) {
+                    return;
+                }
+                continue;
+            }
+            consumerWaiting = true;
+            if (tail.get() == head.get() && running) {
+                LockSupport.park(this);
+            }
+            consumerWaiting = false;
+        }
+    }
+
+    // Entrega hasta batchSize avistamientos y libera sus ranuras de una vez
+    private int drain() {
+        long h = head.get();
+        int n = (int) Math.min(tail.get() - h, batchSize);
+        for (int i = 0; i < n; i++) {
+            int slot = (int) (h + i) & mask;
+            try {
+                consumer.onSighting(macs[slot], rssis[slot], timestamps[slot]);
+            } catch (RuntimeException e) {
+                // Un avistamiento defectuoso no debe parar la ingesta
+                consumerErrors.increment();
+            }
+        }
+        if (n > 0) {
+            head.set(h + n);
+        }
+        return n;
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.tfg_bluetooth;
+
+/**
+ * Origen de avistamientos (búsqueda clásica, BLE, generadores de prueba...). Todos alimentan
+ * la misma ruta: hash de la MAC, posición y SightingStore.
+ */
+public interface SightingSource {
+
+    // Se invoca por cada dispositivo detectado; timestamp en milisegundos de System.currentTimeMillis()
+    interface Listener {
+        void onSighting(String address, short rssi, long timestamp);
+    }
+
+    // Comienzo y fin de cada ventana de búsqueda, para liberar recursos durante las pausas
+    interface WindowListener {
+        void onWindowStarted();
+
+        void onWindowFinished();
+    }
+
+    void setWindowListener(WindowListener windowListener);
+
+    void start(Listener listener);
+
+    void stop();
+
+    boolean isRunning();
+}
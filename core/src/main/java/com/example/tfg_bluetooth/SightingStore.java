@@ -0,0 +1,594 @@
+package com.example.tfg_bluetooth;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Almacén de avistamientos con doble buffer. Los escritores agregan en el buffer activo sin
+ * ningún cerrojo global; el hilo de envío lo sustituye atómicamente por uno vacío con swap()
+ * y recibe el anterior ya congelado, sin escritores en curso, para serializarlo.
+ *
+ * Cada escritor se anuncia en el contador del buffer y comprueba después que sigue siendo el
+ * activo; swap() espera a que ese contador llegue a cero. Así ningún avistamiento se pierde
+ * ni se cuenta en dos lotes.
+ *
+ * Con un máximo de dispositivos el almacén usa DeviceTable en lugar del mapa: la memoria queda
+ * reservada y acotada, los escritores se serializan con el cerrojo de la tabla y, si un
+ * dispositivo nuevo no cabe, la octava parte más antigua sale por el SpillListener (p. ej. al
+ * outbox) antes de registrarlo. Si el SpillListener falla, esas filas vuelven a la tabla y el
+ * dispositivo nuevo solo se anota en una generación aparte del diario (retiredOrphans()) hasta
+ * el siguiente lote, en el que se vuelve a intentar. En ese modo record() no devuelve registro
+ * (ver snapshot()) y el lote se recoge con swapTable(), para guardarlo fila a fila sin crear
+ * un mapa.
+ *
+ * Con un SightingJournal cada buffer escribe sus avistamientos en una generación del diario;
+ * swap() la retira y releaseJournal() borra las retiradas cuando su lote ya está guardado. Los
+ * desalojos y los lotes reincorporados con merge() también se anotan en la generación, para que
+ * SightingJournal.recover() no cuente dos veces lo que ya llegó al outbox.
+ */
+public final class SightingStore {
+
+    // Aviso de dispositivo nuevo en el lote actual (p. ej. para los umbrales de FlushScheduler)
+    public interface NewDeviceListener {
+        void onNewDevice(String hashedMac, DeviceRecord record);
+    }
+
+    /**
+     * Recibe los dispositivos más antiguos que se sacan de una tabla llena; devices solo vale
+     * durante la llamada. Si lanza la excepción, no se han guardado y vuelven a la tabla.
+     */
+    public interface SpillListener {
+        void onSpill(DeviceTable devices) throws IOException;
+    }
+
+    private static final class Buffer {
+        final ConcurrentHashMap<String, DeviceRecord> devices;
+        final DeviceTable table;
+        final SightingJournal.Generation generation;
+        final AtomicInteger writers = new AtomicInteger();
+        // Con el cerrojo de la tabla: lo que no cupo tras un desalojo fallido, y si lo hubo
+        SightingJournal.Generation orphans;
+        boolean spillFailed;
+
+        Buffer(SightingJournal.Generation generation) {
+            this.devices = new ConcurrentHashMap<>();
+            this.table = null;
+            this.generation = generation;
+        }
+
+        Buffer(DeviceTable table, SightingJournal.Generation generation) {
+            this.devices = null;
+            this.table = table;
+            this.generation = generation;
+        }
+    }
+
+    private final AtomicReference<Buffer> active;
+    private final NewDeviceListener listener;
+    private final SpillListener spillListener;
+    private final int maxDevices;
+    private final int spillCount;
+    // Tabla para los desalojos, reutilizada si no hay dos a la vez
+    private final AtomicReference<DeviceTable> spareSpill = new AtomicReference<>();
+    private final SightingJournal journal;
+    // Generaciones de buffers ya sustituidos cuyo lote aún no se ha confirmado como guardado
+    private final List<SightingJournal.Generation> retired = new ArrayList<>();
+    // Generación del último buffer sustituido: la del lote que merge() reincorpora
+    private SightingJournal.Generation lastRetired;
+    // Generaciones con los dispositivos que no cupieron en buffers ya sustituidos; con el cerrojo de retired
+    private final List<SightingJournal.Generation> retiredOrphans = new ArrayList<>();
+    // Tabla vacía para el siguiente swapTable(), devuelta por recycle(); con el cerrojo del almacén
+    private DeviceTable spare;
+
+    public SightingStore() {
+        this(null);
+    }
+
+    public SightingStore(NewDeviceListener listener) {
+        this(listener, null);
+    }
+
+    // Como el anterior, copiando cada avistamiento en journal (null para no usar diario)
+    public SightingStore(NewDeviceListener listener, SightingJournal journal) {
+        this.listener = listener;
+        this.spillListener = null;
+        this.maxDevices = 0;
+        this.spillCount = 0;
+        this.journal = journal;
+        this.active = new AtomicReference<>(new Buffer(newGeneration()));
+    }
+
+    /**
+     * Almacén con un máximo de maxDevices dispositivos por lote en dos DeviceTable que se
+     * alternan. spillListener recibe los que se sacan al llenarse; si es null se descartan.
+     */
+    public SightingStore(NewDeviceListener listener, int maxDevices, SpillListener spillListener) {
+        this(listener, maxDevices, spillListener, null);
+    }
+
+    public SightingStore(NewDeviceListener listener, int maxDevices, SpillListener spillListener,
+                         SightingJournal journal) {
+        this.listener = listener;
+        this.spillListener = spillListener;
+        this.maxDevices = maxDevices;
+        this.spillCount = Math.max(1, maxDevices / 8);
+        this.journal = journal;
+        this.active = new AtomicReference<>(new Buffer(new DeviceTable(maxDevices), newGeneration()));
+        this.spare = new DeviceTable(maxDevices);
+    }
+
+    // Registra un avistamiento con la posición tomada en ese mismo instante
+    public DeviceRecord record(String hashedMac, long timestamp, short rssi, double latitud, double longitud) {
+        return record(hashedMac, timestamp, rssi, latitud, longitud, timestamp);
+    }
+
+    /**
+     * Registra un avistamiento y devuelve el registro agregado del dispositivo en el lote actual
+     * (null con DeviceTable). locationTime es el instante de la posición (DeviceRecord.NO_LOCATION
+     * si no hay ninguna).
+     */
+    public DeviceRecord record(String hashedMac, long timestamp, short rssi, double latitud, double longitud,
+                               long locationTime) {
+        return record(hashedMac, timestamp, rssi, latitud, longitud, locationTime, null);
+    }
+
+    /**
+     * Como el anterior, y además copia en copy (si no es null) el registro agregado tal como
+     * queda tras el avistamiento, también con DeviceTable. La copia se hace con el mismo cerrojo
+     * que la actualización, así que es coherente aunque haya otros escritores.
+     */
+    public DeviceRecord record(String hashedMac, long timestamp, short rssi, double latitud, double longitud,
+                               long locationTime, DeviceRecord copy) {
+        Buffer buffer = acquire();
+        try {
+            if (buffer.table != null) {
+                recordInTable(buffer, hashedMac, timestamp, rssi, latitud, longitud, locationTime, copy);
+                return null;
+            }
+            // Dentro del buffer: el avistamiento va a la generación del mismo lote que lo agrega
+            if (buffer.generation != null) {
+                buffer.generation.append(hashedMac, timestamp, rssi, latitud, longitud, locationTime);
+            }
+            DeviceRecord record = buffer.devices.get(hashedMac);
+            if (record == null) {
+                DeviceRecord created = new DeviceRecord(timestamp, rssi, latitud, longitud, locationTime);
+                record = buffer.devices.putIfAbsent(hashedMac, created);
+                if (record == null) {
+                    if (copy != null) {
+                        synchronized (created) {
+                            copy(created, copy);
+                        }
+                    }
+                    if (listener != null) {
+                        listener.onNewDevice(hashedMac, created);
+                    }
+                    return created;
+                }
+            }
+            // Cerrojo por dispositivo: solo compiten escritores del mismo dispositivo
+            synchronized (record) {
+                record.update(timestamp, rssi, latitud, longitud, locationTime);
+                if (copy != null) {
+                    copy(record, copy);
+                }
+            }
+            return record;
+        } finally {
+            buffer.writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Reincorpora el lote del último swap() que no se pudo guardar, para no perderlo. Con diario,
+     * cada registro se copia en la generación activa y al terminar la del lote queda sustituida
+     * por ella (ver SightingJournal); sigue en disco hasta el siguiente releaseJournal().
+     */
+    public void merge(Map<String, DeviceRecord> devices) {
+        Buffer buffer = acquire();
+        try {
+            long source = mergeSource(buffer);
+            byte[] hash = new byte[MacHasher.HASH_LENGTH];
+            for (Map.Entry<String, DeviceRecord> entry : devices.entrySet()) {
+                if (buffer.table != null) {
+                    Hex.decode(entry.getKey(), hash, 0);
+                    mergeInTable(buffer, hash, entry.getValue(), source);
+                } else {
+                    mergeInMap(buffer, entry.getKey(), entry.getValue(), source);
+                }
+            }
+            if (source >= 0) {
+                buffer.generation.merged(source);
+            }
+        } finally {
+            buffer.writers.decrementAndGet();
+        }
+    }
+
+    // Como merge(Map), con las filas de una tabla devuelta por swapTable()
+    public void merge(DeviceTable devices) {
+        Buffer buffer = acquire();
+        try {
+            long source = mergeSource(buffer);
+            byte[] hash = new byte[MacHasher.HASH_LENGTH];
+            for (int row = 0; row < devices.size(); row++) {
+                devices.copyHash(row, hash, 0);
+                DeviceRecord record = devices.snapshot(row);
+                if (buffer.table != null) {
+                    mergeInTable(buffer, hash, record, source);
+                } else {
+                    mergeInMap(buffer, Hex.encode(hash), record, source);
+                }
+            }
+            if (source >= 0) {
+                buffer.generation.merged(source);
+            }
+        } finally {
+            buffer.writers.decrementAndGet();
+        }
+    }
+
+    // true si el almacén usa DeviceTable (se creó con un máximo de dispositivos)
+    public boolean hasTable() {
+        return maxDevices > 0;
+    }
+
+    /**
+     * Sustituye el buffer activo por uno vacío y devuelve el anterior. El mapa devuelto ya no
+     * recibe escrituras y puede recorrerse sin sincronización. Con DeviceTable copia la tabla en
+     * un mapa; para no hacerlo, swapTable().
+     */
+    public Map<String, DeviceRecord> swap() {
+        if (hasTable()) {
+            DeviceTable table = swapTable();
+            try {
+                return table.toMap();
+            } finally {
+                recycle(table);
+            }
+        }
+        Buffer previous = active.getAndSet(new Buffer(newGeneration()));
+        awaitWriters(previous);
+        retire(previous);
+        return previous.devices;
+    }
+
+    /**
+     * Como swap(), pero devuelve los dispositivos agrupados por celda geohash de cellPrecision
+     * caracteres, en el orden en que aparece cada celda, y al final los que no tienen posición.
+     * El orden se conserva en el outbox, así que los formatos con celdas envían cada una una
+     * sola vez. Con cellPrecision 0 no agrupa.
+     */
+    public Map<String, DeviceRecord> swap(int cellPrecision) {
+        Map<String, DeviceRecord> devices = swap();
+        if (cellPrecision == 0 || devices.size() < 2) {
+            return devices;
+        }
+        Map<Long, Map<String, DeviceRecord>> cells = new LinkedHashMap<>();
+        Map<String, DeviceRecord> withoutLocation = new LinkedHashMap<>();
+        for (Map.Entry<String, DeviceRecord> entry : devices.entrySet()) {
+            DeviceRecord record = entry.getValue();
+            if (!record.hasLocation()) {
+                withoutLocation.put(entry.getKey(), record);
+                continue;
+            }
+            Long cell = Geohash.encode(record.getLatitud(), record.getLongitud(), cellPrecision);
+            Map<String, DeviceRecord> group = cells.get(cell);
+            if (group == null) {
+                group = new LinkedHashMap<>();
+                cells.put(cell, group);
+            }
+            group.put(entry.getKey(), record);
+        }
+        Map<String, DeviceRecord> grouped = new LinkedHashMap<>(devices.size() * 4 / 3 + 1);
+        for (Map<String, DeviceRecord> group : cells.values()) {
+            grouped.putAll(group);
+        }
+        grouped.putAll(withoutLocation);
+        return grouped;
+    }
+
+    // Descarta el lote actual, también del diario
+    public void clear() {
+        swap();
+        try {
+            releaseOrphans(retiredOrphans());
+            releaseJournal();
+        } catch (IOException e) {
+            // Lo que no llegó al diario pertenecía al lote descartado
+        }
+    }
+
+    /**
+     * Generaciones del diario con los dispositivos que no cupieron en la tabla de los buffers ya
+     * sustituidos porque un desalojo falló: solo están ahí, no en el lote de swapTable(). Hay que
+     * guardarlas (SightingJournal.recover()) antes que el lote y luego borrarlas con
+     * releaseOrphans(); mientras tanto, releaseJournal() no las toca.
+     */
+    public List<SightingJournal.Generation> retiredOrphans() {
+        synchronized (retired) {
+            return new ArrayList<>(retiredOrphans);
+        }
+    }
+
+    // Borra generaciones de retiredOrphans() ya guardadas; lanza el primer error de escritura en ellas
+    public void releaseOrphans(List<SightingJournal.Generation> orphans) throws IOException {
+        synchronized (retired) {
+            retiredOrphans.removeAll(orphans);
+        }
+        delete(orphans);
+    }
+
+    /**
+     * Borra las generaciones del diario de los buffers ya sustituidos por swap(); se llama cuando
+     * sus lotes (y los reincorporados con merge()) están guardados en otro sitio. Lanza el primer
+     * error de escritura en el diario, tras borrarlas todas.
+     */
+    public void releaseJournal() throws IOException {
+        List<SightingJournal.Generation> released;
+        synchronized (retired) {
+            released = new ArrayList<>(retired);
+            retired.clear();
+        }
+        delete(released);
+    }
+
+    private static void delete(List<SightingJournal.Generation> generations) throws IOException {
+        IOException error = null;
+        for (SightingJournal.Generation generation : generations) {
+            try {
+                generation.delete();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    // Dispositivos en el lote actual (aproximado si hay escrituras concurrentes)
+    public int size() {
+        Buffer buffer = active.get();
+        if (buffer.table != null) {
+            synchronized (buffer.table) {
+                return buffer.table.size();
+            }
+        }
+        return buffer.devices.size();
+    }
+
+    // Copia del registro del dispositivo en el lote actual, o null si no está
+    public DeviceRecord snapshot(String hashedMac) {
+        Buffer buffer = acquire();
+        try {
+            if (buffer.table == null) {
+                DeviceRecord record = buffer.devices.get(hashedMac);
+                if (record == null) {
+                    return null;
+                }
+                DeviceRecord snapshot = new DeviceRecord(0L, DeviceRecord.RSSI_UNKNOWN, 0.0, 0.0);
+                synchronized (record) {
+                    copy(record, snapshot);
+                }
+                return snapshot;
+            }
+            synchronized (buffer.table) {
+                int row = buffer.table.find(hashedMac);
+                return row < 0 ? null : buffer.table.snapshot(row);
+            }
+        } finally {
+            buffer.writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Como swap() con DeviceTable: devuelve la tabla del lote anterior, que ya no recibe
+     * escrituras. Hay que devolverla con recycle() cuando esté guardada o reincorporada; mientras
+     * tanto, el siguiente swapTable() tiene que reservar otra.
+     */
+    public synchronized DeviceTable swapTable() {
+        if (!hasTable()) {
+            throw new IllegalStateException("El almacén no usa DeviceTable");
+        }
+        DeviceTable next = spare != null ? spare : new DeviceTable(maxDevices);
+        spare = null;
+        Buffer previous = active.getAndSet(new Buffer(next, newGeneration()));
+        awaitWriters(previous);
+        retire(previous);
+        return previous.table;
+    }
+
+    // Vacía una tabla de swapTable() y la guarda para el siguiente; la memoria no crece
+    public synchronized void recycle(DeviceTable table) {
+        table.clear();
+        if (spare == null) {
+            spare = table;
+        }
+    }
+
+    private void recordInTable(Buffer buffer, String hashedMac, long timestamp, short rssi, double latitud,
+                               double longitud, long locationTime, DeviceRecord copy) {
+        DeviceTable table = buffer.table;
+        boolean created;
+        synchronized (table) {
+            int row = table.record(hashedMac, timestamp, rssi, latitud, longitud, locationTime);
+            if (row < 0 && spill(buffer)) {
+                row = table.record(hashedMac, timestamp, rssi, latitud, longitud, locationTime);
+            }
+            if (row < 0) {
+                // No cabe: solo queda en el diario, para guardarlo con el lote
+                SightingJournal.Generation orphans = orphans(buffer);
+                if (orphans != null) {
+                    orphans.append(hashedMac, timestamp, rssi, latitud, longitud, locationTime);
+                }
+                if (copy != null) {
+                    copy.set(timestamp, timestamp, 1, rssi, rssi, latitud, longitud, locationTime);
+                }
+                return;
+            }
+            created = table.getCount(row) == 1;
+            if (copy != null) {
+                table.read(row, copy);
+            }
+            // Con el cerrojo de la tabla, para que el diario tenga el mismo orden que las marcas de desalojo
+            if (buffer.generation != null) {
+                buffer.generation.append(hashedMac, timestamp, rssi, latitud, longitud, locationTime);
+            }
+        }
+        if (created && listener != null) {
+            listener.onNewDevice(hashedMac, null);
+        }
+    }
+
+    private void mergeInMap(Buffer buffer, String hashedMac, DeviceRecord merged, long source) {
+        if (source >= 0) {
+            buffer.generation.appendRow(source, Hex.decode(hashedMac), 0, merged);
+        }
+        DeviceRecord record = buffer.devices.putIfAbsent(hashedMac, merged);
+        if (record == null) {
+            if (listener != null) {
+                listener.onNewDevice(hashedMac, merged);
+            }
+        } else {
+            synchronized (record) {
+                record.merge(merged);
+            }
+        }
+    }
+
+    private void mergeInTable(Buffer buffer, byte[] hash, DeviceRecord record, long source) {
+        DeviceTable table = buffer.table;
+        boolean created;
+        synchronized (table) {
+            if (table.isFull() && table.find(hash, 0) < 0 && !spill(buffer)) {
+                SightingJournal.Generation orphans = orphans(buffer);
+                if (orphans != null) {
+                    orphans.appendRow(-1, hash, 0, record);
+                }
+                return;
+            }
+            if (source >= 0) {
+                buffer.generation.appendRow(source, hash, 0, record);
+            }
+            int before = table.size();
+            table.merge(hash, 0, record);
+            created = table.size() > before;
+        }
+        if (created && listener != null) {
+            listener.onNewDevice(Hex.encode(hash), record);
+        }
+    }
+
+    private DeviceTable spillTable() {
+        DeviceTable table = spareSpill.getAndSet(null);
+        return table != null ? table : new DeviceTable(spillCount);
+    }
+
+    /**
+     * Con el cerrojo de la tabla llena: saca la octava parte más antigua por el SpillListener y
+     * devuelve si ha quedado sitio. Si no se pudieron guardar, las filas vuelven a la tabla (caben
+     * justas) y no se reintenta hasta el siguiente lote. La escritura se hace con el cerrojo para
+     * que las marcas del diario queden en orden con los avistamientos.
+     */
+    private boolean spill(Buffer buffer) {
+        if (buffer.spillFailed) {
+            return false;
+        }
+        DeviceTable table = buffer.table;
+        DeviceTable spilled = spillTable();
+        try {
+            table.removeOldest(spillCount, spilled);
+            int spill = buffer.generation != null ? buffer.generation.appendSpill(spilled) : 0;
+            try {
+                if (spillListener != null) {
+                    spillListener.onSpill(spilled);
+                }
+            } catch (IOException e) {
+                // Sin confirmación, las marcas no cuentan: sus avistamientos siguen en el diario
+                restore(table, spilled);
+                buffer.spillFailed = true;
+                return false;
+            }
+            if (buffer.generation != null) {
+                buffer.generation.spillSaved(spill);
+            }
+            return true;
+        } finally {
+            spilled.clear();
+            spareSpill.set(spilled);
+        }
+    }
+
+    private static void restore(DeviceTable table, DeviceTable spilled) {
+        byte[] hash = new byte[MacHasher.HASH_LENGTH];
+        DeviceRecord record = new DeviceRecord(0L, DeviceRecord.RSSI_UNKNOWN, 0.0, 0.0);
+        for (int row = 0; row < spilled.size(); row++) {
+            spilled.copyHash(row, hash, 0);
+            spilled.read(row, record);
+            table.merge(hash, 0, record);
+        }
+    }
+
+    // Con el cerrojo de la tabla: generación para lo que no cabe en buffer, o null sin diario
+    private SightingJournal.Generation orphans(Buffer buffer) {
+        if (buffer.orphans == null && journal != null) {
+            buffer.orphans = journal.newGeneration();
+        }
+        return buffer.orphans;
+    }
+
+    private static void copy(DeviceRecord from, DeviceRecord to) {
+        to.set(from.getFirstSeen(), from.getLastSeen(), from.getCount(), from.getMinRssi(), from.getMaxRssi(),
+                from.getLatitud(), from.getLongitud(), from.getLocationTime());
+    }
+
+    private SightingJournal.Generation newGeneration() {
+        return journal != null ? journal.newGeneration() : null;
+    }
+
+    private void retire(Buffer buffer) {
+        if (buffer.generation != null) {
+            synchronized (retired) {
+                retired.add(buffer.generation);
+                lastRetired = buffer.generation;
+                // Sin escritores ya no cambia: nadie más la asigna
+                if (buffer.orphans != null) {
+                    retiredOrphans.add(buffer.orphans);
+                }
+            }
+        }
+    }
+
+    // Generación cuyo lote reincorpora merge() en buffer, o -1 si no hay diario
+    private long mergeSource(Buffer buffer) {
+        synchronized (retired) {
+            return buffer.generation != null && lastRetired != null ? lastRetired.getSequence() : -1;
+        }
+    }
+
+    private static void awaitWriters(Buffer buffer) {
+        while (buffer.writers.get() != 0) {
+            Thread.yield();
+        }
+    }
+
+    private Buffer acquire() {
+        while (true) {
+            Buffer buffer = active.get();
+            buffer.writers.incrementAndGet();
+            if (active.get() == buffer) {
+                return buffer;
+            }
+            // swap() ha cambiado el buffer entre medias: reintentar sobre el nuevo
+            buffer.writers.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.tfg_bluetooth;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Decodificador del formato de SketchBatchWriter, para el receptor de pruebas y herramientas
+public final class SketchBatchReader {
+
+    public interface Consumer {
+        void accept(OccupancySketch sketch) throws IOException;
+    }
+
+    private final InputStream in;
+
+    public SketchBatchReader(InputStream in) {
+        this.in = in;
+    }
+
+    // Lee el lote completo y devuelve el número de cubetas
+    public int read(Consumer consumer) throws IOException {
+        for (byte expected : SketchBatchWriter.MAGIC) {
+            if (readByte() != expected) {
+                throw new IOException("Cabecera de lote agregado no válida");
+            }
+        }
+        int version = readByte();
+        if (version != SketchBatchWriter.VERSION) {
+            throw new IOException("Versión de lote agregado no soportada: " + version);
+        }
+        int precision = readByte();
+        if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+            throw new IOException("Precisión no válida: " + precision);
+        }
+        long bucketMillis = readVarLong();
+        if (bucketMillis <= 0) {
+            throw new IOException("Ancho de cubeta no válido: " + bucketMillis);
+        }
+
+        long previousStart = 0;
+        int buckets = 0;
+        while (true) {
+            int tag = readByte();
+            if (tag == SketchBatchWriter.TAG_END) {
+                return buckets;
+            }
+            if (tag != SketchBatchWriter.TAG_BUCKET) {
+                throw new IOException("Etiqueta de cubeta desconocida: " + tag);
+            }
+            long start = previousStart + unzigzag(readVarLong());
+            previousStart = start;
+            OccupancySketch sketch = new OccupancySketch(start, bucketMillis, precision);
+            sketch.addSightings(readVarLong());
+            readDwell(sketch);
+            readRegisters(sketch.getDevices());
+            consumer.accept(sketch);
+            buckets++;
+        }
+    }
+
+    private void readDwell(OccupancySketch sketch) throws IOException {
+        long used = readVarLong();
+        if (used > Histogram.BUCKETS) {
+            throw new IOException("Demasiadas cubetas de permanencia: " + used);
+        }
+        for (int i = 0; i < used; i++) {
+            int bucket = readByte();
+            if (bucket >= Histogram.BUCKETS) {
+                throw new IOException("Cubeta de permanencia no válida: " + bucket);
+            }
+            sketch.addDwellCount(bucket, readVarLong());
+        }
+    }
+
+    private void readRegisters(HyperLogLog devices) throws IOException {
+        int m = devices.getRegisterCount();
+        try {
+            int encoding = readByte();
+            if (encoding == SketchBatchWriter.REGISTERS_DENSE) {
+                for (int i = 0; i < m; i++) {
+                    devices.setRegister(i, readByte());
+                }
+            } else if (encoding == SketchBatchWriter.REGISTERS_SPARSE) {
+                long used = readVarLong();
+                long index = 0;
+                for (long i = 0; i < used; i++) {
+                    index += readVarLong();
+                    if (index >= m) {
+                        throw new IOException("Índice de registro fuera de rango: " + index);
+                    }
+                    devices.setRegister((int) index, readByte());
+                }
+            } else {
+                throw new IOException("Codificación de registros desconocida: " + encoding);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint demasiado largo");
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("Lote agregado truncado");
+        }
+        return b;
+    }
+}
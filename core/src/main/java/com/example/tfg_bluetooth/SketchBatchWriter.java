@@ -0,0 +1,178 @@
+package com.example.tfg_bluetooth;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Envío agregado (Content-Type application/vnd.tfg.sketch): en lugar de un registro por
+ * dispositivo se envía un OccupancySketch por cubeta de tiempo, de tamaño fijo aunque crezca la
+ * multitud. Los registros del lote siguen guardándose completos en el outbox; solo cambia lo que
+ * se sube.
+ *
+ * Cada registro cuenta como presente en todas las cubetas entre su primera y su última fecha;
+ * sus avistamientos y su permanencia van a la cubeta de la primera. La permanencia es la de la
+ * ventana de envío: quien sigue al alcance en la siguiente aparece de nuevo. Las actualizaciones
+ * de última fecha solo cuentan como presentes en la cubeta de esa fecha.
+ *
+ * cabecera: "TFGS" + versión (1 byte) + precisión del HyperLogLog (1 byte)
+ *           + ancho de cubeta (varint, ms)
+ * cubeta:   0x01 + inicio (varint zigzag, delta respecto a la cubeta anterior)
+ *           + avistamientos (varint)
+ *           + permanencias: número de cubetas no vacías (varint) y por cada una su índice
+ *             (1 byte) y su cuenta (varint)
+ *           + registros del HyperLogLog: 0x00 + 2^precisión bytes (denso), o 0x01 + número de
+ *             registros no nulos (varint) y por cada uno el salto de índice (varint) y su valor
+ *             (1 byte) (disperso, cuando ocupa menos)
+ * fin:      0x00
+ */
+public final class SketchBatchWriter implements BatchWriter {
+
+    public static final String CONTENT_TYPE = "application/vnd.tfg.sketch";
+    public static final byte[] MAGIC = {'T', 'F', 'G', 'S'};
+    public static final byte VERSION = 1;
+    public static final byte TAG_END = 0;
+    public static final byte TAG_BUCKET = 1;
+    public static final byte REGISTERS_DENSE = 0;
+    public static final byte REGISTERS_SPARSE = 1;
+    public static final long DEFAULT_BUCKET_MILLIS = 5 * 60 * 1000;
+    public static final int DEFAULT_PRECISION = 12;
+
+    // Un registro con fechas absurdas (reloj mal puesto) solo cuenta en sus últimas cubetas
+    static final int MAX_BUCKETS_PER_RECORD = 1024;
+
+    private final OutputStream out;
+    private final long bucketMillis;
+    private final int precision;
+    private final Map<Long, OccupancySketch> sketches = new TreeMap<>();
+
+    public SketchBatchWriter(OutputStream out) {
+        this(out, DEFAULT_BUCKET_MILLIS, DEFAULT_PRECISION);
+    }
+
+    public SketchBatchWriter(OutputStream out, long bucketMillis, int precision) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("Ancho de cubeta no válido: " + bucketMillis);
+        }
+        this.out = new BufferedOutputStream(out);
+        this.bucketMillis = bucketMillis;
+        this.precision = precision;
+        // Falla aquí y no al primer registro si la precisión no es válida
+        new HyperLogLog(precision);
+    }
+
+    @Override
+    public void beginBatch() throws IOException {
+        sketches.clear();
+    }
+
+    @Override
+    public void writeDevice(byte[] hash, int off, DeviceRecord record) throws IOException {
+        long last = bucketOf(record.getLastSeen());
+        if (record.isLastSeenUpdate()) {
+            sketch(last).addDevice(hash, off);
+            return;
+        }
+        long first = bucketOf(record.getFirstSeen());
+        first = Math.max(first, last - (MAX_BUCKETS_PER_RECORD - 1) * bucketMillis);
+        for (long bucket = first; bucket <= last; bucket += bucketMillis) {
+            sketch(bucket).addDevice(hash, off);
+        }
+        OccupancySketch firstSketch = sketch(first);
+        firstSketch.addSightings(record.getCount());
+        firstSketch.addDwell(record.getDwellMillis());
+    }
+
+    @Override
+    public void endBatch() throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.write(precision);
+        putVarLong(bucketMillis);
+        long previousStart = 0;
+        for (OccupancySketch sketch : sketches.values()) {
+            out.write(TAG_BUCKET);
+            putVarLong(BinaryBatchWriter.zigzag(sketch.getBucketStart() - previousStart));
+            previousStart = sketch.getBucketStart();
+            putVarLong(sketch.getSightings());
+            writeDwell(sketch);
+            writeRegisters(sketch.getDevices());
+        }
+        out.write(TAG_END);
+        out.flush();
+    }
+
+    // Cubetas del último lote escrito, en orden de tiempo
+    public Iterable<OccupancySketch> getSketches() {
+        return sketches.values();
+    }
+
+    private long bucketOf(long timestamp) {
+        return Math.floorDiv(timestamp, bucketMillis) * bucketMillis;
+    }
+
+    private OccupancySketch sketch(long bucketStart) {
+        OccupancySketch sketch = sketches.get(bucketStart);
+        if (sketch == null) {
+            sketch = new OccupancySketch(bucketStart, bucketMillis, precision);
+            sketches.put(bucketStart, sketch);
+        }
+        return sketch;
+    }
+
+    private void writeDwell(OccupancySketch sketch) throws IOException {
+        int used = 0;
+        for (int i = 0; i < Histogram.BUCKETS; i++) {
+            if (sketch.getDwellCount(i) != 0) {
+                used++;
+            }
+        }
+        putVarLong(used);
+        for (int i = 0; i < Histogram.BUCKETS; i++) {
+            long count = sketch.getDwellCount(i);
+            if (count != 0) {
+                out.write(i);
+                putVarLong(count);
+            }
+        }
+    }
+
+    private void writeRegisters(HyperLogLog devices) throws IOException {
+        int m = devices.getRegisterCount();
+        int used = 0;
+        for (int i = 0; i < m; i++) {
+            if (devices.getRegister(i) != 0) {
+                used++;
+            }
+        }
+        // Disperso: hasta 4 bytes por registro no nulo (salto de hasta 2^16 y valor)
+        if (used * 4 < m) {
+            out.write(REGISTERS_SPARSE);
+            putVarLong(used);
+            int previous = 0;
+            for (int i = 0; i < m; i++) {
+                int register = devices.getRegister(i);
+                if (register != 0) {
+                    putVarLong(i - previous);
+                    out.write(register);
+                    previous = i;
+                }
+            }
+            return;
+        }
+        out.write(REGISTERS_DENSE);
+        for (int i = 0; i < m; i++) {
+            out.write(devices.getRegister(i));
+        }
+    }
+
+    private void putVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.tfg_bluetooth;
+
+import java.util.Random;
+
+/**
+ * Generador de avistamientos sintéticos para pruebas de carga sin radio Bluetooth. Con la misma
+ * semilla produce siempre la misma secuencia.
+ *
+ * Hay population dispositivos presentes a la vez. Los avistamientos llegan como un proceso de
+ * Poisson de media sightingsPerSecond; cada uno es de un dispositivo presente (con probabilidad
+ * repeatRatio) o de uno nuevo que ocupa su hueco. Un dispositivo que ha agotado su permanencia
+ * (Dwell) deja siempre su hueco a uno nuevo.
+ *
+ * Puede funcionar en tiempo real con start(), en un hilo propio, o en tiempo simulado con
+ * seek() y emit(), en el hilo que llama; no deben mezclarse los dos modos.
+ */
+public final class SyntheticSightingSource implements SightingSource {
+
+    // MACs localmente administradas: no coinciden con dispositivos reales
+    private static final long MAC_PREFIX = 0x020000000000L;
+    private static final long TICK_MS = 10;
+
+    // Distribución del tiempo que un dispositivo permanece al alcance
+    public interface Dwell {
+        long sampleMillis(Random random);
+    }
+
+    public static Dwell fixedDwell(final long millis) {
+        return new Dwell() {
+            @Override
+            public long sampleMillis(Random random) {
+                return millis;
+            }
+        };
+    }
+
+    public static Dwell exponentialDwell(final long meanMillis) {
+        return new Dwell() {
+            @Override
+            public long sampleMillis(Random random) {
+                return (long) (-Math.log(1.0 - random.nextDouble()) * meanMillis);
+            }
+        };
+    }
+
+    // Log-normal: la mayoría pasa de largo y unos pocos se quedan mucho tiempo
+    public static Dwell logNormalDwell(final long medianMillis, final double sigma) {
+        return new Dwell() {
+            @Override
+            public long sampleMillis(Random random) {
+                return (long) (medianMillis * Math.exp(sigma * random.nextGaussian()));
+            }
+        };
+    }
+
+    private final Random random;
+    private final double meanIntervalMillis;
+    private final double repeatRatio;
+    private final Dwell dwell;
+    private final Clock clock;
+    private final long[] devices;
+    private final long[] departures;
+    private final char[] mac = new char[17];
+
+    private double nextSightingTime = Double.NaN;
+    private volatile long devicesSeen;
+    private volatile long sightingsEmitted;
+    private volatile Thread thread;
+    private volatile WindowListener windowListener;
+
+    public SyntheticSightingSource(long seed, int population, double sightingsPerSecond, double repeatRatio,
+                                   Dwell dwell) {
+        this(seed, population, sightingsPerSecond, repeatRatio, dwell, Clock.SYSTEM);
+    }
+
+    public SyntheticSightingSource(long seed, int population, double sightingsPerSecond, double repeatRatio,
+                                   Dwell dwell, Clock clock) {
+        if (population <= 0) {
+            throw new IllegalArgumentException("Población no válida: " + population);
+        }
+        if (sightingsPerSecond <= 0) {
+            throw new IllegalArgumentException("Ritmo de avistamientos no válido: " + sightingsPerSecond);
+        }
+        if (repeatRatio < 0 || repeatRatio > 1) {
+            throw new IllegalArgumentException("Proporción de repetidos no válida: " + repeatRatio);
+        }
+        this.random = new Random(seed);
+        this.meanIntervalMillis = 1000.0 / sightingsPerSecond;
+        this.repeatRatio = repeatRatio;
+        this.dwell = dwell;
+        this.clock = clock;
+        this.devices = new long[population];
+        this.departures = new long[population];
+    }
+
+    @Override
+    public void setWindowListener(WindowListener windowListener) {
+        this.windowListener = windowListener;
+    }
+
+    @Override
+    public synchronized void start(final Listener listener) {
+        if (thread != null) {
+            return;
+        }
+        seek(clock.nowMillis());
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (thread == Thread.currentThread()) {
+                    emit(clock.nowMillis(), listener);
+                    try {
+                        Thread.sleep(TICK_MS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "synthetic-source");
+        worker.setDaemon(true);
+        thread = worker;
+        WindowListener window = windowListener;
+        if (window != null) {
+            window.onWindowStarted();
+        }
+        worker.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        Thread worker = thread;
+        if (worker == null) {
+            return;
+        }
+        thread = null;
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        WindowListener window = windowListener;
+        if (window != null) {
+            window.onWindowFinished();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return thread != null;
+    }
+
+    // Reinicia el tiempo simulado en timestamp con una población nueva
+    public void seek(long timestamp) {
+        for (int slot = 0; slot < devices.length; slot++) {
+            arrive(slot, timestamp);
+        }
+        nextSightingTime = timestamp + nextInterval();
+    }
+
+    /**
+     * Emite en orden los avistamientos anteriores a untilMillis y devuelve cuántos ha emitido;
+     * la siguiente llamada continúa donde se quedó esta.
+     */
+    public int emit(long untilMillis, Listener listener) {
+        if (Double.isNaN(nextSightingTime)) {
+            throw new IllegalStateException("Falta llamar a seek()");
+        }
+        int emitted = 0;
+        while (nextSightingTime < untilMillis) {
+            long timestamp = (long) nextSightingTime;
+            int slot = random.nextInt(devices.length);
+            if (timestamp >= departures[slot] || random.nextDouble() >= repeatRatio) {
+                arrive(slot, timestamp);
+            }
+            short rssi = (short) (-40 - random.nextInt(60));
+            listener.onSighting(macString(MAC_PREFIX | devices[slot]), rssi, timestamp);
+            emitted++;
+            nextSightingTime += nextInterval();
+        }
+        sightingsEmitted += emitted;
+        return emitted;
+    }
+
+    // Dispositivos distintos generados desde la creación, incluida la población inicial
+    public long getDevicesSeen() {
+        return devicesSeen;
+    }
+
+    public long getSightingsEmitted() {
+        return sightingsEmitted;
+    }
+
+    private void arrive(int slot, long timestamp) {
+        devices[slot] = devicesSeen++;
+        long stay = Math.max(0, dwell.sampleMillis(random));
+        departures[slot] = timestamp + Math.min(stay, Long.MAX_VALUE - timestamp);
+    }
+
+    // Intervalo exponencial entre avistamientos (proceso de Poisson)
+    private double nextInterval() {
+        return -Math.log(1.0 - random.nextDouble()) * meanIntervalMillis;
+    }
+
+    // Formato "AA:BB:CC:DD:EE:FF" como el que entrega BluetoothDevice.getAddress()
+    private String macString(long value) {
+        for (int i = 0; i < 6; i++) {
+            int b = (int) (value >>> (40 - 8 * i)) & 0xff;
+            mac[i * 3] = Character.toUpperCase(Character.forDigit(b >>> 4, 16));
+            mac[i * 3 + 1] = Character.toUpperCase(Character.forDigit(b & 0xf, 16));
+            if (i < 5) {
+                mac[i * 3 + 2] = ':';
+            }
+        }
+        return new String(mac);
+    }
+}
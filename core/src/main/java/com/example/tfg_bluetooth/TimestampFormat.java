@@ -0,0 +1,69 @@
+package com.example.tfg_bluetooth;
+
+import java.nio.charset.StandardCharsets;
+import java.util.TimeZone;
+
+/**
+ * Formatea instantes (epoch millis) como "yyyy-MM-dd HH:mm:ss" en hora local directamente sobre
+ * un buffer de bytes, sin SimpleDateFormat ni objetos Date por registro.
+ */
+public final class TimestampFormat {
+
+    public static final int LENGTH = 19;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private final TimeZone timeZone;
+
+    public TimestampFormat() {
+        this(TimeZone.getDefault());
+    }
+
+    public TimestampFormat(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    // Escribe los 19 caracteres ASCII en out a partir de off
+    public void format(long epochMillis, byte[] out, int off) {
+        long local = epochMillis + timeZone.getOffset(epochMillis);
+        long days = Math.floorDiv(local, MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(local, MILLIS_PER_DAY);
+
+        // Conversión de días desde 1970-01-01 a fecha civil (algoritmo de H. Hinnant)
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+
+        int seconds = millisOfDay / 1000;
+        writeDigits(out, off, year, 4);
+        out[off + 4] = '-';
+        writeDigits(out, off + 5, month, 2);
+        out[off + 7] = '-';
+        writeDigits(out, off + 8, day, 2);
+        out[off + 10] = ' ';
+        writeDigits(out, off + 11, seconds / 3600, 2);
+        out[off + 13] = ':';
+        writeDigits(out, off + 14, (seconds / 60) % 60, 2);
+        out[off + 16] = ':';
+        writeDigits(out, off + 17, seconds % 60, 2);
+    }
+
+    public String format(long epochMillis) {
+        byte[] out = new byte[LENGTH];
+        format(epochMillis, out, 0);
+        return new String(out, 0, LENGTH, StandardCharsets.US_ASCII);
+    }
+
+    private static void writeDigits(byte[] out, int off, int value, int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            out[off + i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
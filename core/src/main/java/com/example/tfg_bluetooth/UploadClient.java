@@ -0,0 +1,406 @@
+package com.example.tfg_bluetooth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cliente de subida de lotes. El cuerpo se escribe en streaming: el productor escribe sobre
+ * un GZIPOutputStream (o el Deflater con diccionario de PresetDictionary) que va directamente
+ * al socket en modo chunked, sin construir el JSON completo ni el array comprimido en memoria.
+ * El nivel de compresión de cada subida lo decide la CompressionPolicy.
+ *
+ * Las conexiones tienen tiempos de espera y se reutilizan (keep-alive): las respuestas se leen
+ * hasta el final y no se llama a disconnect() salvo error. send() añade reintentos con espera
+ * exponencial y un cortocircuito que deja de insistir contra un endpoint caído.
+ */
+public final class UploadClient {
+
+    public static final String CONTENT_TYPE_OCTET_STREAM = "application/octet-stream";
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_MS = 15_000;
+    public static final int DEFAULT_READ_TIMEOUT_MS = 30_000;
+
+    private static final int CHUNK_SIZE = 8192;
+    private static final int MAX_RESPONSE_CHARS = 4096;
+
+    // Productor del cuerpo de la petición; con send() puede invocarse una vez por intento
+    public interface BodyWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    // El cortocircuito está abierto: no se ha intentado la petición
+    public static final class CircuitOpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        CircuitOpenException() {
+            super("Cortocircuito abierto: endpoint de subida no disponible");
+        }
+    }
+
+    // Respuesta del servidor; el cuerpo se trunca a MAX_RESPONSE_CHARS
+    public static final class Response {
+        private final int code;
+        private final String body;
+        private final long retryAfterMillis;
+        private final long latencyMillis;
+
+        Response(int code, String body) {
+            this(code, body, -1, 0);
+        }
+
+        Response(int code, String body, long retryAfterMillis, long latencyMillis) {
+            this.code = code;
+            this.body = body;
+            this.retryAfterMillis = retryAfterMillis;
+            this.latencyMillis = latencyMillis;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public boolean isOk() {
+            return code == HttpURLConnection.HTTP_OK;
+        }
+
+        // Espera pedida por el servidor con Retry-After, o -1 si no la indica
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+
+        // Desde que termina de enviarse el cuerpo hasta que llega la respuesta: el tiempo del servidor
+        public long getLatencyMillis() {
+            return latencyMillis;
+        }
+    }
+
+    private final URL url;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final Backoff backoff;
+    private final CircuitBreaker circuitBreaker;
+    private volatile PipelineMetrics metrics;
+    private volatile CompressionPolicy compressionPolicy = new CompressionPolicy();
+
+    public UploadClient(String url) throws IOException {
+        this(url, DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_READ_TIMEOUT_MS,
+                new Backoff(1_000, 30_000, 4), new CircuitBreaker(5, 5 * 60 * 1000));
+    }
+
+    public UploadClient(String url, int connectTimeoutMs, int readTimeoutMs,
+                        Backoff backoff, CircuitBreaker circuitBreaker) throws IOException {
+        this.url = new URL(url);
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.backoff = backoff;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    // Registra reintentos, fallos, duración y bytes (sin comprimir y en la conexión) de cada subida
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public CompressionPolicy getCompressionPolicy() {
+        return compressionPolicy;
+    }
+
+    public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+    }
+
+    public Response send(UploadFormat format, BodyWriter body) throws IOException {
+        return send(format, body, -1);
+    }
+
+    public Response send(UploadFormat format, BodyWriter body, long batchBytes) throws IOException {
+        return send(format, body, batchBytes, null);
+    }
+
+    /**
+     * Envía el lote reintentando ante errores de red, 5xx, 408 y 429. Devuelve la última respuesta
+     * obtenida (que puede no ser 200) o lanza la última excepción si ningún intento tuvo respuesta.
+     * Si el servidor indica Retry-After no se reintenta: la respuesta se devuelve para que quien
+     * programa los envíos respete la espera. batchBytes es el tamaño del lote en el outbox para
+     * elegir el nivel de compresión, o -1.
+     *
+     * Un error de red puede llegar cuando el servidor ya ha recibido el lote entero (p. ej. se
+     * agota la espera de la respuesta), así que un reintento puede repetir un lote ya aceptado.
+     * idempotencyKey (o null) va en la cabecera Idempotency-Key de todos los intentos para que el
+     * servidor descarte las repeticiones: debe ser la misma para el mismo lote, también en envíos
+     * posteriores, y distinta para lotes distintos.
+     */
+    public Response send(UploadFormat format, BodyWriter body, long batchBytes, String idempotencyKey)
+            throws IOException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            Response response = sendWithRetries(format, body, batchBytes, idempotencyKey);
+            ok = response.isOk();
+            return response;
+        } finally {
+            PipelineMetrics current = metrics;
+            if (current != null) {
+                current.onUpload(ok, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private Response sendWithRetries(UploadFormat format, BodyWriter body, long batchBytes, String idempotencyKey)
+            throws IOException {
+        Response last = null;
+        IOException lastError = null;
+        for (int attempt = 0; attempt < backoff.getMaxAttempts(); attempt++) {
+            if (attempt > 0) {
+                PipelineMetrics current = metrics;
+                if (current != null) {
+                    current.onUploadRetry();
+                }
+                sleep(backoff.delayMillis(attempt - 1));
+            }
+            if (!circuitBreaker.allowRequest()) {
+                break;
+            }
+            try {
+                last = post(format, body, batchBytes, idempotencyKey);
+                lastError = null;
+                if (!isRetryable(last.getCode())) {
+                    circuitBreaker.onSuccess();
+                    return last;
+                }
+            } catch (IOException e) {
+                last = null;
+                lastError = e;
+            }
+            circuitBreaker.onFailure();
+            if (last != null && last.getRetryAfterMillis() >= 0) {
+                break;
+            }
+        }
+        if (last != null) {
+            return last;
+        }
+        if (lastError != null) {
+            throw lastError;
+        }
+        throw new CircuitOpenException();
+    }
+
+    public Response post(UploadFormat format, BodyWriter body) throws IOException {
+        return post(format, body, -1);
+    }
+
+    // POST en el formato indicado, en un único intento; si el formato comprime, se hace sobre la marcha
+    public Response post(UploadFormat format, BodyWriter body, long batchBytes) throws IOException {
+        return post(format, body, batchBytes, null);
+    }
+
+    private Response post(UploadFormat format, BodyWriter body, long batchBytes, String idempotencyKey)
+            throws IOException {
+        String type = format.getContentType();
+        String encoding = format.getContentEncoding();
+        if ("gzip".equals(encoding)) {
+            RawCounter raw = new RawCounter(body);
+            return post(type, encoding, idempotencyKey, gzip(raw, compressionPolicy.levelFor(batchBytes)), raw);
+        }
+        if (PresetDictionary.versionOf(encoding) > 0) {
+            RawCounter raw = new RawCounter(body);
+            return post(type, encoding, idempotencyKey, deflate(raw, compressionPolicy.levelFor(batchBytes)), raw);
+        }
+        return post(type, encoding, idempotencyKey, body, null);
+    }
+
+    // POST con Content-Encoding: gzip, comprimiendo lo que escriba body sobre la marcha
+    public Response postGzip(BodyWriter body) throws IOException {
+        RawCounter raw = new RawCounter(body);
+        return post(CONTENT_TYPE_OCTET_STREAM, "gzip", null, gzip(raw, compressionPolicy.levelFor(-1)), raw);
+    }
+
+    public Response post(String contentType, String contentEncoding, BodyWriter body) throws IOException {
+        return post(contentType, contentEncoding, null, body, null);
+    }
+
+    private Response post(String contentType, String contentEncoding, String idempotencyKey, BodyWriter body,
+                          RawCounter raw) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setConnectTimeout(connectTimeoutMs);
+            connection.setReadTimeout(readTimeoutMs);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", contentType);
+            if (contentEncoding != null) {
+                connection.setRequestProperty("Content-Encoding", contentEncoding);
+            }
+            if (idempotencyKey != null) {
+                connection.setRequestProperty(IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+            }
+            connection.setDoOutput(true);
+            connection.setChunkedStreamingMode(CHUNK_SIZE);
+
+            try (OutputStream out = connection.getOutputStream()) {
+                CountingOutputStream wire = new CountingOutputStream(out);
+                body.writeTo(wire);
+                PipelineMetrics current = metrics;
+                if (current != null) {
+                    current.onUploadBytes(raw != null ? raw.count : wire.getCount(), wire.getCount());
+                }
+            }
+
+            long sent = System.nanoTime();
+            int code = connection.getResponseCode();
+            long latencyMillis = (System.nanoTime() - sent) / 1_000_000;
+            long retryAfterMillis = parseRetryAfter(connection.getHeaderField("Retry-After"),
+                    System.currentTimeMillis());
+            InputStream in = code < HttpURLConnection.HTTP_BAD_REQUEST
+                    ? connection.getInputStream() : connection.getErrorStream();
+            // Leer la respuesta hasta el final deja la conexión lista para reutilizarse
+            return new Response(code, readBody(in), retryAfterMillis, latencyMillis);
+        } catch (IOException e) {
+            // Tras un error la conexión no es reutilizable
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Retry-After en milisegundos desde nowMillis: admite segundos o una fecha HTTP. -1 si no hay
+     * cabecera o no se entiende; 0 si la fecha ya ha pasado.
+     */
+    static long parseRetryAfter(String value, long nowMillis) {
+        if (value == null) {
+            return -1;
+        }
+        String trimmed = value.trim();
+        if (trimmed.isEmpty()) {
+            return -1;
+        }
+        if (Character.isDigit(trimmed.charAt(0))) {
+            try {
+                return Math.min(Long.parseLong(trimmed), Long.MAX_VALUE / 1000) * 1000;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return Math.max(0, format.parse(trimmed).getTime() - nowMillis);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    static boolean isRetryable(int code) {
+        return code >= 500 || code == 429 || code == HttpURLConnection.HTTP_CLIENT_TIMEOUT;
+    }
+
+    private static BodyWriter gzip(final BodyWriter body, final int level) {
+        return new BodyWriter() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                GzipBody gzipOut = new GzipBody(out, level);
+                try {
+                    body.writeTo(gzipOut);
+                    gzipOut.finish();
+                } finally {
+                    // Libera el Deflater aunque falle la escritura; out lo cierra post()
+                    gzipOut.end();
+                }
+            }
+        };
+    }
+
+    // GZIPOutputStream con nivel de compresión que puede liberar su Deflater sin cerrar out
+    private static final class GzipBody extends GZIPOutputStream {
+        GzipBody(OutputStream out, int level) throws IOException {
+            super(out, CHUNK_SIZE);
+            def.setLevel(level);
+        }
+
+        void end() {
+            def.end();
+        }
+    }
+
+    private static BodyWriter deflate(final BodyWriter body, final int level) {
+        return new BodyWriter() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                OutputStream deflateOut = PresetDictionary.deflate(out, level);
+                try {
+                    body.writeTo(deflateOut);
+                } finally {
+                    // Termina el flujo zlib y libera el Deflater; out lo cierra post()
+                    deflateOut.close();
+                }
+            }
+        };
+    }
+
+    // Cuenta lo que escribe el productor antes de comprimirlo
+    private static final class RawCounter implements BodyWriter {
+        private final BodyWriter body;
+        long count;
+
+        RawCounter(BodyWriter body) {
+            this.body = body;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            CountingOutputStream counting = new CountingOutputStream(out);
+            body.writeTo(counting);
+            count = counting.getCount();
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Reintento interrumpido");
+        }
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try {
+            byte[] buffer = new byte[1024];
+            StringBuilder body = new StringBuilder();
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (body.length() < MAX_RESPONSE_CHARS) {
+                    body.append(new String(buffer, 0, read, StandardCharsets.UTF_8));
+                }
+            }
+            if (body.length() > MAX_RESPONSE_CHARS) {
+                body.setLength(MAX_RESPONSE_CHARS);
+            }
+            return body.toString();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.tfg_bluetooth;
+
+import java.io.OutputStream;
+
+// Formatos de envío de lotes; el servidor distingue el formato por Content-Type
+public enum UploadFormat {
+
+    // JSON comprimido con gzip (formato original)
+    JSON_GZIP(UploadClient.CONTENT_TYPE_OCTET_STREAM, "gzip"),
+    // Formato binario compacto de BinaryBatchWriter, sin compresión adicional
+    BINARY(BinaryBatchWriter.CONTENT_TYPE, null),
+    // JSON comprimido con Deflater y diccionario predefinido; el servidor debe conocer su versión
+    JSON_DEFLATE_DICT(UploadClient.CONTENT_TYPE_OCTET_STREAM, PresetDictionary.CONTENT_ENCODING),
+    // Envío agregado: un OccupancySketch por cubeta de tiempo en lugar de un registro por dispositivo
+    SKETCH(SketchBatchWriter.CONTENT_TYPE, "gzip");
+
+    private final String contentType;
+    private final String contentEncoding;
+
+    UploadFormat(String contentType, String contentEncoding) {
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public BatchWriter newWriter(OutputStream out) {
+        return newWriter(out, SketchBatchWriter.DEFAULT_BUCKET_MILLIS, 0);
+    }
+
+    /**
+     * sketchBucketMillis es el ancho de cubeta del formato SKETCH y cellPrecision la precisión de
+     * las celdas geohash de BINARY (0 sin celdas); los demás formatos los ignoran.
+     */
+    public BatchWriter newWriter(OutputStream out, long sketchBucketMillis, int cellPrecision) {
+        switch (this) {
+            case BINARY:
+                return new BinaryBatchWriter(out, cellPrecision);
+            case SKETCH:
+                return new SketchBatchWriter(out, sketchBucketMillis, SketchBatchWriter.DEFAULT_PRECISION);
+            case JSON_GZIP:
+            case JSON_DEFLATE_DICT:
+            default:
+                return new DeviceJsonWriter(out);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BacklogDrainTest {
+
+    private static final int CHUNKS = 12;
+    private static final int DEVICES_PER_CHUNK = 20;
+    private static final long LATENCY_MS = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LocalIngestServer server;
+    private final List<Exception> errors = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalIngestServer();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    // Cola con CHUNKS lotes pendientes, como tras horas sin conexión
+    private Outbox backlog() throws IOException {
+        return backlog(folder.newFolder());
+    }
+
+    private Outbox backlog(File directory) throws IOException {
+        Outbox outbox = new Outbox(directory);
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            Map<String, DeviceRecord> batch = new LinkedHashMap<>();
+            for (int i = 0; i < DEVICES_PER_CHUNK; i++) {
+                batch.put(String.format("%064x", chunk * DEVICES_PER_CHUNK + i),
+                        new DeviceRecord(chunk * 60_000L + i, (short) -60, 37.1, -3.6));
+            }
+            outbox.appendBatch(batch);
+        }
+        return outbox;
+    }
+
+    private Collector collector(Outbox outbox, UploadClient client, int parallelism) {
+        Collector collector = new Collector(outbox, client, UploadFormat.JSON_GZIP,
+                new LocationCache(60_000, Clock.SYSTEM), 60_000, Integer.MAX_VALUE, Long.MAX_VALUE);
+        collector.setUploadParallelism(parallelism);
+        collector.setErrorListener(new FlushScheduler.ErrorListener() {
+            @Override
+            public void onFlushError(Exception e) {
+                synchronized (errors) {
+                    errors.add(e);
+                }
+            }
+        });
+        return collector;
+    }
+
+    private long drainMillis(int parallelism) throws IOException {
+        Outbox outbox = backlog();
+        Collector collector = collector(outbox, new UploadClient(server.url()), parallelism);
+        long start = System.nanoTime();
+        collector.flush();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        collector.stop();
+        assertTrue(outbox.pendingSegments().isEmpty());
+        return millis;
+    }
+
+    @Test
+    public void drain_timeFallsWithChunksInFlight() throws IOException {
+        server.setLatencyMillis(LATENCY_MS);
+        server.setStoreBodies(false);
+        long[] millis = new long[BacklogDrain.MAX_IN_FLIGHT + 1];
+        for (int parallelism = 1; parallelism <= BacklogDrain.MAX_IN_FLIGHT; parallelism *= 2) {
+            millis[parallelism] = drainMillis(parallelism);
+        }
+        assertEquals("[]", errors.toString());
+        // Tres vaciados completos de la misma cola: el servidor reconoce los dos últimos como repetidos
+        assertEquals(3 * CHUNKS, server.attempts());
+        assertEquals(2 * CHUNKS, server.duplicates());
+        assertEquals((long) CHUNKS * DEVICES_PER_CHUNK, server.sightingsReceived());
+        assertTrue(millis[1] + " ms", millis[1] >= CHUNKS * LATENCY_MS);
+        assertTrue("en serie " + millis[1] + " ms, en paralelo " + millis[BacklogDrain.MAX_IN_FLIGHT] + " ms",
+                millis[BacklogDrain.MAX_IN_FLIGHT] < millis[1] / 2);
+    }
+
+    @Test
+    public void drain_retriesOnlyFailedChunks() throws IOException {
+        Outbox outbox = backlog();
+        // Un único intento por lote: el 503 deja ese lote pendiente
+        UploadClient client = new UploadClient(server.url(), 5_000, 5_000, new Backoff(1, 1, 1),
+                new CircuitBreaker(100, 60_000));
+        Collector collector = collector(outbox, client, 4);
+        server.enqueueFaults(LocalIngestServer.Fault.SERVER_ERROR);
+
+        collector.flush();
+        assertEquals(1, errors.size());
+        int accepted = server.requests().size();
+        // Tras el fallo no se lanzan más lotes; los que estaban en curso se confirman
+        assertTrue(accepted >= 1 && accepted < CHUNKS);
+        assertEquals(CHUNKS - accepted, outbox.pendingSegments().size());
+
+        collector.flush();
+        collector.stop();
+        assertEquals(1, errors.size());
+        assertTrue(outbox.pendingSegments().isEmpty());
+        // Ningún lote se ha recibido dos veces
+        assertEquals(CHUNKS, server.requests().size());
+        assertEquals(CHUNKS * DEVICES_PER_CHUNK, server.sightingsReceived());
+    }
+
+    @Test
+    public void drain_lostResponseIsNotIngestedTwice() throws IOException {
+        Outbox outbox = backlog();
+        UploadClient client = new UploadClient(server.url(), 5_000, 5_000, new Backoff(1, 1, 3),
+                new CircuitBreaker(100, 60_000));
+        Collector collector = collector(outbox, client, 1);
+        // El servidor guarda el primer lote pero la respuesta no llega: el cliente lo reintenta
+        server.enqueueFaults(LocalIngestServer.Fault.LOST_RESPONSE);
+
+        collector.flush();
+        collector.stop();
+        assertEquals("[]", errors.toString());
+        assertTrue(outbox.pendingSegments().isEmpty());
+        assertEquals(CHUNKS + 1, server.attempts());
+        assertEquals(1, server.duplicates());
+        assertEquals(CHUNKS, server.requests().size());
+        assertEquals(CHUNKS * DEVICES_PER_CHUNK, server.sightingsReceived());
+    }
+
+    private void permanentRejectionIsSetAside(int parallelism) throws IOException {
+        File directory = folder.newFolder();
+        Outbox outbox = backlog(directory);
+        Collector collector = collector(outbox, new UploadClient(server.url()), parallelism);
+        server.enqueueFaults(LocalIngestServer.Fault.BAD_REQUEST);
+
+        // El 400 no se reintenta ni detiene la cola: el lote sale a los rechazados y se informa
+        collector.flush();
+        collector.stop();
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).getMessage(), errors.get(0).getMessage().contains("HTTP 400"));
+        assertTrue(outbox.pendingSegments().isEmpty());
+        assertEquals(1, collector.getMetrics().snapshot(null).rejectedBatches);
+        assertEquals(CHUNKS, server.attempts());
+        assertEquals((CHUNKS - 1) * DEVICES_PER_CHUNK, server.sightingsReceived());
+        // El lote apartado se conserva entero para revisarlo
+        File[] rejected = new File(directory, Outbox.REJECTED_DIRECTORY).listFiles();
+        assertNotNull(rejected);
+        assertEquals(1, rejected.length);
+        Outbox setAside = new Outbox(new File(directory, Outbox.REJECTED_DIRECTORY));
+        assertEquals(DEVICES_PER_CHUNK, setAside.readBatch(setAside.pendingSegments().get(0)).size());
+    }
+
+    @Test
+    public void permanentRejection_sequential() throws IOException {
+        permanentRejectionIsSetAside(1);
+    }
+
+    @Test
+    public void permanentRejection_parallel() throws IOException {
+        permanentRejectionIsSetAside(4);
+    }
+
+    @Test
+    public void parallelismIsCapped() {
+        assertEquals(BacklogDrain.MAX_IN_FLIGHT, new BacklogDrain(64).getMaxInFlight());
+    }
+}
@@ -0,0 +1,265 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class BinaryBatchTest {
+
+    private static Map<String, DeviceRecord> sampleBatch(int devices) {
+        Random random = new Random(3);
+        Map<String, DeviceRecord> batch = new LinkedHashMap<>();
+        long base = 1_700_000_000_000L;
+        MacHasher hasher = new MacHasher();
+        for (int i = 0; i < devices; i++) {
+            long first = base + random.nextInt(300_000);
+            long last = first + random.nextInt(300_000);
+            short rssi = (short) (-40 - random.nextInt(60));
+            batch.put(hasher.hash(i), new DeviceRecord(first, last, 1 + random.nextInt(20),
+                    (short) (rssi - 5), rssi, 37.1773363, -3.5985571));
+        }
+        return batch;
+    }
+
+    private static Map<String, DeviceRecord> roundTrip(Map<String, DeviceRecord> batch) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryBatchWriter writer = new BinaryBatchWriter(out);
+        writer.beginBatch();
+        for (Map.Entry<String, DeviceRecord> entry : batch.entrySet()) {
+            writer.writeDevice(entry.getKey(), entry.getValue());
+        }
+        writer.endBatch();
+
+        final Map<String, DeviceRecord> decoded = new LinkedHashMap<>();
+        new BinaryBatchReader(new ByteArrayInputStream(out.toByteArray())).read(new BinaryBatchReader.Consumer() {
+            @Override
+            public void accept(byte[] hash, DeviceRecord r) {
+                decoded.put(Hex.encode(hash), new DeviceRecord(r.getFirstSeen(), r.getLastSeen(), r.getCount(),
+                        r.getMinRssi(), r.getMaxRssi(), r.getLatitud(), r.getLongitud(), r.getLocationTime()));
+            }
+        });
+        return decoded;
+    }
+
+    private static void assertSameRecord(DeviceRecord expected, DeviceRecord actual) {
+        assertEquals(expected.getFirstSeen(), actual.getFirstSeen());
+        assertEquals(expected.getLastSeen(), actual.getLastSeen());
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getMinRssi(), actual.getMinRssi());
+        assertEquals(expected.getMaxRssi(), actual.getMaxRssi());
+        assertEquals(expected.getLatitud(), actual.getLatitud(), 1e-7);
+        assertEquals(expected.getLongitud(), actual.getLongitud(), 1e-7);
+        assertEquals(expected.getLocationTime(), actual.getLocationTime());
+    }
+
+    @Test
+    public void roundTrip_preservesRecords() throws IOException {
+        Map<String, DeviceRecord> batch = new LinkedHashMap<>();
+        batch.put(String.format("%064x", 1), new DeviceRecord(5_000L, 65_000L, 3, (short) -90, (short) -40, -33.8688, 151.2093));
+        // Marca temporal anterior a la previa y coordenadas en el otro hemisferio: deltas negativos
+        batch.put(String.format("%064x", 2), new DeviceRecord(1_000L, DeviceRecord.RSSI_UNKNOWN, 40.4168, -3.7038));
+        batch.put(String.format("%064x", 3), new DeviceRecord(0L, 0L, 1, (short) -128, (short) -128, 0.0, 0.0));
+        // Sin posición, y después una posición tomada 45 s antes del último avistamiento
+        batch.put(String.format("%064x", 4), new DeviceRecord(2_000L, 9_000L, 2, (short) -70, (short) -60,
+                0.0, 0.0, DeviceRecord.NO_LOCATION));
+        batch.put(String.format("%064x", 5), new DeviceRecord(60_000L, 90_000L, 2, (short) -70, (short) -60,
+                37.1773363, -3.5985571, 45_000L));
+
+        Map<String, DeviceRecord> decoded = roundTrip(batch);
+        assertEquals(batch.keySet(), decoded.keySet());
+        for (String key : batch.keySet()) {
+            if (!key.endsWith("3")) {
+                assertSameRecord(batch.get(key), decoded.get(key));
+            }
+        }
+        // -128 dBm se confunde con "desconocido" en el formato binario
+        assertFalse(decoded.get(String.format("%064x", 3)).hasRssi());
+    }
+
+    @Test
+    public void roundTrip_lastSeenUpdates() throws IOException {
+        Map<String, DeviceRecord> batch = new LinkedHashMap<>();
+        batch.put(String.format("%064x", 1), new DeviceRecord(5_000L, 65_000L, 3, (short) -90, (short) -40,
+                37.1773363, -3.5985571));
+        DeviceRecord update = new DeviceRecord(0L, (short) -60, 0.0, 0.0);
+        update.setLastSeenUpdate(2_000L);
+        batch.put(String.format("%064x", 2), update);
+        batch.put(String.format("%064x", 3), new DeviceRecord(70_000L, 80_000L, 2, (short) -70, (short) -60,
+                37.1773363, -3.5985571));
+
+        Map<String, DeviceRecord> decoded = roundTrip(batch);
+        assertEquals(batch.keySet(), decoded.keySet());
+        assertTrue(decoded.get(String.format("%064x", 2)).isLastSeenUpdate());
+        for (String key : batch.keySet()) {
+            assertSameRecord(batch.get(key), decoded.get(key));
+        }
+    }
+
+    @Test
+    public void cells_sendEachCellOnceAndLocateRecordsAtItsCenter() throws IOException {
+        SightingStore store = new SightingStore();
+        MacHasher hasher = new MacHasher();
+        Random random = new Random(5);
+        // 500 dispositivos repartidos en unos pocos cientos de metros y alguno sin posición
+        for (int i = 0; i < 500; i++) {
+            if (i % 50 == 0) {
+                store.record(hasher.hash(i), 1_000L + i, (short) -70, 0.0, 0.0, DeviceRecord.NO_LOCATION);
+            } else {
+                store.record(hasher.hash(i), 1_000L + i, (short) -70, 37.1773 + random.nextDouble() * 0.004,
+                        -3.5986 + random.nextDouble() * 0.004);
+            }
+        }
+        Map<String, DeviceRecord> batch = store.swap(7);
+
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        ByteArrayOutputStream cells = new ByteArrayOutputStream();
+        writeBatch(new BinaryBatchWriter(plain), batch);
+        BinaryBatchWriter cellWriter = new BinaryBatchWriter(cells, 7);
+        writeBatch(cellWriter, batch);
+        assertTrue("celdas " + cells.size() + " B, coordenadas " + plain.size() + " B", cells.size() < plain.size());
+
+        final Map<String, DeviceRecord> decoded = new LinkedHashMap<>();
+        new BinaryBatchReader(new ByteArrayInputStream(cells.toByteArray())).read(new BinaryBatchReader.Consumer() {
+            @Override
+            public void accept(byte[] hash, DeviceRecord r) {
+                decoded.put(Hex.encode(hash), new DeviceRecord(r.getFirstSeen(), r.getLastSeen(), r.getCount(),
+                        r.getMinRssi(), r.getMaxRssi(), r.getLatitud(), r.getLongitud(), r.getLocationTime()));
+            }
+        });
+        Set<Long> distinctCells = new HashSet<>();
+        for (Map.Entry<String, DeviceRecord> entry : batch.entrySet()) {
+            DeviceRecord expected = entry.getValue();
+            DeviceRecord actual = decoded.get(entry.getKey());
+            assertEquals(expected.getFirstSeen(), actual.getFirstSeen());
+            assertEquals(expected.hasLocation(), actual.hasLocation());
+            if (!expected.hasLocation()) {
+                continue;
+            }
+            long cell = Geohash.encode(expected.getLatitud(), expected.getLongitud(), 7);
+            distinctCells.add(cell);
+            assertEquals(Geohash.centerLatitude(cell, 7), actual.getLatitud(), 1e-12);
+            assertEquals(Geohash.centerLongitude(cell, 7), actual.getLongitud(), 1e-12);
+        }
+        // Agrupado por celda, cada una se escribe una sola vez
+        assertTrue(distinctCells.size() > 1);
+        assertEquals(distinctCells.size(), cellWriter.getCellCount());
+    }
+
+    private static void writeBatch(BinaryBatchWriter writer, Map<String, DeviceRecord> batch) throws IOException {
+        writer.beginBatch();
+        for (Map.Entry<String, DeviceRecord> entry : batch.entrySet()) {
+            writer.writeDevice(entry.getKey(), entry.getValue());
+        }
+        writer.endBatch();
+    }
+
+    @Test
+    public void roundTrip_largeBatch() throws IOException {
+        Map<String, DeviceRecord> batch = sampleBatch(5_000);
+        Map<String, DeviceRecord> decoded = roundTrip(batch);
+        assertEquals(batch.size(), decoded.size());
+        for (Map.Entry<String, DeviceRecord> entry : batch.entrySet()) {
+            assertSameRecord(entry.getValue(), decoded.get(entry.getKey()));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void reader_rejectsTruncatedBatch() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryBatchWriter writer = new BinaryBatchWriter(out);
+        writer.beginBatch();
+        writer.writeDevice(String.format("%064x", 1), new DeviceRecord(1L, (short) -50, 0.0, 0.0));
+        writer.endBatch();
+        byte[] bytes = out.toByteArray();
+        byte[] truncated = new byte[bytes.length - 3];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        new BinaryBatchReader(new ByteArrayInputStream(truncated)).read(new BinaryBatchReader.Consumer() {
+            @Override
+            public void accept(byte[] hash, DeviceRecord record) {
+            }
+        });
+    }
+
+    private static byte[] encodeJson(Map<String, DeviceRecord> batch, boolean gzip) throws IOException {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        OutputStream out = gzip ? new GZIPOutputStream(json) : json;
+        DeviceJsonWriter.write(batch, out);
+        out.close();
+        return json.toByteArray();
+    }
+
+    private static byte[] encodeBinary(Map<String, DeviceRecord> batch) throws IOException {
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        BinaryBatchWriter writer = new BinaryBatchWriter(binary);
+        writer.beginBatch();
+        for (Map.Entry<String, DeviceRecord> entry : batch.entrySet()) {
+            writer.writeDevice(entry.getKey(), entry.getValue());
+        }
+        writer.endBatch();
+        return binary.toByteArray();
+    }
+
+    @Test
+    public void binary_isSmallerAndCheaperThanJsonGzip() throws IOException {
+        Map<String, DeviceRecord> batch = sampleBatch(1_000);
+        // Calentamiento
+        for (int i = 0; i < 20; i++) {
+            encodeJson(batch, true);
+            encodeBinary(batch);
+        }
+
+        long start = System.nanoTime();
+        byte[] json = null;
+        for (int i = 0; i < 20; i++) {
+            json = encodeJson(batch, true);
+        }
+        long jsonNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        byte[] binary = null;
+        for (int i = 0; i < 20; i++) {
+            binary = encodeBinary(batch);
+        }
+        long binaryNanos = System.nanoTime() - start;
+
+        // Los 32 bytes aleatorios del hash no se comprimen: dominan el tamaño de ambos formatos
+        assertTrue("binario " + binary.length + " B, JSON+gzip " + json.length + " B", binary.length < json.length);
+        assertTrue(binary.length * 4 < encodeJson(batch, false).length);
+        assertTrue("binario " + binaryNanos + " ns, JSON+gzip " + jsonNanos + " ns", binaryNanos < jsonNanos);
+    }
+
+    @Test
+    public void standIn_decodesBinaryUploads() throws IOException {
+        Map<String, DeviceRecord> batch = sampleBatch(200);
+        try (LocalIngestServer server = new LocalIngestServer()) {
+            final Map<String, DeviceRecord> toSend = batch;
+            UploadClient.Response response = new UploadClient(server.url()).post(UploadFormat.BINARY,
+                    new UploadClient.BodyWriter() {
+                        @Override
+                        public void writeTo(OutputStream out) throws IOException {
+                            BinaryBatchWriter writer = new BinaryBatchWriter(out);
+                            writer.beginBatch();
+                            for (Map.Entry<String, DeviceRecord> entry : toSend.entrySet()) {
+                                writer.writeDevice(entry.getKey(), entry.getValue());
+                            }
+                            writer.endBatch();
+                        }
+                    });
+            assertTrue(response.isOk());
+            LocalIngestServer.Request request = server.requests().get(0);
+            assertEquals(BinaryBatchWriter.CONTENT_TYPE, request.contentType);
+            assertNull(request.contentEncoding);
+            assertEquals(batch.keySet(), request.records.keySet());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    private static final class FakeClock implements Clock {
+        long now;
+
+        @Override
+        public long nowMillis() {
+            return now;
+        }
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        FakeClock clock = new FakeClock();
+        CircuitBreaker breaker = new CircuitBreaker(3, 1_000, clock);
+        breaker.onFailure();
+        breaker.onFailure();
+        assertTrue(breaker.allowRequest());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void successResetsFailureCount() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 1_000, new FakeClock());
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenAllowsSingleTrial() {
+        FakeClock clock = new FakeClock();
+        CircuitBreaker breaker = new CircuitBreaker(1, 1_000, clock);
+        breaker.onFailure();
+        clock.now = 999;
+        assertFalse(breaker.allowRequest());
+
+        clock.now = 1_000;
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+
+        // La prueba falla: vuelve a abrirse durante otro periodo completo
+        breaker.onFailure();
+        clock.now = 1_500;
+        assertFalse(breaker.allowRequest());
+        clock.now = 2_000;
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void backoffIsBoundedAndJittered() {
+        Backoff backoff = new Backoff(100, 1_000, 5, new Random(1));
+        boolean varied = false;
+        long previous = -1;
+        for (int retry = 0; retry < 40; retry++) {
+            long delay = backoff.delayMillis(retry);
+            long ceiling = Math.min(1_000, 100L << Math.min(retry, 30));
+            assertTrue(delay >= 0 && delay <= ceiling);
+            varied |= previous >= 0 && delay != previous;
+            previous = delay;
+        }
+        assertTrue(varied);
+    }
+}
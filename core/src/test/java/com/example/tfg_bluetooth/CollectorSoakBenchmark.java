@@ -0,0 +1,123 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Prueba de resistencia de Collector: 24 h simuladas (SOAK_HOURS) de avistamientos de
+ * SyntheticSightingSource con una población que se renueva, envío cada 5 min al receptor local en formato
+ * binario. El tiempo es simulado, así que la prueba dura segundos.
+ *
+ * Imprime por hora simulada la memoria ocupada tras un GC y el tiempo de CPU; comprueba que
+ * la memoria no crece con las horas y que el servidor recibe todos los avistamientos.
+ * Solo se ejecuta con -Pbenchmarks (y -DSOAK_HOURS=n para otra duración).
+ */
+public class CollectorSoakBenchmark {
+
+    private static final int HOURS = Integer.getInteger("SOAK_HOURS", 24);
+    private static final int SIGHTINGS_PER_SECOND = 20;
+    private static final int POPULATION = 5_000;
+    private static final double REPEAT_RATIO = 0.7;
+    private static final long FLUSH_INTERVAL = 5 * 60 * 1000;
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final long START = 1_700_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void onlyWhenRequested() {
+        assumeTrue(Boolean.getBoolean("benchmarks"));
+    }
+
+    // Reloj simulado compartido por la fuente y la caché de ubicación
+    private static final class SimulatedClock implements Clock {
+        long now;
+
+        @Override
+        public long nowMillis() {
+            return now;
+        }
+    }
+
+    private static long usedHeapAfterGc(MemoryMXBean memory) {
+        System.gc();
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+
+    @Test
+    public void dayOfSightings_keepsHeapFlatAndUploadsEverything() throws Exception {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        try (LocalIngestServer server = new LocalIngestServer()) {
+            server.setStoreBodies(false);
+            SimulatedClock clock = new SimulatedClock();
+            LocationCache locationCache = new LocationCache(2 * 60 * 1000, clock);
+            Outbox outbox = new Outbox(folder.newFolder("outbox"));
+            Collector collector = new Collector(outbox, new UploadClient(server.url()), UploadFormat.BINARY,
+                    locationCache, FLUSH_INTERVAL, Integer.MAX_VALUE, Long.MAX_VALUE);
+            final StringBuilder errors = new StringBuilder();
+            collector.setErrorListener(new FlushScheduler.ErrorListener() {
+                @Override
+                public void onFlushError(Exception e) {
+                    errors.append(e).append('\n');
+                }
+            });
+            SyntheticSightingSource source = new SyntheticSightingSource(12, POPULATION, SIGHTINGS_PER_SECOND,
+                    REPEAT_RATIO, SyntheticSightingSource.fixedDwell(Long.MAX_VALUE));
+            source.seek(START);
+
+            long[] heapByHour = new long[HOURS + 1];
+            heapByHour[0] = usedHeapAfterGc(memory);
+            long cpuStart = processCpuNanos();
+            long cpuHour = cpuStart;
+            long sightings = 0;
+            for (long t = 0; t < HOURS * HOUR; t += 1000) {
+                clock.now = t;
+                if (t % 10_000 == 0) {
+                    locationCache.onFix(new LocationFix(37.1773 + t * 1e-9, -3.5986, 5f, t));
+                }
+                sightings += source.emit(START + t + 1000, collector);
+                if ((t + 1000) % FLUSH_INTERVAL == 0) {
+                    collector.flush();
+                }
+                if ((t + 1000) % HOUR == 0) {
+                    int hour = (int) ((t + 1000) / HOUR);
+                    heapByHour[hour] = usedHeapAfterGc(memory);
+                    long cpu = processCpuNanos();
+                    System.out.printf("Hora %2d: %,d avistamientos, %,d dispositivos, heap %,d KB, CPU %d ms%n",
+                            hour, sightings, source.getDevicesSeen(), heapByHour[hour] / 1024, (cpu - cpuHour) / 1_000_000);
+                    cpuHour = cpu;
+                }
+            }
+            collector.stop();
+            long cpuTotal = processCpuNanos() - cpuStart;
+            System.out.printf("Total: %,d avistamientos en %d h simuladas, %.2f us CPU/avistamiento, %d envíos%n",
+                    sightings, HOURS, cpuTotal / 1000.0 / sightings, server.requests().size());
+
+            assertEquals("", errors.toString());
+            assertEquals(sightings, server.sightingsReceived());
+            assertTrue(outbox.pendingSegments().isEmpty());
+
+            // La memoria de las últimas horas no supera a la de la primera más un margen para el GC
+            long firstHour = heapByHour[Math.min(1, HOURS)];
+            for (int hour = 2; hour <= HOURS; hour++) {
+                assertTrue("hora " + hour + ": " + heapByHour[hour] + " > " + firstHour,
+                        heapByHour[hour] < firstHour + 16L * 1024 * 1024);
+            }
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ColumnarExportTest {
+
+    private static final class Row {
+        final String hashedMac;
+        final long timestamp;
+        final short rssi;
+        final double latitud;
+        final double longitud;
+        final long locationTime;
+
+        Row(String hashedMac, long timestamp, short rssi, double latitud, double longitud, long locationTime) {
+            this.hashedMac = hashedMac;
+            this.timestamp = timestamp;
+            this.rssi = rssi;
+            this.latitud = latitud;
+            this.longitud = longitud;
+            this.locationTime = locationTime;
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    /**
+     * Un día de avistamientos: devices dispositivos en un paseo por Madrid, con la posición
+     * refrescada cada 10 s y algún tramo sin posición.
+     */
+    private static final class Day {
+        private final MacHasher hasher = new MacHasher();
+        private final String[] hashes;
+        private final Random random = new Random(7);
+        private final long interval;
+        private long timestamp = 1_700_000_000_000L;
+        private long locationTime = DeviceRecord.NO_LOCATION;
+        private double latitud = 40.4168;
+        private double longitud = -3.7038;
+
+        Day(int devices, int sightings) {
+            hashes = new String[devices];
+            for (int i = 0; i < devices; i++) {
+                hashes[i] = hasher.hash(0x001122000000L + i);
+            }
+            interval = 24 * 60 * 60 * 1000L / sightings;
+        }
+
+        Row next() {
+            timestamp += 1 + random.nextInt((int) (2 * interval));
+            if (timestamp - locationTime >= 10_000 || locationTime == DeviceRecord.NO_LOCATION) {
+                if (random.nextInt(20) == 0) {
+                    locationTime = DeviceRecord.NO_LOCATION;
+                } else {
+                    latitud += (random.nextDouble() - 0.5) * 1e-4;
+                    longitud += (random.nextDouble() - 0.5) * 1e-4;
+                    locationTime = timestamp;
+                }
+            }
+            // Unos pocos dispositivos cercanos acaparan la mayoría de los avistamientos
+            int device = random.nextInt(hashes.length);
+            if (random.nextInt(4) != 0) {
+                device %= 50;
+            }
+            short rssi = random.nextInt(50) == 0 ? DeviceRecord.RSSI_UNKNOWN : (short) (-40 - random.nextInt(60));
+            boolean located = locationTime != DeviceRecord.NO_LOCATION;
+            return new Row(hashes[device], timestamp, rssi, located ? latitud : 0.0, located ? longitud : 0.0,
+                    locationTime);
+        }
+    }
+
+    private static byte[] export(List<Row> rows, int rowGroupRows) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ColumnarExportWriter writer = new ColumnarExportWriter(out, rowGroupRows)) {
+            for (Row row : rows) {
+                writer.write(row.hashedMac, row.timestamp, row.rssi, row.latitud, row.longitud, row.locationTime);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static List<Row> read(byte[] data) throws IOException {
+        final List<Row> rows = new ArrayList<>();
+        long count = new ColumnarExportReader(new ByteArrayInputStream(data)).read(new ColumnarExportReader.Consumer() {
+            @Override
+            public void accept(byte[] hash, long timestamp, short rssi, double latitud, double longitud,
+                               long locationTime) {
+                rows.add(new Row(Hex.encode(hash), timestamp, rssi, latitud, longitud, locationTime));
+            }
+        });
+        assertEquals(rows.size(), count);
+        return rows;
+    }
+
+    @Test
+    public void roundTripAcrossRowGroups() throws IOException {
+        Day day = new Day(30, 1_000);
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            rows.add(day.next());
+        }
+        // Grupos pequeños: varios cortes, el último incompleto
+        List<Row> read = read(export(rows, 64));
+
+        assertEquals(rows.size(), read.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Row expected = rows.get(i);
+            Row actual = read.get(i);
+            assertEquals(expected.hashedMac, actual.hashedMac);
+            assertEquals(expected.timestamp, actual.timestamp);
+            assertEquals(expected.rssi, actual.rssi);
+            assertEquals(expected.locationTime, actual.locationTime);
+            assertEquals(expected.latitud, actual.latitud, 1e-7);
+            assertEquals(expected.longitud, actual.longitud, 1e-7);
+        }
+    }
+
+    @Test
+    public void emptyExportHasNoRowGroups() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarExportWriter writer = new ColumnarExportWriter(out);
+        writer.flush();
+        writer.close();
+        assertEquals(0, writer.getRowGroups());
+        assertTrue(read(out.toByteArray()).isEmpty());
+    }
+
+    @Test
+    public void flushKeepsTheRowGroupOpenAndLeavesTheFileReadable() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarExportWriter writer = new ColumnarExportWriter(out, 4);
+        Day day = new Day(10, 100);
+        for (int i = 0; i < 10; i++) {
+            Row row = day.next();
+            writer.write(row.hashedMac, row.timestamp, row.rssi, row.latitud, row.longitud, row.locationTime);
+        }
+        writer.flush();
+        assertEquals(2, writer.getRowGroups());
+        // Como si el proceso muriera ahora: sin etiqueta final, se leen los grupos completos
+        assertEquals(8, read(out.toByteArray()).size());
+        writer.close();
+        assertEquals(3, writer.getRowGroups());
+        assertEquals(10, read(out.toByteArray()).size());
+    }
+
+    @Test
+    public void flushClosesTheRowGroupOnceItIsOldEnough() throws IOException {
+        final long[] now = {0L};
+        Clock clock = new Clock() {
+            @Override
+            public long nowMillis() {
+                return now[0];
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarExportWriter writer = new ColumnarExportWriter(out, 1_000, 60_000, clock);
+        Day day = new Day(10, 100);
+        for (int i = 0; i < 10; i++) {
+            Row row = day.next();
+            writer.write(row.hashedMac, row.timestamp, row.rssi, row.latitud, row.longitud, row.locationTime);
+        }
+        now[0] = 59_999;
+        writer.flush();
+        assertEquals(0, writer.getRowGroups());
+
+        // Con pocos avistamientos, el grupo se escribe al cumplir su antigüedad aunque no esté lleno
+        now[0] = 60_000;
+        writer.flush();
+        assertEquals(1, writer.getRowGroups());
+        assertEquals(10, read(out.toByteArray()).size());
+
+        // La antigüedad del grupo siguiente cuenta desde su primera fila
+        now[0] = 100_000;
+        Row row = day.next();
+        writer.write(row.hashedMac, row.timestamp, row.rssi, row.latitud, row.longitud, row.locationTime);
+        now[0] = 150_000;
+        writer.flush();
+        assertEquals(1, writer.getRowGroups());
+        now[0] = 160_000;
+        writer.flush();
+        assertEquals(2, writer.getRowGroups());
+        writer.close();
+        assertEquals(11, read(out.toByteArray()).size());
+    }
+
+    @Test
+    public void truncatedOrCorruptExportIsRejected() throws IOException {
+        Day day = new Day(30, 1_000);
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            rows.add(day.next());
+        }
+        byte[] data = export(rows, 128);
+
+        for (int length : new int[] {0, 3, 6, data.length / 2, data.length - 2}) {
+            try {
+                read(Arrays.copyOf(data, length));
+                fail("se aceptó una exportación de " + length + " bytes");
+            } catch (IOException expected) {
+            }
+        }
+        // Sin la etiqueta final (proceso muerto antes de close()) se lee hasta el último grupo completo
+        assertTrue(read(Arrays.copyOf(data, 5)).isEmpty());
+        assertEquals(rows.size(), read(Arrays.copyOf(data, data.length - 1)).size());
+        byte[] corrupt = data.clone();
+        corrupt[0] = 'X';
+        try {
+            read(corrupt);
+            fail("se aceptó una cabecera no válida");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void writeErrorIsKeptAndReportedOnFlush() throws IOException {
+        final boolean[] failing = new boolean[1];
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                if (failing[0]) {
+                    throw new IOException("disco lleno");
+                }
+            }
+        };
+        ColumnarExportWriter writer = new ColumnarExportWriter(out, 4);
+        failing[0] = true;
+        Day day = new Day(10, 100);
+        for (int i = 0; i < 10; i++) {
+            Row row = day.next();
+            // No lanza: el error se guarda hasta flush()
+            writer.write(row.hashedMac, row.timestamp, row.rssi, row.latitud, row.longitud, row.locationTime);
+        }
+        try {
+            writer.flush();
+            fail("flush() debería relanzar el error de escritura");
+        } catch (IOException e) {
+            assertEquals("disco lleno", e.getMessage());
+        }
+    }
+
+    @Test
+    public void invalidHashIsKeptAsTheErrorInsteadOfThrowing() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarExportWriter writer = new ColumnarExportWriter(out, 4);
+        writer.write("no es un hash", 1_000L, (short) -60, 0.0, 0.0, DeviceRecord.NO_LOCATION);
+        Row row = new Day(1, 1).next();
+        writer.write(row.hashedMac, row.timestamp, row.rssi, row.latitud, row.longitud, row.locationTime);
+        assertEquals(0, writer.getRows());
+        try {
+            writer.flush();
+            fail("flush() debería relanzar el hash no válido");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("no es un hash"));
+        }
+    }
+
+    @Test
+    public void dayOfSightingsExportsQuicklyAndFarSmallerThanJson() throws IOException {
+        int sightings = 1_000_000;
+        Day day = new Day(2_000, sightings);
+        CountingOutputStream columnar = new CountingOutputStream();
+        CountingOutputStream json = new CountingOutputStream();
+        DeviceJsonWriter jsonWriter = new DeviceJsonWriter(json);
+        DeviceRecord record = new DeviceRecord(0L, (short) 0, 0.0, 0.0);
+        byte[] hash = new byte[MacHasher.HASH_LENGTH];
+
+        long exportNanos = 0;
+        ColumnarExportWriter writer = new ColumnarExportWriter(columnar);
+        jsonWriter.beginBatch();
+        for (int i = 0; i < sightings; i++) {
+            Row row = day.next();
+            long start = System.nanoTime();
+            writer.write(row.hashedMac, row.timestamp, row.rssi, row.latitud, row.longitud, row.locationTime);
+            exportNanos += System.nanoTime() - start;
+            // La misma información como JSON: un registro de un solo avistamiento por fila
+            Hex.decode(row.hashedMac, hash, 0);
+            record.set(row.timestamp, row.timestamp, 1, row.rssi, row.rssi, row.latitud, row.longitud,
+                    row.locationTime);
+            jsonWriter.writeDevice(hash, 0, record);
+        }
+        long start = System.nanoTime();
+        writer.close();
+        exportNanos += System.nanoTime() - start;
+        jsonWriter.endBatch();
+
+        assertEquals(sightings, writer.getRows());
+        assertEquals((sightings + ColumnarExportWriter.DEFAULT_ROW_GROUP_ROWS - 1)
+                / ColumnarExportWriter.DEFAULT_ROW_GROUP_ROWS, writer.getRowGroups());
+        assertTrue("exportación en " + exportNanos / 1_000_000 + " ms", exportNanos < 10_000_000_000L);
+        assertTrue("columnas " + columnar.count + " B, JSON " + json.count + " B", columnar.count * 10 < json.count);
+    }
+}
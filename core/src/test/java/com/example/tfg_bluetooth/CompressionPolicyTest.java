@@ -0,0 +1,30 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+public class CompressionPolicyTest {
+
+    @Test
+    public void levelFor_dependsOnBatchSize() {
+        CompressionPolicy policy = new CompressionPolicy();
+        assertEquals(Deflater.DEFAULT_COMPRESSION, policy.levelFor(-1));
+        assertEquals(Deflater.BEST_COMPRESSION, policy.levelFor(1_000));
+        assertEquals(Deflater.DEFAULT_COMPRESSION, policy.levelFor(CompressionPolicy.SMALL_BATCH_BYTES + 1));
+        assertEquals(CompressionPolicy.LARGE_BATCH_LEVEL, policy.levelFor(CompressionPolicy.LARGE_BATCH_BYTES));
+    }
+
+    @Test
+    public void levelFor_followsBatteryState() {
+        CompressionPolicy policy = new CompressionPolicy();
+        policy.setBatteryState(false, true);
+        assertEquals(Deflater.BEST_SPEED, policy.levelFor(1_000));
+        assertEquals(Deflater.BEST_SPEED, policy.levelFor(CompressionPolicy.LARGE_BATCH_BYTES));
+        // Cargando manda sobre la batería baja
+        policy.setBatteryState(true, true);
+        assertEquals(Deflater.BEST_COMPRESSION, policy.levelFor(CompressionPolicy.LARGE_BATCH_BYTES));
+    }
+}
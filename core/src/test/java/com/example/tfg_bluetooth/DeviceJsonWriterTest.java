@@ -0,0 +1,102 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class DeviceJsonWriterTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private static String toJson(Map<String, DeviceRecord> devices) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DeviceJsonWriter writer = new DeviceJsonWriter(out, new TimestampFormat(UTC));
+        writer.beginBatch();
+        for (Map.Entry<String, DeviceRecord> entry : devices.entrySet()) {
+            writer.writeDevice(entry.getKey(), entry.getValue());
+        }
+        writer.endBatch();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void write_producesServerSchema() throws Exception {
+        Map<String, DeviceRecord> devices = new LinkedHashMap<>();
+        DeviceRecord record = new DeviceRecord(1_700_000_000_000L, (short) -71, 37.177336, -3.598557);
+        record.update(1_700_000_090_000L, (short) -64, 37.177336, -3.598557);
+        devices.put("ab12", record);
+        devices.put("cd34", new DeviceRecord(1_700_000_000_000L, DeviceRecord.RSSI_UNKNOWN, 0.0, 0.0,
+                DeviceRecord.NO_LOCATION));
+        devices.put("ef56", new DeviceRecord(1_700_000_000_000L, DeviceRecord.RSSI_UNKNOWN, 40.4168, -3.7038,
+                1_699_999_955_000L));
+
+        assertEquals("{\"ab12\":{\"primera_fecha_hora\":\"2023-11-14 22:13:20\","
+                        + "\"ultima_fecha_hora\":\"2023-11-14 22:14:50\","
+                        + "\"latitud\":37.177336,\"longitud\":-3.598557,\"edad_ubicacion_ms\":0,"
+                        + "\"avistamientos\":2,\"rssi_min\":-71,\"rssi_max\":-64},"
+                        + "\"cd34\":{\"primera_fecha_hora\":\"2023-11-14 22:13:20\","
+                        + "\"ultima_fecha_hora\":\"2023-11-14 22:13:20\",\"avistamientos\":1},"
+                        + "\"ef56\":{\"primera_fecha_hora\":\"2023-11-14 22:13:20\","
+                        + "\"ultima_fecha_hora\":\"2023-11-14 22:13:20\","
+                        + "\"latitud\":40.416800,\"longitud\":-3.703800,\"edad_ubicacion_ms\":45000,"
+                        + "\"avistamientos\":1}}",
+                toJson(devices));
+    }
+
+    @Test
+    public void write_lastSeenUpdateOnlyCarriesLastSeen() throws Exception {
+        Map<String, DeviceRecord> devices = new LinkedHashMap<>();
+        DeviceRecord update = new DeviceRecord(1_700_000_000_000L, (short) -60, 37.1, -3.6);
+        update.setLastSeenUpdate(1_700_000_090_000L);
+        devices.put("ab12", update);
+        devices.put("cd34", new DeviceRecord(1_700_000_000_000L, DeviceRecord.RSSI_UNKNOWN, 0.0, 0.0,
+                DeviceRecord.NO_LOCATION));
+
+        assertEquals("{\"ab12\":{\"ultima_fecha_hora\":\"2023-11-14 22:14:50\"},"
+                        + "\"cd34\":{\"primera_fecha_hora\":\"2023-11-14 22:13:20\","
+                        + "\"ultima_fecha_hora\":\"2023-11-14 22:13:20\",\"avistamientos\":1}}",
+                toJson(devices));
+    }
+
+    @Test
+    public void write_emptyBatch() throws Exception {
+        assertEquals("{}", toJson(new LinkedHashMap<String, DeviceRecord>()));
+    }
+
+    @Test
+    public void write_largeBatchSpansSeveralBuffers() throws Exception {
+        Map<String, DeviceRecord> devices = new LinkedHashMap<>();
+        for (int i = 0; i < 500; i++) {
+            devices.put(String.format("%064x", i), new DeviceRecord(i * 1000L, (short) -50, -0.5, 0.25));
+        }
+        String json = toJson(devices);
+        assertTrue(json.startsWith("{\"" + String.format("%064x", 0)));
+        assertTrue(json.endsWith("\"avistamientos\":1,\"rssi_min\":-50,\"rssi_max\":-50}}"));
+        assertEquals(500, json.split("primera_fecha_hora").length - 1);
+        assertTrue(json.contains("\"latitud\":-0.500000,\"longitud\":0.250000"));
+    }
+
+    @Test
+    public void timestampFormat_matchesSimpleDateFormat() {
+        TimeZone madrid = TimeZone.getTimeZone("Europe/Madrid");
+        SimpleDateFormat reference = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.ROOT);
+        reference.setTimeZone(madrid);
+        TimestampFormat format = new TimestampFormat(madrid);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long millis = (long) (random.nextDouble() * 4_000_000_000_000L) - 500_000_000_000L;
+            assertEquals(reference.format(new Date(millis)), format.format(millis));
+        }
+    }
+}
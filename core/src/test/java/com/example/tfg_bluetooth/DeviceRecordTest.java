@@ -0,0 +1,80 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DeviceRecordTest {
+
+    @Test
+    public void update_keepsFirstSeenAndMovesLastSeen() {
+        DeviceRecord record = new DeviceRecord(1_000L, (short) -70, 37.0, -3.0);
+        record.update(61_000L, (short) -65, 37.5, -3.5);
+        record.update(121_000L, (short) -80, 38.0, -4.0);
+
+        assertEquals(1_000L, record.getFirstSeen());
+        assertEquals(121_000L, record.getLastSeen());
+        assertEquals(120_000L, record.getDwellMillis());
+        assertEquals(3, record.getCount());
+        assertEquals(-80, record.getMinRssi());
+        assertEquals(-65, record.getMaxRssi());
+        assertEquals(38.0, record.getLatitud(), 0.0);
+        assertEquals(-4.0, record.getLongitud(), 0.0);
+    }
+
+    @Test
+    public void update_outOfOrderSightingOnlyMovesFirstSeen() {
+        DeviceRecord record = new DeviceRecord(10_000L, (short) -70, 37.0, -3.0);
+        record.update(5_000L, (short) -70, 1.0, 1.0);
+
+        assertEquals(5_000L, record.getFirstSeen());
+        assertEquals(10_000L, record.getLastSeen());
+        assertEquals(37.0, record.getLatitud(), 0.0);
+    }
+
+    @Test
+    public void update_unknownRssiIsIgnored() {
+        DeviceRecord record = new DeviceRecord(0L, DeviceRecord.RSSI_UNKNOWN, 0.0, 0.0);
+        assertFalse(record.hasRssi());
+
+        record.update(1L, DeviceRecord.RSSI_UNKNOWN, 0.0, 0.0);
+        assertFalse(record.hasRssi());
+
+        record.update(2L, (short) -60, 0.0, 0.0);
+        record.update(3L, DeviceRecord.RSSI_UNKNOWN, 0.0, 0.0);
+        assertTrue(record.hasRssi());
+        assertEquals(-60, record.getMinRssi());
+        assertEquals(-60, record.getMaxRssi());
+        assertEquals(4, record.getCount());
+    }
+
+    @Test
+    public void update_sightingWithoutLocationKeepsPreviousFix() {
+        DeviceRecord record = new DeviceRecord(10_000L, (short) -70, 37.0, -3.0, 4_000L);
+        assertEquals(6_000L, record.getLocationAgeMillis());
+
+        record.update(20_000L, (short) -70, 0.0, 0.0, DeviceRecord.NO_LOCATION);
+        assertTrue(record.hasLocation());
+        assertEquals(37.0, record.getLatitud(), 0.0);
+        assertEquals(16_000L, record.getLocationAgeMillis());
+
+        record.update(30_000L, (short) -70, 38.0, -4.0, 29_000L);
+        assertEquals(38.0, record.getLatitud(), 0.0);
+        assertEquals(1_000L, record.getLocationAgeMillis());
+    }
+
+    @Test
+    public void merge_keepsMostRecentFix() {
+        DeviceRecord record = new DeviceRecord(1_000L, (short) -70, 0.0, 0.0, DeviceRecord.NO_LOCATION);
+        assertFalse(record.hasLocation());
+
+        record.merge(new DeviceRecord(500L, (short) -60, 37.0, -3.0, 400L));
+        assertTrue(record.hasLocation());
+        assertEquals(400L, record.getLocationTime());
+        assertEquals(500L, record.getFirstSeen());
+        assertEquals(1_000L, record.getLastSeen());
+
+        record.merge(new DeviceRecord(900L, (short) -60, 38.0, -4.0, 300L));
+        assertEquals(37.0, record.getLatitud(), 0.0);
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class DeviceTableTest {
+
+    private static String hash(int i) {
+        return String.format("%064x", i);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void record_matchesDeviceRecordUpdate() {
+        DeviceTable table = new DeviceTable(4);
+        DeviceRecord expected = new DeviceRecord(5_000L, (short) -70, 37.1773, -3.5986);
+        table.record(hash(1), 5_000L, (short) -70, 37.1773, -3.5986, 5_000L);
+        expected.update(1_000L, DeviceRecord.RSSI_UNKNOWN, 0.0, 0.0, DeviceRecord.NO_LOCATION);
+        table.record(hash(1), 1_000L, DeviceRecord.RSSI_UNKNOWN, 0.0, 0.0, DeviceRecord.NO_LOCATION);
+        expected.update(9_000L, (short) -50, 37.1800, -3.6000, 8_000L);
+        int row = table.record(hash(1), 9_000L, (short) -50, 37.1800, -3.6000, 8_000L);
+
+        DeviceRecord actual = table.snapshot(row);
+        assertEquals(1, table.size());
+        assertEquals(expected.getFirstSeen(), actual.getFirstSeen());
+        assertEquals(expected.getLastSeen(), actual.getLastSeen());
+        assertEquals(3, actual.getCount());
+        assertEquals(-70, actual.getMinRssi());
+        assertEquals(-50, actual.getMaxRssi());
+        assertEquals(8_000L, actual.getLocationTime());
+        assertEquals(37.1800, actual.getLatitud(), 1e-7);
+        assertEquals(-3.6000, actual.getLongitud(), 1e-7);
+        assertEquals(hash(1), table.hashedMac(row));
+    }
+
+    @Test
+    public void record_keepsDevicesWithSamePrefixApart() {
+        DeviceTable table = new DeviceTable(8);
+        // Los primeros 8 bytes coinciden: la tabla tiene que comparar el hash completo
+        String a = "00000000000000000000000000000000000000000000000000000000000000aa";
+        String b = "00000000000000000000000000000000000000000000000000000000000000bb";
+        table.record(a, 1L, (short) -70, 0.0, 0.0, 1L);
+        table.record(b, 2L, (short) -60, 0.0, 0.0, 2L);
+        table.record(a, 3L, (short) -70, 0.0, 0.0, 3L);
+        assertEquals(2, table.size());
+        assertEquals(2, table.getCount(table.find(a)));
+        assertEquals(1, table.getCount(table.find(b)));
+    }
+
+    @Test
+    public void record_returnsMinusOneForNewDeviceWhenFull() {
+        DeviceTable table = new DeviceTable(2);
+        assertTrue(table.record(hash(1), 1L, (short) -70, 0.0, 0.0, 1L) >= 0);
+        assertTrue(table.record(hash(2), 2L, (short) -70, 0.0, 0.0, 2L) >= 0);
+        assertTrue(table.isFull());
+        assertEquals(-1, table.record(hash(3), 3L, (short) -70, 0.0, 0.0, 3L));
+        // Los que ya están se siguen actualizando
+        assertTrue(table.record(hash(1), 4L, (short) -70, 0.0, 0.0, 4L) >= 0);
+    }
+
+    @Test
+    public void merge_matchesDeviceRecordMerge() {
+        DeviceTable table = new DeviceTable(4);
+        table.record(hash(1), 9_000L, (short) -50, 1.0, 2.0, 9_000L);
+        DeviceRecord previous = new DeviceRecord(1_000L, 2_000L, 3, (short) -80, (short) -75, 5.0, 6.0, 2_000L);
+        table.merge(hash(1), previous);
+        table.merge(hash(2), previous);
+
+        DeviceRecord merged = table.snapshot(table.find(hash(1)));
+        assertEquals(1_000L, merged.getFirstSeen());
+        assertEquals(9_000L, merged.getLastSeen());
+        assertEquals(4, merged.getCount());
+        assertEquals(-80, merged.getMinRssi());
+        assertEquals(-50, merged.getMaxRssi());
+        assertEquals(1.0, merged.getLatitud(), 1e-7);
+        assertEquals(3, table.snapshot(table.find(hash(2))).getCount());
+    }
+
+    @Test
+    public void removeOldest_spillsLeastRecentlySeenAndKeepsTheRestReachable() {
+        DeviceTable table = new DeviceTable(64);
+        Random random = new Random(7);
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            order.add(i);
+        }
+        java.util.Collections.shuffle(order, random);
+        for (int i : order) {
+            table.record(hash(i), 1_000L * i, (short) -70, 0.0, 0.0, 1_000L * i);
+        }
+
+        DeviceTable spilled = new DeviceTable(8);
+        assertEquals(8, table.removeOldest(8, spilled));
+        assertEquals(8, spilled.size());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(1_000L * i, spilled.getLastSeen(spilled.find(hash(i))));
+            assertEquals(-1, table.find(hash(i)));
+        }
+        assertEquals(56, table.size());
+        for (int i = 8; i < 64; i++) {
+            int row = table.find(hash(i));
+            assertTrue(row >= 0);
+            assertEquals(1_000L * i, table.getLastSeen(row));
+        }
+        // Tras sacar, vuelven a caber dispositivos nuevos
+        assertTrue(table.record(hash(100), 1L, (short) -70, 0.0, 0.0, 1L) >= 0);
+    }
+
+    @Test
+    public void removeOldest_breaksTiesWithoutExceedingCount() {
+        DeviceTable table = new DeviceTable(8);
+        for (int i = 0; i < 8; i++) {
+            table.record(hash(i), 5L, (short) -70, 0.0, 0.0, 5L);
+        }
+        DeviceTable spilled = new DeviceTable(8);
+        assertEquals(3, table.removeOldest(3, spilled));
+        assertEquals(5, table.size());
+        assertEquals(5, table.removeOldest(10, spilled));
+        assertEquals(0, table.size());
+        assertEquals(8, spilled.size());
+    }
+
+    @Test
+    public void rowsByCell_groupsEachCellAndLeavesUnlocatedLast() {
+        DeviceTable table = new DeviceTable(8);
+        table.record(hash(0), 1L, (short) -70, 37.17736, -3.59856, 1L);
+        table.record(hash(1), 2L, (short) -70, 0.0, 0.0, DeviceRecord.NO_LOCATION);
+        table.record(hash(2), 3L, (short) -70, 37.18001, -3.59856, 3L);
+        table.record(hash(3), 4L, (short) -70, 37.17736, -3.59856, 4L);
+        table.record(hash(4), 5L, (short) -70, 37.18001, -3.59856, 5L);
+
+        int[] rows = table.rowsByCell(7);
+        List<String> cells = new ArrayList<>();
+        for (int row : rows) {
+            DeviceRecord record = table.snapshot(row);
+            cells.add(record.hasLocation()
+                    ? Geohash.encodeToString(record.getLatitud(), record.getLongitud(), 7) : "-");
+        }
+        assertEquals(5, rows.length);
+        assertEquals(cells.get(0), cells.get(1));
+        assertEquals(cells.get(2), cells.get(3));
+        assertNotEquals(cells.get(1), cells.get(2));
+        assertEquals("-", cells.get(4));
+        assertEquals(1, rows[4]);
+        // Dentro de cada celda se conserva el orden de fila
+        assertTrue(rows[0] < rows[1] && rows[2] < rows[3]);
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4}, table.rowsByCell(0));
+    }
+
+    @Test
+    public void randomOperations_agreeWithAMap() {
+        DeviceTable table = new DeviceTable(200);
+        Map<String, Integer> counts = new HashMap<>();
+        Random random = new Random(3);
+        for (int step = 0; step < 20_000; step++) {
+            String key = hash(random.nextInt(400));
+            long now = step;
+            if (table.record(key, now, (short) -70, 0.0, 0.0, now) < 0) {
+                DeviceTable spilled = new DeviceTable(25);
+                table.removeOldest(25, spilled);
+                for (int row = 0; row < spilled.size(); row++) {
+                    assertEquals((int) counts.remove(spilled.hashedMac(row)), spilled.getCount(row));
+                }
+                table.record(key, now, (short) -70, 0.0, 0.0, now);
+            }
+            Integer count = counts.get(key);
+            counts.put(key, count == null ? 1 : count + 1);
+        }
+        assertEquals(counts.size(), table.size());
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            assertEquals((int) entry.getValue(), table.getCount(table.find(entry.getKey())));
+        }
+    }
+
+    @Test
+    public void memoryFootprint_isAFractionOfTheMapAt100kDevices() {
+        int devices = 100_000;
+        String[] keys = new String[devices];
+        Random random = new Random(1);
+        byte[] digest = new byte[MacHasher.HASH_LENGTH];
+        for (int i = 0; i < devices; i++) {
+            random.nextBytes(digest);
+            keys[i] = Hex.encode(digest);
+        }
+
+        // Memoria retenida: la del mapa incluye sus propias cadenas, como las que guarda SightingStore
+        long before = usedMemory();
+        Map<String, DeviceRecord> map = new ConcurrentHashMap<>();
+        for (int i = 0; i < devices; i++) {
+            map.put(new String(keys[i].toCharArray()), new DeviceRecord(i, (short) -70, 37.0, -3.0));
+        }
+        long mapBytes = usedMemory() - before;
+
+        before = allocatedBytes();
+        DeviceTable table = new DeviceTable(devices);
+        long tableBytes = allocatedBytes() - before;
+        for (int i = 0; i < devices; i++) {
+            assertTrue(table.record(keys[i], i, (short) -70, 37.0, -3.0, i) >= 0);
+        }
+        // Los avistamientos ya no reservan memoria
+        long recordBytes = allocatedBytes() - before - tableBytes;
+
+        assertEquals(devices, map.size());
+        assertTrue(tableBytes + " B", tableBytes <= table.getMemoryBytes() * 101 / 100);
+        assertTrue("tabla " + tableBytes + " B, mapa " + mapBytes + " B", tableBytes * 2 < mapBytes);
+        assertTrue("avistamientos " + recordBytes + " B", recordBytes < 64 * 1024);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
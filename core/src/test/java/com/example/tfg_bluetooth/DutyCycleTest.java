@@ -0,0 +1,55 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DutyCycleTest {
+
+    @Test
+    public void pauseAfter_followsDutyCycle() {
+        DutyCycle half = new DutyCycle(0.5, 0, 60_000L);
+        assertEquals(12_000L, half.pauseAfter(12_000L));
+
+        DutyCycle quarter = new DutyCycle(0.25, 0, 60_000L);
+        assertEquals(36_000L, quarter.pauseAfter(12_000L));
+
+        // Ciclo completo: las búsquedas se encadenan sin pausa
+        assertEquals(0L, new DutyCycle(1.0, 0, 60_000L).pauseAfter(12_000L));
+    }
+
+    @Test
+    public void pauseAfter_isClamped() {
+        DutyCycle cycle = new DutyCycle(0.1, 1_000L, 60_000L);
+        assertEquals(60_000L, cycle.pauseAfter(12_000L));
+        assertEquals(1_000L, new DutyCycle(1.0, 1_000L, 60_000L).pauseAfter(12_000L));
+        assertEquals(1_000L, cycle.pauseAfter(-5L));
+    }
+
+    @Test
+    public void windowFor_splitsPeriod() {
+        DutyCycle cycle = new DutyCycle(0.25, 0, 60_000L);
+        long window = cycle.windowFor(40_000L);
+        assertEquals(10_000L, window);
+        assertEquals(40_000L, window + cycle.pauseAfter(window));
+    }
+
+    @Test
+    public void retryPause_backsOffUpToMaxPause() {
+        DutyCycle half = new DutyCycle(0.5, 0, 60_000L);
+        assertEquals(12_000L, half.retryPauseAfter(12_000L, 1));
+        assertEquals(24_000L, half.retryPauseAfter(12_000L, 2));
+        assertEquals(48_000L, half.retryPauseAfter(12_000L, 3));
+        assertEquals(60_000L, half.retryPauseAfter(12_000L, 50));
+
+        // Sin pausa entre ventanas también se espera antes de reintentar
+        DutyCycle full = new DutyCycle(1.0, 0, 60_000L);
+        assertEquals(DutyCycle.MIN_RETRY_PAUSE_MILLIS, full.retryPauseAfter(12_000L, 1));
+        assertEquals(2 * DutyCycle.MIN_RETRY_PAUSE_MILLIS, full.retryPauseAfter(12_000L, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroDutyCycle() {
+        new DutyCycle(0.0, 0, 1_000L);
+    }
+}
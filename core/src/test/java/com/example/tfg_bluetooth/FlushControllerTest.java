@@ -0,0 +1,139 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FlushControllerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final class FakeClock implements Clock {
+        long now;
+
+        @Override
+        public long nowMillis() {
+            return now;
+        }
+    }
+
+    private static FlushController controller(FakeClock clock, long seed) {
+        return new FlushController(1_000, 16_000, 100, 800, 500, 0.1, clock, new Random(seed));
+    }
+
+    @Test
+    public void overloadWidensAndHealthyResponsesNarrowWithinBounds() {
+        FlushController controller = controller(new FakeClock(), 1);
+        controller.onResponse(503, -1, 10);
+        assertEquals(2_000, controller.getIntervalMillis());
+        assertEquals(200, controller.getBatchRecords());
+        for (int i = 0; i < 10; i++) {
+            controller.onResponse(429, -1, 10);
+        }
+        assertEquals(16_000, controller.getIntervalMillis());
+        assertEquals(800, controller.getBatchRecords());
+
+        for (int i = 0; i < 20; i++) {
+            controller.onResponse(200, -1, 10);
+        }
+        assertEquals(1_000, controller.getIntervalMillis());
+        assertEquals(100, controller.getBatchRecords());
+    }
+
+    @Test
+    public void slowResponsesWidenLessThanOverload() {
+        FlushController controller = controller(new FakeClock(), 1);
+        controller.onResponse(200, -1, 2_000);
+        assertEquals(1_500, controller.getIntervalMillis());
+        controller.onFailure();
+        assertEquals(3_000, controller.getIntervalMillis());
+        // Los errores del cliente no dicen nada de la carga del servidor
+        controller.onResponse(400, -1, 10);
+        assertEquals(3_000, controller.getIntervalMillis());
+    }
+
+    @Test
+    public void retryAfterBlocksUploadsAndDelaysNextFlush() {
+        FakeClock clock = new FakeClock();
+        FlushController controller = controller(clock, 1);
+        controller.onResponse(429, 10_000, 10);
+        assertFalse(controller.isUploadAllowed());
+        long delay = controller.nextFlushDelayMillis();
+        assertTrue("espera " + delay, delay >= 10_000 && delay <= 10_000 + 200);
+
+        clock.now = 10_000;
+        assertTrue(controller.isUploadAllowed());
+        delay = controller.nextFlushDelayMillis();
+        assertTrue("espera " + delay, delay >= 1_800 && delay <= 2_200);
+    }
+
+    @Test
+    public void retryAfterIsCappedAtMaxInterval() {
+        FakeClock clock = new FakeClock();
+        FlushController controller = controller(clock, 1);
+        controller.onResponse(503, 24 * 60 * 60 * 1000L, 10);
+        clock.now = 16_000;
+        assertTrue(controller.isUploadAllowed());
+    }
+
+    @Test
+    public void jitterDesynchronisesAFleet() {
+        // Cien colectores que arrancan a la vez con el mismo intervalo
+        int fleet = 100;
+        Random seeds = new Random(42);
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int device = 0; device < fleet; device++) {
+            long delay = controller(new FakeClock(), seeds.nextLong()).nextFlushDelayMillis();
+            assertTrue("espera " + delay, delay >= 900 && delay <= 1_100);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        assertTrue("dispersión " + (max - min), max - min > 150);
+    }
+
+    @Test
+    public void collectorBacksOffFromOverloadedStandInAndRecovers() throws IOException {
+        try (LocalIngestServer server = new LocalIngestServer()) {
+            FakeClock clock = new FakeClock();
+            FlushController controller = controller(clock, 1);
+            Collector collector = new Collector(new Outbox(folder.newFolder()),
+                    new UploadClient(server.url(), 1_000, 5_000, new Backoff(5, 20, 3), new CircuitBreaker(10, 60_000)),
+                    UploadFormat.JSON_GZIP, new LocationCache(60_000, clock), 60_000, 1_000, Long.MAX_VALUE);
+            collector.setFlushController(controller);
+
+            // El servidor saturado responde 429 con Retry-After: un solo intento y subidas en pausa
+            server.setRetryAfter("5");
+            server.enqueueFaults(LocalIngestServer.Fault.OVERLOADED);
+            collector.onSighting("00:11:22:33:44:55", (short) -60, 1_000L);
+            collector.flush();
+            assertEquals(1, server.attempts());
+            assertEquals(2_000, controller.getIntervalMillis());
+
+            // Durante la espera los lotes se guardan pero no se suben
+            collector.onSighting("00:11:22:33:44:66", (short) -60, 2_000L);
+            collector.flush();
+            assertEquals(1, server.attempts());
+
+            // Al vencer el Retry-After se sube la cola y el ritmo se recupera poco a poco
+            clock.now = 5_000;
+            collector.flush();
+            assertEquals(3, server.attempts());
+            assertEquals(2, server.requests().size());
+            assertEquals(1_125, controller.getIntervalMillis());
+
+            // Un servidor lento también espacia los envíos
+            server.setLatencyMillis(600);
+            collector.onSighting("00:11:22:33:44:77", (short) -60, 6_000L);
+            collector.flush();
+            assertEquals(1_687, controller.getIntervalMillis());
+            collector.stop();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class FlushSchedulerTest {
+
+    private FlushScheduler scheduler;
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+    }
+
+    // Tarea que cuenta envíos y los concurrentes, opcionalmente bloqueada por un latch
+    private static final class CountingTask implements FlushScheduler.FlushTask {
+        final AtomicInteger flushes = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        volatile CountDownLatch gate;
+        final CountDownLatch started = new CountDownLatch(1);
+
+        @Override
+        public void flush() throws Exception {
+            int now = running.incrementAndGet();
+            maxRunning.set(Math.max(maxRunning.get(), now));
+            started.countDown();
+            CountDownLatch g = gate;
+            if (g != null) {
+                g.await(5, TimeUnit.SECONDS);
+            }
+            flushes.incrementAndGet();
+            running.decrementAndGet();
+        }
+    }
+
+    private static void awaitCount(AtomicInteger counter, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (counter.get() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void flushesWhenRecordThresholdIsReached() throws Exception {
+        CountingTask task = new CountingTask();
+        scheduler = new FlushScheduler(task, 60_000, 100, Long.MAX_VALUE);
+        scheduler.start();
+
+        for (int i = 0; i < 99; i++) {
+            scheduler.onRecordAdded(10);
+        }
+        Thread.sleep(50);
+        assertEquals(0, task.flushes.get());
+
+        scheduler.onRecordAdded(10);
+        awaitCount(task.flushes, 1);
+        assertEquals(1, task.flushes.get());
+    }
+
+    @Test
+    public void flushesWhenByteThresholdIsReached() throws Exception {
+        CountingTask task = new CountingTask();
+        scheduler = new FlushScheduler(task, 60_000, Integer.MAX_VALUE, 1_000);
+        scheduler.start();
+
+        for (int i = 0; i < 10; i++) {
+            scheduler.onRecordAdded(100);
+        }
+        awaitCount(task.flushes, 1);
+        assertEquals(1, task.flushes.get());
+    }
+
+    @Test
+    public void flushesWhenIntervalElapses() throws Exception {
+        CountingTask task = new CountingTask();
+        scheduler = new FlushScheduler(task, 50, Integer.MAX_VALUE, Long.MAX_VALUE);
+        scheduler.start();
+
+        awaitCount(task.flushes, 3);
+        assertTrue(task.flushes.get() >= 3);
+    }
+
+    @Test
+    public void onlyOneFlushInFlightAndIngestionNeverBlocks() throws Exception {
+        CountingTask task = new CountingTask();
+        task.gate = new CountDownLatch(1);
+        scheduler = new FlushScheduler(task, 60_000, 10, Long.MAX_VALUE);
+        scheduler.start();
+
+        scheduler.requestFlush();
+        assertTrue(task.started.await(5, TimeUnit.SECONDS));
+
+        // Con un envío bloqueado, la ingesta sigue sin esperar y las peticiones se agrupan
+        long start = System.nanoTime();
+        for (int i = 0; i < 100_000; i++) {
+            scheduler.onRecordAdded(50);
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue("ingesta bloqueada " + elapsedMs + " ms", elapsedMs < 1_000);
+
+        task.gate.countDown();
+        awaitCount(task.flushes, 2);
+        Thread.sleep(50);
+        assertEquals(1, task.maxRunning.get());
+        assertEquals(2, task.flushes.get());
+    }
+
+    @Test
+    public void errorsAreReportedAndSchedulerKeepsRunning() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        scheduler = new FlushScheduler(new FlushScheduler.FlushTask() {
+            @Override
+            public void flush() throws Exception {
+                calls.incrementAndGet();
+                throw new java.io.IOException("fallo simulado");
+            }
+        }, 60_000, 1, Long.MAX_VALUE);
+        scheduler.setErrorListener(new FlushScheduler.ErrorListener() {
+            @Override
+            public void onFlushError(Exception e) {
+                errors.incrementAndGet();
+            }
+        });
+        scheduler.start();
+
+        scheduler.onRecordAdded(1);
+        awaitCount(errors, 1);
+        scheduler.onRecordAdded(1);
+        awaitCount(errors, 2);
+        assertEquals(2, calls.get());
+        assertEquals(2, errors.get());
+    }
+}
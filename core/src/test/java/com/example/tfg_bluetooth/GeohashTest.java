@@ -0,0 +1,74 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GeohashTest {
+
+    @Test
+    public void encode_matchesKnownGeohashes() {
+        assertEquals("ezs42", Geohash.encodeToString(42.605, -5.603, 5));
+        assertEquals("u4pruydqqvj", Geohash.encodeToString(57.64911, 10.40744, 11));
+    }
+
+    @Test
+    public void parse_isInverseOfToString() {
+        long cell = Geohash.encode(37.1773363, -3.5985571, Geohash.MAX_PRECISION);
+        String geohash = Geohash.toString(cell, Geohash.MAX_PRECISION);
+        assertEquals(cell, Geohash.parse(geohash));
+        assertEquals(cell, Geohash.parse(geohash.toUpperCase()));
+    }
+
+    @Test
+    public void bounds_containThePointAndItsCenterEncodesToTheSameCell() {
+        double lat = 37.1773363;
+        double lon = -3.5985571;
+        for (int precision = 1; precision <= Geohash.MAX_PRECISION; precision++) {
+            long cell = Geohash.encode(lat, lon, precision);
+            double[] bounds = Geohash.bounds(cell, precision);
+            assertTrue(bounds[0] <= lat && lat < bounds[2]);
+            assertTrue(bounds[1] <= lon && lon < bounds[3]);
+            assertEquals(cell, Geohash.encode(Geohash.centerLatitude(cell, precision),
+                    Geohash.centerLongitude(cell, precision), precision));
+        }
+        // Precisión 7: unos 153 m de ancho en el ecuador
+        double[] bounds = Geohash.bounds(Geohash.encode(0.0, 0.0, 7), 7);
+        assertEquals(360.0 / (1 << 18), bounds[3] - bounds[1], 1e-12);
+        assertEquals(180.0 / (1 << 17), bounds[2] - bounds[0], 1e-12);
+    }
+
+    @Test
+    public void encode_lowerBoundsBelongToTheCell() {
+        // El ecuador y el meridiano de Greenwich son el límite inferior de la celda "s"
+        assertEquals("s0000", Geohash.encodeToString(0.0, 0.0, 5));
+        assertEquals("7zzzz", Geohash.encodeToString(-1e-9, -1e-9, 5));
+        assertEquals("kpbpb", Geohash.encodeToString(-1e-9, 0.0, 5));
+        assertEquals("ebpbp", Geohash.encodeToString(0.0, -1e-9, 5));
+    }
+
+    @Test
+    public void encode_handlesPolesAndAntimeridian() {
+        assertEquals("00000", Geohash.encodeToString(-90.0, -180.0, 5));
+        assertEquals("zzzzz", Geohash.encodeToString(90.0, 179.99999999, 5));
+        // La latitud 90 está en la fila superior; la longitud 180 es la -180
+        assertEquals("bpbpb", Geohash.encodeToString(90.0, 180.0, 5));
+        assertEquals(Geohash.encode(10.0, -170.0, 6), Geohash.encode(10.0, 190.0, 6));
+        assertEquals(Geohash.encode(10.0, 170.0, 6), Geohash.encode(10.0, -550.0, 6));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encode_rejectsLatitudeOutOfRange() {
+        Geohash.encode(90.5, 0.0, 5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encode_rejectsInvalidPrecision() {
+        Geohash.encode(0.0, 0.0, Geohash.MAX_PRECISION + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_rejectsCharactersOutsideTheAlphabet() {
+        Geohash.parse("ezs4a");
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HyperLogLogTest {
+
+    private static void addRange(HyperLogLog hll, MacHasher hasher, int from, int to) {
+        byte[] hash = new byte[MacHasher.HASH_LENGTH];
+        for (int i = from; i < to; i++) {
+            Hex.decode(hasher.hash(i), hash, 0);
+            hll.add(hash, 0);
+        }
+    }
+
+    @Test
+    public void estimate_isWithinThreeStandardErrors() {
+        MacHasher hasher = new MacHasher();
+        for (int devices : new int[]{10, 1_000, 100_000}) {
+            HyperLogLog hll = new HyperLogLog(12);
+            addRange(hll, hasher, 0, devices);
+            // Repetir los mismos hashes no cambia la estimación
+            addRange(hll, hasher, 0, devices);
+            double error = 3 * 1.04 / Math.sqrt(hll.getRegisterCount());
+            assertEquals(devices, hll.estimate(), Math.max(1, devices * error));
+        }
+    }
+
+    @Test
+    public void merge_equalsSketchOfUnion() {
+        MacHasher hasher = new MacHasher();
+        HyperLogLog a = new HyperLogLog(12);
+        HyperLogLog b = new HyperLogLog(12);
+        HyperLogLog union = new HyperLogLog(12);
+        addRange(a, hasher, 0, 30_000);
+        addRange(b, hasher, 20_000, 50_000);
+        addRange(union, hasher, 0, 50_000);
+
+        a.merge(b);
+        assertEquals(union.estimate(), a.estimate());
+        assertEquals(50_000, a.estimate(), 50_000 * 0.05);
+    }
+
+    @Test
+    public void emptySketch_estimatesZero() {
+        HyperLogLog hll = new HyperLogLog(HyperLogLog.MIN_PRECISION);
+        assertTrue(hll.isEmpty());
+        assertEquals(0, hll.estimate());
+        hll.addHash(0L);
+        assertFalse(hll.isEmpty());
+        hll.clear();
+        assertEquals(0, hll.estimate());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void merge_rejectsDifferentPrecision() {
+        new HyperLogLog(10).merge(new HyperLogLog(12));
+    }
+}
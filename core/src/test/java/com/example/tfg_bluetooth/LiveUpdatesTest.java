@@ -0,0 +1,67 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LiveUpdatesTest {
+
+    private static final class CountingObserver implements Collector.Observer {
+        int notifications;
+
+        @Override
+        public void onUpdatesAvailable() {
+            notifications++;
+        }
+    }
+
+    private static Collector newCollector(int maxDevices) {
+        Collector collector = new Collector(null, null, UploadFormat.JSON_GZIP, new LocationCache(60_000, Clock.SYSTEM),
+                60_000, Integer.MAX_VALUE, Long.MAX_VALUE);
+        collector.setMaxDevicesInMemory(maxDevices);
+        return collector;
+    }
+
+    private static void coalescesLatestCopyPerDevice(int maxDevices) {
+        Collector collector = newCollector(maxDevices);
+        CountingObserver observer = new CountingObserver();
+        collector.setObserver(observer);
+
+        for (int i = 0; i < 1_000; i++) {
+            collector.onSighting(0x001122000000L + i % 10, (short) -60, 1_000L + i);
+        }
+        // Un solo aviso hasta la recogida, y una entrada por dispositivo con su último estado
+        assertEquals(1, observer.notifications);
+        Map<String, DeviceRecord> updates = collector.takeUpdates();
+        assertEquals(10, updates.size());
+        DeviceRecord first = updates.get(new MacHasher().hash(0x001122000000L));
+        assertEquals(100, first.getCount());
+        assertEquals(1_990L, first.getLastSeen());
+
+        // Las copias recogidas ya no cambian con los avistamientos siguientes
+        collector.onSighting(0x001122000000L, (short) -50, 5_000L);
+        assertEquals(100, first.getCount());
+        assertEquals(2, observer.notifications);
+        assertEquals(101, collector.takeUpdates().get(new MacHasher().hash(0x001122000000L)).getCount());
+        assertTrue(collector.takeUpdates().isEmpty());
+    }
+
+    @Test
+    public void mapStore_coalescesLatestCopyPerDevice() {
+        coalescesLatestCopyPerDevice(0);
+    }
+
+    @Test
+    public void tableStore_coalescesLatestCopyPerDevice() {
+        coalescesLatestCopyPerDevice(64);
+    }
+
+    @Test
+    public void withoutObserver_nothingIsKept() {
+        Collector collector = newCollector(0);
+        collector.onSighting(0x001122000000L, (short) -60, 1_000L);
+        assertTrue(collector.takeUpdates().isEmpty());
+    }
+}
@@ -0,0 +1,337 @@
+package com.example.tfg_bluetooth;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Servidor HTTP en proceso que sustituye al endpoint /dispositivos/ en los tests. Descomprime
+ * el cuerpo según Content-Encoding (gzip o Deflater con diccionario de PresetDictionary) y
+ * guarda lo recibido para que el test lo compruebe. Permite inyectar latencia y fallos (cortes
+ * de conexión, respuestas 5xx, saturación con 429 y Retry-After y rechazos definitivos con 400).
+ * Como haría el endpoint real, un lote con una Idempotency-Key ya aceptada se confirma sin volver a
+ * contarlo.
+ */
+public final class LocalIngestServer implements AutoCloseable {
+
+    public static final String PATH = "/dispositivos/";
+
+    // Fallos que se aplican, en orden, a las siguientes peticiones
+    public enum Fault {
+        // Cierra la conexión sin responder
+        RESET,
+        // Responde 503
+        SERVER_ERROR,
+        // Responde 429 con Retry-After (ver setRetryAfter)
+        OVERLOADED,
+        // Responde 400: el lote no se puede aceptar nunca
+        BAD_REQUEST,
+        // Acepta el lote y cierra la conexión sin responder, como si se perdiera la respuesta
+        LOST_RESPONSE
+    }
+
+    // Petición recibida, ya descomprimida
+    public static final class Request {
+        public final String contentType;
+        public final String contentEncoding;
+        public final long wireBytes;
+        public final long decodedBytes;
+        public final byte[] body;
+        // Registros decodificados si el lote viene en formato binario
+        public final Map<String, DeviceRecord> records;
+        // Cubetas decodificadas si el lote viene en formato agregado
+        public List<OccupancySketch> sketches;
+        // Puerto de origen: se repite cuando el cliente reutiliza la conexión
+        public int remotePort;
+
+        Request(String contentType, String contentEncoding, long wireBytes, long decodedBytes, byte[] body,
+                Map<String, DeviceRecord> records) {
+            this.contentType = contentType;
+            this.contentEncoding = contentEncoding;
+            this.wireBytes = wireBytes;
+            this.decodedBytes = decodedBytes;
+            this.body = body;
+            this.records = records;
+        }
+
+        public String bodyAsString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    static {
+        // Sin TCP_NODELAY el servidor de la JDK tarda unos 40 ms por respuesta (Nagle + ACK retardado)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+    private volatile int responseCode = 200;
+    private volatile boolean storeBodies = true;
+    private volatile long latencyMillis;
+    private volatile String retryAfter = "1";
+    private final Queue<Fault> faults = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger attempts = new AtomicInteger();
+    private final AtomicLong sightings = new AtomicLong();
+    private final Set<String> acceptedKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicInteger duplicates = new AtomicInteger();
+
+    public LocalIngestServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                LocalIngestServer.this.handle(exchange);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + PATH;
+    }
+
+    public void setResponseCode(int responseCode) {
+        this.responseCode = responseCode;
+    }
+
+    // Con cuerpos grandes basta con contar bytes
+    public void setStoreBodies(boolean storeBodies) {
+        this.storeBodies = storeBodies;
+    }
+
+    // Retardo antes de responder a cada petición
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    // Valor de Retry-After de las respuestas OVERLOADED (segundos o fecha HTTP)
+    public void setRetryAfter(String retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    public void enqueueFaults(Fault... toInject) {
+        faults.addAll(Arrays.asList(toInject));
+    }
+
+    // Peticiones recibidas, incluidas las que acabaron en fallo inyectado
+    public int attempts() {
+        return attempts.get();
+    }
+
+    // Suma de avistamientos de los lotes aceptados (binarios o JSON), aunque no se guarden los cuerpos
+    public long sightingsReceived() {
+        return sightings.get();
+    }
+
+    // Lotes repetidos (misma Idempotency-Key) que se confirmaron sin contarlos
+    public int duplicates() {
+        return duplicates.get();
+    }
+
+    public List<Request> requests() {
+        return requests;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        attempts.incrementAndGet();
+        Fault fault = faults.poll();
+        if (fault == Fault.RESET) {
+            exchange.close();
+            return;
+        }
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        CountingInputStream wire = new CountingInputStream(exchange.getRequestBody());
+        InputStream decoded = wire;
+        if ("gzip".equals(contentEncoding)) {
+            decoded = new GZIPInputStream(wire);
+        } else if (PresetDictionary.versionOf(contentEncoding) > 0) {
+            decoded = PresetDictionary.inflate(wire, contentEncoding);
+        }
+
+        boolean binary = BinaryBatchWriter.CONTENT_TYPE.equals(contentType);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        long decodedBytes = 0;
+        int read;
+        while ((read = decoded.read(buffer)) != -1) {
+            decodedBytes += read;
+            body.write(buffer, 0, read);
+        }
+        Map<String, DeviceRecord> records = null;
+        List<OccupancySketch> sketches = null;
+        if (binary) {
+            records = decodeBinary(body.toByteArray());
+        } else if (SketchBatchWriter.CONTENT_TYPE.equals(contentType)) {
+            sketches = decodeSketches(body.toByteArray());
+        }
+        if (fault == Fault.SERVER_ERROR || fault == Fault.OVERLOADED || fault == Fault.BAD_REQUEST) {
+            int code = 503;
+            if (fault == Fault.OVERLOADED) {
+                exchange.getResponseHeaders().set("Retry-After", retryAfter);
+                code = 429;
+            } else if (fault == Fault.BAD_REQUEST) {
+                code = 400;
+            }
+            byte[] response = (code == 400 ? "{\"error\":\"bad request\"}" : "{\"error\":\"unavailable\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(code, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+            return;
+        }
+        String key = exchange.getRequestHeaders().getFirst(UploadClient.IDEMPOTENCY_KEY_HEADER);
+        if (key != null && responseCode == 200 && !acceptedKeys.add(key)) {
+            duplicates.incrementAndGet();
+            byte[] response = "{\"status\":\"duplicate\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(responseCode, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+            return;
+        }
+        long batchSightings = 0;
+        if (records != null) {
+            for (DeviceRecord record : records.values()) {
+                batchSightings += record.getCount();
+            }
+        } else if (sketches != null) {
+            for (OccupancySketch sketch : sketches) {
+                batchSightings += sketch.getSightings();
+            }
+        } else {
+            batchSightings = countJsonSightings(body.toByteArray());
+        }
+        sightings.addAndGet(batchSightings);
+        if (!storeBodies) {
+            body.reset();
+            records = null;
+            sketches = null;
+        }
+        Request request = new Request(contentType, contentEncoding, wire.count, decodedBytes, body.toByteArray(), records);
+        request.remotePort = exchange.getRemoteAddress().getPort();
+        request.sketches = sketches;
+        requests.add(request);
+        if (fault == Fault.LOST_RESPONSE) {
+            exchange.close();
+            return;
+        }
+
+        byte[] response = "{\"status\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(responseCode, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    // Suma los valores de "avistamientos" de un lote JSON sin construir el árbol completo
+    private static long countJsonSightings(byte[] json) {
+        byte[] key = "\"avistamientos\":".getBytes(StandardCharsets.UTF_8);
+        long total = 0;
+        for (int i = 0; i + key.length <= json.length; i++) {
+            int k = 0;
+            while (k < key.length && json[i + k] == key[k]) {
+                k++;
+            }
+            if (k < key.length) {
+                continue;
+            }
+            i += key.length;
+            long value = 0;
+            while (i < json.length && json[i] >= '0' && json[i] <= '9') {
+                value = value * 10 + (json[i++] - '0');
+            }
+            total += value;
+        }
+        return total;
+    }
+
+    private static Map<String, DeviceRecord> decodeBinary(byte[] body) throws IOException {
+        final Map<String, DeviceRecord> records = new LinkedHashMap<>();
+        new BinaryBatchReader(new ByteArrayInputStream(body)).read(new BinaryBatchReader.Consumer() {
+            @Override
+            public void accept(byte[] hash, DeviceRecord record) {
+                records.put(Hex.encode(hash), new DeviceRecord(record.getFirstSeen(), record.getLastSeen(),
+                        record.getCount(), record.getMinRssi(), record.getMaxRssi(),
+                        record.getLatitud(), record.getLongitud(), record.getLocationTime()));
+            }
+        });
+        return records;
+    }
+
+    private static List<OccupancySketch> decodeSketches(byte[] body) throws IOException {
+        final List<OccupancySketch> sketches = new ArrayList<>();
+        new SketchBatchReader(new ByteArrayInputStream(body)).read(new SketchBatchReader.Consumer() {
+            @Override
+            public void accept(OccupancySketch sketch) {
+                sketches.add(sketch);
+            }
+        });
+        return sketches;
+    }
+
+    private static final class CountingInputStream extends InputStream {
+        private final InputStream in;
+        long count;
+
+        CountingInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
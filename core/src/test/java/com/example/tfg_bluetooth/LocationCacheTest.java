@@ -0,0 +1,62 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LocationCacheTest {
+
+    private static final class ManualClock implements Clock {
+        long now;
+
+        @Override
+        public long nowMillis() {
+            return now;
+        }
+    }
+
+    @Test
+    public void freshFix_isReturnedUntilItExpires() {
+        ManualClock clock = new ManualClock();
+        LocationCache cache = new LocationCache(60_000L, clock);
+        assertNull(cache.getFreshFix());
+        assertEquals(DeviceRecord.NO_LOCATION, cache.locationTime(cache.getFreshFix(), 1_000L));
+
+        cache.onFix(new LocationFix(37.0, -3.0, 8f, 1_000L));
+        clock.now = 31_000L;
+        LocationFix fix = cache.getFreshFix();
+        assertNotNull(fix);
+        assertEquals(30_000L, fix.getAgeMillis(clock.now));
+        // El instante de la posición se traslada al reloj de los avistamientos
+        assertEquals(1_700_000_000_000L - 30_000L, cache.locationTime(fix, 1_700_000_000_000L));
+
+        clock.now = 61_001L;
+        assertNull(cache.getFreshFix());
+        assertNotNull(cache.getFix());
+    }
+
+    @Test
+    public void olderFix_doesNotReplaceNewerOne() {
+        ManualClock clock = new ManualClock();
+        LocationCache cache = new LocationCache(60_000L, clock);
+        cache.onFix(new LocationFix(37.0, -3.0, 50f, 5_000L));
+        cache.onFix(new LocationFix(38.0, -4.0, 5f, 4_000L));
+        assertEquals(37.0, cache.getFix().getLatitud(), 0.0);
+
+        cache.onFix(new LocationFix(39.0, -5.0, 5f, 6_000L));
+        assertEquals(39.0, cache.getFix().getLatitud(), 0.0);
+    }
+
+    @Test
+    public void staleFix_isRecordedWithoutCoordinates() {
+        ManualClock clock = new ManualClock();
+        LocationCache cache = new LocationCache(60_000L, clock);
+        cache.onFix(new LocationFix(37.0, -3.0, 8f, 0L));
+        clock.now = 120_000L;
+
+        SightingStore store = new SightingStore();
+        LocationFix fix = cache.getFreshFix();
+        DeviceRecord record = store.record("aa", 1_000L, (short) -60, 0.0, 0.0, cache.locationTime(fix, 1_000L));
+        assertFalse(record.hasLocation());
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Micro-benchmark de MacHasher: mide tiempo y bytes reservados por llamada en el hilo actual.
+ * Los resultados se imprimen por consola; solo se comprueba que el camino con caché no reserva memoria.
+ * Solo se ejecuta con -Pbenchmarks.
+ */
+public class MacHasherBenchmark {
+
+    private static final int DEVICES = 1000;
+    private static final int ROUNDS = 200;
+
+    @Before
+    public void onlyWhenRequested() {
+        assumeTrue(Boolean.getBoolean("benchmarks"));
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static String[] macs() {
+        String[] macs = new String[DEVICES];
+        for (int i = 0; i < DEVICES; i++) {
+            macs[i] = String.format("02:00:00:%02X:%02X:%02X", (i >> 16) & 0xff, (i >> 8) & 0xff, i & 0xff);
+        }
+        return macs;
+    }
+
+    @Test
+    public void cachedSightings_allocateNothingPerCall() {
+        String[] macs = macs();
+        MacHasher hasher = new MacHasher(DEVICES * 4);
+        // Calentamiento y llenado de la caché
+        for (int r = 0; r < 20; r++) {
+            for (String mac : macs) {
+                hasher.hash(mac);
+            }
+        }
+
+        long calls = (long) DEVICES * ROUNDS;
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            for (String mac : macs) {
+                hasher.hash(mac);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        double bytesPerCall = (allocatedBytes() - bytesBefore) / (double) calls;
+
+        System.out.printf("MacHasher (caché): %.1f ns/llamada, %.2f bytes/llamada%n",
+                elapsed / (double) calls, bytesPerCall);
+        assertTrue("bytes/llamada = " + bytesPerCall, bytesPerCall < 1.0);
+    }
+
+    @Test
+    public void uncachedSightings_allocateOnlyResultString() {
+        String[] macs = macs();
+        // Caché mínima para forzar el cálculo del SHA-256 en casi todas las llamadas
+        MacHasher hasher = new MacHasher(1);
+        for (String mac : macs) {
+            hasher.hash(mac);
+        }
+
+        long calls = (long) DEVICES * ROUNDS;
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            for (String mac : macs) {
+                hasher.hash(mac);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        double bytesPerCall = (allocatedBytes() - bytesBefore) / (double) calls;
+
+        System.out.printf("MacHasher (sin caché): %.1f ns/llamada, %.2f bytes/llamada%n",
+                elapsed / (double) calls, bytesPerCall);
+        // Solo la String resultante (64 caracteres) y la entrada de caché
+        assertTrue("bytes/llamada = " + bytesPerCall, bytesPerCall < 400);
+    }
+}
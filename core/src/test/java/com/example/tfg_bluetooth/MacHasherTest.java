@@ -0,0 +1,90 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import static org.junit.Assert.*;
+
+public class MacHasherTest {
+
+    // Implementación original de MainActivity.hashMac, usada como referencia
+    private static String referenceHash(String macAddress) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] hashBytes = digest.digest(macAddress.getBytes(StandardCharsets.US_ASCII));
+        StringBuilder hexString = new StringBuilder();
+        for (byte hashByte : hashBytes) {
+            String hex = Integer.toHexString(0xff & hashByte);
+            if (hex.length() == 1) {
+                hexString.append('0');
+            }
+            hexString.append(hex);
+        }
+        return hexString.toString();
+    }
+
+    @Test
+    public void hash_matchesOriginalImplementation() throws Exception {
+        MacHasher hasher = new MacHasher();
+        String[] macs = {"00:00:00:00:00:00", "FF:FF:FF:FF:FF:FF", "A4:C1:38:0B:7E:12", "01:23:45:67:89:AB"};
+        for (String mac : macs) {
+            assertEquals(referenceHash(mac), hasher.hash(mac));
+        }
+    }
+
+    @Test
+    public void hash_isCanonicalForLowercaseAndDashes() throws Exception {
+        MacHasher hasher = new MacHasher();
+        String expected = referenceHash("A4:C1:38:0B:7E:12");
+        assertEquals(expected, hasher.hash("a4:c1:38:0b:7e:12"));
+        assertEquals(expected, hasher.hash("A4-C1-38-0B-7E-12"));
+    }
+
+    @Test
+    public void hash_repeatSightingsReturnCachedInstance() {
+        MacHasher hasher = new MacHasher(16);
+        String first = hasher.hash("A4:C1:38:0B:7E:12");
+        assertSame(first, hasher.hash("A4:C1:38:0B:7E:12"));
+    }
+
+    @Test
+    public void hash_cacheCollisionsStillReturnCorrectHash() throws Exception {
+        MacHasher hasher = new MacHasher(1);
+        for (int i = 0; i < 50; i++) {
+            String mac = String.format("00:11:22:33:44:%02X", i);
+            assertEquals(referenceHash(mac), hasher.hash(mac));
+        }
+    }
+
+    @Test
+    public void hashInto_writesRawDigest() throws Exception {
+        MacHasher hasher = new MacHasher();
+        byte[] out = new byte[MacHasher.HASH_LENGTH + 2];
+        hasher.hashInto(MacHasher.parseMac("01:23:45:67:89:AB"), out, 2);
+        byte[] raw = new byte[MacHasher.HASH_LENGTH];
+        System.arraycopy(out, 2, raw, 0, raw.length);
+        assertEquals(referenceHash("01:23:45:67:89:AB"), Hex.encode(raw));
+    }
+
+    @Test
+    public void parseMac_packsBytesInOrder() {
+        assertEquals(0x0123456789ABL, MacHasher.parseMac("01:23:45:67:89:AB"));
+        assertEquals(0xFFFFFFFFFFFFL, MacHasher.parseMac("FF:FF:FF:FF:FF:FF"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseMac_rejectsShortAddress() {
+        MacHasher.parseMac("01:23:45:67:89");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseMac_rejectsBadSeparator() {
+        MacHasher.parseMac("01:23:45.67:89:AB");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseMac_rejectsNonHexDigit() {
+        MacHasher.parseMac("01:23:45:67:89:AG");
+    }
+}
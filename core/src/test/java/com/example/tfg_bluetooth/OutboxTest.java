@@ -0,0 +1,343 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class OutboxTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String hash(int i) {
+        return String.format("%064x", i);
+    }
+
+    private static List<Integer> readInts(SegmentLog.Segment segment) throws IOException {
+        final List<Integer> values = new ArrayList<>();
+        segment.read(new SegmentLog.RecordVisitor() {
+            @Override
+            public void visit(ByteBuffer record) {
+                values.add(record.getInt());
+            }
+        });
+        return values;
+    }
+
+    private static byte[] intRecord(int value) {
+        return ByteBuffer.allocate(4).putInt(value).array();
+    }
+
+    @Test
+    public void segmentLog_rollsIntoFixedSizeSegments() throws IOException {
+        File dir = folder.newFolder();
+        // Cabecera de 8 bytes y registros de 12 bytes: caben 4 por segmento
+        SegmentLog log = new SegmentLog(dir, 8 + 4 * 12);
+        for (int i = 0; i < 10; i++) {
+            log.append(intRecord(i), 0, 4);
+        }
+        log.seal();
+
+        List<SegmentLog.Segment> segments = log.pendingSegments();
+        assertEquals(3, segments.size());
+        assertEquals(Arrays.asList(0, 1, 2, 3), readInts(segments.get(0)));
+        assertEquals(Arrays.asList(8, 9), readInts(segments.get(2)));
+    }
+
+    @Test
+    public void segmentLog_acknowledgeDeletesSegment() throws IOException {
+        File dir = folder.newFolder();
+        SegmentLog log = new SegmentLog(dir, 1024);
+        log.append(intRecord(1), 0, 4);
+        log.seal();
+
+        SegmentLog.Segment segment = log.pendingSegments().get(0);
+        log.acknowledge(segment);
+        assertTrue(log.pendingSegments().isEmpty());
+        assertFalse(segment.getFile().exists());
+    }
+
+    @Test
+    public void segmentLog_replaysPendingSegmentsAfterRestart() throws IOException {
+        File dir = folder.newFolder();
+        SegmentLog log = new SegmentLog(dir, 1024);
+        log.append(intRecord(1), 0, 4);
+        log.seal();
+        log.append(intRecord(2), 0, 4);
+        // Segmento activo sin sellar: simula la muerte del proceso
+
+        SegmentLog reopened = new SegmentLog(dir, 1024);
+        List<SegmentLog.Segment> segments = reopened.pendingSegments();
+        assertEquals(2, segments.size());
+        assertEquals(Collections.singletonList(1), readInts(segments.get(0)));
+        assertEquals(Collections.singletonList(2), readInts(segments.get(1)));
+
+        // Los nuevos segmentos continúan la numeración
+        reopened.append(intRecord(3), 0, 4);
+        reopened.seal();
+        assertTrue(reopened.pendingSegments().get(2).getSequence() > segments.get(1).getSequence());
+    }
+
+    @Test
+    public void segmentLog_stopsAtCorruptedRecord() throws IOException {
+        File dir = folder.newFolder();
+        SegmentLog log = new SegmentLog(dir, 1024);
+        log.append(intRecord(1), 0, 4);
+        log.append(intRecord(2), 0, 4);
+        log.append(intRecord(3), 0, 4);
+        log.seal();
+        SegmentLog.Segment segment = log.pendingSegments().get(0);
+
+        // Corromper un byte de datos del segundo registro
+        try (RandomAccessFile raf = new RandomAccessFile(segment.getFile(), "rw")) {
+            raf.seek(8 + 12 + 8);
+            raf.write(0x7f);
+        }
+        assertEquals(Collections.singletonList(1), readInts(segment));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void segmentLog_rejectsRecordLargerThanSegment() throws IOException {
+        SegmentLog log = new SegmentLog(folder.newFolder(), 64);
+        log.append(new byte[100], 0, 100);
+    }
+
+    @Test
+    public void outbox_roundTripsDeviceRecords() throws IOException {
+        File dir = folder.newFolder();
+        Outbox outbox = new Outbox(dir);
+        Map<String, DeviceRecord> batch = new LinkedHashMap<>();
+        batch.put(hash(1), new DeviceRecord(1_000L, 61_000L, 4, (short) -80, (short) -55, 37.18, -3.6));
+        batch.put(hash(2), new DeviceRecord(2_000L, (short) -70, 0.0, 0.0));
+        outbox.appendBatch(batch);
+
+        Outbox reopened = new Outbox(dir);
+        List<SegmentLog.Segment> segments = reopened.pendingSegments();
+        assertEquals(1, segments.size());
+        Map<String, DeviceRecord> read = reopened.readBatch(segments.get(0));
+        assertEquals(batch.keySet(), read.keySet());
+
+        DeviceRecord record = read.get(hash(1));
+        assertEquals(1_000L, record.getFirstSeen());
+        assertEquals(61_000L, record.getLastSeen());
+        assertEquals(4, record.getCount());
+        assertEquals(-80, record.getMinRssi());
+        assertEquals(-55, record.getMaxRssi());
+        assertEquals(37.18, record.getLatitud(), 0.0);
+        assertEquals(-3.6, record.getLongitud(), 0.0);
+
+        reopened.acknowledge(segments.get(0));
+        assertTrue(new Outbox(dir).pendingSegments().isEmpty());
+    }
+
+    @Test
+    public void outbox_eachBatchIsSeparateSegment() throws IOException {
+        Outbox outbox = new Outbox(folder.newFolder());
+        for (int b = 0; b < 3; b++) {
+            Map<String, DeviceRecord> batch = new LinkedHashMap<>();
+            batch.put(hash(b), new DeviceRecord(b, (short) -60, 0.0, 0.0));
+            outbox.appendBatch(batch);
+        }
+        assertEquals(3, outbox.pendingSegments().size());
+    }
+
+    @Test
+    public void outbox_batchKeySurvivesRestartButNotSequenceReuse() throws IOException {
+        File dir = folder.newFolder();
+        Map<String, DeviceRecord> batch = new LinkedHashMap<>();
+        batch.put(hash(1), new DeviceRecord(1_000L, (short) -60, 0.0, 0.0));
+        Outbox outbox = new Outbox(dir);
+        outbox.appendBatch(batch);
+        SegmentLog.Segment segment = outbox.pendingSegments().get(0);
+        String key = outbox.batchKey(segment);
+
+        // El mismo lote reabierto tras reiniciar conserva la clave
+        Outbox reopened = new Outbox(dir);
+        assertEquals(key, reopened.batchKey(reopened.pendingSegments().get(0)));
+
+        // Confirmado el lote, la cola vacía vuelve a la secuencia 0 con otro contenido y otra clave
+        reopened.acknowledge(reopened.pendingSegments().get(0));
+        batch.put(hash(1), new DeviceRecord(2_000L, (short) -60, 0.0, 0.0));
+        Outbox restarted = new Outbox(dir);
+        restarted.appendBatch(batch);
+        SegmentLog.Segment next = restarted.pendingSegments().get(0);
+        assertEquals(segment.getSequence(), next.getSequence());
+        assertNotEquals(key, restarted.batchKey(next));
+    }
+
+    @Test
+    public void outbox_failedBatchLeavesNothingPending() throws IOException {
+        File dir = folder.newFolder();
+        // Dos registros por segmento: el lote de cinco necesita tres
+        Outbox outbox = new Outbox(new SegmentLog(dir, 8 + 2 * (DeviceRecordCodec.RECORD_SIZE + 8)));
+        Map<String, DeviceRecord> batch = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            batch.put(hash(i), new DeviceRecord(i, (short) -60, 37.18, -3.6));
+        }
+        // Un directorio con el nombre del segundo segmento hace fallar su creación a mitad del lote
+        File blocker = new File(dir, String.format("%016d.seg", 1));
+        assertTrue(blocker.mkdir());
+        try {
+            outbox.appendBatch(batch);
+            fail("el lote no debería haberse guardado");
+        } catch (IOException expected) {
+        }
+        assertTrue(outbox.pendingSegments().isEmpty());
+        assertTrue(blocker.delete());
+        assertEquals(0, dir.list().length);
+
+        // El reintento guarda el lote completo una sola vez
+        outbox.appendBatch(batch);
+        int records = 0;
+        for (SegmentLog.Segment segment : outbox.pendingSegments()) {
+            records += outbox.readBatch(segment).size();
+        }
+        assertEquals(5, records);
+    }
+
+    @Test
+    public void segmentLog_filledSegmentsStayHiddenUntilSealed() throws IOException {
+        SegmentLog log = new SegmentLog(folder.newFolder(), 8 + 2 * 12);
+        for (int i = 0; i < 5; i++) {
+            log.append(intRecord(i), 0, 4);
+        }
+        // Un envío concurrente no debe ver el principio de un lote sin terminar
+        assertTrue(log.pendingSegments().isEmpty());
+        log.seal();
+        assertEquals(3, log.pendingSegments().size());
+    }
+
+    @Test
+    public void outbox_sealedSegmentsReportUsedBytes() throws IOException {
+        File dir = folder.newFolder();
+        Outbox outbox = new Outbox(dir);
+        Map<String, DeviceRecord> batch = new LinkedHashMap<>();
+        batch.put(hash(1), new DeviceRecord(1_000L, (short) -60, 37.18, -3.6));
+        batch.put(hash(2), new DeviceRecord(2_000L, (short) -70, 37.18, -3.6));
+        outbox.appendBatch(batch);
+
+        // El fichero está preasignado: el tamaño del lote es el de sus registros (más longitud y CRC)
+        SegmentLog.Segment segment = outbox.pendingSegments().get(0);
+        assertEquals(2 * (DeviceRecordCodec.RECORD_SIZE + 8), segment.getUsedBytes());
+        assertTrue(segment.getFile().length() > segment.getUsedBytes());
+        assertEquals(-1, new Outbox(dir).pendingSegments().get(0).getUsedBytes());
+    }
+
+    @Test
+    public void outbox_storesReportedDevicesAsLastSeenUpdates() throws IOException {
+        Outbox outbox = new Outbox(folder.newFolder());
+        ReportedDevices reported = new ReportedDevices(1_000, 0.001, Long.MAX_VALUE, Clock.SYSTEM);
+        Map<String, DeviceRecord> first = new LinkedHashMap<>();
+        first.put(hash(1), new DeviceRecord(1_000L, 5_000L, 3, (short) -80, (short) -60, 37.18, -3.6));
+        outbox.appendBatch(first, reported);
+        // Sin confirmar el primer lote, el dispositivo aún no cuenta como notificado
+        assertFalse(reported.contains(hash(1)));
+        SegmentLog.Segment firstSegment = outbox.pendingSegments().get(0);
+        assertEquals(3, outbox.readBatch(firstSegment).get(hash(1)).getCount());
+        outbox.acknowledge(firstSegment, reported);
+        assertTrue(reported.contains(hash(1)));
+
+        Map<String, DeviceRecord> second = new LinkedHashMap<>();
+        second.put(hash(1), new DeviceRecord(300_000L, 360_000L, 7, (short) -75, (short) -65, 37.18, -3.6));
+        second.put(hash(2), new DeviceRecord(310_000L, (short) -70, 37.18, -3.6));
+        outbox.appendBatch(second, reported);
+
+        List<SegmentLog.Segment> segments = outbox.pendingSegments();
+        assertEquals(1, segments.size());
+        Map<String, DeviceRecord> read = outbox.readBatch(segments.get(0));
+        DeviceRecord update = read.get(hash(1));
+        assertTrue(update.isLastSeenUpdate());
+        assertEquals(360_000L, update.getLastSeen());
+        assertFalse(update.hasLocation());
+        assertFalse(read.get(hash(2)).isLastSeenUpdate());
+        // Cada registro lleva 8 bytes de longitud y CRC en el segmento
+        assertEquals(DeviceRecordCodec.LAST_SEEN_UPDATE_SIZE + DeviceRecordCodec.RECORD_SIZE + 2 * 8,
+                segments.get(0).getUsedBytes());
+        assertFalse(reported.contains(hash(2)));
+    }
+
+    @Test
+    public void outbox_appendTableStoresTheSameRecordsAsAppendBatch() throws IOException {
+        DeviceTable table = new DeviceTable(8);
+        table.record(hash(1), 1_000L, (short) -80, 37.18, -3.6, 1_000L);
+        table.record(hash(1), 5_000L, (short) -60, 37.19, -3.6, 5_000L);
+        table.record(hash(2), 2_000L, DeviceRecord.RSSI_UNKNOWN, 0.0, 0.0, DeviceRecord.NO_LOCATION);
+        table.record(hash(3), 3_000L, (short) -70, 37.18, -3.6, 3_000L);
+        ReportedDevices reported = new ReportedDevices(1_000, 0.001, Long.MAX_VALUE, Clock.SYSTEM);
+        reported.add(hash(3));
+
+        Outbox outbox = new Outbox(folder.newFolder());
+        outbox.appendTable(table, new int[] {2, 0, 1}, reported);
+        Map<String, DeviceRecord> expected = table.toMap();
+        Map<String, DeviceRecord> read = outbox.readBatch(outbox.pendingSegments().get(0));
+        assertEquals(Arrays.asList(hash(3), hash(1), hash(2)), new ArrayList<>(read.keySet()));
+        assertTrue(read.get(hash(3)).isLastSeenUpdate());
+        assertEquals(3_000L, read.get(hash(3)).getLastSeen());
+        for (String key : Arrays.asList(hash(1), hash(2))) {
+            DeviceRecord actual = read.get(key);
+            assertEquals(expected.get(key).getFirstSeen(), actual.getFirstSeen());
+            assertEquals(expected.get(key).getLastSeen(), actual.getLastSeen());
+            assertEquals(expected.get(key).getCount(), actual.getCount());
+            assertEquals(expected.get(key).getMinRssi(), actual.getMinRssi());
+            assertEquals(expected.get(key).getLocationTime(), actual.getLocationTime());
+            assertEquals(expected.get(key).getLatitud(), actual.getLatitud(), 1e-7);
+        }
+    }
+
+    @Test
+    public void outbox_unacknowledgedBatchKeepsDevicesFullInLaterBatches() throws IOException {
+        Outbox outbox = new Outbox(folder.newFolder());
+        ReportedDevices reported = new ReportedDevices(1_000, 0.001, Long.MAX_VALUE, Clock.SYSTEM);
+        Map<String, DeviceRecord> batch = new LinkedHashMap<>();
+        batch.put(hash(1), new DeviceRecord(1_000L, (short) -70, 37.18, -3.6));
+        outbox.appendBatch(batch, reported);
+        // El primer lote sigue pendiente (p. ej. el envío falló): el segundo no puede depender de él
+        outbox.appendBatch(batch, reported);
+
+        List<SegmentLog.Segment> segments = outbox.pendingSegments();
+        assertEquals(2, segments.size());
+        assertFalse(outbox.readBatch(segments.get(1)).get(hash(1)).isLastSeenUpdate());
+        // Confirmarlos en cualquier orden deja el dispositivo como notificado
+        outbox.acknowledge(segments.get(1), reported);
+        outbox.acknowledge(segments.get(0), reported);
+        assertTrue(reported.contains(hash(1)));
+    }
+
+    @Test
+    public void codec_readsVersion1Records() {
+        // Registro de la versión 1: sin instante de posición, con 0,0 cuando no había posición
+        ByteBuffer v1 = ByteBuffer.allocate(DeviceRecordCodec.RECORD_SIZE - 8);
+        v1.put((byte) 1).put(new byte[MacHasher.HASH_LENGTH]);
+        v1.putLong(1_000L).putLong(5_000L).putInt(2).putShort((short) -70).putShort((short) -60);
+        v1.putDouble(0.0).putDouble(0.0);
+        v1.flip();
+
+        byte[] hash = new byte[MacHasher.HASH_LENGTH];
+        DeviceRecord record = new DeviceRecord(0L, DeviceRecord.RSSI_UNKNOWN, 0.0, 0.0);
+        new DeviceRecordCodec().decode(v1, hash, record);
+        assertEquals(5_000L, record.getLastSeen());
+        assertEquals(2, record.getCount());
+        assertFalse(record.hasLocation());
+
+        v1.clear();
+        v1.position(1 + MacHasher.HASH_LENGTH + 24);
+        v1.putDouble(37.0).putDouble(-3.0);
+        v1.rewind();
+        new DeviceRecordCodec().decode(v1, hash, record);
+        assertTrue(record.hasLocation());
+        assertEquals(0L, record.getLocationAgeMillis());
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Prueba de carga de extremo a extremo sin radio ni red: SyntheticSightingSource (o la
+ * reproducción de un registro grabado) alimenta un Collector que envía al receptor local.
+ * El tiempo de los avistamientos es simulado y la ingesta va tan rápido como puede.
+ *
+ * Imprime el rendimiento de ingesta (avistamientos/s de reloj real) y la latencia de cada
+ * envío (persistir el lote y subirlo) en p50/p99/máx; comprueba que llega todo al servidor.
+ * Solo se ejecuta con -Pbenchmarks.
+ */
+public class PipelineLoadBenchmark {
+
+    private static final long START = 1_700_000_000_000L;
+    private static final int POPULATION = 20_000;
+    private static final int SIGHTINGS_PER_SECOND = 2_000;
+    private static final double REPEAT_RATIO = 0.9;
+    private static final long DURATION = 5 * 60 * 1000;
+    private static final long FLUSH_INTERVAL = 30 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void onlyWhenRequested() {
+        assumeTrue(Boolean.getBoolean("benchmarks"));
+    }
+
+    private static SyntheticSightingSource synthetic() {
+        SyntheticSightingSource source = new SyntheticSightingSource(21, POPULATION, SIGHTINGS_PER_SECOND,
+                REPEAT_RATIO, SyntheticSightingSource.logNormalDwell(2 * 60 * 1000, 1.0));
+        source.seek(START);
+        return source;
+    }
+
+    // Resultado de una ejecución: lo que se emitió y lo que contó el servidor
+    private static final class Run {
+        long sightings;
+        long received;
+        int requests;
+        long wireBytes;
+    }
+
+    /**
+     * Emite por tramos de FLUSH_INTERVAL y envía al final de cada uno. feeder entrega los
+     * avistamientos del tramo que acaba en until.
+     */
+    private interface Feeder {
+        long feed(long until, SightingSource.Listener listener) throws Exception;
+    }
+
+    private Run run(String label, UploadFormat format, Feeder feeder) throws Exception {
+        return run(label, format, null, feeder);
+    }
+
+    private Run run(String label, UploadFormat format, ReportedDevices reported, Feeder feeder)
+            throws Exception {
+        try (LocalIngestServer server = new LocalIngestServer()) {
+            server.setStoreBodies(false);
+            LocationCache locationCache = new LocationCache(2 * 60 * 1000, Clock.SYSTEM);
+            locationCache.onFix(new LocationFix(37.1773, -3.5986, 5f, System.currentTimeMillis()));
+            Outbox outbox = new Outbox(folder.newFolder());
+            Collector collector = new Collector(outbox, new UploadClient(server.url()), format,
+                    locationCache, FLUSH_INTERVAL, Integer.MAX_VALUE, Long.MAX_VALUE);
+            collector.setReportedDevices(reported);
+            final StringBuilder errors = new StringBuilder();
+            collector.setErrorListener(new FlushScheduler.ErrorListener() {
+                @Override
+                public void onFlushError(Exception e) {
+                    errors.append(e).append('\n');
+                }
+            });
+
+            Histogram flushMicros = new Histogram();
+            Run run = new Run();
+            long ingestNanos = 0;
+            for (long t = START + FLUSH_INTERVAL; t <= START + DURATION; t += FLUSH_INTERVAL) {
+                long start = System.nanoTime();
+                run.sightings += feeder.feed(t, collector);
+                long fed = System.nanoTime();
+                collector.flush();
+                ingestNanos += fed - start;
+                flushMicros.record((System.nanoTime() - fed) / 1000);
+            }
+            collector.stop();
+
+            run.received = server.sightingsReceived();
+            run.requests = server.requests().size();
+            for (LocalIngestServer.Request request : server.requests()) {
+                run.wireBytes += request.wireBytes;
+            }
+            System.out.printf("%s %s: %,d avistamientos, %,.0f avistamientos/s, envío p50 %,d us, p99 %,d us, "
+                            + "máx %,d us, %d envíos, %,d bytes%n",
+                    label, format, run.sightings, run.sightings * 1e9 / ingestNanos,
+                    flushMicros.getPercentile(0.5), flushMicros.getPercentile(0.99), flushMicros.getMax(),
+                    run.requests, run.wireBytes);
+
+            assertEquals("", errors.toString());
+            assertTrue(outbox.pendingSegments().isEmpty());
+            return run;
+        }
+    }
+
+    private Run runSynthetic(UploadFormat format) throws Exception {
+        return runSynthetic("Sintético", format, null);
+    }
+
+    private Run runSynthetic(String label, UploadFormat format, ReportedDevices reported) throws Exception {
+        final SyntheticSightingSource source = synthetic();
+        return run(label, format, reported, new Feeder() {
+            @Override
+            public long feed(long until, SightingSource.Listener listener) {
+                return source.emit(until, listener);
+            }
+        });
+    }
+
+    @Test
+    public void synthetic_uploadsEverySightingInEachFormat() throws Exception {
+        for (UploadFormat format : UploadFormat.values()) {
+            Run run = runSynthetic(format);
+            assertEquals(DURATION / 1000 * SIGHTINGS_PER_SECOND, run.sightings, run.sightings / 20);
+            assertEquals(run.sightings, run.received);
+            // Un lote grande puede ocupar varios segmentos del outbox, y cada uno es una petición
+            assertTrue(run.requests >= DURATION / FLUSH_INTERVAL);
+        }
+    }
+
+    @Test
+    public void deltaUploads_sendFewerBytesWhenDevicesStayInRange() throws Exception {
+        Run full = runSynthetic("Completo", UploadFormat.JSON_GZIP, null);
+        Run delta = runSynthetic("Incremental", UploadFormat.JSON_GZIP,
+                new ReportedDevices(POPULATION * 4, 0.001, Long.MAX_VALUE, Clock.SYSTEM));
+        // Las actualizaciones no llevan avistamientos: el servidor solo cuenta los de altas
+        assertTrue(delta.received < full.received);
+        assertTrue(delta.wireBytes < full.wireBytes);
+    }
+
+    @Test
+    public void replayedLog_matchesSyntheticRun() throws Exception {
+        File log = folder.newFile();
+        try (SightingLogWriter writer = new SightingLogWriter(
+                new OutputStreamWriter(new FileOutputStream(log), StandardCharsets.UTF_8))) {
+            synthetic().emit(START + DURATION, writer);
+        }
+
+        // La reproducción entrega todo de una vez: se envía en un único tramo
+        final ReplaySightingSource replay = new ReplaySightingSource(log, 0);
+        Run replayed = run("Reproducido", UploadFormat.BINARY, new Feeder() {
+            private boolean done;
+
+            @Override
+            public long feed(long until, SightingSource.Listener listener) throws Exception {
+                if (done) {
+                    return 0;
+                }
+                done = true;
+                return replay.replay(listener);
+            }
+        });
+        Run direct = runSynthetic(UploadFormat.BINARY);
+        assertEquals(direct.sightings, replayed.sightings);
+        assertEquals(direct.received, replayed.received);
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PipelineMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final class ManualClock implements Clock {
+        long now;
+
+        @Override
+        public long nowMillis() {
+            return now;
+        }
+    }
+
+    @Test
+    public void histogram_percentilesFallInPowerOfTwoBuckets() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500.5, histogram.getMean(), 1e-9);
+        // p50 = 500 cae en [256, 512); p99 = 990 en [512, 1024) acotado por el máximo
+        assertEquals(511, histogram.getPercentile(0.5));
+        assertEquals(1000, histogram.getPercentile(0.99));
+        assertEquals(0, new Histogram().getPercentile(0.5));
+    }
+
+    @Test
+    public void histogram_concurrentRecordsAreNotLost() throws InterruptedException {
+        final Histogram histogram = new Histogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100_000; i++) {
+                        histogram.record(i & 1023);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400_000, histogram.getCount());
+        assertEquals(1023, histogram.getMax());
+    }
+
+    @Test
+    public void snapshot_ratesSincePreviousSnapshot() {
+        ManualClock clock = new ManualClock();
+        PipelineMetrics metrics = new PipelineMetrics(clock);
+        for (int i = 0; i < 100; i++) {
+            metrics.onSighting(1_000, 5_000);
+        }
+        clock.now = 10_000;
+        PipelineMetrics.Snapshot first = metrics.snapshot(null);
+        assertEquals(10.0, first.sightingsPerSecond, 1e-9);
+
+        for (int i = 0; i < 500; i++) {
+            metrics.onSighting(1_000, 5_000);
+        }
+        clock.now = 15_000;
+        PipelineMetrics.Snapshot second = metrics.snapshot(first);
+        assertEquals(600, second.sightings);
+        assertEquals(100.0, second.sightingsPerSecond, 1e-9);
+        assertTrue(second.toJson().contains("\"avistamientos\":600,\"avistamientos_por_segundo\":100.000,"));
+    }
+
+    @Test
+    public void onFlush_reportsCompressionRatioOfThatFlush() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        metrics.onUploadBytes(1_000, 100);
+        metrics.onUploadBytes(1_000, 100);
+        metrics.onFlush(10, 1_000_000);
+        assertEquals(10.0, metrics.snapshot(null).lastFlushCompressionRatio, 1e-9);
+
+        metrics.onUploadBytes(1_000, 500);
+        metrics.onFlush(10, 1_000_000);
+        PipelineMetrics.Snapshot snapshot = metrics.snapshot(null);
+        assertEquals(2.0, snapshot.lastFlushCompressionRatio, 1e-9);
+        assertEquals(3_000 / 700.0, snapshot.getCompressionRatio(), 1e-9);
+
+        // Un envío sin subidas mantiene el último ratio
+        metrics.onFlush(0, 1_000_000);
+        assertEquals(2.0, metrics.snapshot(null).lastFlushCompressionRatio, 1e-9);
+        assertTrue(metrics.snapshot(null).toJson().contains("\"ratio_compresion_ultimo_envio\":2.000"));
+    }
+
+    @Test
+    public void uploadClient_reportsBytesRetriesAndFailures() throws IOException {
+        try (LocalIngestServer server = new LocalIngestServer()) {
+            PipelineMetrics metrics = new PipelineMetrics();
+            UploadClient client = new UploadClient(server.url(), 1_000, 1_000, new Backoff(5, 20, 3),
+                    new CircuitBreaker(10, 60_000));
+            client.setMetrics(metrics);
+            UploadClient.BodyWriter body = new UploadClient.BodyWriter() {
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    byte[] line = "{\"avistamientos\":1}".getBytes(StandardCharsets.UTF_8);
+                    for (int i = 0; i < 1000; i++) {
+                        out.write(line);
+                    }
+                }
+            };
+
+            server.enqueueFaults(LocalIngestServer.Fault.SERVER_ERROR);
+            assertTrue(client.send(UploadFormat.JSON_GZIP, body).isOk());
+            server.enqueueFaults(LocalIngestServer.Fault.SERVER_ERROR, LocalIngestServer.Fault.SERVER_ERROR,
+                    LocalIngestServer.Fault.SERVER_ERROR);
+            assertFalse(client.send(UploadFormat.JSON_GZIP, body).isOk());
+
+            PipelineMetrics.Snapshot snapshot = metrics.snapshot(null);
+            assertEquals(1, snapshot.uploads);
+            assertEquals(1, snapshot.uploadFailures);
+            assertEquals(3, snapshot.uploadRetries);
+            // 5 intentos de 19 000 bytes sin comprimir; el gzip de un texto tan repetitivo es mucho menor
+            assertEquals(5 * 19_000, snapshot.rawBytes);
+            assertTrue(snapshot.getCompressionRatio() > 20);
+        }
+    }
+
+    @Test
+    public void dumper_appendsJsonLinesAndRotates() throws IOException {
+        ManualClock clock = new ManualClock();
+        PipelineMetrics metrics = new PipelineMetrics(clock);
+        File file = new File(folder.getRoot(), "metrics.jsonl");
+        MetricsDumper dumper = new MetricsDumper(metrics, file, 1_000, clock);
+
+        metrics.onSighting(100, 200);
+        clock.now = 1_000;
+        dumper.dump();
+        dumper.dump();
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"fecha_ms\":1000,\"tiempo_activo_ms\":1000,\"avistamientos\":1,"));
+        assertTrue(lines.get(0).endsWith("}"));
+
+        for (int i = 0; i < 5; i++) {
+            dumper.dump();
+        }
+        assertTrue(new File(folder.getRoot(), "metrics.jsonl.1").exists());
+        assertTrue(file.length() < 1_000);
+    }
+}
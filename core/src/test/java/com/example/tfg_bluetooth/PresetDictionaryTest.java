@@ -0,0 +1,138 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.*;
+
+public class PresetDictionaryTest {
+
+    private static byte[] json(int devices) throws IOException {
+        MacHasher hasher = new MacHasher();
+        Map<String, DeviceRecord> batch = new LinkedHashMap<>();
+        for (int i = 0; i < devices; i++) {
+            DeviceRecord record = i % 3 == 0
+                    ? new DeviceRecord(1_750_000_000_000L + i * 1000L, (short) -70, 0, 0, DeviceRecord.NO_LOCATION)
+                    : new DeviceRecord(1_750_000_000_000L + i * 1000L, (short) -60, 37.17 + i * 1e-5, -3.59);
+            batch.put(hasher.hash(String.format("02:00:00:00:%02X:%02X", i >> 8, i & 0xff)), record);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DeviceJsonWriter writer = new DeviceJsonWriter(out, new TimestampFormat(TimeZone.getTimeZone("UTC")));
+        writer.beginBatch();
+        for (Map.Entry<String, DeviceRecord> entry : batch.entrySet()) {
+            writer.writeDevice(entry.getKey(), entry.getValue());
+        }
+        writer.endBatch();
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data, int level) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream deflateOut = PresetDictionary.deflate(out, level)) {
+            deflateOut.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+            gzipOut.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] data, String encoding) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = PresetDictionary.inflate(new ByteArrayInputStream(data), encoding)) {
+            byte[] buffer = new byte[100];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void roundTrip_restoresBatch() throws IOException {
+        byte[] json = json(500);
+        assertArrayEquals(json, inflate(deflate(json, Deflater.BEST_COMPRESSION), PresetDictionary.CONTENT_ENCODING));
+        assertArrayEquals(new byte[0], inflate(deflate(new byte[0], 6), PresetDictionary.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void dictionary_coversEveryJsonKey() throws IOException {
+        String dictionary = new String(PresetDictionary.forVersion(PresetDictionary.VERSION), StandardCharsets.US_ASCII);
+        Matcher keys = Pattern.compile("\"([a-z_]+)\":").matcher(new String(json(3), StandardCharsets.US_ASCII));
+        int found = 0;
+        while (keys.find()) {
+            assertTrue(keys.group(1), dictionary.contains(keys.group(0)));
+            found++;
+        }
+        // 8 campos con ubicación y 5 sin ella
+        assertEquals(8 + 8 + 5, found);
+    }
+
+    @Test
+    public void smallBatches_compressBetterThanGzip() throws IOException {
+        for (int devices : new int[]{1, 10, 50}) {
+            byte[] json = json(devices);
+            int gzip = gzip(json).length;
+            int dictionary = deflate(json, Deflater.BEST_COMPRESSION).length;
+            // La ventaja es mayor cuanto más pequeño es el lote
+            assertTrue(devices + " registros: diccionario " + dictionary + " B, gzip " + gzip + " B",
+                    dictionary < (devices <= 10 ? gzip * 0.85 : gzip));
+        }
+    }
+
+    @Test
+    public void versionOf_parsesContentEncoding() {
+        assertEquals(PresetDictionary.VERSION, PresetDictionary.versionOf(PresetDictionary.CONTENT_ENCODING));
+        assertEquals(-1, PresetDictionary.versionOf("gzip"));
+        assertEquals(-1, PresetDictionary.versionOf(null));
+        assertEquals(-1, PresetDictionary.versionOf("x-tfg-deflate-vX"));
+    }
+
+    @Test
+    public void inflate_rejectsUnknownVersion() throws IOException {
+        try {
+            PresetDictionary.inflate(new ByteArrayInputStream(new byte[0]), "x-tfg-deflate-v99");
+            fail();
+        } catch (ZipException expected) {
+        }
+    }
+
+    @Test
+    public void inflate_detectsWrongDictionary() throws IOException {
+        Deflater deflater = new Deflater();
+        deflater.setDictionary("otro diccionario".getBytes(StandardCharsets.US_ASCII));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflateOut = new DeflaterOutputStream(out, deflater)) {
+            deflateOut.write(json(2));
+        }
+        deflater.end();
+        try {
+            inflate(out.toByteArray(), PresetDictionary.CONTENT_ENCODING);
+            fail();
+        } catch (ZipException e) {
+            assertEquals("Diccionario no coincide", e.getMessage());
+        }
+        assertNotEquals(0, PresetDictionary.id(PresetDictionary.VERSION));
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ReplaySightingSourceTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final class Recorder implements SightingSource.Listener {
+        final List<String> sightings = new ArrayList<>();
+
+        @Override
+        public synchronized void onSighting(String address, short rssi, long timestamp) {
+            sightings.add(timestamp + "," + address + "," + rssi);
+        }
+    }
+
+    private static Writer writer(File file) throws IOException {
+        return new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+    }
+
+    private static SyntheticSightingSource synthetic() {
+        SyntheticSightingSource source = new SyntheticSightingSource(9, 200, 100, 0.8,
+                SyntheticSightingSource.exponentialDwell(30_000));
+        source.seek(START);
+        return source;
+    }
+
+    @Test
+    public void replay_reproducesRecordedSightings() throws Exception {
+        File log = folder.newFile();
+        try (SightingLogWriter logWriter = new SightingLogWriter(writer(log))) {
+            assertEquals(synthetic().emit(START + 60_000, logWriter), logWriter.getWritten());
+        }
+        // Misma semilla: la secuencia que se grabó
+        Recorder original = new Recorder();
+        synthetic().emit(START + 60_000, original);
+
+        Recorder replayed = new Recorder();
+        long count = new ReplaySightingSource(log, 0).replay(replayed);
+        assertEquals(original.sightings.size(), count);
+        assertEquals(original.sightings, replayed.sightings);
+    }
+
+    @Test
+    public void replay_skipsCommentsAndBlankLines() throws Exception {
+        File log = folder.newFile();
+        try (Writer out = writer(log)) {
+            out.write("# grabado en pruebas\n\n" + START + ",AA:BB:CC:DD:EE:FF,-60\n\n");
+        }
+        Recorder replayed = new Recorder();
+        assertEquals(1, new ReplaySightingSource(log, 0).replay(replayed));
+        assertEquals(START + ",AA:BB:CC:DD:EE:FF,-60", replayed.sightings.get(0));
+    }
+
+    @Test
+    public void replay_rejectsMalformedLines() throws Exception {
+        File log = folder.newFile();
+        try (Writer out = writer(log)) {
+            out.write(START + ",AA:BB:CC:DD:EE:FF,-60\nnada\n");
+        }
+        try {
+            new ReplaySightingSource(log, 0).replay(new Recorder());
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Línea 2"));
+        }
+    }
+
+    @Test
+    public void start_pacesByRecordedIntervalsAndSignalsEnd() throws Exception {
+        File log = folder.newFile();
+        try (Writer out = writer(log)) {
+            for (int i = 0; i <= 10; i++) {
+                out.write((START + i * 100) + ",AA:BB:CC:DD:EE:" + String.format("%02X", i) + ",-50\n");
+            }
+        }
+        // 1 s grabado a velocidad 4: unos 250 ms
+        ReplaySightingSource source = new ReplaySightingSource(log, 4);
+        final CountDownLatch finished = new CountDownLatch(1);
+        source.setWindowListener(new SightingSource.WindowListener() {
+            @Override
+            public void onWindowStarted() {
+            }
+
+            @Override
+            public void onWindowFinished() {
+                finished.countDown();
+            }
+        });
+        Recorder replayed = new Recorder();
+        long start = System.nanoTime();
+        source.start(replayed);
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("ms: " + elapsedMs, elapsedMs >= 200);
+        assertFalse(source.isRunning());
+        assertNull(source.getError());
+        assertEquals(11, source.getReplayed());
+        assertEquals(11, replayed.sightings.size());
+    }
+
+    @Test
+    public void stop_interruptsPacedReplay() throws Exception {
+        File log = folder.newFile();
+        try (Writer out = writer(log)) {
+            out.write(START + ",AA:BB:CC:DD:EE:00,-50\n" + (START + 60_000) + ",AA:BB:CC:DD:EE:01,-50\n");
+        }
+        ReplaySightingSource source = new ReplaySightingSource(log, 1);
+        Recorder replayed = new Recorder();
+        source.start(replayed);
+        Thread.sleep(50);
+        source.stop();
+        assertFalse(source.isRunning());
+        assertEquals(1, replayed.sightings.size());
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReportedDevicesTest {
+
+    private static final class ManualClock implements Clock {
+        long now;
+
+        @Override
+        public long nowMillis() {
+            return now;
+        }
+    }
+
+    private static final MacHasher HASHER = new MacHasher();
+
+    private static String hash(long i) {
+        return HASHER.hash(i);
+    }
+
+    @Test
+    public void contains_afterAdd() {
+        ReportedDevices reported = new ReportedDevices(1_000, 0.01, 60_000, new ManualClock());
+        assertFalse(reported.contains(hash(1)));
+        reported.add(hash(1));
+        assertTrue(reported.contains(hash(1)));
+        assertFalse(reported.contains(hash(2)));
+    }
+
+    @Test
+    public void binaryHash_matchesHexHash() {
+        ReportedDevices reported = new ReportedDevices(1_000, 0.01, 60_000, new ManualClock());
+        byte[] buffer = new byte[40];
+        Hex.decode(hash(1), buffer, 8);
+        reported.add(hash(1));
+        assertTrue(reported.contains(buffer, 8));
+        reported.add(Hex.decode(hash(2)), 0);
+        assertTrue(reported.contains(hash(2)));
+        assertFalse(reported.contains(Hex.decode(hash(3)), 0));
+    }
+
+    @Test
+    public void falsePositiveRate_staysNearConfigured() {
+        ReportedDevices reported = new ReportedDevices(50_000, 0.001, Long.MAX_VALUE, new ManualClock());
+        for (int i = 0; i < 50_000; i++) {
+            reported.add(hash(i));
+        }
+        for (int i = 0; i < 50_000; i++) {
+            assertTrue(reported.contains(hash(i)));
+        }
+        int falsePositives = 0;
+        for (int i = 50_000; i < 150_000; i++) {
+            if (reported.contains(hash(i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue("falsos positivos: " + falsePositives, falsePositives < 200);
+        // Dos generaciones de ~88 KB para 50.000 dispositivos al 0,1 %
+        assertTrue(reported.getSizeBytes() + " B", reported.getSizeBytes() < 200 * 1024);
+    }
+
+    @Test
+    public void absentDevices_areForgottenAfterTwoGenerations() {
+        ManualClock clock = new ManualClock();
+        ReportedDevices reported = new ReportedDevices(1_000, 0.001, 60_000, clock);
+        reported.add(hash(1));
+        reported.add(hash(2));
+
+        // Generación 2: solo sigue presente el dispositivo 2
+        clock.now = 60_000;
+        reported.add(hash(2));
+        assertTrue(reported.contains(hash(1)));
+
+        // Generación 3: el dispositivo 1 ya no está en ningún filtro
+        clock.now = 120_000;
+        reported.add(hash(2));
+        assertFalse(reported.contains(hash(1)));
+        assertTrue(reported.contains(hash(2)));
+    }
+
+    @Test
+    public void fullGeneration_rotatesBeforeExpiry() {
+        ReportedDevices reported = new ReportedDevices(100, 0.001, Long.MAX_VALUE, new ManualClock());
+        for (int i = 0; i < 300; i++) {
+            reported.add(hash(i));
+        }
+        // Solo quedan las dos últimas generaciones de 100
+        assertFalse(reported.contains(hash(0)));
+        assertTrue(reported.contains(hash(150)));
+        assertTrue(reported.contains(hash(299)));
+    }
+
+    @Test
+    public void clear_forgetsEverything() {
+        ReportedDevices reported = new ReportedDevices(100, 0.01, 60_000, new ManualClock());
+        reported.add(hash(1));
+        reported.clear();
+        assertFalse(reported.contains(hash(1)));
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SightingJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final long START = 1_700_000_000_000L;
+
+    private static Collector newCollector(Outbox outbox) {
+        return new Collector(outbox, null, UploadFormat.JSON_GZIP, new LocationCache(60_000, Clock.SYSTEM),
+                60_000, Integer.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    // 10 dispositivos, el dispositivo i visto i + 1 veces
+    private static void recordSightings(Collector collector) {
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j <= i; j++) {
+                collector.onSighting(0x001122000000L + i, (short) (-50 - j), START + 1_000L * j);
+            }
+        }
+    }
+
+    private static Map<String, DeviceRecord> pendingDevices(Outbox outbox) throws IOException {
+        Map<String, DeviceRecord> devices = new HashMap<>();
+        for (SegmentLog.Segment segment : outbox.pendingSegments()) {
+            for (Map.Entry<String, DeviceRecord> entry : outbox.readBatch(segment).entrySet()) {
+                assertNull("dispositivo guardado dos veces", devices.put(entry.getKey(), entry.getValue()));
+            }
+        }
+        return devices;
+    }
+
+    // Avistamientos por dispositivo sumando todos los lotes de la cola
+    private static Map<String, Integer> pendingCounts(Outbox outbox) throws IOException {
+        Map<String, Integer> counts = new HashMap<>();
+        for (SegmentLog.Segment segment : outbox.pendingSegments()) {
+            for (Map.Entry<String, DeviceRecord> entry : outbox.readBatch(segment).entrySet()) {
+                Integer count = counts.get(entry.getKey());
+                counts.put(entry.getKey(), (count == null ? 0 : count) + entry.getValue().getCount());
+            }
+        }
+        return counts;
+    }
+
+    private static void assertAllSightings(Map<String, DeviceRecord> devices) {
+        MacHasher hasher = new MacHasher();
+        assertEquals(10, devices.size());
+        for (int i = 0; i < 10; i++) {
+            DeviceRecord record = devices.get(hasher.hash(0x001122000000L + i));
+            assertNotNull(record);
+            assertEquals(i + 1, record.getCount());
+            assertEquals(START, record.getFirstSeen());
+            assertEquals(START + 1_000L * i, record.getLastSeen());
+        }
+    }
+
+    @Test
+    public void batchInMemoryIsRecoveredAfterProcessDeath() throws IOException {
+        File outboxDir = folder.newFolder();
+        File journalDir = folder.newFolder();
+        Collector collector = newCollector(new Outbox(outboxDir));
+        collector.setMaxDevicesInMemory(64);
+        collector.setJournal(new SightingJournal(journalDir));
+        recordSightings(collector);
+        // El proceso muere sin persist(): el lote solo está en el diario
+
+        Outbox outbox = new Outbox(outboxDir);
+        assertTrue(outbox.pendingSegments().isEmpty());
+        newCollector(outbox).setJournal(new SightingJournal(journalDir));
+
+        assertAllSightings(pendingDevices(outbox));
+        assertEquals(0, journalDir.list().length);
+    }
+
+    @Test
+    public void persistReleasesTheJournal() throws IOException {
+        File journalDir = folder.newFolder();
+        Outbox outbox = new Outbox(folder.newFolder());
+        Collector collector = newCollector(outbox);
+        collector.setJournal(new SightingJournal(journalDir));
+        recordSightings(collector);
+        assertEquals(1, journalDir.list().length);
+
+        assertEquals(10, collector.persist());
+        assertEquals(0, journalDir.list().length);
+        // Nada que recuperar: el lote ya está en la cola
+        assertTrue(new SightingJournal(journalDir).leftovers().isEmpty());
+        assertAllSightings(pendingDevices(outbox));
+    }
+
+    @Test
+    public void failedPersistKeepsTheJournalUntilTheBatchIsSaved() throws IOException {
+        File outboxDir = folder.newFolder();
+        File journalDir = folder.newFolder();
+        Collector collector = newCollector(new Outbox(outboxDir));
+        collector.setJournal(new SightingJournal(journalDir));
+        recordSightings(collector);
+
+        // Un directorio con el nombre del primer segmento hace fallar el guardado
+        File blocker = new File(outboxDir, String.format("%016d.seg", 0));
+        assertTrue(blocker.mkdir());
+        assertEquals(0, collector.persist());
+        assertEquals(10, collector.getPendingDevices());
+        // La generación del lote fallido y la activa, que ya lo lleva reincorporado
+        assertEquals(2, journalDir.list().length);
+        assertTrue(blocker.delete());
+
+        // Si el proceso muere ahora, el lote reincorporado se recupera entero y una sola vez
+        Outbox outbox = new Outbox(outboxDir);
+        newCollector(outbox).setJournal(new SightingJournal(journalDir));
+        assertAllSightings(pendingDevices(outbox));
+    }
+
+    @Test
+    public void spilledDevicesAreNotRecoveredTwice() throws IOException {
+        File outboxDir = folder.newFolder();
+        File journalDir = folder.newFolder();
+        Collector collector = newCollector(new Outbox(outboxDir));
+        collector.setMaxDevicesInMemory(16);
+        collector.setJournal(new SightingJournal(journalDir));
+        // 40 dispositivos en una tabla de 16: cada uno sale al outbox y vuelve varias veces
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 40; i++) {
+                collector.onSighting(0x001122000000L + i, (short) -60, START + 1_000L * (round * 40 + i));
+            }
+        }
+        // El proceso muere: lo desalojado ya está en la cola y el resto solo en el diario
+
+        Outbox outbox = new Outbox(outboxDir);
+        newCollector(outbox).setJournal(new SightingJournal(journalDir));
+        Map<String, Integer> counts = pendingCounts(outbox);
+        MacHasher hasher = new MacHasher();
+        assertEquals(40, counts.size());
+        for (int i = 0; i < 40; i++) {
+            assertEquals(Integer.valueOf(3), counts.get(hasher.hash(0x001122000000L + i)));
+        }
+    }
+
+    @Test
+    public void mergedBatchIsRecoveredOnceAfterItsDevicesSpill() throws IOException {
+        File outboxDir = folder.newFolder();
+        File journalDir = folder.newFolder();
+        Collector collector = newCollector(new Outbox(outboxDir));
+        collector.setMaxDevicesInMemory(16);
+        collector.setJournal(new SightingJournal(journalDir));
+        recordSightings(collector);
+
+        File blocker = new File(outboxDir, String.format("%016d.seg", 0));
+        assertTrue(blocker.mkdir());
+        assertEquals(0, collector.persist());
+        assertTrue(blocker.delete());
+        // Dispositivos nuevos que desalojan a los del lote reincorporado
+        for (int i = 0; i < 30; i++) {
+            collector.onSighting(0x001122100000L + i, (short) -60, START + 20_000L + i);
+        }
+
+        Outbox outbox = new Outbox(outboxDir);
+        newCollector(outbox).setJournal(new SightingJournal(journalDir));
+        Map<String, Integer> counts = pendingCounts(outbox);
+        MacHasher hasher = new MacHasher();
+        assertEquals(40, counts.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.valueOf(i + 1), counts.get(hasher.hash(0x001122000000L + i)));
+        }
+        for (int i = 0; i < 30; i++) {
+            assertEquals(Integer.valueOf(1), counts.get(hasher.hash(0x001122100000L + i)));
+        }
+    }
+
+    // 20 dispositivos vistos dos veces en una tabla de 16 cuyo primer desalojo no se puede guardar
+    private static Collector recordWithFailedSpill(File outboxDir, File journalDir) throws IOException {
+        Collector collector = newCollector(new Outbox(outboxDir));
+        collector.setMaxDevicesInMemory(16);
+        collector.setJournal(new SightingJournal(journalDir));
+        File blocker = new File(outboxDir, String.format("%016d.seg", 0));
+        assertTrue(blocker.mkdir());
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 20; i++) {
+                collector.onSighting(0x001122000000L + i, (short) -60, START + 1_000L * (round * 20 + i));
+            }
+        }
+        assertTrue(blocker.delete());
+        return collector;
+    }
+
+    private static void assertSeenTwice(Map<String, Integer> counts) {
+        MacHasher hasher = new MacHasher();
+        assertEquals(20, counts.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Integer.valueOf(2), counts.get(hasher.hash(0x001122000000L + i)));
+        }
+    }
+
+    @Test
+    public void failedSpillKeepsTheDevicesUntilTheBatchIsSaved() throws IOException {
+        File outboxDir = folder.newFolder();
+        File journalDir = folder.newFolder();
+        Collector collector = recordWithFailedSpill(outboxDir, journalDir);
+        // Las filas desalojadas volvieron a la tabla; los que no cupieron, solo en el diario
+        assertEquals(16, collector.getPendingDevices());
+        Outbox outbox = new Outbox(outboxDir);
+        assertTrue(outbox.pendingSegments().isEmpty());
+
+        assertEquals(20, collector.persist());
+        assertEquals(0, journalDir.list().length);
+        assertSeenTwice(pendingCounts(new Outbox(outboxDir)));
+    }
+
+    @Test
+    public void failedSpillIsRecoveredAfterProcessDeath() throws IOException {
+        File outboxDir = folder.newFolder();
+        File journalDir = folder.newFolder();
+        recordWithFailedSpill(outboxDir, journalDir);
+
+        Outbox outbox = new Outbox(outboxDir);
+        newCollector(outbox).setJournal(new SightingJournal(journalDir));
+        assertSeenTwice(pendingCounts(outbox));
+    }
+
+    @Test
+    public void clearDiscardsTheBatchFromTheJournal() throws IOException {
+        File journalDir = folder.newFolder();
+        SightingJournal journal = new SightingJournal(journalDir);
+        SightingStore store = new SightingStore(null, journal);
+        store.record(String.format("%064x", 1), START, (short) -60, 40.0, -3.0);
+        assertEquals(1, journalDir.list().length);
+
+        store.clear();
+        assertEquals(0, store.size());
+        assertEquals(0, journalDir.list().length);
+    }
+}
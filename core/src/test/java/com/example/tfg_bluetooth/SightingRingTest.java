@@ -0,0 +1,176 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class SightingRingTest {
+
+    // Comprueba que los avistamientos llegan completos y en orden: la fecha es el número de secuencia
+    private static final class Checker implements SightingRing.Consumer {
+        final AtomicLong received = new AtomicLong();
+        volatile long outOfOrder;
+        long lastTimestamp = -1;
+        volatile long delayNanos;
+
+        @Override
+        public void onSighting(long mac, short rssi, long timestamp) {
+            if (timestamp <= lastTimestamp || mac != (timestamp & 0xFFFFFFFFFFFFL) || rssi != (short) -(timestamp % 100)) {
+                outOfOrder++;
+            }
+            lastTimestamp = timestamp;
+            if (delayNanos > 0) {
+                long until = System.nanoTime() + delayNanos;
+                while (System.nanoTime() < until) {
+                    Thread.yield();
+                }
+            }
+            received.incrementAndGet();
+        }
+    }
+
+    private static boolean offer(SightingRing ring, long sequence) {
+        return ring.offer(sequence & 0xFFFFFFFFFFFFL, (short) -(sequence % 100), sequence);
+    }
+
+    private static void awaitEmpty(SightingRing ring) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (ring.size() > 0) {
+            assertTrue("el hilo de ingesta no avanza", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void burstsBelowCapacity_loseNothing() throws Exception {
+        final Checker checker = new Checker();
+        final SightingRing ring = new SightingRing(1024, 64, SightingRing.Overflow.DROP_NEWEST, checker);
+        ring.start();
+        // Ráfagas de hasta la capacidad desde un hilo productor, como el principal en Android
+        final long[] sent = new long[1];
+        final Throwable[] failure = new Throwable[1];
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long sequence = 0;
+                    for (int burst = 0; burst < 500; burst++) {
+                        int size = 1 + (burst * 397) % ring.getCapacity();
+                        for (int i = 0; i < size; i++) {
+                            assertTrue(offer(ring, sequence++));
+                        }
+                        awaitEmpty(ring);
+                    }
+                    sent[0] = sequence;
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        });
+        producer.start();
+        producer.join();
+        ring.stop();
+
+        assertNull(failure[0]);
+        assertEquals(0, ring.getDropped());
+        assertEquals(sent[0], ring.getOffered());
+        assertEquals(sent[0], checker.received.get());
+        assertEquals(0, checker.outOfOrder);
+        assertTrue(ring.getHighWaterMark() <= ring.getCapacity());
+    }
+
+    @Test
+    public void continuousStream_accountsForEverySighting() throws Exception {
+        Checker checker = new Checker();
+        SightingRing ring = new SightingRing(256, 32, SightingRing.Overflow.DROP_NEWEST, checker);
+        PipelineMetrics metrics = new PipelineMetrics();
+        ring.setMetrics(metrics);
+        ring.start();
+        // Sin esperas entre ráfagas puede llenarse: lo descartado se cuenta y el resto llega en orden
+        int total = 2_000_000;
+        for (long sequence = 0; sequence < total; sequence++) {
+            offer(ring, sequence);
+        }
+        ring.stop();
+
+        assertEquals(total, ring.getOffered());
+        assertEquals(total, checker.received.get() + ring.getDropped());
+        assertEquals(ring.getDropped(), metrics.snapshot(null).droppedSightings);
+        assertEquals(0, checker.outOfOrder);
+    }
+
+    @Test
+    public void fullBuffer_dropsNewestAndCounts() throws Exception {
+        Checker checker = new Checker();
+        SightingRing ring = new SightingRing(16, 4, SightingRing.Overflow.DROP_NEWEST, checker);
+        // Sin hilo de ingesta el búfer se llena y los siguientes se descartan
+        for (long sequence = 0; sequence < 20; sequence++) {
+            assertEquals(sequence < 16, offer(ring, sequence));
+        }
+        assertEquals(4, ring.getDropped());
+        assertEquals(16, ring.getHighWaterMark());
+
+        ring.start();
+        ring.stop();
+        assertEquals(16, checker.received.get());
+        assertEquals(0, checker.outOfOrder);
+    }
+
+    @Test
+    public void waitPolicy_losesNothingAboveCapacity() throws Exception {
+        Checker checker = new Checker();
+        checker.delayNanos = 2_000;
+        SightingRing ring = new SightingRing(64, 16, SightingRing.Overflow.WAIT, checker);
+        ring.start();
+        int total = 20_000;
+        for (long sequence = 0; sequence < total; sequence++) {
+            assertTrue(offer(ring, sequence));
+        }
+        ring.stop();
+        assertEquals(0, ring.getDropped());
+        assertEquals(total, checker.received.get());
+        assertEquals(0, checker.outOfOrder);
+    }
+
+    @Test
+    public void invalidAddressesAndConsumerErrors_doNotStopIngestion() throws Exception {
+        final CountDownLatch delivered = new CountDownLatch(2);
+        SightingRing ring = new SightingRing(new SightingRing.Consumer() {
+            @Override
+            public void onSighting(long mac, short rssi, long timestamp) {
+                delivered.countDown();
+                if (timestamp == 1L) {
+                    throw new IllegalStateException("fallo de prueba");
+                }
+            }
+        });
+        ring.start();
+        ring.onSighting("no es una MAC", (short) -60, 0L);
+        ring.onSighting("00:11:22:33:44:55", (short) -60, 1L);
+        ring.onSighting("00:11:22:33:44:66", (short) -60, 2L);
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        ring.stop();
+        assertEquals(1, ring.getInvalid());
+        assertEquals(1, ring.getConsumerErrors());
+    }
+
+    @Test
+    public void collectorOnIngestThread_aggregatesEverySighting() throws Exception {
+        LocationCache locationCache = new LocationCache(60_000, Clock.SYSTEM);
+        Collector collector = new Collector(null, null, UploadFormat.JSON_GZIP, locationCache,
+                60_000, Integer.MAX_VALUE, Long.MAX_VALUE);
+        SightingRing ring = new SightingRing(1024, 128, SightingRing.Overflow.WAIT, collector);
+        ring.start();
+        for (int i = 0; i < 50_000; i++) {
+            ring.onSighting(String.format("00:00:00:00:%02X:%02X", (i % 500) / 256, (i % 500) % 256),
+                    (short) -60, i);
+        }
+        ring.stop();
+        assertEquals(500, collector.getPendingDevices());
+        assertEquals(50_000, collector.getMetrics().snapshot(null).sightings);
+    }
+}
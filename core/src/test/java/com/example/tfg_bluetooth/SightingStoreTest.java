@@ -0,0 +1,245 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SightingStoreTest {
+
+    @Test
+    public void record_aggregatesRepeatSightings() {
+        SightingStore store = new SightingStore();
+        DeviceRecord first = store.record("aa", 1_000L, (short) -70, 1.0, 2.0);
+        DeviceRecord second = store.record("aa", 5_000L, (short) -60, 1.0, 2.0);
+        assertSame(first, second);
+        assertEquals(2, second.getCount());
+        assertEquals(4_000L, second.getDwellMillis());
+    }
+
+    @Test
+    public void swap_returnsFrozenBatchAndStartsEmpty() {
+        SightingStore store = new SightingStore();
+        store.record("aa", 1L, (short) -70, 0.0, 0.0);
+        Map<String, DeviceRecord> batch = store.swap();
+        assertEquals(1, batch.size());
+        assertEquals(0, store.size());
+
+        store.record("aa", 2L, (short) -70, 0.0, 0.0);
+        assertEquals(1, batch.get("aa").getCount());
+    }
+
+    @Test
+    public void swapWithCells_groupsDevicesByCellAndLeavesUnlocatedLast() {
+        SightingStore store = new SightingStore();
+        // Dos celdas de precisión 7 a unos 300 m y un dispositivo sin posición entre medias
+        store.record("a1", 1L, (short) -70, 37.17735, -3.59855);
+        store.record("b1", 2L, (short) -70, 37.18000, -3.59855);
+        store.record("xx", 3L, (short) -70, 0.0, 0.0, DeviceRecord.NO_LOCATION);
+        store.record("a2", 4L, (short) -70, 37.17736, -3.59856);
+        store.record("b2", 5L, (short) -70, 37.18001, -3.59856);
+
+        Map<String, DeviceRecord> batch = store.swap(7);
+        List<String> cells = new ArrayList<>();
+        for (DeviceRecord record : batch.values()) {
+            cells.add(record.hasLocation()
+                    ? Geohash.encodeToString(record.getLatitud(), record.getLongitud(), 7) : "-");
+        }
+        assertEquals(5, batch.size());
+        assertEquals(cells.get(0), cells.get(1));
+        assertEquals(cells.get(2), cells.get(3));
+        assertNotEquals(cells.get(1), cells.get(2));
+        assertEquals("-", cells.get(4));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void merge_restoresFailedBatch() {
+        SightingStore store = new SightingStore();
+        store.record("aa", 1_000L, (short) -70, 0.0, 0.0);
+        Map<String, DeviceRecord> batch = store.swap();
+        store.record("aa", 9_000L, (short) -50, 0.0, 0.0);
+        store.record("bb", 9_000L, (short) -50, 0.0, 0.0);
+
+        store.merge(batch);
+        Map<String, DeviceRecord> merged = store.swap();
+        assertEquals(2, merged.get("aa").getCount());
+        assertEquals(1_000L, merged.get("aa").getFirstSeen());
+        assertEquals(9_000L, merged.get("aa").getLastSeen());
+        assertEquals(-70, merged.get("aa").getMinRssi());
+        assertEquals(-50, merged.get("aa").getMaxRssi());
+        assertEquals(1, merged.get("bb").getCount());
+    }
+
+    @Test
+    public void listener_seesEachNewDeviceOncePerBatch() {
+        final AtomicInteger newDevices = new AtomicInteger();
+        SightingStore store = new SightingStore(new SightingStore.NewDeviceListener() {
+            @Override
+            public void onNewDevice(String hashedMac, DeviceRecord record) {
+                newDevices.incrementAndGet();
+            }
+        });
+        store.record("aa", 1L, (short) -70, 0.0, 0.0);
+        store.record("aa", 2L, (short) -70, 0.0, 0.0);
+        store.record("bb", 3L, (short) -70, 0.0, 0.0);
+        assertEquals(2, newDevices.get());
+        store.swap();
+        store.record("aa", 4L, (short) -70, 0.0, 0.0);
+        assertEquals(3, newDevices.get());
+    }
+
+    @Test
+    public void concurrentRecordAndSwap_loseAndDuplicateNothing() throws Exception {
+        final SightingStore store = new SightingStore();
+        final int writers = 4;
+        final int sightingsPerWriter = 200_000;
+        final int devices = 1_000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(writers);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+
+        for (int w = 0; w < writers; w++) {
+            final int writer = w;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < sightingsPerWriter; i++) {
+                            int device = (i * 31 + writer * 7) % devices;
+                            store.record("d" + device, i, (short) -60, 0.0, 0.0);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        // El hilo de envío congela y suma lotes mientras los escritores siguen
+        Map<String, Long> totals = new HashMap<>();
+        int swaps = 0;
+        start.countDown();
+        while (writing.get()) {
+            if (done.getCount() == 0) {
+                writing.set(false);
+            }
+            for (Map.Entry<String, DeviceRecord> entry : store.swap().entrySet()) {
+                Long total = totals.get(entry.getKey());
+                totals.put(entry.getKey(), (total == null ? 0L : total) + entry.getValue().getCount());
+            }
+            swaps++;
+        }
+        for (Map.Entry<String, DeviceRecord> entry : store.swap().entrySet()) {
+            Long total = totals.get(entry.getKey());
+            totals.put(entry.getKey(), (total == null ? 0L : total) + entry.getValue().getCount());
+        }
+
+        long sum = 0;
+        for (long count : totals.values()) {
+            sum += count;
+        }
+        assertTrue("swaps = " + swaps, swaps > 1);
+        assertEquals(devices, totals.size());
+        assertEquals((long) writers * sightingsPerWriter, sum);
+        // Cada dispositivo recibe exactamente writers * sightingsPerWriter / devices avistamientos
+        for (long count : totals.values()) {
+            assertEquals((long) writers * sightingsPerWriter / devices, count);
+        }
+    }
+
+    @Test
+    public void tableMode_spillsOldestDevicesWhenFull() {
+        final List<Map<String, DeviceRecord>> spills = new ArrayList<>();
+        SightingStore store = new SightingStore(null, 16, new SightingStore.SpillListener() {
+            @Override
+            public void onSpill(DeviceTable devices) {
+                // La tabla se reutiliza tras la llamada
+                spills.add(devices.toMap());
+            }
+        });
+        for (int i = 0; i < 17; i++) {
+            assertNull(store.record(String.format("%064x", i), i, (short) -70, 0.0, 0.0));
+        }
+        // Al llegar el 17.º sale la octava parte más antigua
+        assertEquals(1, spills.size());
+        assertEquals(2, spills.get(0).size());
+        assertTrue(spills.get(0).containsKey(String.format("%064x", 0)));
+        assertTrue(spills.get(0).containsKey(String.format("%064x", 1)));
+        assertEquals(15, store.size());
+        assertEquals(1, store.snapshot(String.format("%064x", 16)).getCount());
+
+        Map<String, DeviceRecord> batch = store.swap();
+        assertEquals(15, batch.size());
+        assertEquals(0, store.size());
+        assertNull(store.snapshot(String.format("%064x", 16)));
+    }
+
+    @Test
+    public void tableMode_swapTableMergesBackAndRecyclesWithoutGrowing() {
+        SightingStore store = new SightingStore(null, 16, null);
+        store.record(String.format("%064x", 1), 1_000L, (short) -70, 0.0, 0.0);
+        DeviceTable batch = store.swapTable();
+        assertEquals(1, batch.size());
+        store.record(String.format("%064x", 1), 9_000L, (short) -50, 0.0, 0.0);
+
+        // Un guardado fallido devuelve las filas al lote actual
+        store.merge(batch);
+        store.recycle(batch);
+        assertEquals(0, batch.size());
+        DeviceRecord merged = store.snapshot(String.format("%064x", 1));
+        assertEquals(2, merged.getCount());
+        assertEquals(1_000L, merged.getFirstSeen());
+
+        // La tabla reciclada es la del siguiente lote
+        DeviceTable next = store.swapTable();
+        assertEquals(1, next.size());
+        store.recycle(next);
+        assertSame(batch, store.swapTable());
+    }
+
+    @Test
+    public void tableMode_concurrentRecordAndSwap_loseAndDuplicateNothing() throws Exception {
+        final SightingStore store = new SightingStore(null, 1_000, null);
+        final int writers = 2;
+        final int sightingsPerWriter = 100_000;
+        final int devices = 1_000;
+        final String[] keys = new String[devices];
+        for (int i = 0; i < devices; i++) {
+            keys[i] = String.format("%064x", i);
+        }
+        final CountDownLatch done = new CountDownLatch(writers);
+        for (int w = 0; w < writers; w++) {
+            final int writer = w;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < sightingsPerWriter; i++) {
+                        store.record(keys[(i * 31 + writer * 7) % devices], i, (short) -60, 0.0, 0.0);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        long sum = 0;
+        boolean writing = true;
+        while (writing) {
+            writing = done.getCount() != 0;
+            for (DeviceRecord record : store.swap().values()) {
+                sum += record.getCount();
+            }
+        }
+        assertEquals((long) writers * sightingsPerWriter, sum);
+    }
+}
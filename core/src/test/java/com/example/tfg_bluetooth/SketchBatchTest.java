@@ -0,0 +1,117 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SketchBatchTest {
+
+    private static final long BUCKET = 60_000;
+    private static final long BASE = 1_700_000_040_000L - 1_700_000_040_000L % BUCKET;
+
+    private final MacHasher hasher = new MacHasher();
+
+    private static List<OccupancySketch> read(byte[] body) throws IOException {
+        final List<OccupancySketch> sketches = new ArrayList<>();
+        new SketchBatchReader(new ByteArrayInputStream(body)).read(new SketchBatchReader.Consumer() {
+            @Override
+            public void accept(OccupancySketch sketch) {
+                sketches.add(sketch);
+            }
+        });
+        return sketches;
+    }
+
+    private byte[] write(int devices, long dwell) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SketchBatchWriter writer = new SketchBatchWriter(out, BUCKET, SketchBatchWriter.DEFAULT_PRECISION);
+        writer.beginBatch();
+        byte[] hash = new byte[MacHasher.HASH_LENGTH];
+        for (int i = 0; i < devices; i++) {
+            Hex.decode(hasher.hash(i), hash, 0);
+            writer.writeDevice(hash, 0, new DeviceRecord(BASE, BASE + dwell, 2, (short) -80, (short) -60,
+                    37.18, -3.6));
+        }
+        writer.endBatch();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void roundTrip_countsDevicesInEveryBucketTheyWerePresent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SketchBatchWriter writer = new SketchBatchWriter(out, BUCKET, SketchBatchWriter.DEFAULT_PRECISION);
+        writer.beginBatch();
+        byte[] hash = new byte[MacHasher.HASH_LENGTH];
+        // 100 dispositivos de paso en la primera cubeta y 20 que se quedan tres
+        for (int i = 0; i < 100; i++) {
+            Hex.decode(hasher.hash(i), hash, 0);
+            writer.writeDevice(hash, 0, new DeviceRecord(BASE + 1_000, BASE + 6_000, 3, (short) -80, (short) -70,
+                    37.18, -3.6));
+        }
+        for (int i = 100; i < 120; i++) {
+            Hex.decode(hasher.hash(i), hash, 0);
+            writer.writeDevice(hash, 0, new DeviceRecord(BASE + 10_000, BASE + 2 * BUCKET + 10_000, 40,
+                    (short) -80, (short) -50, 37.18, -3.6));
+        }
+        // Una actualización de última fecha cuenta como presente, sin avistamientos ni permanencia
+        DeviceRecord update = new DeviceRecord(0L, (short) -60, 0.0, 0.0);
+        update.setLastSeenUpdate(BASE + 3 * BUCKET + 5_000);
+        Hex.decode(hasher.hash(500), hash, 0);
+        writer.writeDevice(hash, 0, update);
+        writer.endBatch();
+
+        List<OccupancySketch> sketches = read(out.toByteArray());
+        assertEquals(4, sketches.size());
+        long[] devices = {120, 20, 20, 1};
+        long[] sightings = {100 * 3 + 20 * 40, 0, 0, 0};
+        for (int i = 0; i < sketches.size(); i++) {
+            OccupancySketch sketch = sketches.get(i);
+            assertEquals(BASE + i * BUCKET, sketch.getBucketStart());
+            assertEquals(BUCKET, sketch.getBucketMillis());
+            assertEquals(devices[i], sketch.getUniqueDevices(), devices[i] * 0.03);
+            assertEquals(sightings[i], sketch.getSightings());
+        }
+        OccupancySketch first = sketches.get(0);
+        assertEquals(120, first.getDwellTotal());
+        assertEquals(100, first.getDwellCount(Histogram.bucket(5_000)));
+        assertEquals(20, first.getDwellCount(Histogram.bucket(2 * BUCKET)));
+        assertEquals(Histogram.upperBound(Histogram.bucket(5_000)), first.getDwellPercentile(0.5));
+    }
+
+    @Test
+    public void size_doesNotGrowWithDevices() throws IOException {
+        byte[] small = write(10, 1_000);
+        byte[] medium = write(10_000, 1_000);
+        byte[] large = write(100_000, 1_000);
+        // Con pocos dispositivos los registros van dispersos
+        assertTrue(small.length + " B", small.length < 100);
+        // Solo crecen los varint de los contadores
+        assertEquals(medium.length, large.length, 8);
+        assertTrue(large.length + " B", large.length < (1 << SketchBatchWriter.DEFAULT_PRECISION) + 100);
+
+        OccupancySketch sketch = read(large).get(0);
+        assertEquals(100_000, sketch.getUniqueDevices(), 100_000 * 0.05);
+        assertEquals(200_000, sketch.getSightings());
+    }
+
+    @Test
+    public void mergedSketches_countDevicesSeenByBothOnce() throws IOException {
+        OccupancySketch a = read(write(6_000, 1_000)).get(0);
+        OccupancySketch b = read(write(9_000, 1_000)).get(0);
+        a.merge(b);
+        assertEquals(9_000, a.getUniqueDevices(), 9_000 * 0.05);
+        assertEquals(2 * (6_000 + 9_000), a.getSightings());
+        assertEquals(15_000, a.getDwellTotal());
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsOtherFormats() throws IOException {
+        read(new byte[]{'T', 'F', 'G', 'B', 2, 0});
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SyntheticSightingSourceTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    // Guarda los avistamientos como "timestamp,dirección,rssi"
+    private static final class Recorder implements SightingSource.Listener {
+        final List<String> sightings = new ArrayList<>();
+        final Map<String, long[]> spans = new HashMap<>();
+
+        @Override
+        public void onSighting(String address, short rssi, long timestamp) {
+            sightings.add(timestamp + "," + address + "," + rssi);
+            long[] span = spans.get(address);
+            if (span == null) {
+                spans.put(address, new long[]{timestamp, timestamp});
+            } else {
+                span[1] = timestamp;
+            }
+        }
+    }
+
+    private static SyntheticSightingSource source(long seed, double repeatRatio, SyntheticSightingSource.Dwell dwell) {
+        SyntheticSightingSource source = new SyntheticSightingSource(seed, 500, 50, repeatRatio, dwell);
+        source.seek(START);
+        return source;
+    }
+
+    @Test
+    public void sameSeed_producesSameSequence() {
+        Recorder a = new Recorder();
+        Recorder b = new Recorder();
+        source(7, 0.8, SyntheticSightingSource.exponentialDwell(60_000)).emit(START + 600_000, a);
+        source(7, 0.8, SyntheticSightingSource.exponentialDwell(60_000)).emit(START + 600_000, b);
+        assertEquals(a.sightings, b.sightings);
+
+        Recorder c = new Recorder();
+        source(8, 0.8, SyntheticSightingSource.exponentialDwell(60_000)).emit(START + 600_000, c);
+        assertNotEquals(a.sightings, c.sightings);
+    }
+
+    @Test
+    public void emit_continuesWhereItStopped() {
+        Recorder whole = new Recorder();
+        source(3, 0.8, SyntheticSightingSource.fixedDwell(30_000)).emit(START + 100_000, whole);
+
+        Recorder pieces = new Recorder();
+        SyntheticSightingSource source = source(3, 0.8, SyntheticSightingSource.fixedDwell(30_000));
+        for (long t = START + 10_000; t <= START + 100_000; t += 10_000) {
+            source.emit(t, pieces);
+        }
+        assertEquals(whole.sightings, pieces.sightings);
+        assertEquals(whole.sightings.size(), source.getSightingsEmitted());
+    }
+
+    @Test
+    public void arrivalRate_matchesConfiguredMean() {
+        Recorder recorder = new Recorder();
+        int emitted = source(1, 0.8, SyntheticSightingSource.fixedDwell(Long.MAX_VALUE))
+                .emit(START + 1000_000, recorder);
+        // 1000 s a 50 avistamientos/s
+        assertEquals(50_000, emitted, 1_500);
+        String last = recorder.sightings.get(recorder.sightings.size() - 1);
+        assertTrue(Long.parseLong(last.substring(0, last.indexOf(','))) < START + 1000_000);
+    }
+
+    @Test
+    public void repeatRatio_controlsNewDevices() {
+        SyntheticSightingSource source = source(2, 0.75, SyntheticSightingSource.fixedDwell(Long.MAX_VALUE));
+        Recorder recorder = new Recorder();
+        int emitted = source.emit(START + 1000_000, recorder);
+        long newDevices = source.getDevicesSeen() - 500;
+        assertEquals(0.25, newDevices / (double) emitted, 0.02);
+    }
+
+    @Test
+    public void dwell_limitsTimeInRange() {
+        Recorder recorder = new Recorder();
+        source(4, 1.0, SyntheticSightingSource.fixedDwell(20_000)).emit(START + 300_000, recorder);
+        Set<String> longStays = new HashSet<>();
+        for (Map.Entry<String, long[]> entry : recorder.spans.entrySet()) {
+            if (entry.getValue()[1] - entry.getValue()[0] > 20_000) {
+                longStays.add(entry.getKey());
+            }
+        }
+        assertTrue(longStays.toString(), longStays.isEmpty());
+        // Aun sin repetidos forzados la población se renueva al agotarse la permanencia
+        assertTrue(recorder.spans.size() > 500 * 5);
+    }
+
+    @Test
+    public void addresses_lookLikeBluetoothAddresses() {
+        Recorder recorder = new Recorder();
+        source(5, 0.5, SyntheticSightingSource.logNormalDwell(30_000, 1.0)).emit(START + 10_000, recorder);
+        for (String address : recorder.spans.keySet()) {
+            assertTrue(address, address.matches("02(:[0-9A-F]{2}){5}"));
+        }
+    }
+
+    @Test
+    public void start_emitsInRealTimeUntilStopped() throws Exception {
+        SyntheticSightingSource source = new SyntheticSightingSource(6, 100, 2_000, 0.9,
+                SyntheticSightingSource.exponentialDwell(10_000));
+        final AtomicInteger sightings = new AtomicInteger();
+        final AtomicInteger windows = new AtomicInteger();
+        source.setWindowListener(new SightingSource.WindowListener() {
+            @Override
+            public void onWindowStarted() {
+                windows.incrementAndGet();
+            }
+
+            @Override
+            public void onWindowFinished() {
+                windows.incrementAndGet();
+            }
+        });
+        source.start(new SightingSource.Listener() {
+            @Override
+            public void onSighting(String address, short rssi, long timestamp) {
+                sightings.incrementAndGet();
+            }
+        });
+        assertTrue(source.isRunning());
+        Thread.sleep(200);
+        source.stop();
+        assertFalse(source.isRunning());
+        int afterStop = sightings.get();
+        assertTrue("avistamientos: " + afterStop, afterStop > 100);
+        assertEquals(afterStop, source.getSightingsEmitted());
+        Thread.sleep(50);
+        assertEquals(afterStop, sightings.get());
+        assertEquals(2, windows.get());
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.tfg_bluetooth;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class UploadClientTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LocalIngestServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalIngestServer();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private Outbox outboxWith(int devices) throws IOException {
+        Outbox outbox = new Outbox(new SegmentLog(folder.newFolder(), 64 * 1024 * 1024));
+        Map<String, DeviceRecord> batch = new LinkedHashMap<>();
+        for (int i = 0; i < devices; i++) {
+            batch.put(String.format("%064x", i), new DeviceRecord(i * 1000L, (short) -60, 37.1, -3.6));
+        }
+        outbox.appendBatch(batch);
+        return outbox;
+    }
+
+    private UploadClient.Response upload(final Outbox outbox) throws IOException {
+        final SegmentLog.Segment segment = outbox.pendingSegments().get(0);
+        return new UploadClient(server.url()).postGzip(new UploadClient.BodyWriter() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                outbox.writeBatch(segment, new DeviceJsonWriter(out));
+            }
+        });
+    }
+
+    @Test
+    public void postGzip_streamsJsonWithGzipEncoding() throws IOException {
+        Outbox outbox = outboxWith(3);
+        UploadClient.Response response = upload(outbox);
+
+        assertTrue(response.isOk());
+        assertEquals("{\"status\":\"ok\"}", response.getBody());
+        LocalIngestServer.Request request = server.requests().get(0);
+        assertEquals("gzip", request.contentEncoding);
+        assertEquals(UploadClient.CONTENT_TYPE_OCTET_STREAM, request.contentType);
+        String json = request.bodyAsString();
+        assertTrue(json.startsWith("{\"" + String.format("%064x", 0) + "\":{\"primera_fecha_hora\""));
+        assertEquals(3, json.split("avistamientos").length - 1);
+    }
+
+    @Test
+    public void post_deflateWithDictionary_isDecodedAndSmallerThanGzip() throws IOException {
+        Outbox outbox = outboxWith(30);
+        UploadClient client = new UploadClient(server.url());
+        assertTrue(client.post(UploadFormat.JSON_GZIP, jsonBody(outbox)).isOk());
+        assertTrue(client.post(UploadFormat.JSON_DEFLATE_DICT, jsonBody(outbox)).isOk());
+
+        LocalIngestServer.Request gzip = server.requests().get(0);
+        LocalIngestServer.Request deflate = server.requests().get(1);
+        assertEquals(PresetDictionary.CONTENT_ENCODING, deflate.contentEncoding);
+        assertEquals(gzip.bodyAsString(), deflate.bodyAsString());
+        assertEquals(60, server.sightingsReceived());
+        assertTrue(deflate.wireBytes + " >= " + gzip.wireBytes, deflate.wireBytes < gzip.wireBytes);
+    }
+
+    @Test
+    public void post_reportsErrorResponses() throws IOException {
+        server.setResponseCode(500);
+        UploadClient.Response response = upload(outboxWith(1));
+        assertFalse(response.isOk());
+        assertEquals(500, response.getCode());
+    }
+
+    @Test
+    public void postGzip_allocationStaysFlatAsBatchGrows() throws IOException {
+        server.setStoreBodies(false);
+        Outbox small = outboxWith(1_000);
+        Outbox large = outboxWith(50_000);
+        // Calentamiento
+        upload(small);
+        upload(small);
+
+        long before = allocatedBytes();
+        upload(small);
+        long smallBytes = allocatedBytes() - before;
+
+        before = allocatedBytes();
+        upload(large);
+        long largeBytes = allocatedBytes() - before;
+
+        long decoded = server.requests().get(server.requests().size() - 1).decodedBytes;
+        assertTrue(decoded > 50_000L * 150);
+        // 50 veces más registros no deben reservar más memoria que el lote pequeño
+        assertTrue("bytes reservados = " + largeBytes + " (lote pequeño: " + smallBytes + ")",
+                largeBytes < 2 * smallBytes + 64 * 1024);
+    }
+
+    private UploadClient resilientClient(int readTimeoutMs, int maxAttempts, CircuitBreaker breaker) throws IOException {
+        return new UploadClient(server.url(), 1_000, readTimeoutMs, new Backoff(5, 20, maxAttempts), breaker);
+    }
+
+    private static UploadClient.BodyWriter jsonBody(final Outbox outbox) {
+        final SegmentLog.Segment segment = outbox.pendingSegments().get(0);
+        return new UploadClient.BodyWriter() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                outbox.writeBatch(segment, new DeviceJsonWriter(out));
+            }
+        };
+    }
+
+    @Test
+    public void send_retriesAfterResetAndServerError() throws IOException {
+        server.enqueueFaults(LocalIngestServer.Fault.RESET, LocalIngestServer.Fault.SERVER_ERROR);
+        UploadClient client = resilientClient(1_000, 4, new CircuitBreaker(10, 60_000));
+
+        UploadClient.Response response = client.send(UploadFormat.JSON_GZIP, jsonBody(outboxWith(5)));
+        assertTrue(response.isOk());
+        assertEquals(3, server.attempts());
+        assertEquals(1, server.requests().size());
+        assertEquals(CircuitBreaker.State.CLOSED, client.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void send_givesUpAfterMaxAttempts() throws IOException {
+        server.enqueueFaults(LocalIngestServer.Fault.SERVER_ERROR, LocalIngestServer.Fault.SERVER_ERROR,
+                LocalIngestServer.Fault.SERVER_ERROR, LocalIngestServer.Fault.SERVER_ERROR);
+        UploadClient client = resilientClient(1_000, 3, new CircuitBreaker(10, 60_000));
+
+        UploadClient.Response response = client.send(UploadFormat.JSON_GZIP, jsonBody(outboxWith(1)));
+        assertEquals(503, response.getCode());
+        assertEquals(3, server.attempts());
+    }
+
+    @Test
+    public void send_doesNotRetryClientErrors() throws IOException {
+        server.setResponseCode(400);
+        UploadClient client = resilientClient(1_000, 3, new CircuitBreaker(10, 60_000));
+
+        assertEquals(400, client.send(UploadFormat.JSON_GZIP, jsonBody(outboxWith(1))).getCode());
+        assertEquals(1, server.attempts());
+    }
+
+    @Test
+    public void send_returnsRetryAfterWithoutRetrying() throws IOException {
+        server.setRetryAfter("120");
+        server.enqueueFaults(LocalIngestServer.Fault.OVERLOADED);
+        UploadClient client = resilientClient(1_000, 4, new CircuitBreaker(10, 60_000));
+
+        UploadClient.Response response = client.send(UploadFormat.JSON_GZIP, jsonBody(outboxWith(1)));
+        assertEquals(429, response.getCode());
+        assertEquals(120_000L, response.getRetryAfterMillis());
+        assertEquals(1, server.attempts());
+    }
+
+    @Test
+    public void parseRetryAfter_acceptsSecondsAndHttpDates() {
+        long now = 1_445_412_480_000L;
+        assertEquals(-1, UploadClient.parseRetryAfter(null, now));
+        assertEquals(-1, UploadClient.parseRetryAfter("pronto", now));
+        assertEquals(30_000L, UploadClient.parseRetryAfter(" 30 ", now));
+        // Wed, 21 Oct 2015 07:28:00 GMT es now
+        assertEquals(90_000L, UploadClient.parseRetryAfter("Wed, 21 Oct 2015 07:29:30 GMT", now));
+        assertEquals(0L, UploadClient.parseRetryAfter("Wed, 21 Oct 2015 07:00:00 GMT", now));
+    }
+
+    @Test
+    public void post_readTimeoutAbortsStalledRequest() throws IOException {
+        server.setLatencyMillis(2_000);
+        UploadClient client = resilientClient(100, 1, new CircuitBreaker(10, 60_000));
+
+        long start = System.nanoTime();
+        try {
+            client.send(UploadFormat.JSON_GZIP, jsonBody(outboxWith(1)));
+            fail("Se esperaba un timeout");
+        } catch (java.net.SocketTimeoutException expected) {
+            assertTrue((System.nanoTime() - start) / 1_000_000 < 1_500);
+        }
+    }
+
+    @Test
+    public void send_circuitOpensAndStopsHittingDeadEndpoint() throws IOException {
+        server.enqueueFaults(LocalIngestServer.Fault.RESET, LocalIngestServer.Fault.RESET);
+        UploadClient client = resilientClient(1_000, 2, new CircuitBreaker(2, 60_000));
+        Outbox outbox = outboxWith(1);
+
+        try {
+            client.send(UploadFormat.JSON_GZIP, jsonBody(outbox));
+            fail("Se esperaba un error de red");
+        } catch (IOException expected) {
+            assertFalse(expected instanceof UploadClient.CircuitOpenException);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, client.getCircuitBreaker().getState());
+
+        try {
+            client.send(UploadFormat.JSON_GZIP, jsonBody(outbox));
+            fail("Se esperaba el cortocircuito abierto");
+        } catch (UploadClient.CircuitOpenException expected) {
+            assertEquals(2, server.attempts());
+        }
+    }
+
+    @Test
+    public void post_reusesConnectionBetweenRequests() throws IOException {
+        UploadClient client = resilientClient(1_000, 1, new CircuitBreaker(10, 60_000));
+        Outbox outbox = outboxWith(10);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(client.send(UploadFormat.JSON_GZIP, jsonBody(outbox)).isOk());
+        }
+        int port = server.requests().get(0).remotePort;
+        assertEquals(port, server.requests().get(1).remotePort);
+        assertEquals(port, server.requests().get(2).remotePort);
+    }
+}
@@ -15,4 +15,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "TFG_Bluetooth"
 include(":app")
+include(":core")
  
\ No newline at end of file